@@ -48,6 +48,7 @@ public abstract class RdfCloudTripleStoreConfiguration extends Configuration {
     public static final String CONF_STARTTIME = "query.startTime";
     //    public static final String CONF_TIMEINDEXURIS = "query.timeindexuris";
     public static final String CONF_NUM_THREADS = "query.numthreads";
+    public static final String CONF_EVAL_POOL_THREADS = "query.evalpool.threads";
     public static final String CONF_PERFORMANT = "query.performant";
     public static final String CONF_INFER = "query.infer";
     public static final String CONF_USE_STATS = "query.usestats";
@@ -55,11 +56,33 @@ public abstract class RdfCloudTripleStoreConfiguration extends Configuration {
     public static final String CONF_USE_SELECTIVITY = "query.useselectivity";
     public static final String CONF_TBL_PREFIX = "query.tblprefix";
     public static final String CONF_BATCH_SIZE = "query.batchsize";
+    public static final String CONF_JOIN_BATCH_SIZE = "query.join.batchsize";
+    public static final String CONF_BATCH_ADAPTIVE = "query.join.batchsize.adaptive";
+    public static final String CONF_BATCH_MAX_SIZE = "query.join.batchsize.max";
+    public static final String CONF_BATCH_MAX_RESULTS = "query.join.batchsize.maxresults";
+    public static final String CONF_UNION_PARALLEL = "query.union.parallel";
+    public static final String CONF_UNION_BUFFER = "query.union.buffer";
+    public static final String CONF_UNION_ORDERED = "query.union.ordered";
+    public static final String CONF_QUERY_MEMORY_BUDGET = "query.memory.budget";
+    public static final String CONF_SPILL_DIR = "query.spill.dir";
+    public static final String CONF_SEMIJOIN = "query.semijoin";
+    public static final String CONF_SEMIJOIN_MIN_BINDINGS = "query.semijoin.minbindings";
+    /**
+     * Set by the evaluation strategy on the configuration of a single batch to ask the DAO
+     * for one Bloom filtered scan instead of a range per binding set.
+     */
+    public static final String CONF_SEMIJOIN_SCAN = "query.semijoin.scan";
     public static final String CONF_OFFSET = "query.offset";
     public static final String CONF_LIMIT = "query.limit";
     public static final String CONF_QUERYPLAN_FLAG = "query.printqueryplan";
     public static final String CONF_QUERY_AUTH = "query.auth";
+    public static final String CONF_QUERY_ID = "query.id";
+    public static final String CONF_QUERY_TIMEOUT = "query.timeout";
+    public static final String CONF_TOPK_INDEX_ORDER = "query.topk.indexorder";
 	public static final String CONF_RESULT_FORMAT = "query.resultformat";
+    public static final String CONF_RESULT_CACHE = "query.resultcache";
+    public static final String CONF_RESULT_CACHE_MAX_BYTES = "query.resultcache.maxbytes";
+    public static final String CONF_RESULT_CACHE_TTL = "query.resultcache.ttl";
     public static final String CONF_CV = "conf.cv";
     public static final String CONF_TBL_SPO = "tbl.spo";
     public static final String CONF_TBL_PO = "tbl.po";
@@ -78,6 +101,9 @@ public abstract class RdfCloudTripleStoreConfiguration extends Configuration {
     public static final String INFER_INCLUDE_SUBPROPOF = "infer.include.subpropof";
     public static final String INFER_INCLUDE_SYMMPROP = "infer.include.symmprop";
     public static final String INFER_INCLUDE_TRANSITIVEPROP = "infer.include.transprop";
+    public static final String INFER_MULTIVALUE_SCAN = "infer.multivaluescan";
+    public static final String INFER_INCREMENTAL = "infer.incremental";
+    public static final String INFER_TRANSITIVE_CLOSURE = "infer.transitive.closure";
 
     public static final String RDF_DAO_CLASS = "class.rdf.dao";
     public static final String RDF_EVAL_STATS_DAO_CLASS = "class.rdf.evalstats";
@@ -157,6 +183,20 @@ public abstract class RdfCloudTripleStoreConfiguration extends Configuration {
         setInt(CONF_NUM_THREADS, numThreads);
     }
 
+    /**
+     * @return the number of threads shared by all queries of a store for parallel evaluation, default 64.
+     * Each query uses at most {@link #getNumThreads()} of them at a time.
+     */
+    public Integer getEvaluationPoolThreads() {
+        return getInt(CONF_EVAL_POOL_THREADS, 64);
+    }
+
+    public void setEvaluationPoolThreads(Integer threads) {
+        Preconditions.checkNotNull(threads);
+        Preconditions.checkArgument(threads > 0, "threads must be greater than 0");
+        setInt(CONF_EVAL_POOL_THREADS, threads);
+    }
+
     public Boolean isPerformant() {
         return getBoolean(CONF_PERFORMANT, true);
     }
@@ -226,6 +266,164 @@ public abstract class RdfCloudTripleStoreConfiguration extends Configuration {
         setLong(CONF_BATCH_SIZE, batchSize);
     }
 
+    /**
+     * @return the number of binding sets a join sends to the right side in its first batch, or null for
+     * the default of 1000. Independent of {@link #getBatchSize()}, which sizes scanner batches.
+     */
+    public Integer getJoinBatchSize() {
+        String val = get(CONF_JOIN_BATCH_SIZE);
+        if (val != null) {
+            return Integer.valueOf(val);
+        }
+        return null;
+    }
+
+    public void setJoinBatchSize(Integer joinBatchSize) {
+        Preconditions.checkNotNull(joinBatchSize);
+        Preconditions.checkArgument(joinBatchSize > 0, "joinBatchSize must be greater than 0");
+        setInt(CONF_JOIN_BATCH_SIZE, joinBatchSize);
+    }
+
+    /**
+     * @return true if joins adapt the number of binding sets they send to the right side per batch
+     * to the observed fan-out and latency, starting from {@link #getJoinBatchSize()}, default true
+     */
+    public Boolean isAdaptiveBatchSize() {
+        return getBoolean(CONF_BATCH_ADAPTIVE, true);
+    }
+
+    public void setAdaptiveBatchSize(Boolean val) {
+        Preconditions.checkNotNull(val);
+        setBoolean(CONF_BATCH_ADAPTIVE, val);
+    }
+
+    /**
+     * @return the largest number of binding sets an adaptive join sends to the right side at once, default 10000
+     */
+    public Integer getMaxBatchSize() {
+        return getInt(CONF_BATCH_MAX_SIZE, 10000);
+    }
+
+    public void setMaxBatchSize(Integer maxBatchSize) {
+        Preconditions.checkNotNull(maxBatchSize);
+        Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be greater than 0");
+        setInt(CONF_BATCH_MAX_SIZE, maxBatchSize);
+    }
+
+    /**
+     * @return the number of right side results an adaptive join aims to stay under per batch, default 100000
+     */
+    public Long getMaxBatchResults() {
+        return getLong(CONF_BATCH_MAX_RESULTS, 100000L);
+    }
+
+    public void setMaxBatchResults(Long maxBatchResults) {
+        Preconditions.checkNotNull(maxBatchResults);
+        Preconditions.checkArgument(maxBatchResults > 0, "maxBatchResults must be greater than 0");
+        setLong(CONF_BATCH_MAX_RESULTS, maxBatchResults);
+    }
+
+    /**
+     * @return true if the branches of a union are evaluated concurrently on the threads of the query, default false.
+     * Unions on the right side of a join are evaluated once per batch of bindings and always stay sequential.
+     */
+    public Boolean isParallelUnion() {
+        return getBoolean(CONF_UNION_PARALLEL, false);
+    }
+
+    public void setParallelUnion(Boolean val) {
+        Preconditions.checkNotNull(val);
+        setBoolean(CONF_UNION_PARALLEL, val);
+    }
+
+    /**
+     * @return the number of results each branch of a parallel union may buffer, default 1024
+     */
+    public Integer getUnionBufferSize() {
+        return getInt(CONF_UNION_BUFFER, 1024);
+    }
+
+    public void setUnionBufferSize(Integer bufferSize) {
+        Preconditions.checkNotNull(bufferSize);
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be greater than 0");
+        setInt(CONF_UNION_BUFFER, bufferSize);
+    }
+
+    /**
+     * @return true if a parallel union returns its results branch by branch in the order of the query
+     * instead of as they arrive, default false
+     */
+    public Boolean isOrderedUnion() {
+        return getBoolean(CONF_UNION_ORDERED, false);
+    }
+
+    public void setOrderedUnion(Boolean val) {
+        Preconditions.checkNotNull(val);
+        setBoolean(CONF_UNION_ORDERED, val);
+    }
+
+    /**
+     * @return the bytes of heap the DISTINCT, ORDER BY and GROUP BY operators of a query may hold before
+     * they spill to temporary files, default 128MB
+     */
+    public Long getQueryMemoryBudget() {
+        return getLong(CONF_QUERY_MEMORY_BUDGET, 128L * 1024 * 1024);
+    }
+
+    public void setQueryMemoryBudget(Long bytes) {
+        Preconditions.checkNotNull(bytes);
+        Preconditions.checkArgument(bytes > 0, "bytes must be greater than 0");
+        setLong(CONF_QUERY_MEMORY_BUDGET, bytes);
+    }
+
+    /**
+     * @return the directory queries over their memory budget spill to, null for the default temporary directory
+     */
+    public String getSpillDirectory() {
+        return get(CONF_SPILL_DIR);
+    }
+
+    public void setSpillDirectory(String dir) {
+        Preconditions.checkNotNull(dir);
+        set(CONF_SPILL_DIR, dir);
+    }
+
+    /**
+     * @return true if batches of a bind join may be evaluated as one Bloom filtered semi-join scan
+     * when the statistics say the scan is cheaper than a range per binding set, default false. The
+     * scan uses the BloomJoinFilter iterator, so the Rya jar has to be on the tablet servers' classpath
+     */
+    public Boolean isSemiJoin() {
+        return getBoolean(CONF_SEMIJOIN, false);
+    }
+
+    public void setSemiJoin(Boolean val) {
+        Preconditions.checkNotNull(val);
+        setBoolean(CONF_SEMIJOIN, val);
+    }
+
+    /**
+     * @return the smallest batch that is considered for a semi-join scan, default 100
+     */
+    public Integer getSemiJoinMinBindings() {
+        return getInt(CONF_SEMIJOIN_MIN_BINDINGS, 100);
+    }
+
+    public void setSemiJoinMinBindings(Integer minBindings) {
+        Preconditions.checkNotNull(minBindings);
+        Preconditions.checkArgument(minBindings > 1, "minBindings must be greater than 1");
+        setInt(CONF_SEMIJOIN_MIN_BINDINGS, minBindings);
+    }
+
+    public Boolean isSemiJoinScan() {
+        return getBoolean(CONF_SEMIJOIN_SCAN, false);
+    }
+
+    public void setSemiJoinScan(Boolean val) {
+        Preconditions.checkNotNull(val);
+        setBoolean(CONF_SEMIJOIN_SCAN, val);
+    }
+
     public Long getOffset() {
         String val = get(CONF_OFFSET);
         if (val != null) {
@@ -264,6 +462,81 @@ public abstract class RdfCloudTripleStoreConfiguration extends Configuration {
         setBoolean(CONF_QUERYPLAN_FLAG, val);
     }
 
+    public String getQueryId() {
+        return get(CONF_QUERY_ID);
+    }
+
+    public void setQueryId(String queryId) {
+        Preconditions.checkNotNull(queryId);
+        set(CONF_QUERY_ID, queryId);
+    }
+
+    /**
+     * @return the number of milliseconds a query may run before it is cancelled, or null if it may run forever
+     */
+    public Long getQueryTimeout() {
+        String val = get(CONF_QUERY_TIMEOUT);
+        if (val != null) {
+            return Long.valueOf(val);
+        }
+        return null;
+    }
+
+    public void setQueryTimeout(Long timeout) {
+        Preconditions.checkNotNull(timeout);
+        Preconditions.checkArgument(timeout > 0, "timeout must be greater than 0");
+        setLong(CONF_QUERY_TIMEOUT, timeout);
+    }
+
+    /**
+     * @return true if an ORDER BY ... LIMIT over a single statement pattern may stop reading once the
+     * limit is reached when the store scans the ordered variable in index order. Only correct if the
+     * ordered values of each predicate share a datatype whose serialization preserves its order, default false
+     */
+    public Boolean isUseTopKIndexOrder() {
+        return getBoolean(CONF_TOPK_INDEX_ORDER, false);
+    }
+
+    public void setUseTopKIndexOrder(Boolean val) {
+        Preconditions.checkNotNull(val);
+        setBoolean(CONF_TOPK_INDEX_ORDER, val);
+    }
+
+    public Boolean isUseResultCache() {
+        return getBoolean(CONF_RESULT_CACHE, false);
+    }
+
+    public void setUseResultCache(Boolean val) {
+        Preconditions.checkNotNull(val);
+        setBoolean(CONF_RESULT_CACHE, val);
+    }
+
+    /**
+     * @return the maximum number of bytes of serialized query results the result cache may hold, default 64 MB
+     */
+    public Long getResultCacheMaxBytes() {
+        return getLong(CONF_RESULT_CACHE_MAX_BYTES, 64L * 1024 * 1024);
+    }
+
+    public void setResultCacheMaxBytes(Long maxBytes) {
+        Preconditions.checkNotNull(maxBytes);
+        Preconditions.checkArgument(maxBytes > 0, "maxBytes must be greater than 0");
+        setLong(CONF_RESULT_CACHE_MAX_BYTES, maxBytes);
+    }
+
+    /**
+     * @return the time in milliseconds a cached query result stays valid, default 5 minutes
+     */
+    public Long getResultCacheTtl() {
+        return getLong(CONF_RESULT_CACHE_TTL, 5L * 60 * 1000);
+    }
+
+    public void setResultCacheTtl(Long ttl) {
+        Preconditions.checkNotNull(ttl);
+        Preconditions.checkArgument(ttl > 0, "ttl must be greater than 0");
+        setLong(CONF_RESULT_CACHE_TTL, ttl);
+    }
+
     /**
      * @return
      * @deprecated
@@ -375,6 +648,45 @@ public abstract class RdfCloudTripleStoreConfiguration extends Configuration {
         setBoolean(INFER_INCLUDE_TRANSITIVEPROP, val);
     }
 
+    /**
+     * @return true if a pattern expanded to its subclasses or subproperties is read with one scan of
+     * all their ranges instead of a join over them, default true
+     */
+    public Boolean isInferMultiValueScan() {
+        return getBoolean(INFER_MULTIVALUE_SCAN, true);
+    }
+
+    public void setInferMultiValueScan(Boolean val) {
+        Preconditions.checkNotNull(val);
+        setBoolean(INFER_MULTIVALUE_SCAN, val);
+    }
+
+    /**
+     * @return true if schema statements written or deleted through the sail are applied to the
+     * inference engine right away, rather than at its next scheduled refresh, default true
+     */
+    public Boolean isInferIncremental() {
+        return getBoolean(INFER_INCREMENTAL, true);
+    }
+
+    public void setInferIncremental(Boolean val) {
+        Preconditions.checkNotNull(val);
+        setBoolean(INFER_INCREMENTAL, val);
+    }
+
+    /**
+     * @return true if the closures of transitive properties are kept in memory by the inference engine and
+     * maintained as statements are written, so a transitive pattern is a lookup, default false
+     */
+    public Boolean isInferTransitiveClosure() {
+        return getBoolean(INFER_TRANSITIVE_CLOSURE, false);
+    }
+
+    public void setInferTransitiveClosure(Boolean val) {
+        Preconditions.checkNotNull(val);
+        setBoolean(INFER_TRANSITIVE_CLOSURE, val);
+    }
+
     public void setRdfEvalStatsDaoClass(Class<? extends RdfEvalStatsDAO> rdfEvalStatsDaoClass) {
         Preconditions.checkNotNull(rdfEvalStatsDaoClass);
         setClass(RDF_EVAL_STATS_DAO_CLASS, rdfEvalStatsDaoClass, RdfEvalStatsDAO.class);
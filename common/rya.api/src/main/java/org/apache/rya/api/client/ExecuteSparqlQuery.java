@@ -36,4 +36,20 @@ public interface ExecuteSparqlQuery {
      * @throws RyaClientException Something caused the command to fail.
      */
     public String executeSparqlQuery(String ryaInstanceName, String sparqlQuery) throws InstanceDoesNotExistException, RyaClientException;
+
+    /**
+     * Loads a SPARQL Query and executes the query against an instance of Rya. The query is
+     * cancelled if it runs longer than the provided timeout. Implementations that can't
+     * cancel a query run it without a timeout.
+     *
+     * @param ryaInstanceName - The name of the Rya instance the query will be executed against. (not null)
+     * @param sparqlQuery - A single SPARQL Query. (not null)
+     * @param timeoutMillis - The number of milliseconds the query may run before it is cancelled.
+     * @return A user-friendly String representation of the query results.
+     * @throws InstanceDoesNotExistException No instance of Rya exists for the provided name.
+     * @throws RyaClientException Something caused the command to fail, including the query timing out.
+     */
+    public default String executeSparqlQuery(final String ryaInstanceName, final String sparqlQuery, final long timeoutMillis) throws InstanceDoesNotExistException, RyaClientException {
+        return executeSparqlQuery(ryaInstanceName, sparqlQuery);
+    }
 }
\ No newline at end of file
@@ -68,6 +68,9 @@ public class RyaDetails implements Serializable {
     private final ProspectorDetails prospectorDetails;
     private final JoinSelectivityDetails joinSelectivityDetails;
 
+    // Inference Details.
+    private final ReasoningDetails reasoningDetails;
+
     /**
      * Private to prevent initialization through the constructor. To build
      * instances of this class, use the {@link Builder}.
@@ -82,7 +85,8 @@ public class RyaDetails implements Serializable {
             final TemporalIndexDetails temporalDetails,
             final FreeTextIndexDetails freeTextDetails,
             final ProspectorDetails prospectorDetails,
-            final JoinSelectivityDetails joinSelectivityDetails) {
+            final JoinSelectivityDetails joinSelectivityDetails,
+            final ReasoningDetails reasoningDetails) {
         this.instanceName = requireNonNull(instanceName);
         this.version = requireNonNull(version);
         this.users = requireNonNull(users);
@@ -93,6 +97,15 @@ public class RyaDetails implements Serializable {
         this.freeTextDetails = requireNonNull(freeTextDetails);
         this.prospectorDetails = requireNonNull(prospectorDetails);
         this.joinSelectivityDetails = requireNonNull(joinSelectivityDetails);
+        this.reasoningDetails = requireNonNull(reasoningDetails);
+    }
+
+    /**
+     * Details serialized before {@link ReasoningDetails} existed don't have
+     * any, so give them the empty default.
+     */
+    private Object readResolve() {
+        return reasoningDetails == null ? builder(this).build() : this;
     }
 
     /**
@@ -168,6 +181,13 @@ public class RyaDetails implements Serializable {
         return joinSelectivityDetails;
     }
 
+    /**
+     * @return Information about the instance's forward-chaining reasoning runs.
+     */
+    public ReasoningDetails getReasoningDetails() {
+        return reasoningDetails;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(
@@ -179,7 +199,8 @@ public class RyaDetails implements Serializable {
                 temporalDetails,
                 freeTextDetails,
                 prospectorDetails,
-                joinSelectivityDetails);
+                joinSelectivityDetails,
+                reasoningDetails);
     }
 
     @Override
@@ -197,7 +218,8 @@ public class RyaDetails implements Serializable {
                     Objects.equals(temporalDetails, details.temporalDetails) &&
                     Objects.equals(freeTextDetails, details.freeTextDetails) &&
                     Objects.equals(prospectorDetails, details.prospectorDetails) &&
-                    Objects.equals(joinSelectivityDetails, details.joinSelectivityDetails);
+                    Objects.equals(joinSelectivityDetails, details.joinSelectivityDetails) &&
+                    Objects.equals(reasoningDetails, details.reasoningDetails);
         }
         return false;
     }
@@ -239,6 +261,9 @@ public class RyaDetails implements Serializable {
         private ProspectorDetails prospectorDetails;
         private JoinSelectivityDetails joinSelectivityDetails;
 
+        // Inference Details.
+        private ReasoningDetails reasoningDetails;
+
         /**
          * Construcst an empty instance of {@link Builder}.
          */
@@ -262,6 +287,7 @@ public class RyaDetails implements Serializable {
             freeTextDetails = details.freeTextDetails;
             prospectorDetails = details.prospectorDetails;
             joinSelectivityDetails = details.joinSelectivityDetails;
+            reasoningDetails = details.reasoningDetails;
         }
 
         /**
@@ -374,6 +400,16 @@ public class RyaDetails implements Serializable {
             return this;
         }
 
+        /**
+         * @param reasoningDetails - Information about the instance's reasoning runs. If not
+         *   set, the instance has never been reasoned over.
+         * @return This {@link Builder} so that method invocations may be chained.
+         */
+        public Builder setReasoningDetails(@Nullable final ReasoningDetails reasoningDetails) {
+            this.reasoningDetails = reasoningDetails;
+            return this;
+        }
+
         /**
          * @return An instance of {@link RyaDetails} built using this
          *   builder's values.
@@ -389,7 +425,8 @@ public class RyaDetails implements Serializable {
                     temporalDetails,
                     freeTextDetails,
                     prospectorDetails,
-                    joinSelectivityDetails);
+                    joinSelectivityDetails,
+                    reasoningDetails != null ? reasoningDetails : new ReasoningDetails(Optional.<Date>absent()));
         }
     }
 
@@ -1071,4 +1108,50 @@ public class RyaDetails implements Serializable {
             return false;
         }
     }
+
+    /**
+     * Details about the forward-chaining reasoning runs over a Rya instance.
+     */
+    @Immutable
+    @DefaultAnnotation(NonNull.class)
+    public static class ReasoningDetails implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Optional<Date> lastUpdated;
+
+        /**
+         * Constructs an instance of {@link ReasoningDetails}.
+         *
+         * @param lastUpdated - The insert time up to which the Rya instance's statements have been
+         *   reasoned over and the results stored. (not null)
+         */
+        public ReasoningDetails(final Optional<Date> lastUpdated) {
+            this.lastUpdated = requireNonNull(lastUpdated);
+        }
+
+        /**
+         * @return The insert time up to which the Rya instance's statements have been reasoned
+         *   over and the results stored. Statements inserted later have not been reasoned over.
+         */
+        public Optional<Date> getLastUpdated() {
+            return lastUpdated;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash( lastUpdated );
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if(this == obj) {
+                return true;
+            }
+            if(obj instanceof ReasoningDetails) {
+                final ReasoningDetails details = (ReasoningDetails) obj;
+                return Objects.equals(lastUpdated, details.lastUpdated);
+            }
+            return false;
+        }
+    }
 }
\ No newline at end of file
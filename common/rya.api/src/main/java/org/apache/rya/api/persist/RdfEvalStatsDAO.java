@@ -24,6 +24,7 @@ package org.apache.rya.api.persist;
 import java.util.List;
 
 import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
+import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
 import org.openrdf.model.Value;
 
@@ -37,6 +38,10 @@ public interface RdfEvalStatsDAO<C extends RdfCloudTripleStoreConfiguration> {
         SUBJECT, PREDICATE, OBJECT, SUBJECTPREDICATE, SUBJECTOBJECT, PREDICATEOBJECT
     }
 
+    public enum DISTINCT_OF {
+        SUBJECTS_PER_PREDICATE, OBJECTS_PER_PREDICATE, PREDICATES_PER_SUBJECT
+    }
+
     public void init() throws RdfDAOException;
 
     public boolean isInitialized() throws RdfDAOException;
@@ -47,6 +52,35 @@ public interface RdfEvalStatsDAO<C extends RdfCloudTripleStoreConfiguration> {
     public double getCardinality(C conf, CARDINALITY_OF card, List<Value> val) throws RdfDAOException;
 	public double getCardinality(C conf, CARDINALITY_OF card, List<Value> val, Resource context) throws RdfDAOException;
 
+    /**
+     * Estimates the number of distinct values that appear with a value, such
+     * as the number of distinct subjects a predicate is used with. Dividing a
+     * value's cardinality by this gives the average number of statements each
+     * of those distinct values joins with.
+     *
+     * @param conf - The Rya configuration.
+     * @param distinct - Which distinct values to estimate.
+     * @param val - The predicate or subject the values appear with.
+     * @return The estimate, or -1 if none could be found.
+     */
+    public default double getDistinctCount(C conf, DISTINCT_OF distinct, Value val) throws RdfDAOException {
+        return -1;
+    }
+
+    /**
+     * Estimates the number of statements with a predicate whose objects are
+     * numeric or date literals that fall within a range.
+     *
+     * @param conf - The Rya configuration.
+     * @param predicate - The predicate of the statements.
+     * @param lower - The inclusive lower bound, or null if there isn't one.
+     * @param upper - The inclusive upper bound, or null if there isn't one.
+     * @return The estimate, or -1 if none could be found.
+     */
+    public default double getRangeCardinality(C conf, Value predicate, Literal lower, Literal upper) throws RdfDAOException {
+        return -1;
+    }
+
     public void setConf(C conf);
 
     public C getConf();
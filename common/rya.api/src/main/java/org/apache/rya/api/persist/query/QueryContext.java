@@ -0,0 +1,250 @@
+package org.apache.rya.api.persist.query;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
+import org.openrdf.query.QueryInterruptedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The deadline and cancellation state of a running query.
+ * <p>
+ * A context is registered under its query id while the query runs, so the iterators of the
+ * evaluation tree and the DAO scanners can find it through the {@link RdfCloudTripleStoreConfiguration#CONF_QUERY_ID}
+ * of the query configuration and poll {@link #isCancelled()}. Resources such as scanners and
+ * thread pools register themselves through {@link #onCancel(Closeable)} and are closed as soon as
+ * the query is cancelled or its deadline passes, even if no iterator is currently polling.
+ */
+public class QueryContext {
+    private static final Logger logger = LoggerFactory.getLogger(QueryContext.class);
+
+    private static final ConcurrentHashMap<String, QueryContext> RUNNING = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService DEADLINES = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, QueryContext.class.getSimpleName() + "-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String queryId;
+    private final long deadline;
+    private final long startTime = System.currentTimeMillis();
+    private final List<Closeable> resources = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, AtomicLong> metrics = new ConcurrentHashMap<>();
+    private volatile boolean cancelled = false;
+    private ScheduledFuture<?> deadlineTask;
+
+    private QueryContext(final String queryId, final Long timeout) {
+        this.queryId = queryId;
+        this.deadline = timeout == null ? Long.MAX_VALUE : startTime + timeout;
+    }
+
+    /**
+     * Creates and registers the context of a query that is about to run.
+     * @param queryId the id of the query, a random id is generated if null
+     * @param timeout the number of milliseconds the query may run, null for no deadline
+     * @return the registered context
+     */
+    public static QueryContext start(final String queryId, final Long timeout) {
+        final QueryContext context = new QueryContext(queryId == null ? UUID.randomUUID().toString() : queryId, timeout);
+        if (RUNNING.putIfAbsent(context.queryId, context) != null) {
+            throw new IllegalArgumentException("A query with id " + context.queryId + " is already running");
+        }
+        if (timeout != null) {
+            context.deadlineTask = DEADLINES.schedule(context::cancel, timeout, TimeUnit.MILLISECONDS);
+        }
+        return context;
+    }
+
+    /**
+     * @param conf the configuration a query is evaluated with, may be null
+     * @return the context of the query, or null if the query is not tracked
+     */
+    public static QueryContext get(final RdfCloudTripleStoreConfiguration conf) {
+        if (conf == null) {
+            return null;
+        }
+        return get(conf.getQueryId());
+    }
+
+    public static QueryContext get(final String queryId) {
+        return queryId == null ? null : RUNNING.get(queryId);
+    }
+
+    public static Collection<QueryContext> getRunningQueries() {
+        return Collections.unmodifiableCollection(RUNNING.values());
+    }
+
+    /**
+     * Cancels a running query.
+     * @param queryId the id of the query
+     * @return true if a query with that id was running
+     */
+    public static boolean cancel(final String queryId) {
+        final QueryContext context = get(queryId);
+        if (context == null) {
+            return false;
+        }
+        context.cancel();
+        return true;
+    }
+
+    public String getQueryId() {
+        return queryId;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Marks the query as cancelled and closes every registered resource.
+     */
+    public void cancel() {
+        if (!cancelled) {
+            cancelled = true;
+            logger.info("Cancelling query {}", queryId);
+            closeResources();
+        }
+    }
+
+    /**
+     * @return true if the query was cancelled or its deadline has passed
+     */
+    public boolean isCancelled() {
+        if (!cancelled && System.currentTimeMillis() > deadline) {
+            cancel();
+        }
+        return cancelled;
+    }
+
+    /**
+     * @throws QueryInterruptedException if the query was cancelled or its deadline has passed
+     */
+    public void checkCancelled() throws QueryInterruptedException {
+        if (isCancelled()) {
+            throw new QueryInterruptedException("Query " + queryId + " was cancelled or timed out");
+        }
+    }
+
+    /**
+     * Registers a resource that is closed when the query is cancelled or finishes. The resource is
+     * closed immediately if the query has already been cancelled.
+     * @param resource the resource to close
+     */
+    public void onCancel(final Closeable resource) {
+        Preconditions.checkNotNull(resource);
+        resources.add(resource);
+        if (cancelled) {
+            closeResources();
+        }
+    }
+
+    /**
+     * Unregisters a resource that has already been closed by its owner.
+     * @param resource the resource registered through {@link #onCancel(Closeable)}
+     */
+    public void release(final Closeable resource) {
+        resources.remove(resource);
+    }
+
+    /**
+     * Adds to a counter describing how the query was evaluated.
+     * @param name the name of the metric
+     * @param delta the amount to add
+     */
+    public void addMetric(final String name, final long delta) {
+        metric(name).addAndGet(delta);
+    }
+
+    /**
+     * Sets a gauge describing how the query was evaluated.
+     * @param name the name of the metric
+     * @param value the current value
+     */
+    public void setMetric(final String name, final long value) {
+        metric(name).set(value);
+    }
+
+    /**
+     * @return a snapshot of the metrics of the query, sorted by name
+     */
+    public Map<String, Long> getMetrics() {
+        final Map<String, Long> snapshot = new TreeMap<>();
+        for (final Map.Entry<String, AtomicLong> entry : metrics.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().get());
+        }
+        return snapshot;
+    }
+
+    private AtomicLong metric(final String name) {
+        return metrics.computeIfAbsent(name, key -> new AtomicLong());
+    }
+
+    /**
+     * Unregisters the query and closes any resources that are still open.
+     */
+    public void finish() {
+        RUNNING.remove(queryId, this);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Query {} finished after {}ms with metrics {}", queryId, System.currentTimeMillis() - startTime, getMetrics());
+        }
+        if (deadlineTask != null) {
+            deadlineTask.cancel(false);
+        }
+        closeResources();
+    }
+
+    private void closeResources() {
+        for (final Closeable resource : resources) {
+            if (resources.remove(resource)) {
+                try {
+                    resource.close();
+                } catch (final IOException | RuntimeException e) {
+                    logger.warn("Unable to close a resource of query " + queryId, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QueryContext{queryId=" + queryId + ", runningFor=" + (System.currentTimeMillis() - startTime) + "ms, cancelled=" + cancelled
+                + ", metrics=" + getMetrics() + "}";
+    }
+}
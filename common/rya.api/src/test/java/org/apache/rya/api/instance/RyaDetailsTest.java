@@ -31,6 +31,7 @@ import org.apache.rya.api.instance.RyaDetails.PCJIndexDetails.FluoDetails;
 import org.apache.rya.api.instance.RyaDetails.PCJIndexDetails.PCJDetails;
 import org.apache.rya.api.instance.RyaDetails.PCJIndexDetails.PCJDetails.PCJUpdateStrategy;
 import org.apache.rya.api.instance.RyaDetails.ProspectorDetails;
+import org.apache.rya.api.instance.RyaDetails.ReasoningDetails;
 import org.apache.rya.api.instance.RyaDetails.TemporalIndexDetails;
 import org.junit.Test;
 
@@ -135,4 +136,14 @@ public class RyaDetailsTest {
         // Show it builds the object that was passed into it.
         assertEquals(originalDetails, builder.build());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void reasoningDetailsDefaultToNeverRun() {
+        final RyaDetails details = RyaDetails.builder()
+            .setRyaInstanceName("test_instance")
+            .build();
+
+        // Instances that have never been reasoned over have no watermark.
+        assertEquals(new ReasoningDetails(Optional.<Date>absent()), details.getReasoningDetails());
+    }
+}
@@ -0,0 +1,78 @@
+package org.apache.rya.api.persist.query;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openrdf.query.QueryInterruptedException;
+
+public class QueryContextTest {
+
+    @Test
+    public void cancelClosesResources() throws Exception {
+        final QueryContext context = QueryContext.start("cancelClosesResources", null);
+        try {
+            final AtomicInteger closed = new AtomicInteger();
+            context.onCancel(() -> closed.incrementAndGet());
+            assertSame(context, QueryContext.get("cancelClosesResources"));
+            assertFalse(context.isCancelled());
+
+            assertTrue(QueryContext.cancel("cancelClosesResources"));
+            assertTrue(context.isCancelled());
+            assertEquals(1, closed.get());
+
+            //resources registered after cancellation are closed immediately
+            context.onCancel(() -> closed.incrementAndGet());
+            assertEquals(2, closed.get());
+        } finally {
+            context.finish();
+        }
+        assertNull(QueryContext.get("cancelClosesResources"));
+        assertFalse(QueryContext.cancel("cancelClosesResources"));
+    }
+
+    @Test(expected = QueryInterruptedException.class)
+    public void deadlineCancelsQuery() throws Exception {
+        final QueryContext context = QueryContext.start(null, 10L);
+        try {
+            Thread.sleep(50);
+            context.checkCancelled();
+        } finally {
+            context.finish();
+        }
+    }
+
+    @Test
+    public void finishReleasesResources() throws Exception {
+        final AtomicInteger closed = new AtomicInteger();
+        final QueryContext context = QueryContext.start(null, null);
+        context.onCancel(() -> closed.incrementAndGet());
+        context.finish();
+        assertEquals(1, closed.get());
+        assertFalse(context.isCancelled());
+    }
+}
@@ -24,6 +24,7 @@ package org.apache.rya.accumulo;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.rya.api.RdfCloudTripleStoreConstants.DELIM;
 import static org.apache.rya.api.RdfCloudTripleStoreConstants.EMPTY_TEXT;
+import static org.apache.rya.api.RdfCloudTripleStoreConstants.OBJ_CF_TXT;
 import static org.apache.rya.api.RdfCloudTripleStoreConstants.PRED_CF_TXT;
 import static org.apache.rya.api.RdfCloudTripleStoreConstants.SUBJECT_CF_TXT;
 import static org.apache.rya.api.RdfCloudTripleStoreConstants.SUBJECTPRED_CF_TXT;
@@ -132,8 +133,8 @@ public class AccumuloRdfEvalStatsDAO implements RdfEvalStatsDAO<AccumuloRdfConfi
             } else if (CARDINALITY_OF.PREDICATE.equals(card)) {
                 cfTxt = PRED_CF_TXT;
             } else if (CARDINALITY_OF.OBJECT.equals(card)) {
-//                cfTxt = OBJ_CF_TXT;     //TODO: How do we do object cardinality
-                return Double.MAX_VALUE;
+                // Only counted if the statistics indexer maintains the table
+                cfTxt = OBJ_CF_TXT;
             } else if (CARDINALITY_OF.SUBJECTOBJECT.equals(card)) {
                 cfTxt = SUBJECTOBJECT_CF_TXT;
             } else if (CARDINALITY_OF.SUBJECTPREDICATE.equals(card)) {
@@ -154,12 +155,20 @@ public class AccumuloRdfEvalStatsDAO implements RdfEvalStatsDAO<AccumuloRdfConfi
             scanner.setRange(new Range(new Text(compositeIndex.getBytes())));
             Iterator<Map.Entry<Key, org.apache.accumulo.core.data.Value>> iter = scanner.iterator();
             if (iter.hasNext()) {
-                return Double.parseDouble(new String(iter.next().getValue().get()));
+                // Counts may be split by visibility; add up the visible ones
+                double count = 0;
+                while (iter.hasNext()) {
+                    count += Double.parseDouble(new String(iter.next().getValue().get()));
+                }
+                return count;
             }
         } catch (Exception e) {
             throw new RdfDAOException(e);
         }
 
+        if (CARDINALITY_OF.OBJECT.equals(card)) {
+            return Double.MAX_VALUE;
+        }
         //default
         return -1;
 	}
@@ -200,12 +200,17 @@ public class AccumuloRyaDAO implements RyaDAO<AccumuloRdfConfiguration>, RyaName
                 final RyaStatement stmt = statements.next();
                 //query first
                 final CloseableIteration<RyaStatement, RyaDAOException> query = this.queryEngine.query(stmt, conf);
-                while (query.hasNext()) {
-                    deleteSingleRyaStatement(query.next());
-                }
-
-                for (final AccumuloIndexer index : secondaryIndexers) {
-                    index.deleteStatement(stmt);
+                try {
+                    while (query.hasNext()) {
+                        // stmt may be a pattern, so the indexers get the statements it matched
+                        final RyaStatement match = query.next();
+                        deleteSingleRyaStatement(match);
+                        for (final AccumuloIndexer index : secondaryIndexers) {
+                            index.deleteStatement(match);
+                        }
+                    }
+                } finally {
+                    query.close();
                 }
             }
             if (flushEachUpdate) { mt_bw.flush(); }
@@ -239,10 +244,13 @@ public class AccumuloRyaDAO implements RyaDAO<AccumuloRdfConfiguration>, RyaName
             bd_po.delete();
             bd_osp.delete();
 
-            //TODO indexers do not support delete-UnsupportedOperation Exception will be thrown
-//            for (AccumuloIndex index : secondaryIndexers) {
-//                index.dropGraph(graphs);
-//            }
+            for (final AccumuloIndexer index : secondaryIndexers) {
+                try {
+                    index.dropGraph(graphs);
+                } catch (final UnsupportedOperationException e) {
+                    logger.warn("Indexer " + index.getClass().getSimpleName() + " does not support dropping graphs", e);
+                }
+            }
 
         } catch (final Exception e) {
             throw new RyaDAOException(e);
@@ -161,17 +161,21 @@ public class AccumuloRyaInstanceDetailsRepository implements RyaDetailsRepositor
                     instanceName + "' because it has not been initialized yet.");
         }
 
-        // Read it from the table.
+        // Read it from the table and deserialize it.
+        return serializer.deserialize( readStoredDetails() );
+    }
+
+    /**
+     * @return The serialized details exactly as they are stored in the table.
+     */
+    private byte[] readStoredDetails() throws RyaDetailsRepositoryException {
         Scanner scanner = null;
         try {
             // Fetch the value from the table.
             scanner = connector.createScanner(detailsTableName, new Authorizations());
             scanner.fetchColumn(COL_FAMILY, COL_QUALIFIER);
             final Entry<Key, Value> entry = scanner.iterator().next();
-
-            // Deserialize it.
-            final byte[] bytes = entry.getValue().get();
-            return serializer.deserialize( bytes );
+            return entry.getValue().get();
 
         } catch (final TableNotFoundException e) {
             throw new RyaDetailsRepositoryException("Could not get the details from the table.", e);
@@ -205,7 +209,14 @@ public class AccumuloRyaInstanceDetailsRepository implements RyaDetailsRepositor
         ConditionalWriter writer = null;
         try {
             // Setup the condition that ensures the details have not changed since the edits were made.
-            final byte[] oldDetailsBytes = serializer.serialize(oldDetails);
+            // The condition has to hold the stored bytes rather than oldDetails serialized again:
+            // details stored by an older version deserialize to a different form, so they would
+            // never match and the update would be rejected forever.
+            final byte[] oldDetailsBytes = readStoredDetails();
+            if(!oldDetails.equals( serializer.deserialize(oldDetailsBytes) )) {
+                throw new ConcurrentUpdateException("Could not update the details for the Rya instance named '" +
+                        instanceName + "' because the old value is out of date.");
+            }
             final Condition condition = new Condition(COL_FAMILY, COL_QUALIFIER);
             condition.setValue( oldDetailsBytes );
 
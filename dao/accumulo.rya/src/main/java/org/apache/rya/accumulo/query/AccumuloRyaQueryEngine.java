@@ -22,12 +22,17 @@ package org.apache.rya.accumulo.query;
 import static org.apache.rya.api.RdfCloudTripleStoreUtils.layoutToTable;
 import info.aduna.iteration.CloseableIteration;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.apache.rya.accumulo.AccumuloRdfConfiguration;
 import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
@@ -41,6 +46,7 @@ import org.apache.rya.api.domain.RyaURI;
 import org.apache.rya.api.layout.TableLayoutStrategy;
 import org.apache.rya.api.persist.RyaDAOException;
 import org.apache.rya.api.persist.query.BatchRyaQuery;
+import org.apache.rya.api.persist.query.QueryContext;
 import org.apache.rya.api.persist.query.RyaQuery;
 import org.apache.rya.api.persist.query.RyaQueryEngine;
 import org.apache.rya.api.query.strategy.ByteRange;
@@ -63,6 +69,7 @@ import org.apache.accumulo.core.iterators.user.RegExFilter;
 import org.apache.accumulo.core.iterators.user.TimestampFilter;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.bloom.BloomFilter;
 import org.calrissian.mango.collect.CloseableIterable;
 import org.calrissian.mango.collect.CloseableIterables;
 import org.calrissian.mango.collect.FluentCloseableIterable;
@@ -72,6 +79,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Iterators;
+import com.google.common.primitives.Bytes;
 
 /**
  * Date: 7/17/12 Time: 9:28 AM
@@ -125,9 +133,17 @@ public class AccumuloRyaQueryEngine implements RyaQueryEngine<AccumuloRdfConfigu
         Long maxResults = conf.getLimit();
         Integer maxRanges = conf.getMaxRangesForScanner();
         Integer numThreads = conf.getNumThreads();
+        QueryContext queryContext = QueryContext.get(conf);
 
         // TODO: cannot span multiple tables here
         try {
+            if (conf.isSemiJoinScan() && !conf.isPrefixRowsWithHash()) {
+                final List<ScannerBase> scanners = new ArrayList<ScannerBase>();
+                RyaStatementBindingSetKeyValueIterator iterator = semiJoin(stmts, conf, scanners);
+                if (iterator != null) {
+                    return track(iterator, scanners, maxResults, queryContext);
+                }
+            }
             Collection<Range> ranges = new HashSet<Range>();
             RangeBindingSetEntries rangeMap = new RangeBindingSetEntries();
             TABLE_LAYOUT layout = null;
@@ -206,10 +222,12 @@ public class AccumuloRyaQueryEngine implements RyaQueryEngine<AccumuloRdfConfigu
             String table = layoutToTable(layout, conf);
             boolean useBatchScanner = ranges.size() > maxRanges;
             RyaStatementBindingSetKeyValueIterator iterator = null;
+            final List<ScannerBase> scanners = new ArrayList<ScannerBase>();
             if (useBatchScanner) {
                 ScannerBase scanner = connector.createBatchScanner(table, authorizations, numThreads);
                 ((BatchScanner) scanner).setRanges(ranges);
                 fillScanner(scanner, columnFamily, null, ttl, null, tripleRowRegex, conf);
+                scanners.add(scanner);
                 iterator = new RyaStatementBindingSetKeyValueIterator(layout, ryaContext, scanner, rangeMap);
             } else {
                 Scanner scannerBase = null;
@@ -219,21 +237,115 @@ public class AccumuloRyaQueryEngine implements RyaQueryEngine<AccumuloRdfConfigu
                     scannerBase = connector.createScanner(table, authorizations);
                     scannerBase.setRange(range);
                     fillScanner(scannerBase, columnFamily, null, ttl, null, tripleRowRegex, conf);
+                    scanners.add(scannerBase);
                     iters[i] = scannerBase.iterator();
                     i++;
                 }
                 iterator = new RyaStatementBindingSetKeyValueIterator(layout, Iterators.concat(iters), rangeMap, ryaContext);
             }
-            if (maxResults != null) {
-                iterator.setMaxResults(maxResults);
-            }
-            return iterator;
+            return track(iterator, scanners, maxResults, queryContext);
         } catch (Exception e) {
             throw new RyaDAOException(e);
         }
 
     }
 
+    private RyaStatementBindingSetKeyValueIterator track(RyaStatementBindingSetKeyValueIterator iterator,
+            final List<ScannerBase> scanners, Long maxResults, QueryContext queryContext) {
+        if (maxResults != null) {
+            iterator.setMaxResults(maxResults);
+        }
+        if (queryContext != null) {
+            // release the scanners and their threads as soon as the query is cancelled
+            Closeable cancelHandler = new Closeable() {
+                @Override
+                public void close() {
+                    for (ScannerBase scanner : scanners) {
+                        scanner.close();
+                    }
+                }
+            };
+            queryContext.onCancel(cancelHandler);
+            iterator.setQueryContext(queryContext, cancelHandler);
+        }
+        return iterator;
+    }
+
+    /**
+     * Evaluates statements that differ only in their subject, or only in their object, with a single
+     * scan over the triples they have in common. A Bloom filter of the differing values is sent to the
+     * tablet servers so only rows that may join come back, instead of scanning a range per statement.
+     * @return null if the statements do not differ in exactly one of their subject or object
+     */
+    private RyaStatementBindingSetKeyValueIterator semiJoin(Collection<Map.Entry<RyaStatement, BindingSet>> stmts,
+            AccumuloRdfConfiguration conf, List<ScannerBase> scanners) throws Exception {
+        if (stmts.size() < 2) {
+            return null;
+        }
+        RyaStatement first = stmts.iterator().next().getKey();
+        RyaURI predicate = first.getPredicate();
+        RyaURI context = first.getContext();
+        if (predicate == null || predicate instanceof RyaRange) {
+            return null;
+        }
+        boolean sameSubject = true;
+        boolean sameObject = true;
+        for (Map.Entry<RyaStatement, BindingSet> stmtbs : stmts) {
+            RyaStatement stmt = stmtbs.getKey();
+            if (!predicate.equals(stmt.getPredicate()) || !Objects.equals(context, stmt.getContext())) {
+                return null;
+            }
+            sameSubject &= Objects.equals(first.getSubject(), stmt.getSubject());
+            sameObject &= Objects.equals(first.getObject(), stmt.getObject());
+        }
+        if (sameSubject == sameObject) {
+            return null;
+        }
+        boolean joinOnSubject = sameObject;
+        for (Map.Entry<RyaStatement, BindingSet> stmtbs : stmts) {
+            RyaType joinValue = joinOnSubject ? stmtbs.getKey().getSubject() : stmtbs.getKey().getObject();
+            if (joinValue == null || joinValue instanceof RyaRange) {
+                return null;
+            }
+        }
+
+        RyaStatement wide = joinOnSubject ? new RyaStatement(null, predicate, first.getObject(), context)
+                : new RyaStatement(first.getSubject(), predicate, null, context);
+        TriplePatternStrategy strategy = ryaContext.retrieveStrategy(wide);
+        if (strategy == null) {
+            return null;
+        }
+        Map.Entry<TABLE_LAYOUT, ByteRange> entry = strategy.defineRange(wide.getSubject(), predicate, wide.getObject(), context, conf);
+        TABLE_LAYOUT layout = entry.getKey();
+        int segment = BloomJoinFilter.getSegment(layout, joinOnSubject);
+
+        JoinKeyBindingSetEntries joinKeys = new JoinKeyBindingSetEntries(segment, !joinOnSubject);
+        for (Map.Entry<RyaStatement, BindingSet> stmtbs : stmts) {
+            RyaStatement stmt = stmtbs.getKey();
+            if (joinOnSubject) {
+                joinKeys.put(stmt.getSubject().getData().getBytes(), stmtbs.getValue());
+            } else {
+                byte[][] objBytes = RyaContext.getInstance().serializeType(stmt.getObject());
+                joinKeys.put(Bytes.concat(objBytes[0], objBytes[1]), stmtbs.getValue());
+            }
+        }
+        BloomFilter bloomFilter = BloomJoinFilter.createBloomFilter(joinKeys.size());
+        for (ByteBuffer joinKey : joinKeys.getJoinKeys()) {
+            bloomFilter.add(new org.apache.hadoop.util.bloom.Key(joinKey.array()));
+        }
+
+        ByteRange byteRange = entry.getValue();
+        Scanner scanner = connector.createScanner(layoutToTable(layout, conf), conf.getAuthorizations());
+        scanner.setRange(new Range(new Text(byteRange.getStart()), new Text(byteRange.getEnd())));
+        IteratorSetting setting = new IteratorSetting(12, "bloomjoin", BloomJoinFilter.class.getName());
+        BloomJoinFilter.setOptions(setting, bloomFilter, segment, !joinOnSubject);
+        scanner.addScanIterator(setting);
+        TripleRowRegex tripleRowRegex = strategy.buildRegex(conf.getRegexSubject(), conf.getRegexPredicate(), conf.getRegexObject(), null, null);
+        fillScanner(scanner, context, null, conf.getTtl(), null, tripleRowRegex, conf);
+        scanners.add(scanner);
+        return new RyaStatementBindingSetKeyValueIterator(layout, ryaContext, scanner, joinKeys);
+    }
+
     @Override
     public CloseableIteration<RyaStatement, RyaDAOException> batchQuery(Collection<RyaStatement> stmts, AccumuloRdfConfiguration conf)
             throws RyaDAOException {
@@ -312,7 +424,8 @@ public class AccumuloRyaQueryEngine implements RyaQueryEngine<AccumuloRdfConfigu
             }
             fillScanner(scanner, context, qualifier, ttl, currentTime, tripleRowRegex, ryaQuery.getConf());
 
-            FluentCloseableIterable<RyaStatement> results = FluentCloseableIterable.from(new ScannerBaseCloseableIterable(scanner))
+            FluentCloseableIterable<RyaStatement> results = FluentCloseableIterable.from(
+                    new ScannerBaseCloseableIterable(scanner, QueryContext.get(ryaQuery.getConf())))
                     .transform(keyValueToRyaStatementFunctionMap.get(layout));
             if (maxResults != null) {
                 results = results.limit(maxResults.intValue());
@@ -343,6 +456,7 @@ public class AccumuloRyaQueryEngine implements RyaQueryEngine<AccumuloRdfConfigu
         String regexObject = ryaQuery.getRegexObject();
         TableLayoutStrategy tableLayoutStrategy = configuration.getTableLayoutStrategy();
         int maxRanges = ryaQuery.getMaxRanges();
+        final QueryContext queryContext = QueryContext.get(ryaQuery.getConf());
 
         // TODO: cannot span multiple tables here
         try {
@@ -380,7 +494,7 @@ public class AccumuloRyaQueryEngine implements RyaQueryEngine<AccumuloRdfConfigu
                 BatchScanner scanner = connector.createBatchScanner(table, authorizations, numQueryThreads);
                 scanner.setRanges(ranges);
                 fillScanner(scanner, context, null, ttl, null, tripleRowRegex, ryaQuery.getConf());
-                results = FluentCloseableIterable.from(new ScannerBaseCloseableIterable(scanner))
+                results = FluentCloseableIterable.from(new ScannerBaseCloseableIterable(scanner, queryContext))
                         .transform(keyValueToRyaStatementFunctionMap.get(layout));
             } else {
                 final RyaURI fcontext = context;
@@ -393,7 +507,7 @@ public class AccumuloRyaQueryEngine implements RyaQueryEngine<AccumuloRdfConfigu
                                     Scanner scanner = connector.createScanner(table, authorizations);
                                     scanner.setRange(range);
                                     fillScanner(scanner, fcontext, null, ttl, null, tripleRowRegex, fconf);
-                                    return scanner;
+                                    return new ScannerBaseCloseableIterable(scanner, queryContext);
                                 } catch (Exception e) {
                                     throw new RuntimeException(e);
                                 }
@@ -0,0 +1,200 @@
+package org.apache.rya.accumulo.query;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.apache.rya.api.RdfCloudTripleStoreConstants.DELIM_BYTE;
+import static org.apache.rya.api.RdfCloudTripleStoreConstants.TYPE_DELIM_BYTE;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.Filter;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.OptionDescriber;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.hash.Hash;
+import org.apache.rya.api.RdfCloudTripleStoreConstants.TABLE_LAYOUT;
+
+/**
+ * Only passes triple rows whose join key may be in a Bloom filter of the join keys of the left
+ * side of a join, so a single wide scan returns the rows a range per binding set would have.
+ * <p>
+ * The join key is one of the three parts of a whole row triple, optionally followed by the type of
+ * the object, in the serialized form used by the row, see {@link #getJoinKey(byte[], int, int, int, boolean)}.
+ */
+public class BloomJoinFilter extends Filter {
+    public static final String BLOOM_FILTER_PROP = "bloomFilter";
+    public static final String SEGMENT_PROP = "segment";
+    public static final String WITH_TYPE_PROP = "withType";
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private BloomFilter bloomFilter;
+    private int segment;
+    private boolean withType;
+
+    @Override
+    public boolean accept(Key k, Value v) {
+        ByteSequence row = k.getRowData();
+        byte[] joinKey = getJoinKey(row.getBackingArray(), row.offset(), row.length(), segment, withType);
+        return joinKey != null && bloomFilter.membershipTest(new org.apache.hadoop.util.bloom.Key(joinKey));
+    }
+
+    @Override
+    public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
+        super.init(source, options, env);
+        if (options == null || options.get(BLOOM_FILTER_PROP) == null || options.get(SEGMENT_PROP) == null) {
+            throw new IllegalArgumentException("bloomFilter and segment must be set for BloomJoinFilter");
+        }
+        bloomFilter = new BloomFilter();
+        bloomFilter.readFields(new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(options.get(BLOOM_FILTER_PROP)))));
+        segment = Integer.parseInt(options.get(SEGMENT_PROP));
+        withType = Boolean.parseBoolean(options.get(WITH_TYPE_PROP));
+    }
+
+    @Override
+    public SortedKeyValueIterator<Key, Value> deepCopy(IteratorEnvironment env) {
+        BloomJoinFilter copy = (BloomJoinFilter) super.deepCopy(env);
+        copy.bloomFilter = bloomFilter;
+        copy.segment = segment;
+        copy.withType = withType;
+        return copy;
+    }
+
+    @Override
+    public OptionDescriber.IteratorOptions describeOptions() {
+        Map<String, String> options = new TreeMap<String, String>();
+        options.put(BLOOM_FILTER_PROP, "base64 encoded Hadoop BloomFilter of the join keys");
+        options.put(SEGMENT_PROP, "the part of the row holding the join key: 0, 1 or 2");
+        options.put(WITH_TYPE_PROP, "true if the join key is an object and includes its type");
+        return new OptionDescriber.IteratorOptions("bloomJoinFilter", "BloomJoinFilter removes triple rows whose join key is not in a Bloom filter",
+                options, null);
+    }
+
+    @Override
+    public boolean validateOptions(Map<String, String> options) {
+        Integer.parseInt(options.get(SEGMENT_PROP));
+        return options.get(BLOOM_FILTER_PROP) != null;
+    }
+
+    /**
+     * @param expectedKeys the number of join keys the filter will hold
+     * @return an empty Bloom filter sized for a 1% false positive rate
+     */
+    public static BloomFilter createBloomFilter(int expectedKeys) {
+        int keys = Math.max(expectedKeys, 1);
+        int vectorSize = (int) Math.ceil(-keys * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+        int nbHash = Math.max(1, (int) Math.round((double) vectorSize / keys * Math.log(2)));
+        return new BloomFilter(vectorSize, nbHash, Hash.MURMUR_HASH);
+    }
+
+    public static void setOptions(IteratorSetting setting, BloomFilter bloomFilter, int segment, boolean withType) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        bloomFilter.write(out);
+        out.flush();
+        setting.addOption(BLOOM_FILTER_PROP, Base64.getEncoder().encodeToString(bytes.toByteArray()));
+        setting.addOption(SEGMENT_PROP, Integer.toString(segment));
+        setting.addOption(WITH_TYPE_PROP, Boolean.toString(withType));
+    }
+
+    /**
+     * @param layout the table the rows are read from
+     * @param subject true if the join key is the subject, false if it is the object
+     * @return the part of the rows of the table that holds the join key
+     */
+    public static int getSegment(TABLE_LAYOUT layout, boolean subject) {
+        switch (layout) {
+            case SPO:
+                return subject ? 0 : 2;
+            case PO:
+                return subject ? 2 : 1;
+            case OSP:
+                return subject ? 1 : 0;
+            default:
+                throw new IllegalArgumentException("Unsupported table layout " + layout);
+        }
+    }
+
+    /**
+     * Extracts the join key of a whole row triple, splitting the row the same way the whole row
+     * triple resolver deserializes it.
+     * @return the join key, or null if the row is not a whole row triple
+     */
+    public static byte[] getJoinKey(byte[] row, int offset, int length, int segment, boolean withType) {
+        int end = offset + length;
+        int firstIndex = -1;
+        int secondIndex = -1;
+        int typeIndex = -1;
+        for (int i = offset; i < end; i++) {
+            if (row[i] == DELIM_BYTE) {
+                if (firstIndex < 0) {
+                    firstIndex = i;
+                }
+                secondIndex = i;
+            } else if (row[i] == TYPE_DELIM_BYTE && typeIndex < 0) {
+                typeIndex = i;
+            }
+        }
+        if (firstIndex < 0 || typeIndex < 0) {
+            return null;
+        }
+        int from;
+        int to;
+        switch (segment) {
+            case 0:
+                from = offset;
+                to = firstIndex;
+                break;
+            case 1:
+                from = firstIndex + 1;
+                to = secondIndex;
+                break;
+            case 2:
+                from = secondIndex + 1;
+                to = typeIndex;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported segment " + segment);
+        }
+        if (to < from) {
+            return null;
+        }
+        if (!withType) {
+            return Arrays.copyOfRange(row, from, to);
+        }
+        byte[] joinKey = new byte[to - from + end - typeIndex];
+        System.arraycopy(row, from, joinKey, 0, to - from);
+        System.arraycopy(row, typeIndex, joinKey, to - from, end - typeIndex);
+        return joinKey;
+    }
+}
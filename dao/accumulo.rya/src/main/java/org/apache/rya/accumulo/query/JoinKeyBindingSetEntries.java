@@ -0,0 +1,72 @@
+package org.apache.rya.accumulo.query;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.openrdf.query.BindingSet;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+
+/**
+ * Matches the rows of a Bloom filtered semi-join scan to the binding sets they join with by
+ * looking up the join key of the row, which also drops the false positives of the filter.
+ */
+public class JoinKeyBindingSetEntries extends RangeBindingSetEntries {
+    private final Multimap<ByteBuffer, BindingSet> joinKeys = HashMultimap.create();
+    private final int segment;
+    private final boolean withType;
+
+    /**
+     * @param segment the part of the rows that holds the join key, see {@link BloomJoinFilter#getSegment}
+     * @param withType true if the join key is an object and includes its type
+     */
+    public JoinKeyBindingSetEntries(int segment, boolean withType) {
+        this.segment = segment;
+        this.withType = withType;
+    }
+
+    public void put(byte[] joinKey, BindingSet bs) {
+        joinKeys.put(ByteBuffer.wrap(joinKey), bs);
+    }
+
+    public int size() {
+        return joinKeys.keySet().size();
+    }
+
+    public Collection<ByteBuffer> getJoinKeys() {
+        return joinKeys.keySet();
+    }
+
+    @Override
+    public Collection<BindingSet> containsKey(Key key) {
+        ByteSequence row = key.getRowData();
+        byte[] joinKey = BloomJoinFilter.getJoinKey(row.getBackingArray(), row.offset(), row.length(), segment, withType);
+        if (joinKey == null) {
+            return Collections.emptySet();
+        }
+        return joinKeys.get(ByteBuffer.wrap(joinKey));
+    }
+}
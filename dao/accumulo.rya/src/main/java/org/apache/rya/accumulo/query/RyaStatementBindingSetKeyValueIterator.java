@@ -23,7 +23,7 @@ package org.apache.rya.accumulo.query;
 
 import info.aduna.iteration.CloseableIteration;
 
-import java.util.Collection;
+import java.io.Closeable;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -32,6 +32,7 @@ import org.apache.rya.api.RdfCloudTripleStoreConstants.TABLE_LAYOUT;
 import org.apache.rya.api.RdfCloudTripleStoreUtils;
 import org.apache.rya.api.domain.RyaStatement;
 import org.apache.rya.api.persist.RyaDAOException;
+import org.apache.rya.api.persist.query.QueryContext;
 import org.apache.rya.api.resolver.RyaContext;
 import org.apache.rya.api.resolver.RyaTripleContext;
 import org.apache.rya.api.resolver.triple.TripleRow;
@@ -43,6 +44,7 @@ import org.apache.accumulo.core.client.ScannerBase;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Value;
 import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryInterruptedException;
 
 /**
  * Date: 7/17/12
@@ -58,6 +60,8 @@ public class RyaStatementBindingSetKeyValueIterator implements CloseableIteratio
     private Iterator<BindingSet> bsIter;
     private RyaStatement statement;
 	private RyaTripleContext ryaContext;
+    private QueryContext queryContext;
+    private Closeable cancelHandler;
 
     public RyaStatementBindingSetKeyValueIterator(TABLE_LAYOUT tableLayout, RyaTripleContext context, ScannerBase scannerBase, RangeBindingSetEntries rangeMap) {
         this(tableLayout, ((scannerBase instanceof BatchScanner) ? ((BatchScanner) scannerBase).iterator() : ((Scanner) scannerBase).iterator()), rangeMap, context);
@@ -75,6 +79,9 @@ public class RyaStatementBindingSetKeyValueIterator implements CloseableIteratio
     @Override
     public void close() throws RyaDAOException {
         dataIterator = null;
+        if (queryContext != null && cancelHandler != null) {
+            queryContext.release(cancelHandler);
+        }
         if (scanner != null && isBatchScanner) {
             ((BatchScanner) scanner).close();
         }
@@ -89,56 +96,50 @@ public class RyaStatementBindingSetKeyValueIterator implements CloseableIteratio
         if (isClosed()) {
             return false;
         }
-        if (maxResults != 0) {
-            if (bsIter != null && bsIter.hasNext()) {
-                return true;
-            }
-            if (dataIterator.hasNext()) {
-                return true;
-            } else {
-                maxResults = 0l;
-                return false;
-            }
-        }
-        return false;
-    }
-
-    @Override
-    public Map.Entry<RyaStatement, BindingSet> next() throws RyaDAOException {
-        if (!hasNext() || isClosed()) {
-            throw new NoSuchElementException();
+        checkCancelled();
+        if (maxResults == 0) {
+            return false;
         }
-
         try {
-            while (true) {
-                if (bsIter != null && bsIter.hasNext()) {
-                    maxResults--;
-                    return new RdfCloudTripleStoreUtils.CustomEntry<RyaStatement, BindingSet>(statement, bsIter.next());
+            // rows that match no binding set, such as false positives of a semi-join filter, are skipped
+            while (bsIter == null || !bsIter.hasNext()) {
+                if (!dataIterator.hasNext()) {
+                    //scanners closed by a cancellation look exhausted
+                    checkCancelled();
+                    maxResults = 0l;
+                    return false;
                 }
-
-                if (dataIterator.hasNext()) {
-                    Map.Entry<Key, Value> next = dataIterator.next();
-                    Key key = next.getKey();
-                    statement = ryaContext.deserializeTriple(tableLayout,
-                            new TripleRow(key.getRowData().toArray(), key.getColumnFamilyData().toArray(), key.getColumnQualifierData().toArray(),
-                                    key.getTimestamp(), key.getColumnVisibilityData().toArray(), next.getValue().get()));
-                    if (next.getValue() != null) {
-                        statement.setValue(next.getValue().get());
-                    }
-                    Collection<BindingSet> bindingSets = rangeMap.containsKey(key);
-                    if (!bindingSets.isEmpty()) {
-                        bsIter = bindingSets.iterator();
-                    }
-                } else {
-                    break;
+                Map.Entry<Key, Value> next = dataIterator.next();
+                Key key = next.getKey();
+                statement = ryaContext.deserializeTriple(tableLayout,
+                        new TripleRow(key.getRowData().toArray(), key.getColumnFamilyData().toArray(), key.getColumnQualifierData().toArray(),
+                                key.getTimestamp(), key.getColumnVisibilityData().toArray(), next.getValue().get()));
+                if (next.getValue() != null) {
+                    statement.setValue(next.getValue().get());
                 }
+                bsIter = rangeMap.containsKey(key).iterator();
             }
-            return null;
+            return true;
         } catch (TripleRowResolverException e) {
             throw new RyaDAOException(e);
         }
     }
 
+    private void checkCancelled() throws RyaDAOException {
+        if (queryContext != null && queryContext.isCancelled()) {
+            throw new RyaDAOException(new QueryInterruptedException("Query " + queryContext.getQueryId() + " was cancelled or timed out"));
+        }
+    }
+
+    @Override
+    public Map.Entry<RyaStatement, BindingSet> next() throws RyaDAOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        maxResults--;
+        return new RdfCloudTripleStoreUtils.CustomEntry<RyaStatement, BindingSet>(statement, bsIter.next());
+    }
+
     @Override
     public void remove() throws RyaDAOException {
         next();
@@ -151,4 +152,13 @@ public class RyaStatementBindingSetKeyValueIterator implements CloseableIteratio
     public void setMaxResults(Long maxResults) {
         this.maxResults = maxResults;
     }
+
+    /**
+     * @param queryContext the context of the query this scan belongs to
+     * @param cancelHandler closes the scanners of this iterator, registered with the query context
+     */
+    public void setQueryContext(QueryContext queryContext, Closeable cancelHandler) {
+        this.queryContext = queryContext;
+        this.cancelHandler = cancelHandler;
+    }
 }
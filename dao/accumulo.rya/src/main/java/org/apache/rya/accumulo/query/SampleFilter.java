@@ -0,0 +1,109 @@
+package org.apache.rya.accumulo.query;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.Filter;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.OptionDescriber;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.hadoop.util.hash.MurmurHash;
+
+/**
+ * Passes a random fraction of the rows of a scan, so a sample of a range can be read without
+ * returning the whole range to the client.
+ * <p>
+ * A row is kept when the hash of its bytes falls below the fraction, so the same rows are sampled
+ * however the scan is split across tablets or restarted, and a different seed draws an
+ * independent sample.
+ */
+public class SampleFilter extends Filter {
+    public static final String FRACTION_PROP = "fraction";
+    public static final String SEED_PROP = "seed";
+
+    private static final long HASH_RANGE = 1L << 32;
+
+    private long threshold;
+    private int seed;
+
+    @Override
+    public boolean accept(Key k, Value v) {
+        ByteSequence row = k.getRowData();
+        int hash = MurmurHash.getInstance().hash(row.toArray(), row.length(), seed);
+        return (hash & 0xffffffffL) < threshold;
+    }
+
+    @Override
+    public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
+        super.init(source, options, env);
+        if (options == null || options.get(FRACTION_PROP) == null) {
+            throw new IllegalArgumentException("fraction must be set for SampleFilter");
+        }
+        threshold = getThreshold(Double.parseDouble(options.get(FRACTION_PROP)));
+        String seed_s = options.get(SEED_PROP);
+        seed = seed_s == null ? 0 : Integer.parseInt(seed_s);
+    }
+
+    @Override
+    public SortedKeyValueIterator<Key, Value> deepCopy(IteratorEnvironment env) {
+        SampleFilter copy = (SampleFilter) super.deepCopy(env);
+        copy.threshold = threshold;
+        copy.seed = seed;
+        return copy;
+    }
+
+    @Override
+    public OptionDescriber.IteratorOptions describeOptions() {
+        Map<String, String> options = new TreeMap<String, String>();
+        options.put(FRACTION_PROP, "the fraction of rows to keep, between 0 and 1");
+        options.put(SEED_PROP, "seeds the hash that picks the rows, defaults to 0");
+        return new OptionDescriber.IteratorOptions("sampleFilter", "SampleFilter keeps a random fraction of the rows of a scan",
+                options, null);
+    }
+
+    @Override
+    public boolean validateOptions(Map<String, String> options) {
+        getThreshold(Double.parseDouble(options.get(FRACTION_PROP)));
+        if (options.get(SEED_PROP) != null) {
+            Integer.parseInt(options.get(SEED_PROP));
+        }
+        return true;
+    }
+
+    public static void setOptions(IteratorSetting setting, double fraction, int seed) {
+        getThreshold(fraction);
+        setting.addOption(FRACTION_PROP, Double.toString(fraction));
+        setting.addOption(SEED_PROP, Integer.toString(seed));
+    }
+
+    private static long getThreshold(double fraction) {
+        if (!(fraction >= 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("fraction must be between 0 and 1, was " + fraction);
+        }
+        return (long) Math.ceil(fraction * HASH_RANGE);
+    }
+}
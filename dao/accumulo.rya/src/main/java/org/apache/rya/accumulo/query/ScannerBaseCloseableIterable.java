@@ -25,8 +25,11 @@ import com.google.common.base.Preconditions;
 import org.apache.accumulo.core.client.ScannerBase;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Value;
+import org.apache.rya.api.persist.query.QueryContext;
 import org.calrissian.mango.collect.AbstractCloseableIterable;
+import org.openrdf.query.QueryInterruptedException;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Map;
@@ -38,19 +41,70 @@ import java.util.Map;
 public class ScannerBaseCloseableIterable extends AbstractCloseableIterable<Map.Entry<Key, Value>> {
 
     protected ScannerBase scanner;
+    private final QueryContext queryContext;
+    private final Closeable cancelHandler;
 
     public ScannerBaseCloseableIterable(ScannerBase scanner) {
+        this(scanner, null);
+    }
+
+    /**
+     * @param scanner the scanner to iterate over
+     * @param queryContext the context of the query the scan belongs to, may be null. The scanner is
+     *        closed as soon as the query is cancelled or times out.
+     */
+    public ScannerBaseCloseableIterable(ScannerBase scanner, QueryContext queryContext) {
         Preconditions.checkNotNull(scanner);
         this.scanner = scanner;
+        this.queryContext = queryContext;
+        if (queryContext != null) {
+            cancelHandler = () -> this.scanner.close();
+            queryContext.onCancel(cancelHandler);
+        } else {
+            cancelHandler = null;
+        }
     }
 
     @Override
     protected void doClose() throws IOException {
+        if (queryContext != null) {
+            queryContext.release(cancelHandler);
+        }
         scanner.close();
     }
 
     @Override
     protected Iterator<Map.Entry<Key, Value>> retrieveIterator() {
-        return scanner.iterator();
+        final Iterator<Map.Entry<Key, Value>> iterator = scanner.iterator();
+        if (queryContext == null) {
+            return iterator;
+        }
+        return new Iterator<Map.Entry<Key, Value>>() {
+            @Override
+            public boolean hasNext() {
+                checkCancelled();
+                final boolean hasNext = iterator.hasNext();
+                //a scanner closed by a cancellation may look exhausted
+                checkCancelled();
+                return hasNext;
+            }
+
+            @Override
+            public Map.Entry<Key, Value> next() {
+                checkCancelled();
+                return iterator.next();
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+            }
+        };
+    }
+
+    private void checkCancelled() {
+        if (queryContext.isCancelled()) {
+            throw new RuntimeException(new QueryInterruptedException("Query " + queryContext.getQueryId() + " was cancelled or timed out"));
+        }
     }
 }
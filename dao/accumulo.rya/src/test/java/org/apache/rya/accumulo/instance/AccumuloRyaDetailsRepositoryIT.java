@@ -22,11 +22,18 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
 import java.util.Date;
 
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
 import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.minicluster.MiniAccumuloCluster;
 import org.apache.rya.accumulo.AccumuloITBase;
 import org.apache.rya.accumulo.MiniAccumuloClusterInstance;
@@ -39,6 +46,7 @@ import org.apache.rya.api.instance.RyaDetails.PCJIndexDetails.FluoDetails;
 import org.apache.rya.api.instance.RyaDetails.PCJIndexDetails.PCJDetails;
 import org.apache.rya.api.instance.RyaDetails.PCJIndexDetails.PCJDetails.PCJUpdateStrategy;
 import org.apache.rya.api.instance.RyaDetails.ProspectorDetails;
+import org.apache.rya.api.instance.RyaDetails.ReasoningDetails;
 import org.apache.rya.api.instance.RyaDetails.TemporalIndexDetails;
 import org.apache.rya.api.instance.RyaDetailsRepository;
 import org.apache.rya.api.instance.RyaDetailsRepository.AlreadyInitializedException;
@@ -286,4 +294,48 @@ public class AccumuloRyaDetailsRepositoryIT extends AccumuloITBase {
         // Try to execute the update where the old state is not the currently stored state.
         repo.update(updated, updated);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void update_detailsStoredByOlderVersion() throws Exception {
+        final String instanceName = getRyaInstanceName();
+
+        final RyaDetails details = RyaDetails.builder()
+            .setRyaInstanceName(instanceName)
+            .setRyaVersion("1.2.3.4")
+            .setEntityCentricIndexDetails( new EntityCentricIndexDetails(true) )
+            .setTemporalIndexDetails( new TemporalIndexDetails(true) )
+            .setFreeTextDetails( new FreeTextIndexDetails(true) )
+            .setPCJIndexDetails( PCJIndexDetails.builder().setEnabled(true) )
+            .setProspectorDetails( new ProspectorDetails(Optional.<Date>absent()) )
+            .setJoinSelectivityDetails( new JoinSelectivityDetails(Optional.<Date>absent()) )
+            .build();
+
+        final Connector connector = getClusterInstance().getConnector();
+        final RyaDetailsRepository repo = new AccumuloRyaInstanceDetailsRepository(connector, instanceName);
+        repo.initialize(details);
+
+        // Overwrite the stored details with what a version without ReasoningDetails wrote.
+        final Field reasoningDetails = RyaDetails.class.getDeclaredField("reasoningDetails");
+        reasoningDetails.setAccessible(true);
+        reasoningDetails.set(details, null);
+        final ByteArrayOutputStream oldBytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(oldBytes)) {
+            out.writeObject(details);
+        }
+        final BatchWriter writer = connector.createBatchWriter(
+                AccumuloRyaInstanceDetailsRepository.makeTableName(instanceName), new BatchWriterConfig());
+        final Mutation mutation = new Mutation("instance metadata");
+        mutation.put("instance", "details", new Value(oldBytes.toByteArray()));
+        writer.addMutation(mutation);
+        writer.close();
+
+        // The old details are read with the default reasoning details, and can be updated.
+        final RyaDetails fetched = repo.getRyaInstanceDetails();
+        assertFalse( fetched.getReasoningDetails().getLastUpdated().isPresent() );
+        final RyaDetails updated = new RyaDetails.Builder( fetched )
+                .setReasoningDetails( new ReasoningDetails(Optional.of(new Date())) )
+                .build();
+        repo.update(fetched, updated);
+        assertEquals(updated, repo.getRyaInstanceDetails());
+    }
+}
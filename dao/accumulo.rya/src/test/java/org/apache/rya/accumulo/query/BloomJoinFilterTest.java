@@ -0,0 +1,76 @@
+package org.apache.rya.accumulo.query;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.rya.api.RdfCloudTripleStoreConstants.TABLE_LAYOUT;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.domain.RyaType;
+import org.apache.rya.api.domain.RyaURI;
+import org.apache.rya.api.resolver.RyaContext;
+import org.apache.rya.api.resolver.triple.TripleRow;
+import org.apache.rya.api.resolver.triple.impl.WholeRowTripleResolver;
+import org.junit.Test;
+
+import com.google.common.primitives.Bytes;
+
+public class BloomJoinFilterTest {
+
+    private final RyaStatement stmt = new RyaStatement(new RyaURI("urn:subj"), new RyaURI("urn:pred"), new RyaType("obj"));
+
+    @Test
+    public void testJoinKeyOfEveryLayout() throws Exception {
+        Map<TABLE_LAYOUT, TripleRow> rows = new WholeRowTripleResolver().serialize(stmt);
+        byte[][] objBytes = RyaContext.getInstance().serializeType(stmt.getObject());
+        byte[] objectKey = Bytes.concat(objBytes[0], objBytes[1]);
+        for (TABLE_LAYOUT layout : new TABLE_LAYOUT[] { TABLE_LAYOUT.SPO, TABLE_LAYOUT.PO, TABLE_LAYOUT.OSP }) {
+            byte[] row = rows.get(layout).getRow();
+            assertArrayEquals(layout.name(), "urn:subj".getBytes(),
+                    BloomJoinFilter.getJoinKey(row, 0, row.length, BloomJoinFilter.getSegment(layout, true), false));
+            assertArrayEquals(layout.name(), objectKey,
+                    BloomJoinFilter.getJoinKey(row, 0, row.length, BloomJoinFilter.getSegment(layout, false), true));
+        }
+    }
+
+    @Test
+    public void testBloomFilterMembership() throws Exception {
+        BloomFilter bloomFilter = BloomJoinFilter.createBloomFilter(1000);
+        for (int i = 0; i < 1000; i++) {
+            bloomFilter.add(new Key(("urn:subj" + i).getBytes()));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(bloomFilter.membershipTest(new Key(("urn:subj" + i).getBytes())));
+        }
+        int falsePositives = 0;
+        for (int i = 1000; i < 11000; i++) {
+            if (bloomFilter.membershipTest(new Key(("urn:subj" + i).getBytes()))) {
+                falsePositives++;
+            }
+        }
+        assertFalse("false positives: " + falsePositives, falsePositives > 300);
+    }
+}
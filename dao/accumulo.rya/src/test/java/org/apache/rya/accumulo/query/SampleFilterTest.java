@@ -0,0 +1,96 @@
+package org.apache.rya.accumulo.query;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SampleFilterTest {
+
+    private static final String TABLE = "sample_test";
+
+    private Connector connector;
+
+    @Before
+    public void init() throws Exception {
+        connector = new MockInstance("sampleFilter").getConnector("root", new PasswordToken(""));
+        if (connector.tableOperations().exists(TABLE)) {
+            connector.tableOperations().delete(TABLE);
+        }
+        connector.tableOperations().create(TABLE);
+        BatchWriter writer = connector.createBatchWriter(TABLE, new BatchWriterConfig());
+        for (int i = 0; i < 10000; i++) {
+            Mutation m = new Mutation(new Text("urn:subj" + i));
+            m.put(new Text(""), new Text(""), new Value(new byte[0]));
+            writer.addMutation(m);
+        }
+        writer.close();
+    }
+
+    @Test
+    public void testFraction() throws Exception {
+        Set<String> rows = scan(0.1, 1);
+        assertTrue("sampled " + rows.size(), rows.size() > 800 && rows.size() < 1200);
+        assertEquals(10000, scan(1.0, 1).size());
+        assertEquals(0, scan(0.0, 1).size());
+    }
+
+    @Test
+    public void testSeed() throws Exception {
+        assertEquals(scan(0.1, 1), scan(0.1, 1));
+        assertTrue(!scan(0.1, 1).equals(scan(0.1, 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFraction() throws Exception {
+        SampleFilter.setOptions(new IteratorSetting(20, "sample", SampleFilter.class), 1.5, 0);
+    }
+
+    private Set<String> scan(double fraction, int seed) throws Exception {
+        Scanner scanner = connector.createScanner(TABLE, new Authorizations());
+        IteratorSetting setting = new IteratorSetting(20, "sample", SampleFilter.class);
+        SampleFilter.setOptions(setting, fraction, seed);
+        scanner.addScanIterator(setting);
+        Set<String> rows = new HashSet<String>();
+        for (Map.Entry<Key, Value> entry : scanner) {
+            rows.add(entry.getKey().getRow().toString());
+        }
+        return rows;
+    }
+}
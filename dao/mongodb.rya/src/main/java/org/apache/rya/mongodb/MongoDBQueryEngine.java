@@ -30,6 +30,7 @@ import java.util.Set;
 import org.apache.rya.api.domain.RyaStatement;
 import org.apache.rya.api.persist.RyaDAOException;
 import org.apache.rya.api.persist.query.BatchRyaQuery;
+import org.apache.rya.api.persist.query.QueryContext;
 import org.apache.rya.api.persist.query.RyaQuery;
 import org.apache.rya.api.persist.query.RyaQueryEngine;
 import org.apache.rya.mongodb.dao.MongoDBStorageStrategy;
@@ -97,6 +98,7 @@ public class MongoDBQueryEngine implements RyaQueryEngine<MongoDBRdfConfiguratio
         final MongoCollection<Document> collection = db.getCollection(conf.getTriplesCollectionName());
         final RyaStatementCursorIterator iterator = new RyaStatementCursorIterator(collection, queries, strategy,
                 conf.getAuthorizations());
+        iterator.setQueryContext(QueryContext.get(conf));
 
         if (maxResults != null) {
             iterator.setMaxResults(maxResults);
@@ -125,7 +127,9 @@ public class MongoDBQueryEngine implements RyaQueryEngine<MongoDBRdfConfiguratio
 
             // TODO not sure what to do about regex ranges?
             final RyaStatementBindingSetCursorIterator iterator = new RyaStatementBindingSetCursorIterator(
-                    getCollection(conf), rangeMap, strategy, conf.getAuthorizations());
+                    getCollection(conf), rangeMap, strategy, conf.getAuthorizations(),
+                    conf.getQueryBatchSize(), conf.getQueryBatchThreads());
+            iterator.setQueryContext(QueryContext.get(conf));
 
             if (maxResults != null) {
                 iterator.setMaxResults(maxResults);
@@ -154,6 +158,7 @@ public class MongoDBQueryEngine implements RyaQueryEngine<MongoDBRdfConfiguratio
             // TODO not sure what to do about regex ranges?
             final RyaStatementCursorIterator iterator = new RyaStatementCursorIterator(getCollection(conf), queries,
                     strategy, configuration.getAuthorizations());
+            iterator.setQueryContext(QueryContext.get(conf));
 
             if (maxResults != null) {
                 iterator.setMaxResults(maxResults);
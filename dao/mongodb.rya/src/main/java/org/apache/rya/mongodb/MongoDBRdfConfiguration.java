@@ -41,6 +41,20 @@ public class MongoDBRdfConfiguration extends RdfCloudTripleStoreConfiguration {
     public static final String CONF_ADDITIONAL_INDEXERS = "ac.additional.indexers";
     public static final String USE_MOCK_MONGO = ".useMockInstance";
     public static final String CONF_FLUSH_EACH_UPDATE = "rya.mongodb.dao.flusheachupdate";
+    public static final String CONF_QUERY_BATCH_SIZE = "rya.mongodb.query.batchsize";
+    public static final String CONF_QUERY_BATCH_THREADS = "rya.mongodb.query.batchthreads";
+
+    /**
+     * The number of binding set queries combined into one query when
+     * {@link #CONF_QUERY_BATCH_SIZE} isn't set.
+     */
+    public static final int DEFAULT_QUERY_BATCH_SIZE = 50;
+
+    /**
+     * The number of combined queries run at the same time when
+     * {@link #CONF_QUERY_BATCH_THREADS} isn't set.
+     */
+    public static final int DEFAULT_QUERY_BATCH_THREADS = 4;
 
     private MongoClient mongoClient;
 
@@ -122,6 +136,43 @@ public class MongoDBRdfConfiguration extends RdfCloudTripleStoreConfiguration {
         setBoolean(CONF_FLUSH_EACH_UPDATE, flush);
     }
 
+    /**
+     * @return The number of binding set queries that are combined into a
+     * single query when joining against statements. Defaults to
+     * {@link #DEFAULT_QUERY_BATCH_SIZE}.
+     */
+    public int getQueryBatchSize() {
+        return getInt(CONF_QUERY_BATCH_SIZE, DEFAULT_QUERY_BATCH_SIZE);
+    }
+
+    /**
+     * Sets the {@link #CONF_QUERY_BATCH_SIZE} property of the configuration.
+     * @param batchSize the number of binding set queries combined into a
+     * single query. (must be positive)
+     */
+    public void setQueryBatchSize(final int batchSize) {
+        Preconditions.checkArgument(batchSize > 0, "Batch size must be positive");
+        setInt(CONF_QUERY_BATCH_SIZE, batchSize);
+    }
+
+    /**
+     * @return The number of combined binding set queries that are run at the
+     * same time. Defaults to {@link #DEFAULT_QUERY_BATCH_THREADS}.
+     */
+    public int getQueryBatchThreads() {
+        return getInt(CONF_QUERY_BATCH_THREADS, DEFAULT_QUERY_BATCH_THREADS);
+    }
+
+    /**
+     * Sets the {@link #CONF_QUERY_BATCH_THREADS} property of the configuration.
+     * @param threads the number of combined queries run at the same time.
+     * (must be positive)
+     */
+    public void setQueryBatchThreads(final int threads) {
+        Preconditions.checkArgument(threads > 0, "Number of threads must be positive");
+        setInt(CONF_QUERY_BATCH_THREADS, threads);
+    }
+
     /**
      * @return name of Mongo Collection containing Rya triples
      */
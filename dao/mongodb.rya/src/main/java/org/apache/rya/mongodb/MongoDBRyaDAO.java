@@ -48,8 +48,10 @@ import org.apache.rya.mongodb.dao.SimpleMongoDBNamespaceManager;
 import org.apache.rya.mongodb.dao.SimpleMongoDBStorageStrategy;
 import org.apache.rya.mongodb.document.util.DocumentVisibilityUtil;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.DuplicateKeyException;
 import com.mongodb.MongoClient;
@@ -244,15 +246,7 @@ public final class MongoDBRyaDAO implements RyaDAO<MongoDBRdfConfiguration>{
             throws RyaDAOException {
         final boolean canDelete = DocumentVisibilityUtil.doesUserHaveDocumentAccess(auths, statement.getColumnVisibility());
         if (canDelete) {
-            final DBObject obj = storageStrategy.getQuery(statement);
-            coll.remove(obj);
-            for (final RyaSecondaryIndexer index : secondaryIndexers) {
-                try {
-                    index.deleteStatement(statement);
-                } catch (final IOException e) {
-                    log.error("Unable to remove statement: " + statement.toString() + " from secondary indexer: " + index.getTableName(), e);
-                }
-            }
+            deleteMatches(statement);
         } else {
             throw new RyaDAOException("User does not have the required authorizations to delete statement");
         }
@@ -261,7 +255,18 @@ public final class MongoDBRyaDAO implements RyaDAO<MongoDBRdfConfiguration>{
     @Override
     public void dropGraph(final MongoDBRdfConfiguration conf, final RyaURI... graphs)
             throws RyaDAOException {
-
+        // statements still buffered for the graphs are removed with the rest
+        flush();
+        for (final RyaURI graph : graphs) {
+            coll.remove(new BasicDBObject(SimpleMongoDBStorageStrategy.CONTEXT, graph.getData()));
+        }
+        for (final MongoSecondaryIndex index : secondaryIndexers) {
+            try {
+                index.dropGraph(graphs);
+            } catch (final UnsupportedOperationException e) {
+                log.warn("Indexer " + index.getClass().getSimpleName() + " does not support dropping graphs", e);
+            }
+        }
     }
 
     @Override
@@ -271,16 +276,36 @@ public final class MongoDBRyaDAO implements RyaDAO<MongoDBRdfConfiguration>{
             final RyaStatement ryaStatement = statements.next();
             final boolean canDelete = DocumentVisibilityUtil.doesUserHaveDocumentAccess(auths, ryaStatement.getColumnVisibility());
             if (canDelete) {
-                coll.remove(storageStrategy.getQuery(ryaStatement));
+                deleteMatches(ryaStatement);
+            } else {
+                throw new RyaDAOException("User does not have the required authorizations to delete statement");
+            }
+        }
+    }
+
+    /**
+     * Removes every stored statement that matches a statement, which may be a
+     * pattern with unbound positions. The secondary indexers are given the
+     * stored statements that were removed, not the pattern.
+     */
+    private void deleteMatches(final RyaStatement statement) {
+        final DBObject query = storageStrategy.getQuery(statement);
+        if (secondaryIndexers.isEmpty()) {
+            coll.remove(query);
+            return;
+        }
+        try (final DBCursor cursor = coll.find(query)) {
+            while (cursor.hasNext()) {
+                final DBObject match = cursor.next();
+                coll.remove(new BasicDBObject(SimpleMongoDBStorageStrategy.ID, match.get(SimpleMongoDBStorageStrategy.ID)));
+                final RyaStatement removed = storageStrategy.deserializeDBObject(match);
                 for (final RyaSecondaryIndexer index : secondaryIndexers) {
                     try {
-                        index.deleteStatement(ryaStatement);
+                        index.deleteStatement(removed);
                     } catch (final IOException e) {
-                        log.error("Unable to remove statement: " + ryaStatement.toString() + " from secondary indexer: " + index.getTableName(), e);
+                        log.error("Unable to remove statement: " + removed.toString() + " from secondary indexer: " + index.getTableName(), e);
                     }
                 }
-            } else {
-                throw new RyaDAOException("User does not have the required authorizations to delete statement");
             }
         }
     }
@@ -0,0 +1,560 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.mongodb.aggregation;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.rya.mongodb.document.operators.aggregation.PipelineOperators.redact;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.log4j.Logger;
+import org.apache.rya.api.domain.RangeURI;
+import org.apache.rya.api.domain.RangeValue;
+import org.apache.rya.api.domain.RyaType;
+import org.apache.rya.api.resolver.RdfToRyaConversions;
+import org.apache.rya.api.resolver.RyaToRdfConversions;
+import org.apache.rya.mongodb.dao.SimpleMongoDBStorageStrategy;
+import org.apache.rya.mongodb.document.operators.aggregation.AggregationUtil;
+import org.apache.rya.mongodb.document.operators.aggregation.PipelineOperators.RedactAggregationResult;
+import org.bson.Document;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.And;
+import org.openrdf.query.algebra.Compare;
+import org.openrdf.query.algebra.Compare.CompareOp;
+import org.openrdf.query.algebra.Not;
+import org.openrdf.query.algebra.Or;
+import org.openrdf.query.algebra.SameTerm;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.ValueConstant;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.impl.ExternalSet;
+
+import com.google.common.base.Joiner;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+
+import info.aduna.iteration.CloseableIteration;
+
+/**
+ * Evaluates a connected group of statement patterns, and the simple filters over them, as a
+ * single aggregation pipeline over the triples collection instead of joining the patterns in the
+ * sail.
+ * <p>
+ * The pipeline matches the first pattern, then adds each pattern that shares a variable with the
+ * patterns before it using {@code $lookup} on that variable, {@code $unwind} and a {@code $match}
+ * on the pattern's constants. Every solution is a flat document holding the value and the type
+ * of each variable, and the visibility of the last statement joined into it, so the
+ * {@code $redact} built by {@link AggregationUtil#createRedactPipeline(Authorizations)} checks
+ * every statement a solution is built from. Filters are applied with one more {@code $redact}.
+ * <p>
+ * Patterns are only translated when they match the default graph, and filters only when the
+ * comparison they make is the same on the stored terms as in SPARQL, see
+ * {@link #addFilter(ValueExpr)}.
+ */
+public class AggregationPipelineQueryNode extends ExternalSet {
+    private static final Logger log = Logger.getLogger(AggregationPipelineQueryNode.class);
+
+    private static final String JOINED = "joined";
+    private static final String VALUE_PREFIX = "v";
+    private static final String TYPE_PREFIX = "t";
+    private static final String URI_TYPE = SimpleMongoDBStorageStrategy.OBJECT_TYPE_VALUE;
+    private static final String[] FIELDS = {
+        SimpleMongoDBStorageStrategy.SUBJECT,
+        SimpleMongoDBStorageStrategy.PREDICATE,
+        SimpleMongoDBStorageStrategy.OBJECT };
+    private static final int OBJECT = 2;
+    private static final int BATCH_SIZE = 1000;
+
+    private final MongoCollection<Document> collection;
+    private final Authorizations auths;
+    private final List<StatementPattern> patterns;
+    private final List<ValueExpr> filters = new ArrayList<>();
+    private final Map<String, Integer> varIndexes = new HashMap<>();
+
+    /**
+     * Creates a new {@link AggregationPipelineQueryNode}.
+     *
+     * @param collection - The triples collection. (not null)
+     * @param patterns - Connected statement patterns that {@link #canTranslate(StatementPattern)}. (not null, not empty)
+     * @param auths - The authorizations the statements are read with. (not null)
+     */
+    public AggregationPipelineQueryNode(final MongoCollection<Document> collection, final Collection<StatementPattern> patterns,
+            final Authorizations auths) {
+        this.collection = checkNotNull(collection);
+        this.auths = checkNotNull(auths);
+        this.patterns = orderPatterns(checkNotNull(patterns));
+        for (final StatementPattern sp : this.patterns) {
+            for (final Var var : getVars(sp)) {
+                if (!var.hasValue() && !varIndexes.containsKey(var.getName())) {
+                    varIndexes.put(var.getName(), varIndexes.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param sp - A statement pattern.
+     * @return true if the pattern can be matched by the pipeline: it is not a subclass added by
+     *   inference, it matches the default graph, its constants are plain values and no variable
+     *   appears in it twice.
+     */
+    public static boolean canTranslate(final StatementPattern sp) {
+        if (sp.getClass() != StatementPattern.class || sp.getContextVar() != null) {
+            return false;
+        }
+        final Set<String> names = new HashSet<>();
+        for (final Var var : getVars(sp)) {
+            if (var.hasValue()) {
+                final Value value = var.getValue();
+                if (value instanceof RangeValue || value instanceof RangeURI) {
+                    return false;
+                }
+            } else if (!names.add(var.getName())) {
+                return false;
+            }
+        }
+        return sp.getPredicateVar().getValue() == null || sp.getPredicateVar().getValue() instanceof URI;
+    }
+
+    /**
+     * Applies a filter condition in the pipeline, if it can be. The condition is translated when
+     * it only uses the variables of this node and is made of {@code sameTerm}, {@code =} with an
+     * IRI or a string literal, and {@code !=} with an IRI, combined with {@code &&}, {@code ||}
+     * and {@code !}. Comparisons with other literals are left to the sail, since SPARQL compares
+     * their values while the pipeline can only compare the stored terms.
+     *
+     * @param condition - The filter condition. (not null)
+     * @return true if the condition will be applied by the pipeline.
+     */
+    public boolean addFilter(final ValueExpr condition) {
+        if (translate(condition, true) == null) {
+            return false;
+        }
+        filters.add(condition);
+        return true;
+    }
+
+    public List<StatementPattern> getPatterns() {
+        return patterns;
+    }
+
+    public List<ValueExpr> getFilters() {
+        return filters;
+    }
+
+    /**
+     * Builds the aggregation pipeline that evaluates this node.
+     *
+     * @param bindings - Values already bound to some of the variables, which are also matched as constants. (not null)
+     * @return The stages of the pipeline.
+     */
+    public List<Document> getPipeline(final BindingSet bindings) {
+        final List<Document> pipeline = new ArrayList<>();
+        final Set<String> bound = new HashSet<>();
+
+        final StatementPattern first = patterns.get(0);
+        pipeline.add(new Document("$match", getConstantsQuery(first, "", bindings)));
+        pipeline.addAll(AggregationUtil.createRedactPipeline(auths));
+        final Document firstProjection = new Document("_id", 0);
+        addNewVars(firstProjection, first, "$", bound);
+        pipeline.add(new Document("$project", firstProjection));
+
+        for (final StatementPattern sp : patterns.subList(1, patterns.size())) {
+            final Var[] vars = getVars(sp);
+            final List<Integer> shared = new ArrayList<>();
+            for (int i = 0; i < vars.length; i++) {
+                if (!vars[i].hasValue() && bound.contains(vars[i].getName())) {
+                    shared.add(i);
+                }
+            }
+            final int lookupPlace = shared.get(0);
+            pipeline.add(new Document("$lookup", new Document("from", collection.getNamespace().getCollectionName())
+                    .append("localField", getValueField(vars[lookupPlace].getName()))
+                    .append("foreignField", FIELDS[lookupPlace])
+                    .append("as", JOINED)));
+            pipeline.add(new Document("$unwind", "$" + JOINED));
+            final Document constants = getConstantsQuery(sp, JOINED + ".", bindings);
+            if (!constants.isEmpty()) {
+                pipeline.add(new Document("$match", constants));
+            }
+
+            // $lookup only joined on the value of one shared variable, the rest of the join is checked here
+            final List<Object> conditions = new ArrayList<>();
+            for (final int place : shared) {
+                final String name = vars[place].getName();
+                if (place != lookupPlace) {
+                    conditions.add(eq("$" + getValueField(name), "$" + JOINED + "." + FIELDS[place]));
+                }
+                conditions.add(eq("$" + getTypeField(name), place == OBJECT ? "$" + JOINED + "." + SimpleMongoDBStorageStrategy.OBJECT_TYPE : URI_TYPE));
+            }
+            pipeline.add(redact(new Document("$and", conditions), RedactAggregationResult.KEEP, RedactAggregationResult.PRUNE));
+
+            final Document projection = new Document("_id", 0);
+            for (final String name : bound) {
+                projection.append(getValueField(name), 1).append(getTypeField(name), 1);
+            }
+            addNewVars(projection, sp, "$" + JOINED + ".", bound);
+            projection.append(SimpleMongoDBStorageStrategy.DOCUMENT_VISIBILITY, "$" + JOINED + "." + SimpleMongoDBStorageStrategy.DOCUMENT_VISIBILITY);
+            pipeline.add(new Document("$project", projection));
+            pipeline.addAll(AggregationUtil.createRedactPipeline(auths));
+        }
+
+        for (final ValueExpr filter : filters) {
+            pipeline.add(redact(translate(filter, true), RedactAggregationResult.KEEP, RedactAggregationResult.PRUNE));
+        }
+        return pipeline;
+    }
+
+    @Override
+    public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(final BindingSet bindings)
+            throws QueryEvaluationException {
+        final List<Document> pipeline = getPipeline(bindings);
+        log.debug(pipeline);
+        try {
+            final MongoCursor<Document> cursor = collection.aggregate(pipeline).allowDiskUse(true).batchSize(BATCH_SIZE).iterator();
+            return new PipelineResultIteration(cursor, bindings);
+        } catch (final MongoException e) {
+            throw new QueryEvaluationException(e);
+        }
+    }
+
+    /**
+     * Starts with the pattern with the most constants, then repeatedly adds the pattern with the
+     * most constants among those sharing a variable with the patterns already added.
+     */
+    private static List<StatementPattern> orderPatterns(final Collection<StatementPattern> patterns) {
+        final List<StatementPattern> remaining = new ArrayList<>(patterns);
+        final List<StatementPattern> ordered = new ArrayList<>();
+        final Set<String> bound = new HashSet<>();
+        while (!remaining.isEmpty()) {
+            StatementPattern best = null;
+            for (final StatementPattern sp : remaining) {
+                if ((ordered.isEmpty() || sharesVar(sp, bound)) && (best == null || countConstants(sp) > countConstants(best))) {
+                    best = sp;
+                }
+            }
+            if (best == null) {
+                throw new IllegalArgumentException("The statement patterns are not connected: " + patterns);
+            }
+            remaining.remove(best);
+            ordered.add(best);
+            for (final Var var : getVars(best)) {
+                if (!var.hasValue()) {
+                    bound.add(var.getName());
+                }
+            }
+        }
+        return ordered;
+    }
+
+    private static boolean sharesVar(final StatementPattern sp, final Set<String> names) {
+        for (final Var var : getVars(sp)) {
+            if (!var.hasValue() && names.contains(var.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int countConstants(final StatementPattern sp) {
+        int constants = 0;
+        for (final Var var : getVars(sp)) {
+            if (var.hasValue()) {
+                constants++;
+            }
+        }
+        return constants;
+    }
+
+    private static Var[] getVars(final StatementPattern sp) {
+        return new Var[] { sp.getSubjectVar(), sp.getPredicateVar(), sp.getObjectVar() };
+    }
+
+    /**
+     * Matches the constants of a pattern, and the variables that are already bound.
+     */
+    private static Document getConstantsQuery(final StatementPattern sp, final String prefix, final BindingSet bindings) {
+        final Document query = new Document();
+        final Var[] vars = getVars(sp);
+        for (int i = 0; i < vars.length; i++) {
+            final Value value = vars[i].hasValue() ? vars[i].getValue() : bindings.getValue(vars[i].getName());
+            if (value != null) {
+                final RyaType rya = RdfToRyaConversions.convertValue(value);
+                query.append(prefix + FIELDS[i], rya.getData());
+                if (i == OBJECT) {
+                    query.append(prefix + SimpleMongoDBStorageStrategy.OBJECT_TYPE, rya.getDataType().toString());
+                }
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Projects the variables a pattern binds for the first time.
+     */
+    private void addNewVars(final Document projection, final StatementPattern sp, final String prefix, final Set<String> bound) {
+        final Var[] vars = getVars(sp);
+        for (int i = 0; i < vars.length; i++) {
+            final String name = vars[i].getName();
+            if (!vars[i].hasValue() && bound.add(name)) {
+                projection.append(getValueField(name), prefix + FIELDS[i]);
+                projection.append(getTypeField(name), i == OBJECT ? prefix + SimpleMongoDBStorageStrategy.OBJECT_TYPE : new Document("$literal", URI_TYPE));
+            }
+        }
+    }
+
+    private String getValueField(final String name) {
+        return VALUE_PREFIX + varIndexes.get(name);
+    }
+
+    private String getTypeField(final String name) {
+        return TYPE_PREFIX + varIndexes.get(name);
+    }
+
+    private static Document eq(final Object left, final Object right) {
+        final List<Object> args = new ArrayList<>();
+        args.add(left);
+        args.add(right);
+        return new Document("$eq", args);
+    }
+
+    /**
+     * Translates a filter condition to an aggregation expression.
+     *
+     * @param negatable - false inside a negation, where comparisons that SPARQL could fail with an
+     *   error would give the wrong answer.
+     * @return The expression, or null if the condition can't be translated.
+     */
+    private Document translate(final ValueExpr condition, final boolean negatable) {
+        if (condition instanceof And || condition instanceof Or) {
+            final ValueExpr[] args = condition instanceof And
+                    ? new ValueExpr[] { ((And) condition).getLeftArg(), ((And) condition).getRightArg() }
+                    : new ValueExpr[] { ((Or) condition).getLeftArg(), ((Or) condition).getRightArg() };
+            final List<Document> translated = new ArrayList<>();
+            for (final ValueExpr arg : args) {
+                final Document expression = translate(arg, negatable);
+                if (expression == null) {
+                    return null;
+                }
+                translated.add(expression);
+            }
+            return new Document(condition instanceof And ? "$and" : "$or", translated);
+        } else if (condition instanceof Not) {
+            final Document expression = translate(((Not) condition).getArg(), false);
+            return expression == null ? null : new Document("$not", Collections.singletonList(expression));
+        } else if (condition instanceof SameTerm) {
+            final SameTerm sameTerm = (SameTerm) condition;
+            return compareTerms(sameTerm.getLeftArg(), sameTerm.getRightArg(), false);
+        } else if (condition instanceof Compare) {
+            final Compare compare = (Compare) condition;
+            final Value constant = getConstant(compare.getLeftArg(), compare.getRightArg());
+            if (constant == null) {
+                return null;
+            }
+            final boolean isUri = constant instanceof URI;
+            final boolean isString = constant instanceof Literal && ((Literal) constant).getLanguage() == null
+                    && (((Literal) constant).getDatatype() == null || XMLSchema.STRING.equals(((Literal) constant).getDatatype()));
+            // A literal of another type compared to a string is an error in SPARQL, which fails the filter
+            if (compare.getOperator() == CompareOp.EQ && (isUri || isString && negatable)) {
+                return compareTerms(compare.getLeftArg(), compare.getRightArg(), false);
+            } else if (compare.getOperator() == CompareOp.NE && isUri) {
+                return compareTerms(compare.getLeftArg(), compare.getRightArg(), true);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the constant one side of a comparison is compared to, or null unless the other side is a
+     *   variable of this node.
+     */
+    private Value getConstant(final ValueExpr left, final ValueExpr right) {
+        if (isNodeVar(left) && getValue(right) != null) {
+            return getValue(right);
+        } else if (isNodeVar(right) && getValue(left) != null) {
+            return getValue(left);
+        }
+        return null;
+    }
+
+    private boolean isNodeVar(final ValueExpr expr) {
+        return expr instanceof Var && !((Var) expr).hasValue() && varIndexes.containsKey(((Var) expr).getName());
+    }
+
+    private static Value getValue(final ValueExpr expr) {
+        if (expr instanceof ValueConstant) {
+            return ((ValueConstant) expr).getValue();
+        } else if (expr instanceof Var) {
+            return ((Var) expr).getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Compares the values and types of two terms, each either a variable of this node or a constant.
+     */
+    private Document compareTerms(final ValueExpr left, final ValueExpr right, final boolean negate) {
+        final Object[] leftTerm = getTerm(left);
+        final Object[] rightTerm = getTerm(right);
+        if (leftTerm == null || rightTerm == null) {
+            return null;
+        }
+        final List<Object> both = new ArrayList<>();
+        both.add(eq(leftTerm[0], rightTerm[0]));
+        both.add(eq(leftTerm[1], rightTerm[1]));
+        final Document same = new Document("$and", both);
+        return negate ? new Document("$not", Collections.singletonList(same)) : same;
+    }
+
+    /**
+     * @return the expressions of a term's value and type, or null if it isn't a variable of this node or a constant.
+     */
+    private Object[] getTerm(final ValueExpr expr) {
+        if (isNodeVar(expr)) {
+            final String name = ((Var) expr).getName();
+            return new Object[] { "$" + getValueField(name), "$" + getTypeField(name) };
+        }
+        final Value value = getValue(expr);
+        return value == null || value instanceof RangeValue ? null : getConstantTerm(value);
+    }
+
+    private static Object[] getConstantTerm(final Value value) {
+        final RyaType rya = RdfToRyaConversions.convertValue(value);
+        return new Object[] { new Document("$literal", rya.getData()), new Document("$literal", rya.getDataType().toString()) };
+    }
+
+    @Override
+    public Set<String> getBindingNames() {
+        return new LinkedHashSet<>(varIndexes.keySet());
+    }
+
+    @Override
+    public Set<String> getAssuredBindingNames() {
+        return getBindingNames();
+    }
+
+    @Override
+    public String getSignature() {
+        return "AggregationPipelineQueryNode(" + Joiner.on(",").join(getBindingNames()) + ")";
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(getSignature());
+        for (final StatementPattern sp : patterns) {
+            sb.append("\n  ").append(sp.toString().trim().replace("\n", "\n  "));
+        }
+        for (final ValueExpr filter : filters) {
+            sb.append("\n  Filter ").append(filter.toString().trim().replace("\n", "\n  "));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (other instanceof AggregationPipelineQueryNode) {
+            final AggregationPipelineQueryNode node = (AggregationPipelineQueryNode) other;
+            return patterns.equals(node.patterns) && filters.equals(node.filters);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return patterns.hashCode() * 31 + filters.hashCode();
+    }
+
+    /**
+     * Turns the solutions the pipeline returns into binding sets.
+     */
+    private class PipelineResultIteration implements CloseableIteration<BindingSet, QueryEvaluationException> {
+        private final MongoCursor<Document> cursor;
+        private final BindingSet bindings;
+
+        public PipelineResultIteration(final MongoCursor<Document> cursor, final BindingSet bindings) {
+            this.cursor = cursor;
+            this.bindings = bindings;
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            try {
+                return cursor.hasNext();
+            } catch (final MongoException e) {
+                throw new QueryEvaluationException(e);
+            }
+        }
+
+        @Override
+        public BindingSet next() throws QueryEvaluationException {
+            final Document solution;
+            try {
+                solution = cursor.next();
+            } catch (final MongoException e) {
+                throw new QueryEvaluationException(e);
+            }
+            final QueryBindingSet result = new QueryBindingSet(bindings);
+            for (final Map.Entry<String, Integer> var : varIndexes.entrySet()) {
+                final String value = solution.getString(VALUE_PREFIX + var.getValue());
+                if (value != null && !result.hasBinding(var.getKey())) {
+                    result.addBinding(var.getKey(), toValue(value, solution.getString(TYPE_PREFIX + var.getValue())));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void remove() throws QueryEvaluationException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() throws QueryEvaluationException {
+            cursor.close();
+        }
+    }
+
+    private static Value toValue(final String value, final String type) {
+        if (URI_TYPE.equalsIgnoreCase(type)) {
+            return new URIImpl(value);
+        }
+        return RyaToRdfConversions.convertLiteral(new RyaType(new URIImpl(type), value));
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.mongodb.aggregation;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.rya.mongodb.MongoConnectorFactory;
+import org.apache.rya.mongodb.MongoDBRdfConfiguration;
+import org.bson.Document;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.algebra.Filter;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryOptimizer;
+import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+
+import com.mongodb.client.MongoCollection;
+
+/**
+ * Replaces each group of two or more joined statement patterns that share
+ * variables with an {@link AggregationPipelineQueryNode}, and moves the filters
+ * directly over such a group into the node when they can be evaluated in the
+ * pipeline. Patterns the node can't translate, and the rest of the query, are
+ * left to be evaluated by the sail.
+ * <p>
+ * Statements are read with the authorizations of the configuration the
+ * optimizer is given. Queries over a dataset are not rewritten, since the
+ * pipeline only matches the default graph. Neither are queries that use
+ * inference: the inference visitors run after the configured optimizers and
+ * rewrite statement patterns, which they can't see inside a pipeline.
+ */
+public class AggregationPipelineQueryOptimizer implements QueryOptimizer, Configurable {
+    private MongoDBRdfConfiguration conf;
+    private MongoCollection<Document> collection;
+    private Authorizations auths;
+
+    //setConf initializes the optimizer so reflection can be used
+    //to create it in RdfCloudTripleStoreConnection
+    @Override
+    public void setConf(final Configuration conf) {
+        this.conf = conf instanceof MongoDBRdfConfiguration ? (MongoDBRdfConfiguration) conf : new MongoDBRdfConfiguration(conf);
+        collection = MongoConnectorFactory.getMongoClient(conf)
+                .getDatabase(this.conf.getMongoDBName())
+                .getCollection(this.conf.getTriplesCollectionName());
+        auths = this.conf.getAuthorizations();
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    @Override
+    public void optimize(final TupleExpr tupleExpr, final Dataset dataset, final BindingSet bindings) {
+        if (collection == null || dataset != null || conf.isInfer()) {
+            return;
+        }
+        tupleExpr.visit(new PipelineVisitor());
+    }
+
+    private class PipelineVisitor extends QueryModelVisitorBase<RuntimeException> {
+        @Override
+        public void meet(final Join join) {
+            final List<TupleExpr> args = new ArrayList<>();
+            flatten(join, args);
+
+            final List<StatementPattern> patterns = new ArrayList<>();
+            final List<TupleExpr> rest = new ArrayList<>();
+            for (final TupleExpr arg : args) {
+                if (arg instanceof StatementPattern && AggregationPipelineQueryNode.canTranslate((StatementPattern) arg)) {
+                    patterns.add((StatementPattern) arg);
+                } else {
+                    arg.visit(this);
+                    rest.add(arg);
+                }
+            }
+
+            final List<TupleExpr> joined = new ArrayList<>();
+            boolean replaced = false;
+            for (final List<StatementPattern> component : getConnectedComponents(patterns)) {
+                if (component.size() > 1) {
+                    joined.add(new AggregationPipelineQueryNode(collection, component, auths));
+                    replaced = true;
+                } else {
+                    joined.addAll(component);
+                }
+            }
+            if (!replaced) {
+                return;
+            }
+            joined.addAll(rest);
+
+            TupleExpr result = joined.get(0);
+            for (final TupleExpr arg : joined.subList(1, joined.size())) {
+                result = new Join(result, arg);
+            }
+            join.replaceWith(result);
+        }
+
+        @Override
+        public void meet(final Filter filter) {
+            filter.getArg().visit(this);
+            if (filter.getArg() instanceof AggregationPipelineQueryNode
+                    && ((AggregationPipelineQueryNode) filter.getArg()).addFilter(filter.getCondition())) {
+                filter.replaceWith(filter.getArg());
+            }
+        }
+
+        private void flatten(final TupleExpr expr, final List<TupleExpr> args) {
+            if (expr instanceof Join) {
+                flatten(((Join) expr).getLeftArg(), args);
+                flatten(((Join) expr).getRightArg(), args);
+            } else {
+                args.add(expr);
+            }
+        }
+    }
+
+    /**
+     * Groups statement patterns that are connected through shared variables.
+     */
+    private static List<List<StatementPattern>> getConnectedComponents(final List<StatementPattern> patterns) {
+        final List<StatementPattern> remaining = new ArrayList<>(patterns);
+        final List<List<StatementPattern>> components = new ArrayList<>();
+        while (!remaining.isEmpty()) {
+            final List<StatementPattern> component = new ArrayList<>();
+            final Set<String> vars = new HashSet<>();
+            component.add(remaining.remove(0));
+            addVars(component.get(0), vars);
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                for (int i = 0; i < remaining.size(); i++) {
+                    if (sharesVar(remaining.get(i), vars)) {
+                        final StatementPattern sp = remaining.remove(i);
+                        component.add(sp);
+                        addVars(sp, vars);
+                        grown = true;
+                        break;
+                    }
+                }
+            }
+            components.add(component);
+        }
+        return components;
+    }
+
+    private static void addVars(final StatementPattern sp, final Set<String> vars) {
+        for (final Var var : sp.getVarList()) {
+            if (!var.hasValue()) {
+                vars.add(var.getName());
+            }
+        }
+    }
+
+    private static boolean sharesVar(final StatementPattern sp, final Set<String> vars) {
+        for (final Var var : sp.getVarList()) {
+            if (!var.hasValue() && vars.contains(var.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -36,6 +36,7 @@ import org.apache.rya.api.instance.RyaDetails.PCJIndexDetails.FluoDetails;
 import org.apache.rya.api.instance.RyaDetails.PCJIndexDetails.PCJDetails;
 import org.apache.rya.api.instance.RyaDetails.PCJIndexDetails.PCJDetails.PCJUpdateStrategy;
 import org.apache.rya.api.instance.RyaDetails.ProspectorDetails;
+import org.apache.rya.api.instance.RyaDetails.ReasoningDetails;
 import org.apache.rya.api.instance.RyaDetails.TemporalIndexDetails;
 
 import com.google.common.base.Optional;
@@ -68,7 +69,8 @@ import com.mongodb.DBObject;
  *   "temporalDetails": &lt;boolean&gt;,
  *   "freeTextDetails": &lt;boolean&gt;,
  *   "prospectorDetails": &lt;date&gt;,
- *   "joinSelectivityDetails": &lt;date&gt;
+ *   "joinSelectivityDetails": &lt;date&gt;,
+ *   "reasoningDetails": &lt;date&gt;
  * }
  * </pre>
  */
@@ -92,6 +94,8 @@ public class MongoDetailsAdapter {
     public static final String PROSPECTOR_DETAILS_KEY = "prospectorDetails";
     public static final String JOIN_SELECTIVITY_DETAILS_KEY = "joinSelectivitiyDetails";
 
+    public static final String REASONING_DETAILS_KEY = "reasoningDetails";
+
     /**
      * Serializes {@link RyaDetails} to mongo {@link DBObject}.
      * @param details - The details to be serialized.
@@ -113,6 +117,9 @@ public class MongoDetailsAdapter {
         if(details.getJoinSelectivityDetails().getLastUpdated().isPresent()) {
             builder.add(JOIN_SELECTIVITY_DETAILS_KEY, details.getJoinSelectivityDetails().getLastUpdated().get());
         }
+        if(details.getReasoningDetails().getLastUpdated().isPresent()) {
+            builder.add(REASONING_DETAILS_KEY, details.getReasoningDetails().getLastUpdated().get());
+        }
         return (BasicDBObject) builder.get();
     }
 
@@ -173,6 +180,7 @@ public class MongoDetailsAdapter {
             .setFreeTextDetails(new FreeTextIndexDetails(basicObj.getBoolean(FREETEXT_DETAILS_KEY)))
             .setProspectorDetails(new ProspectorDetails(Optional.<Date>fromNullable(basicObj.getDate(PROSPECTOR_DETAILS_KEY))))
             .setJoinSelectivityDetails(new JoinSelectivityDetails(Optional.<Date>fromNullable(basicObj.getDate(JOIN_SELECTIVITY_DETAILS_KEY))))
+            .setReasoningDetails(new ReasoningDetails(Optional.<Date>fromNullable(basicObj.getDate(REASONING_DETAILS_KEY))))
             .build();
         } catch(final Exception e) {
             throw new MalformedRyaDetailsException("Failed to make RyaDetail from Mongo Object, it is malformed.", e);
@@ -31,12 +31,20 @@ public class NonCloseableRyaStatementCursorIterator implements Iterator<RyaState
 	
 	@Override
 	public boolean hasNext() {
-		return iterator.hasNext();
+		try {
+			return iterator.hasNext();
+		} catch (RyaDAOException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	@Override
 	public RyaStatement next() {
-		return iterator.next();
+		try {
+			return iterator.next();
+		} catch (RyaDAOException e) {
+			throw new RuntimeException(e);
+		}
 	}
 
 	public NonCloseableRyaStatementCursorIterator(
@@ -18,64 +18,136 @@
  */
 package org.apache.rya.mongodb.iter;
 
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.log4j.Logger;
 import org.apache.rya.api.RdfCloudTripleStoreUtils;
 import org.apache.rya.api.domain.RyaStatement;
 import org.apache.rya.api.persist.RyaDAOException;
+import org.apache.rya.api.persist.query.QueryContext;
+import org.apache.rya.mongodb.MongoDBRdfConfiguration;
 import org.apache.rya.mongodb.dao.MongoDBStorageStrategy;
 import org.apache.rya.mongodb.document.operators.aggregation.AggregationUtil;
 import org.bson.Document;
 import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryInterruptedException;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mongodb.DBObject;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.util.JSON;
 
 import info.aduna.iteration.CloseableIteration;
 
+/**
+ * Finds the statements that match each query in a map of queries to binding
+ * sets, and pairs every statement with the binding sets of the query it
+ * matched.
+ * <p>
+ * Queries that constrain the same fields are combined into batches of up to
+ * {@code batchSize} queries, each run as one aggregation that matches any of
+ * them with {@code $in} when only one field differs between the queries, or
+ * {@code $or} otherwise. Up to {@code threads} batches are started at the
+ * same time, so their first round trips overlap while earlier results are
+ * still being read. A statement found by a batch is paired with
+ * the binding sets of the query it matched by looking up the values of the
+ * batch's fields in the statement.
+ */
 public class RyaStatementBindingSetCursorIterator implements CloseableIteration<Entry<RyaStatement, BindingSet>, RyaDAOException> {
     private static final Logger log = Logger.getLogger(RyaStatementBindingSetCursorIterator.class);
 
     private final MongoCollection<Document> coll;
     private final Multimap<DBObject, BindingSet> rangeMap;
-    private final Iterator<DBObject> queryIterator;
+    private final Iterator<QueryBatch> batchIterator;
+    private final int threads;
+    private final ExecutorService executor;
+    private final Queue<QueryBatch> pendingBatches = new ConcurrentLinkedQueue<>();
     private Long maxResults;
-    private Iterator<Document> resultsIterator;
+    private MongoCursor<Document> resultsIterator;
+    private volatile QueryBatch currentBatch;
     private RyaStatement currentStatement;
-    private Collection<BindingSet> currentBindingSetCollection;
     private Iterator<BindingSet> currentBindingSetIterator;
     private final MongoDBStorageStrategy<RyaStatement> strategy;
     private final Authorizations auths;
+    private QueryContext queryContext;
+    private final Closeable cancelHandler = this::cancelBatches;
 
     public RyaStatementBindingSetCursorIterator(final MongoCollection<Document> coll,
             final Multimap<DBObject, BindingSet> rangeMap, final MongoDBStorageStrategy<RyaStatement> strategy,
             final Authorizations auths) {
+        this(coll, rangeMap, strategy, auths, MongoDBRdfConfiguration.DEFAULT_QUERY_BATCH_SIZE,
+                MongoDBRdfConfiguration.DEFAULT_QUERY_BATCH_THREADS);
+    }
+
+    /**
+     * Creates a new {@link RyaStatementBindingSetCursorIterator}.
+     *
+     * @param coll - The triples collection.
+     * @param rangeMap - The binding sets each query's statements are paired with.
+     * @param strategy - Reads the statements.
+     * @param auths - The authorizations the statements are read with.
+     * @param batchSize - The most queries combined into one batch. (must be positive)
+     * @param threads - The most batches run at the same time. (must be positive)
+     */
+    public RyaStatementBindingSetCursorIterator(final MongoCollection<Document> coll,
+            final Multimap<DBObject, BindingSet> rangeMap, final MongoDBStorageStrategy<RyaStatement> strategy,
+            final Authorizations auths, final int batchSize, final int threads) {
         this.coll = coll;
         this.rangeMap = rangeMap;
-        queryIterator = rangeMap.keySet().iterator();
         this.strategy = strategy;
         this.auths = auths;
+        this.threads = threads;
+        final List<QueryBatch> batches = createBatches(batchSize);
+        batchIterator = batches.iterator();
+        if (threads > 1 && batches.size() > 1) {
+            executor = Executors.newFixedThreadPool(Math.min(threads, batches.size()), new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("rya-mongo-query-batch-%d")
+                    .build());
+        } else {
+            executor = MoreExecutors.sameThreadExecutor();
+        }
     }
 
     @Override
-    public boolean hasNext() {
+    public boolean hasNext() throws RyaDAOException {
+        checkCancelled();
         if (!currentBindingSetIteratorIsValid()) {
             findNextResult();
         }
-        return currentBindingSetIteratorIsValid();
+        final boolean hasNext = currentBindingSetIteratorIsValid();
+        //a cursor closed by a cancellation looks exhausted
+        checkCancelled();
+        return hasNext;
     }
 
     @Override
-    public Entry<RyaStatement, BindingSet> next() {
+    public Entry<RyaStatement, BindingSet> next() throws RyaDAOException {
+        checkCancelled();
         if (!currentBindingSetIteratorIsValid()) {
             findNextResult();
         }
@@ -90,35 +162,53 @@ public class RyaStatementBindingSetCursorIterator implements CloseableIteration<
         return (currentBindingSetIterator != null) && currentBindingSetIterator.hasNext();
     }
 
-    private void findNextResult() {
-        if (!currentResultCursorIsValid()) {
-            findNextValidResultCursor();
-        }
-        if (currentResultCursorIsValid()) {
+    private void findNextResult() throws RyaDAOException {
+        while (!currentBindingSetIteratorIsValid()) {
+            if (!currentResultCursorIsValid()) {
+                findNextValidResultCursor();
+                if (!currentResultCursorIsValid()) {
+                    return;
+                }
+            }
             // convert to Rya Statement
             final Document queryResult = resultsIterator.next();
             final DBObject dbo = (DBObject) JSON.parse(queryResult.toJson());
             currentStatement = strategy.deserializeDBObject(dbo);
-            currentBindingSetIterator = currentBindingSetCollection.iterator();
+            currentBindingSetIterator = currentBatch.getBindingSets(queryResult).iterator();
         }
     }
 
-    private void findNextValidResultCursor() {
-        while (queryIterator.hasNext()){
-            final DBObject currentQuery = queryIterator.next();
-            currentBindingSetCollection = rangeMap.get(currentQuery);
-            // Executing redact aggregation to only return documents the user
-            // has access to.
-            final List<Document> pipeline = new ArrayList<>();
-            pipeline.add(new Document("$match", currentQuery));
-            pipeline.addAll(AggregationUtil.createRedactPipeline(auths));
-            log.debug(pipeline);
-
-            final AggregateIterable<Document> aggIter = coll.aggregate(pipeline);
-            aggIter.batchSize(1000);
-            resultsIterator = aggIter.iterator();
+    private void findNextValidResultCursor() throws RyaDAOException {
+        while (true) {
+            // keep the next batches running while this one is read
+            while (pendingBatches.size() < threads && batchIterator.hasNext() && !executor.isShutdown()) {
+                final QueryBatch batch = batchIterator.next();
+                batch.start(executor);
+                pendingBatches.add(batch);
+            }
+            if (!batchIterator.hasNext()) {
+                // every batch has been started, so let the threads exit once they're done
+                executor.shutdown();
+            }
+            closeCursor();
+            currentBatch = pendingBatches.poll();
+            if (currentBatch == null) {
+                resultsIterator = null;
+                return;
+            }
+            try {
+                resultsIterator = currentBatch.getCursor();
+            } catch (final CancellationException e) {
+                resultsIterator = null;
+                return;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RyaDAOException(e);
+            } catch (final ExecutionException e) {
+                throw new RyaDAOException(e.getCause());
+            }
             if (resultsIterator.hasNext()) {
-                break;
+                return;
             }
         }
     }
@@ -127,14 +217,75 @@ public class RyaStatementBindingSetCursorIterator implements CloseableIteration<
         return (resultsIterator != null) && resultsIterator.hasNext();
     }
 
+    /**
+     * Groups the queries by the fields they match, then splits each group
+     * into batches.
+     */
+    private List<QueryBatch> createBatches(final int batchSize) {
+        final Map<List<String>, List<DBObject>> queriesByFields = new LinkedHashMap<>();
+        for (final DBObject query : rangeMap.keySet()) {
+            final List<String> fields = new ArrayList<>(new TreeSet<>(query.keySet()));
+            List<DBObject> queries = queriesByFields.get(fields);
+            if (queries == null) {
+                queries = new ArrayList<>();
+                queriesByFields.put(fields, queries);
+            }
+            queries.add(query);
+        }
+        final List<QueryBatch> batches = new ArrayList<>();
+        for (final Entry<List<String>, List<DBObject>> group : queriesByFields.entrySet()) {
+            for (final List<DBObject> queries : Lists.partition(group.getValue(), batchSize)) {
+                batches.add(new QueryBatch(group.getKey(), queries));
+            }
+        }
+        return batches;
+    }
 
     public void setMaxResults(final Long maxResults) {
         this.maxResults = maxResults;
     }
 
+    /**
+     * @param queryContext the context of the query this iterator belongs to. The running batches
+     *        are cancelled as soon as the query is cancelled or times out.
+     */
+    public void setQueryContext(final QueryContext queryContext) {
+        this.queryContext = queryContext;
+        if (queryContext != null) {
+            queryContext.onCancel(cancelHandler);
+        }
+    }
+
+    private void checkCancelled() throws RyaDAOException {
+        if (queryContext != null && queryContext.isCancelled()) {
+            throw new RyaDAOException(new QueryInterruptedException("Query " + queryContext.getQueryId() + " was cancelled or timed out"));
+        }
+    }
+
+    private void cancelBatches() {
+        final QueryBatch current = currentBatch;
+        if (current != null) {
+            current.cancel();
+        }
+        QueryBatch batch;
+        while ((batch = pendingBatches.poll()) != null) {
+            batch.cancel();
+        }
+        executor.shutdownNow();
+    }
+
+    private void closeCursor() {
+        if (resultsIterator != null) {
+            resultsIterator.close();
+        }
+    }
+
     @Override
     public void close() throws RyaDAOException {
-        // TODO don't know what to do here
+        cancelBatches();
+        if (queryContext != null) {
+            queryContext.release(cancelHandler);
+        }
     }
 
     @Override
@@ -142,4 +293,137 @@ public class RyaStatementBindingSetCursorIterator implements CloseableIteration<
         next();
     }
 
+    /**
+     * Queries that match the same fields, run as one aggregation.
+     */
+    private class QueryBatch implements Callable<MongoCursor<Document>> {
+        private final List<String> fields;
+        private final List<DBObject> queries;
+        private final Map<List<Object>, Collection<BindingSet>> bindingSets = new HashMap<>();
+        private Future<MongoCursor<Document>> result;
+        private MongoCursor<Document> cursor;
+        private boolean cancelled = false;
+
+        public QueryBatch(final List<String> fields, final List<DBObject> queries) {
+            this.fields = fields;
+            this.queries = queries;
+            for (final DBObject query : queries) {
+                bindingSets.put(getKey(query.toMap()), rangeMap.get(query));
+            }
+        }
+
+        private List<Object> getKey(final Map<?, ?> values) {
+            final List<Object> key = new ArrayList<>(fields.size());
+            for (final String field : fields) {
+                key.add(values.get(field));
+            }
+            return key;
+        }
+
+        /**
+         * Runs the batch's query on an executor.
+         */
+        public void start(final ExecutorService executor) {
+            result = executor.submit(this);
+        }
+
+        /**
+         * @return The cursor over the statements the batch found, once its
+         *   first results have been fetched.
+         */
+        public MongoCursor<Document> getCursor() throws InterruptedException, ExecutionException {
+            return result.get();
+        }
+
+        /**
+         * Stops the batch's query, and closes its cursor now if it has one or
+         * as soon as it's opened otherwise.
+         */
+        public void cancel() {
+            result.cancel(true);
+            synchronized (this) {
+                cancelled = true;
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+
+        /**
+         * @param result - A statement the batch found.
+         * @return The binding sets of the query the statement matched.
+         */
+        public Collection<BindingSet> getBindingSets(final Document result) {
+            final Collection<BindingSet> matched = bindingSets.get(getKey(result));
+            return matched == null ? Collections.<BindingSet>emptyList() : matched;
+        }
+
+        /**
+         * @return A query that matches any of the batch's queries.
+         */
+        private Document getQuery() {
+            if (queries.size() == 1) {
+                return new Document(queries.get(0).toMap());
+            }
+            // Use $in when all the queries have the same value for every field but one
+            String varying = null;
+            for (final String field : fields) {
+                final Object value = queries.get(0).get(field);
+                for (final DBObject query : queries) {
+                    if (!value.equals(query.get(field))) {
+                        if (varying != null) {
+                            final List<Document> or = new ArrayList<>();
+                            for (final DBObject q : queries) {
+                                or.add(new Document(q.toMap()));
+                            }
+                            return new Document("$or", or);
+                        }
+                        varying = field;
+                        break;
+                    }
+                }
+            }
+            if (varying == null) {
+                return new Document(queries.get(0).toMap());
+            }
+            final Document query = new Document(queries.get(0).toMap());
+            final List<Object> values = new ArrayList<>();
+            for (final DBObject q : queries) {
+                values.add(q.get(varying));
+            }
+            query.put(varying, new Document("$in", values));
+            return query;
+        }
+
+        @Override
+        public MongoCursor<Document> call() {
+            // Executing redact aggregation to only return documents the user
+            // has access to.
+            final List<Document> pipeline = new ArrayList<>();
+            pipeline.add(new Document("$match", getQuery()));
+            pipeline.addAll(AggregationUtil.createRedactPipeline(auths));
+            log.debug(pipeline);
+
+            final AggregateIterable<Document> aggIter = coll.aggregate(pipeline);
+            aggIter.batchSize(1000);
+            final MongoCursor<Document> cursor = aggIter.iterator();
+            try {
+                // fetch the first results on this thread
+                cursor.hasNext();
+            } catch (final RuntimeException e) {
+                // also thrown when the fetch is interrupted by a cancellation
+                cursor.close();
+                throw e;
+            }
+            synchronized (this) {
+                // nobody will read the cursor of a cancelled batch
+                if (cancelled) {
+                    cursor.close();
+                    throw new CancellationException();
+                }
+                this.cursor = cursor;
+            }
+            return cursor;
+        }
+    }
 }
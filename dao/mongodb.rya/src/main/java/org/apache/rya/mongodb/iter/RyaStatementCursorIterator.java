@@ -18,6 +18,7 @@
  */
 package org.apache.rya.mongodb.iter;
 
+import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -27,13 +28,16 @@ import org.apache.accumulo.core.security.Authorizations;
 import org.apache.log4j.Logger;
 import org.apache.rya.api.domain.RyaStatement;
 import org.apache.rya.api.persist.RyaDAOException;
+import org.apache.rya.api.persist.query.QueryContext;
 import org.apache.rya.mongodb.dao.MongoDBStorageStrategy;
 import org.apache.rya.mongodb.document.operators.aggregation.AggregationUtil;
 import org.bson.Document;
+import org.openrdf.query.QueryInterruptedException;
 
 import com.mongodb.DBObject;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.util.JSON;
 
 import info.aduna.iteration.CloseableIteration;
@@ -43,10 +47,12 @@ public class RyaStatementCursorIterator implements CloseableIteration<RyaStateme
 
     private final MongoCollection coll;
     private final Iterator<DBObject> queryIterator;
-    private Iterator<Document> resultsIterator;
+    private MongoCursor<Document> resultsIterator;
     private final MongoDBStorageStrategy<RyaStatement> strategy;
     private Long maxResults;
     private final Authorizations auths;
+    private QueryContext queryContext;
+    private final Closeable cancelHandler = this::closeCursor;
 
     public RyaStatementCursorIterator(final MongoCollection<Document> collection, final Set<DBObject> queries,
             final MongoDBStorageStrategy<RyaStatement> strategy, final Authorizations auths) {
@@ -57,15 +63,20 @@ public class RyaStatementCursorIterator implements CloseableIteration<RyaStateme
     }
 
     @Override
-    public boolean hasNext() {
+    public boolean hasNext() throws RyaDAOException {
+        checkCancelled();
         if (!currentCursorIsValid()) {
             findNextValidCursor();
         }
-        return currentCursorIsValid();
+        final boolean hasNext = currentCursorIsValid();
+        //a cursor closed by a cancellation looks exhausted
+        checkCancelled();
+        return hasNext;
     }
 
     @Override
-    public RyaStatement next() {
+    public RyaStatement next() throws RyaDAOException {
+        checkCancelled();
         if (!currentCursorIsValid()) {
             findNextValidCursor();
         }
@@ -92,6 +103,7 @@ public class RyaStatementCursorIterator implements CloseableIteration<RyaStateme
             final AggregateIterable<Document> output = coll.aggregate(pipeline);
             output.batchSize(1000);
 
+            closeCursor();
             resultsIterator = output.iterator();
             if (resultsIterator.hasNext()) {
                 break;
@@ -108,9 +120,35 @@ public class RyaStatementCursorIterator implements CloseableIteration<RyaStateme
         this.maxResults = maxResults;
     }
 
+    /**
+     * @param queryContext the context of the query this iterator belongs to. The open cursor is
+     *        closed as soon as the query is cancelled or times out.
+     */
+    public void setQueryContext(final QueryContext queryContext) {
+        this.queryContext = queryContext;
+        if (queryContext != null) {
+            queryContext.onCancel(cancelHandler);
+        }
+    }
+
+    private void checkCancelled() throws RyaDAOException {
+        if (queryContext != null && queryContext.isCancelled()) {
+            throw new RyaDAOException(new QueryInterruptedException("Query " + queryContext.getQueryId() + " was cancelled or timed out"));
+        }
+    }
+
+    private void closeCursor() {
+        if (resultsIterator != null) {
+            resultsIterator.close();
+        }
+    }
+
     @Override
     public void close() throws RyaDAOException {
-        // TODO don't know what to do here
+        closeCursor();
+        if (queryContext != null) {
+            queryContext.release(cancelHandler);
+        }
     }
 
     @Override
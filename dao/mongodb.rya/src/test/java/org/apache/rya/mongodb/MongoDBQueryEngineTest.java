@@ -29,6 +29,7 @@ import org.apache.rya.api.RdfCloudTripleStoreUtils;
 import org.apache.rya.api.domain.RyaStatement;
 import org.apache.rya.api.domain.RyaStatement.RyaStatementBuilder;
 import org.apache.rya.api.domain.RyaURI;
+import org.apache.rya.api.persist.RyaDAOException;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -117,4 +118,39 @@ public class MongoDBQueryEngineTest extends MongoRyaTestBase {
         final Collection<Entry<RyaStatement, BindingSet>> stmts2 = Lists.newArrayList(e1, e2);
         Assert.assertEquals(4, size(engine.queryWithBindingSet(stmts2, configuration)));
 }
+
+    @Test
+    public void batchedBindingSetsQuery() throws Exception {
+        configuration.setQueryBatchSize(2);
+        configuration.setQueryBatchThreads(2);
+
+        final Collection<Entry<RyaStatement, BindingSet>> stmts = Lists.newArrayList();
+        for (final String object : new String[] { "u:b", "u:c", "u:d" }) {
+            final MapBindingSet bs = new MapBindingSet();
+            bs.addBinding("o", new URIImpl(object));
+            stmts.add(new RdfCloudTripleStoreUtils.CustomEntry<RyaStatement, BindingSet>(getStatement(null, null, object), bs));
+        }
+        final MapBindingSet bs = new MapBindingSet();
+        bs.addBinding("s", new URIImpl("u:a"));
+        stmts.add(new RdfCloudTripleStoreUtils.CustomEntry<RyaStatement, BindingSet>(getStatement("u:a", "u:tt", null), bs));
+
+        // Each statement must only be paired with the binding sets of the queries it matches
+        int objectMatches = 0;
+        int subjectMatches = 0;
+        final CloseableIteration<? extends Entry<RyaStatement, BindingSet>, RyaDAOException> iter =
+                engine.queryWithBindingSet(stmts, configuration);
+        while (iter.hasNext()) {
+            final Entry<RyaStatement, BindingSet> result = iter.next();
+            if (result.getValue().hasBinding("o")) {
+                Assert.assertEquals(result.getValue().getValue("o").stringValue(), result.getKey().getObject().getData());
+                objectMatches++;
+            } else {
+                Assert.assertEquals("u:a", result.getKey().getSubject().getData());
+                subjectMatches++;
+            }
+        }
+        iter.close();
+        Assert.assertEquals(2, objectMatches);
+        Assert.assertEquals(2, subjectMatches);
+    }
 }
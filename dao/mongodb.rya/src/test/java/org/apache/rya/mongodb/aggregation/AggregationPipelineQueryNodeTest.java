@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.mongodb.aggregation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.domain.RyaStatement.RyaStatementBuilder;
+import org.apache.rya.api.domain.RyaType;
+import org.apache.rya.api.domain.RyaURI;
+import org.apache.rya.mongodb.MongoConnectorFactory;
+import org.apache.rya.mongodb.MongoDBRdfConfiguration;
+import org.apache.rya.mongodb.MongoDBRyaDAO;
+import org.apache.rya.mongodb.MongoRyaTestBase;
+import org.apache.rya.mongodb.document.visibility.DocumentVisibility;
+import org.bson.Document;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.algebra.Compare;
+import org.openrdf.query.algebra.Compare.CompareOp;
+import org.openrdf.query.algebra.Filter;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.QueryRoot;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.ValueConstant;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.query.impl.MapBindingSet;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.mongodb.client.MongoCollection;
+
+import info.aduna.iteration.CloseableIteration;
+
+public class AggregationPipelineQueryNodeTest extends MongoRyaTestBase {
+    private MongoDBRdfConfiguration configuration;
+    private MongoCollection<Document> collection;
+
+    @Before
+    public void setUp() throws Exception {
+        final Configuration conf = new Configuration();
+        conf.set(MongoDBRdfConfiguration.MONGO_DB_NAME, getDbName());
+        conf.set(MongoDBRdfConfiguration.MONGO_COLLECTION_PREFIX, "rya_");
+        conf.set(RdfCloudTripleStoreConfiguration.CONF_TBL_PREFIX, "rya_");
+        configuration = new MongoDBRdfConfiguration(conf);
+        final int port = mongoClient.getServerAddressList().get(0).getPort();
+        configuration.set(MongoDBRdfConfiguration.MONGO_INSTANCE_PORT, Integer.toString(port));
+        MongoConnectorFactory.closeMongoClient();
+        configuration.setMongoClient(mongoClient);
+        collection = mongoClient.getDatabase(getDbName()).getCollection(configuration.getTriplesCollectionName());
+
+        final MongoDBRyaDAO dao = new MongoDBRyaDAO(configuration, mongoClient);
+        dao.add(getStatement("u:alice", "u:knows", new RyaURI("u:bob"), ""));
+        dao.add(getStatement("u:bob", "u:knows", new RyaURI("u:carol"), ""));
+        dao.add(getStatement("u:alice", "u:name", new RyaType("Alice"), ""));
+        dao.add(getStatement("u:bob", "u:name", new RyaType("Bob"), ""));
+        dao.add(getStatement("u:carol", "u:name", new RyaType("Carol"), "A"));
+        // A literal that looks like a subject must not join with it
+        dao.add(getStatement("u:alice", "u:knows", new RyaType("u:carol"), ""));
+    }
+
+    private static RyaStatement getStatement(final String s, final String p, final RyaType o, final String visibility) {
+        final RyaStatementBuilder builder = new RyaStatementBuilder();
+        builder.setSubject(new RyaURI(s));
+        builder.setPredicate(new RyaURI(p));
+        builder.setObject(o);
+        builder.setColumnVisibility(new DocumentVisibility(visibility).flatten());
+        return builder.build();
+    }
+
+    private static StatementPattern knows() {
+        return new StatementPattern(new Var("x"), new Var("p", new URIImpl("u:knows")), new Var("y"));
+    }
+
+    private static StatementPattern name() {
+        return new StatementPattern(new Var("y"), new Var("q", new URIImpl("u:name")), new Var("n"));
+    }
+
+    private static Set<String> evaluate(final AggregationPipelineQueryNode node, final BindingSet bindings) throws Exception {
+        final Set<String> results = new HashSet<>();
+        final CloseableIteration<BindingSet, ?> it = node.evaluate(bindings);
+        while (it.hasNext()) {
+            final BindingSet solution = it.next();
+            results.add(solution.getValue("x").stringValue() + " " + solution.getValue("y").stringValue()
+                    + " " + solution.getValue("n"));
+        }
+        it.close();
+        return results;
+    }
+
+    @Test
+    public void join() throws Exception {
+        final AggregationPipelineQueryNode node = new AggregationPipelineQueryNode(collection,
+                Lists.newArrayList(knows(), name()), new Authorizations("A"));
+        assertEquals(Sets.newHashSet("u:alice u:bob \"Bob\"", "u:bob u:carol \"Carol\""),
+                evaluate(node, new EmptyBindingSet()));
+    }
+
+    @Test
+    public void joinWithBindings() throws Exception {
+        final AggregationPipelineQueryNode node = new AggregationPipelineQueryNode(collection,
+                Lists.newArrayList(knows(), name()), new Authorizations("A"));
+        final MapBindingSet bindings = new MapBindingSet();
+        bindings.addBinding("x", new URIImpl("u:bob"));
+        assertEquals(Sets.newHashSet("u:bob u:carol \"Carol\""), evaluate(node, bindings));
+    }
+
+    @Test
+    public void visibility() throws Exception {
+        final AggregationPipelineQueryNode node = new AggregationPipelineQueryNode(collection,
+                Lists.newArrayList(knows(), name()), new Authorizations("B"));
+        assertEquals(Sets.newHashSet("u:alice u:bob \"Bob\""), evaluate(node, new EmptyBindingSet()));
+    }
+
+    @Test
+    public void filter() throws Exception {
+        final AggregationPipelineQueryNode node = new AggregationPipelineQueryNode(collection,
+                Lists.newArrayList(knows(), name()), new Authorizations("A"));
+        assertTrue(node.addFilter(new Compare(new Var("y"), new ValueConstant(new URIImpl("u:carol")), CompareOp.NE)));
+        assertTrue(node.addFilter(new Compare(new Var("n"), new ValueConstant(new LiteralImpl("Bob")), CompareOp.EQ)));
+        assertEquals(Sets.newHashSet("u:alice u:bob \"Bob\""), evaluate(node, new EmptyBindingSet()));
+    }
+
+    @Test
+    public void filterNotTranslated() throws Exception {
+        final AggregationPipelineQueryNode node = new AggregationPipelineQueryNode(collection,
+                Lists.newArrayList(knows(), name()), new Authorizations("A"));
+        // SPARQL compares the values of literals, which the pipeline can't
+        assertFalse(node.addFilter(new Compare(new Var("n"), new ValueConstant(new LiteralImpl("C")), CompareOp.LT)));
+        // Not one of the node's variables
+        assertFalse(node.addFilter(new Compare(new Var("z"), new ValueConstant(new URIImpl("u:carol")), CompareOp.EQ)));
+        assertTrue(node.getFilters().isEmpty());
+    }
+
+    @Test
+    public void optimizer() throws Exception {
+        final Filter filter = new Filter(new Join(knows(), name()),
+                new Compare(new Var("x"), new ValueConstant(new URIImpl("u:alice")), CompareOp.EQ));
+        final TupleExpr query = new QueryRoot(filter);
+
+        final AggregationPipelineQueryOptimizer optimizer = new AggregationPipelineQueryOptimizer();
+        optimizer.setConf(configuration);
+        optimizer.optimize(query, null, new EmptyBindingSet());
+
+        final TupleExpr optimized = ((QueryRoot) query).getArg();
+        assertTrue(optimized instanceof AggregationPipelineQueryNode);
+        final AggregationPipelineQueryNode node = (AggregationPipelineQueryNode) optimized;
+        assertEquals(2, node.getPatterns().size());
+        assertEquals(1, node.getFilters().size());
+        assertEquals(Sets.newHashSet("u:alice u:bob \"Bob\""), evaluate(node, new EmptyBindingSet()));
+    }
+
+    @Test
+    public void optimizerSkipsInference() throws Exception {
+        final Join join = new Join(knows(), name());
+        final TupleExpr query = new QueryRoot(join);
+
+        final MongoDBRdfConfiguration inferConf = configuration.clone();
+        inferConf.setInfer(true);
+        final AggregationPipelineQueryOptimizer optimizer = new AggregationPipelineQueryOptimizer();
+        optimizer.setConf(inferConf);
+        optimizer.optimize(query, null, new EmptyBindingSet());
+
+        // The inference visitors still need to see the statement patterns
+        assertSame(join, ((QueryRoot) query).getArg());
+    }
+
+    @Test
+    public void pipeline() {
+        final AggregationPipelineQueryNode node = new AggregationPipelineQueryNode(collection,
+                Lists.newArrayList(name(), knows()), new Authorizations("A"));
+        final List<Document> pipeline = node.getPipeline(new EmptyBindingSet());
+        assertEquals(new Document("$match", new Document("predicate", "u:name")), pipeline.get(0));
+
+        // ?y is the subject of the first pattern and the object of the second one
+        Document lookup = null;
+        for (final Document stage : pipeline) {
+            if (stage.containsKey("$lookup")) {
+                lookup = (Document) stage.get("$lookup");
+            }
+        }
+        assertEquals("v0", lookup.get("localField"));
+        assertEquals("object", lookup.get("foreignField"));
+        assertEquals(configuration.getTriplesCollectionName(), lookup.get("from"));
+    }
+}
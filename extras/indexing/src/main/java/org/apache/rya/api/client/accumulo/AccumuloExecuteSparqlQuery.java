@@ -19,6 +19,7 @@
 package org.apache.rya.api.client.accumulo;
 
 import static java.util.Objects.requireNonNull;
+import static org.apache.rya.api.RdfCloudTripleStoreConstants.VALUE_FACTORY;
 
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
@@ -30,6 +31,7 @@ import org.apache.accumulo.core.client.AccumuloSecurityException;
 import org.apache.accumulo.core.client.Connector;
 import org.apache.log4j.Logger;
 import org.apache.rya.accumulo.AccumuloRdfConfiguration;
+import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
 import org.apache.rya.api.client.ExecuteSparqlQuery;
 import org.apache.rya.api.client.InstanceDoesNotExistException;
 import org.apache.rya.api.client.InstanceExists;
@@ -79,6 +81,17 @@ public class AccumuloExecuteSparqlQuery extends AccumuloCommand implements Execu
     @Override
     public String executeSparqlQuery(final String ryaInstanceName, final String sparqlQuery)
             throws InstanceDoesNotExistException, RyaClientException {
+        return executeSparqlQuery(ryaInstanceName, sparqlQuery, null);
+    }
+
+    @Override
+    public String executeSparqlQuery(final String ryaInstanceName, final String sparqlQuery, final long timeoutMillis)
+            throws InstanceDoesNotExistException, RyaClientException {
+        return executeSparqlQuery(ryaInstanceName, sparqlQuery, Long.valueOf(timeoutMillis));
+    }
+
+    private String executeSparqlQuery(final String ryaInstanceName, final String sparqlQuery, final Long timeoutMillis)
+            throws InstanceDoesNotExistException, RyaClientException {
         requireNonNull(ryaInstanceName);
         requireNonNull(sparqlQuery);
 
@@ -102,6 +115,9 @@ public class AccumuloExecuteSparqlQuery extends AccumuloCommand implements Execu
             // Execute the query.
             final long start = System.currentTimeMillis();
             final TupleQuery tupleQuery = sailRepoConn.prepareTupleQuery(QueryLanguage.SPARQL, sparqlQuery);
+            if(timeoutMillis != null) {
+                tupleQuery.setBinding(RdfCloudTripleStoreConfiguration.CONF_QUERY_TIMEOUT, VALUE_FACTORY.createLiteral(timeoutMillis.longValue()));
+            }
             final ByteArrayOutputStream baos = new ByteArrayOutputStream();
             final CountingSPARQLResultsCSVWriter handler = new CountingSPARQLResultsCSVWriter(baos);
             tupleQuery.evaluate(handler);
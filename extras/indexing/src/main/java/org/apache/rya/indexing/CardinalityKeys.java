@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.indexing;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.rya.api.RdfCloudTripleStoreConstants.DELIM;
+
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.rya.api.RdfCloudTripleStoreConstants;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.persist.RdfEvalStatsDAO.CARDINALITY_OF;
+import org.openrdf.model.Value;
+
+/**
+ * Builds the keys cardinality statistics are counted under. A key is the
+ * values of the statement's parts that a {@link CARDINALITY_OF} covers, in
+ * subject, predicate, object order, separated by
+ * {@link RdfCloudTripleStoreConstants#DELIM} -- the same keys that
+ * {@code AccumuloRdfCountTool} and the prospector write, so the counts can be
+ * read back the way {@code AccumuloRdfEvalStatsDAO} reads them.
+ */
+public final class CardinalityKeys {
+
+    private CardinalityKeys() { }
+
+    /**
+     * Get the key every kind of cardinality of a statement is counted under.
+     *
+     * @param statement - The statement being counted. (not null)
+     * @return The key for each {@link CARDINALITY_OF}.
+     */
+    public static Map<CARDINALITY_OF, String> getKeys(final RyaStatement statement) {
+        requireNonNull(statement);
+        final String subject = statement.getSubject().getData();
+        final String predicate = statement.getPredicate().getData();
+        final String object = statement.getObject().getData();
+
+        final Map<CARDINALITY_OF, String> keys = new EnumMap<>(CARDINALITY_OF.class);
+        keys.put(CARDINALITY_OF.SUBJECT, subject);
+        keys.put(CARDINALITY_OF.PREDICATE, predicate);
+        keys.put(CARDINALITY_OF.OBJECT, object);
+        keys.put(CARDINALITY_OF.SUBJECTPREDICATE, subject + DELIM + predicate);
+        keys.put(CARDINALITY_OF.SUBJECTOBJECT, subject + DELIM + object);
+        keys.put(CARDINALITY_OF.PREDICATEOBJECT, predicate + DELIM + object);
+        return keys;
+    }
+
+    /**
+     * Get the key for the values of a statement pattern's bound parts.
+     *
+     * @param values - The bound values, in subject, predicate, object order. (not null, not empty)
+     * @return The key those values are counted under.
+     */
+    public static String getKey(final List<Value> values) {
+        requireNonNull(values);
+        final Iterator<Value> it = values.iterator();
+        final StringBuilder key = new StringBuilder(it.next().stringValue());
+        while (it.hasNext()) {
+            key.append(DELIM).append(it.next().stringValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Get the name of the eval table column family a kind of cardinality is
+     * stored in.
+     *
+     * @param card - The kind of cardinality. (not null)
+     * @return The column family name.
+     */
+    public static String getColumnFamily(final CARDINALITY_OF card) {
+        requireNonNull(card);
+        switch (card) {
+            case SUBJECT:
+                return RdfCloudTripleStoreConstants.SUBJECT_CF;
+            case PREDICATE:
+                return RdfCloudTripleStoreConstants.PRED_CF;
+            case OBJECT:
+                return RdfCloudTripleStoreConstants.OBJ_CF;
+            case SUBJECTPREDICATE:
+                return RdfCloudTripleStoreConstants.SUBJECTPRED_CF;
+            case SUBJECTOBJECT:
+                return RdfCloudTripleStoreConstants.SUBJECTOBJECT_CF;
+            case PREDICATEOBJECT:
+                return RdfCloudTripleStoreConstants.PREDOBJECT_CF;
+            default:
+                throw new IllegalArgumentException("Unknown cardinality: " + card);
+        }
+    }
+}
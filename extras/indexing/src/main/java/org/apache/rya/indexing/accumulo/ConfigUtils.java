@@ -52,14 +52,17 @@ import org.apache.rya.indexing.accumulo.entity.EntityOptimizer;
 import org.apache.rya.indexing.accumulo.freetext.AccumuloFreeTextIndexer;
 import org.apache.rya.indexing.accumulo.freetext.LuceneTokenizer;
 import org.apache.rya.indexing.accumulo.freetext.Tokenizer;
+import org.apache.rya.indexing.accumulo.statistics.AccumuloStatisticsIndexer;
 import org.apache.rya.indexing.accumulo.temporal.AccumuloTemporalIndexer;
 import org.apache.rya.indexing.entity.EntityIndexOptimizer;
 import org.apache.rya.indexing.entity.update.mongo.MongoEntityIndexer;
 import org.apache.rya.indexing.external.PrecomputedJoinIndexer;
 import org.apache.rya.indexing.mongodb.freetext.MongoFreeTextIndexer;
+import org.apache.rya.indexing.mongodb.statistics.MongoStatisticsIndexer;
 import org.apache.rya.indexing.mongodb.temporal.MongoTemporalIndexer;
 import org.apache.rya.indexing.pcj.matching.PCJOptimizer;
 import org.apache.rya.indexing.statement.metadata.matching.StatementMetadataOptimizer;
+import org.apache.rya.mongodb.aggregation.AggregationPipelineQueryOptimizer;
 import org.openrdf.model.URI;
 import org.openrdf.model.impl.URIImpl;
 
@@ -119,6 +122,8 @@ public class ConfigUtils {
     public static final String USE_FREETEXT = "sc.use_freetext";
     public static final String USE_TEMPORAL = "sc.use_temporal";
     public static final String USE_ENTITY = "sc.use_entity";
+    public static final String USE_STATISTICS = "sc.use_statistics";
+    public static final String USE_AGGREGATION_PIPELINE = "sc.use_aggregation_pipeline";
     public static final String USE_PCJ = "sc.use_pcj";
     public static final String USE_OPTIMAL_PCJ = "sc.use.optimal.pcj";
     public static final String USE_PCJ_UPDATER_INDEX = "sc.use.updater";
@@ -416,6 +421,14 @@ public class ConfigUtils {
         return conf.getBoolean(USE_ENTITY, false);
     }
 
+    public static boolean getUseStatistics(final Configuration conf) {
+        return conf.getBoolean(USE_STATISTICS, false);
+    }
+
+    public static boolean getUseAggregationPipeline(final Configuration conf) {
+        return conf.getBoolean(USE_AGGREGATION_PIPELINE, false);
+    }
+
     public static boolean getUsePCJ(final Configuration conf) {
         return conf.getBoolean(USE_PCJ, false);
     }
@@ -466,6 +479,14 @@ public class ConfigUtils {
                 indexList.add(MongoTemporalIndexer.class.getName());
                 useFilterIndex = true;
             }
+
+            if (getUseStatistics(conf)) {
+                indexList.add(MongoStatisticsIndexer.class.getName());
+            }
+
+            if (getUseAggregationPipeline(conf)) {
+                optimizers.add(AggregationPipelineQueryOptimizer.class.getName());
+            }
         } else {
             if (getUsePCJ(conf) || getUseOptimalPCJ(conf)) {
                 conf.setPcjOptimizer(PCJOptimizer.class);
@@ -489,6 +510,10 @@ public class ConfigUtils {
                 indexList.add(EntityCentricIndex.class.getName());
                 optimizers.add(EntityOptimizer.class.getName());
             }
+
+            if (getUseStatistics(conf)) {
+                indexList.add(AccumuloStatisticsIndexer.class.getName());
+            }
         }
 
         if (useFilterIndex) {
@@ -65,6 +65,7 @@ public class EntityLocalityGroupSetter {
             e.printStackTrace();
         }
         bs.setRanges(Collections.singleton(Range.prefix(new Text("predicate" + "\u0000"))));
+        bs.fetchColumnFamily(new Text("count"));
         final Iterator<Entry<Key,Value>> iter = bs.iterator();
         
         return new Iterator<String>() {
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.indexing.accumulo.statistics;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.rya.api.RdfCloudTripleStoreConstants.EMPTY_TEXT;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.BatchDeleter;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.MultiTableBatchWriter;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.client.TableExistsException;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.admin.TableOperations;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.Combiner;
+import org.apache.accumulo.core.iterators.IteratorUtil.IteratorScope;
+import org.apache.accumulo.core.iterators.LongCombiner;
+import org.apache.accumulo.core.iterators.user.SummingCombiner;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.log4j.Logger;
+import org.apache.rya.accumulo.AccumuloRdfConfiguration;
+import org.apache.rya.accumulo.experimental.AbstractAccumuloIndexer;
+import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
+import org.apache.rya.api.RdfCloudTripleStoreConstants;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.domain.RyaURI;
+import org.apache.rya.api.persist.RdfEvalStatsDAO.CARDINALITY_OF;
+import org.apache.rya.indexing.CardinalityKeys;
+import org.apache.rya.indexing.accumulo.ConfigUtils;
+import org.openrdf.model.URI;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Keeps the cardinality statistics in the eval table up to date as statements
+ * are added and deleted, instead of only when {@code AccumuloRdfCountTool} or
+ * the prospector is rerun. Every stored statement adds 1, and every deleted
+ * statement adds -1, to the count of its subject, predicate, object, and each
+ * pair of them. The table is configured with a {@link SummingCombiner} over
+ * those columns, so Accumulo adds the deltas up and
+ * {@code AccumuloRdfEvalStatsDAO} reads the current total.
+ * <p>
+ * Counts are written with the statement's visibility, so a user only sees
+ * counts of statements they can read. Since the combiner adds to whatever is
+ * already in the table, this indexer replaces {@code AccumuloRdfCountTool}:
+ * running that tool against an eval table this indexer maintains counts every
+ * statement twice. Storing a statement that already exists also counts it
+ * twice, since the indexer doesn't read the table before writing.
+ * <p>
+ * Dropping a graph deletes every count kept for that graph, which is the
+ * column qualifier of the counts.
+ */
+public class AccumuloStatisticsIndexer extends AbstractAccumuloIndexer {
+    private static final Logger logger = Logger.getLogger(AccumuloStatisticsIndexer.class);
+
+    /**
+     * The name of the combiner attached to the eval table.
+     */
+    public static final String COMBINER_NAME = "statisticsSum";
+    private static final int COMBINER_PRIORITY = 10;
+
+    private static final Value ADD = new Value("1".getBytes(StandardCharsets.UTF_8));
+    private static final Value REMOVE = new Value("-1".getBytes(StandardCharsets.UTF_8));
+
+    private AccumuloRdfConfiguration conf;
+    private BatchWriter writer;
+    private boolean isInit = false;
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    //initialization occurs in setConf because index is created using reflection
+    @Override
+    public void setConf(final Configuration conf) {
+        if (conf instanceof AccumuloRdfConfiguration) {
+            this.conf = (AccumuloRdfConfiguration) conf;
+        } else {
+            this.conf = new AccumuloRdfConfiguration(conf);
+        }
+        if (!isInit) {
+            try {
+                ConfigUtils.createTableIfNotExists(this.conf, getTableName());
+                attachCombiner(ConfigUtils.getConnector(this.conf), getTableName());
+                isInit = true;
+            } catch (final AccumuloException | AccumuloSecurityException | TableExistsException
+                    | TableNotFoundException e) {
+                logger.warn("Unable to initialize index.  Throwing Runtime Exception. ", e);
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Get the Accumulo table used by this index, which is the eval table.
+     * @return table used by instances of this index
+     */
+    @Override
+    public String getTableName() {
+        return getTableName(conf);
+    }
+
+    /**
+     * Get the Accumulo table that will be used by this index.
+     *
+     * @param conf - The Rya configuration that specifies which instance of Rya
+     *   the table name will be built for. (not null)
+     * @return table name guaranteed to be used by instances of this index
+     */
+    public static String getTableName(final Configuration conf) {
+        requireNonNull(conf);
+        return ConfigUtils.getTablePrefix(conf) + RdfCloudTripleStoreConstants.TBL_EVAL_SUFFIX;
+    }
+
+    /**
+     * Attach a {@link SummingCombiner} to the columns of a table that hold
+     * counts, unless it's already attached.
+     *
+     * @param connector - Connects to the Accumulo instance. (not null)
+     * @param tableName - The eval table. (not null)
+     */
+    public static void attachCombiner(final Connector connector, final String tableName)
+            throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+        requireNonNull(connector);
+        requireNonNull(tableName);
+        final TableOperations tops = connector.tableOperations();
+        if (tops.listIterators(tableName).containsKey(COMBINER_NAME)) {
+            return;
+        }
+        final IteratorSetting setting = new IteratorSetting(COMBINER_PRIORITY, COMBINER_NAME, SummingCombiner.class);
+        LongCombiner.setEncodingType(setting, LongCombiner.Type.STRING);
+        final List<IteratorSetting.Column> columns = new ArrayList<>();
+        for (final CARDINALITY_OF card : CARDINALITY_OF.values()) {
+            columns.add(new IteratorSetting.Column(CardinalityKeys.getColumnFamily(card)));
+        }
+        Combiner.setColumns(setting, columns);
+        logger.info("Attaching " + COMBINER_NAME + " to table: " + tableName);
+        tops.attachIterator(tableName, setting, EnumSet.allOf(IteratorScope.class));
+    }
+
+    @Override
+    public void setMultiTableBatchWriter(final MultiTableBatchWriter writer) throws IOException {
+        try {
+            this.writer = writer.getBatchWriter(getTableName());
+        } catch (final AccumuloException | AccumuloSecurityException | TableNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void storeStatement(final RyaStatement stmt) throws IOException {
+        write(stmt, ADD);
+    }
+
+    @Override
+    public void deleteStatement(final RyaStatement stmt) throws IOException {
+        write(stmt, REMOVE);
+    }
+
+    private void write(final RyaStatement stmt, final Value delta) throws IOException {
+        Preconditions.checkNotNull(writer, "BatchWriter not Set");
+        try {
+            writer.addMutations(createMutations(stmt, delta));
+        } catch (final MutationsRejectedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Create the mutations that change the counts for a statement.
+     *
+     * @param stmt - The statement being stored or deleted. (not null)
+     * @param delta - The amount to change each count by, as a decimal string. (not null)
+     * @return One mutation per count.
+     */
+    public static Collection<Mutation> createMutations(final RyaStatement stmt, final Value delta) {
+        requireNonNull(stmt);
+        requireNonNull(delta);
+        final Text cq = stmt.getContext() == null ? EMPTY_TEXT : new Text(stmt.getContext().getData());
+        final byte[] columnVisibility = stmt.getColumnVisibility();
+        final ColumnVisibility cv = columnVisibility == null ? new ColumnVisibility() : new ColumnVisibility(columnVisibility);
+
+        final List<Mutation> mutations = new ArrayList<>();
+        for (final Map.Entry<CARDINALITY_OF, String> key : CardinalityKeys.getKeys(stmt).entrySet()) {
+            final Mutation m = new Mutation(new Text(key.getValue()));
+            m.put(new Text(CardinalityKeys.getColumnFamily(key.getKey())), cq, cv, delta);
+            mutations.add(m);
+        }
+        return mutations;
+    }
+
+    @Override
+    public void dropGraph(final RyaURI... graphs) {
+        BatchDeleter deleter = null;
+        try {
+            // counts still buffered for the graphs are deleted with the rest
+            if (writer != null) {
+                writer.flush();
+            }
+            deleter = ConfigUtils.getConnector(conf).createBatchDeleter(getTableName(), conf.getAuthorizations(),
+                    conf.getNumThreads(), ConfigUtils.getWriterMaxMemory(conf), ConfigUtils.getWriterMaxLatency(conf),
+                    ConfigUtils.getWriterMaxWriteThreads(conf));
+            deleter.setRanges(Collections.singleton(new Range()));
+            for (final RyaURI graph : graphs) {
+                for (final CARDINALITY_OF card : CARDINALITY_OF.values()) {
+                    deleter.fetchColumn(new Text(CardinalityKeys.getColumnFamily(card)), new Text(graph.getData()));
+                }
+            }
+            deleter.delete();
+        } catch (final AccumuloException | AccumuloSecurityException | TableNotFoundException e) {
+            logger.error("Unable to delete the statistics of the dropped graphs", e);
+        } finally {
+            if (deleter != null) {
+                deleter.close();
+            }
+        }
+    }
+
+    @Override
+    public void init() {
+    }
+
+    @Override
+    public void setConnector(final Connector connector) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    // The eval table belongs to the DAO, which already purges and drops it.
+    @Override
+    public void purge(final RdfCloudTripleStoreConfiguration configuration) {
+    }
+
+    @Override
+    public void dropAndDestroy() {
+    }
+
+    @Override
+    public Set<URI> getIndexablePredicates() {
+        return null;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.indexing.mongodb.statistics;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+
+import org.apache.rya.api.persist.RdfDAOException;
+import org.apache.rya.api.persist.RdfEvalStatsDAO;
+import org.apache.rya.indexing.CardinalityKeys;
+import org.apache.rya.mongodb.MongoDBRdfConfiguration;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Value;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+
+/**
+ * Reads the cardinality statistics maintained by {@link MongoStatisticsIndexer}.
+ */
+public class MongoStatisticsEvalStatsDAO implements RdfEvalStatsDAO<MongoDBRdfConfiguration> {
+    private final MongoClient client;
+    private MongoDBRdfConfiguration conf;
+    private DBCollection collection;
+
+    /**
+     * Constructs an instance of {@link MongoStatisticsEvalStatsDAO}.
+     *
+     * @param client - Connects to the Mongo instance the statistics are in. (not null)
+     */
+    public MongoStatisticsEvalStatsDAO(final MongoClient client) {
+        this.client = requireNonNull(client);
+    }
+
+    @Override
+    public void init() throws RdfDAOException {
+        if (isInitialized()) {
+            throw new IllegalStateException("Already initialized");
+        }
+        requireNonNull(conf);
+        collection = client.getDB(conf.getMongoDBName())
+            .getCollection(MongoStatisticsIndexer.getCollectionName(conf));
+    }
+
+    @Override
+    public boolean isInitialized() throws RdfDAOException {
+        return collection != null;
+    }
+
+    @Override
+    public void destroy() throws RdfDAOException {
+        if (!isInitialized()) {
+            throw new IllegalStateException("Not initialized");
+        }
+        collection = null;
+    }
+
+    @Override
+    public double getCardinality(final MongoDBRdfConfiguration conf, final CARDINALITY_OF card, final List<Value> val) throws RdfDAOException {
+        return getCardinality(conf, card, val, null);
+    }
+
+    @Override
+    public double getCardinality(final MongoDBRdfConfiguration conf, final CARDINALITY_OF card, final List<Value> val,
+            final Resource context) throws RdfDAOException {
+        final String contextValue = context == null ? "" : context.stringValue();
+        final String id = MongoStatisticsIndexer.getId(card, CardinalityKeys.getKey(val), contextValue);
+        try {
+            final DBObject result = collection.findOne(new BasicDBObject(MongoStatisticsIndexer.ID, id));
+            if (result != null) {
+                return ((Number) result.get(MongoStatisticsIndexer.COUNT)).doubleValue();
+            }
+        } catch (final MongoException e) {
+            throw new RdfDAOException(e);
+        }
+        // Nothing has been counted under that key
+        return -1;
+    }
+
+    @Override
+    public void setConf(final MongoDBRdfConfiguration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public MongoDBRdfConfiguration getConf() {
+        return conf;
+    }
+}
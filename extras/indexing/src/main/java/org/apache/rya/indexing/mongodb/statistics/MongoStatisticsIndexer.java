@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.indexing.mongodb.statistics;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.rya.api.RdfCloudTripleStoreConstants.DELIM;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.log4j.Logger;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.domain.RyaURI;
+import org.apache.rya.api.persist.RdfEvalStatsDAO.CARDINALITY_OF;
+import org.apache.rya.indexing.CardinalityKeys;
+import org.apache.rya.mongodb.MongoConnectorFactory;
+import org.apache.rya.mongodb.MongoDBRdfConfiguration;
+import org.apache.rya.mongodb.MongoSecondaryIndex;
+import org.openrdf.model.URI;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+
+/**
+ * Keeps cardinality statistics for a Mongo backed Rya instance up to date as
+ * statements are added and deleted. Every stored statement increments, and
+ * every deleted statement decrements, the count of its subject, predicate,
+ * object, and each pair of them. Each count is a document in its own
+ * collection, updated with an upserting {@code $inc}, and is read by
+ * {@link MongoStatisticsEvalStatsDAO}.
+ * <p>
+ * Storing a statement that already exists counts it twice, since the indexer
+ * doesn't read the triples collection before writing. Dropping a graph removes
+ * every count kept for that graph.
+ */
+public class MongoStatisticsIndexer implements MongoSecondaryIndex {
+    private static final Logger LOG = Logger.getLogger(MongoStatisticsIndexer.class);
+    private static final String COLLECTION_SUFFIX = "_statistics";
+
+    public static final String ID = "_id";
+    public static final String CARDINALITY = "cardinality";
+    public static final String KEY = "key";
+    public static final String CONTEXT = "context";
+    public static final String COUNT = "count";
+
+    private Configuration conf;
+    private MongoClient mongoClient;
+    private DBCollection collection;
+    private boolean isInit = false;
+
+    @Override
+    public void setConf(final Configuration conf) {
+        this.conf = conf;
+        if (!isInit) {
+            setClient(MongoConnectorFactory.getMongoClient(conf));
+            init();
+        }
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    @Override
+    public void setClient(final MongoClient client) {
+        this.mongoClient = client;
+    }
+
+    @Override
+    public void init() {
+        final String dbName = conf.get(MongoDBRdfConfiguration.MONGO_DB_NAME);
+        collection = mongoClient.getDB(dbName).getCollection(getCollectionName(conf));
+        isInit = true;
+    }
+
+    /**
+     * @param conf - The Rya configuration. (not null)
+     * @return The name of the collection the counts are stored in.
+     */
+    public static String getCollectionName(final Configuration conf) {
+        requireNonNull(conf);
+        return conf.get(MongoDBRdfConfiguration.MONGO_COLLECTION_PREFIX, "rya") + COLLECTION_SUFFIX;
+    }
+
+    /**
+     * Get the ID of the document a count is stored in.
+     *
+     * @param card - The kind of cardinality. (not null)
+     * @param key - The key built by {@link CardinalityKeys}. (not null)
+     * @param context - The statement's context, or the empty string. (not null)
+     * @return The document ID.
+     */
+    public static String getId(final CARDINALITY_OF card, final String key, final String context) {
+        final String id = CardinalityKeys.getColumnFamily(card) + DELIM + key + DELIM + context;
+        byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            bytes = digest.digest(bytes);
+        } catch (final NoSuchAlgorithmException e) {
+            LOG.error("Unable to perform SHA-1 on the ID, defaulting to raw bytes.", e);
+        }
+        return new String(Hex.encodeHex(bytes));
+    }
+
+    @Override
+    public String getTableName() {
+        return collection.getName();
+    }
+
+    @Override
+    public void storeStatements(final Collection<RyaStatement> statements) throws IOException {
+        if (statements.isEmpty()) {
+            return;
+        }
+        final BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+        for (final RyaStatement statement : statements) {
+            addUpdates(bulk, statement, 1);
+        }
+        execute(bulk);
+    }
+
+    @Override
+    public void storeStatement(final RyaStatement statement) throws IOException {
+        final BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+        addUpdates(bulk, statement, 1);
+        execute(bulk);
+    }
+
+    @Override
+    public void deleteStatement(final RyaStatement statement) throws IOException {
+        final BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+        addUpdates(bulk, statement, -1);
+        execute(bulk);
+    }
+
+    private static void addUpdates(final BulkWriteOperation bulk, final RyaStatement statement, final int delta) {
+        final String context = statement.getContext() == null ? "" : statement.getContext().getData();
+        for (final Map.Entry<CARDINALITY_OF, String> key : CardinalityKeys.getKeys(statement).entrySet()) {
+            final DBObject query = new BasicDBObject(ID, getId(key.getKey(), key.getValue(), context));
+            final DBObject update = new BasicDBObject("$inc", new BasicDBObject(COUNT, delta))
+                .append("$setOnInsert", new BasicDBObject(CARDINALITY, key.getKey().name())
+                    .append(KEY, key.getValue())
+                    .append(CONTEXT, context));
+            bulk.find(query).upsert().updateOne(update);
+        }
+    }
+
+    private static void execute(final BulkWriteOperation bulk) throws IOException {
+        try {
+            bulk.execute();
+        } catch (final MongoException e) {
+            throw new IOException("Unable to update statistics", e);
+        }
+    }
+
+    @Override
+    public void dropGraph(final RyaURI... graphs) {
+        final BasicDBList contexts = new BasicDBList();
+        for (final RyaURI graph : graphs) {
+            contexts.add(graph.getData());
+        }
+        collection.remove(new BasicDBObject(CONTEXT, new BasicDBObject("$in", contexts)));
+    }
+
+    @Override
+    public Set<URI> getIndexablePredicates() {
+        return null;
+    }
+
+    @Override
+    public void flush() throws IOException {
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+}
@@ -28,6 +28,7 @@ import org.apache.accumulo.core.client.AccumuloSecurityException;
 import org.apache.accumulo.core.client.Connector;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.rya.accumulo.AccumuloRdfConfiguration;
+import org.apache.rya.accumulo.AccumuloRdfEvalStatsDAO;
 import org.apache.rya.accumulo.AccumuloRyaDAO;
 import org.apache.rya.accumulo.instance.AccumuloRyaInstanceDetailsRepository;
 import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
@@ -37,6 +38,7 @@ import org.apache.rya.api.layout.TablePrefixLayoutStrategy;
 import org.apache.rya.api.persist.RyaDAO;
 import org.apache.rya.api.persist.RyaDAOException;
 import org.apache.rya.indexing.accumulo.ConfigUtils;
+import org.apache.rya.indexing.mongodb.statistics.MongoStatisticsEvalStatsDAO;
 import org.apache.rya.mongodb.MongoConnectorFactory;
 import org.apache.rya.mongodb.MongoDBRdfConfiguration;
 import org.apache.rya.mongodb.MongoDBRyaDAO;
@@ -89,6 +91,9 @@ public class RyaSailFactory {
                LOG.info("Instance does not have a rya details collection, skipping.");
            }
             dao = getMongoDAO((MongoDBRdfConfiguration)rdfConfig, client);
+            if (ConfigUtils.getUseStatistics(rdfConfig)) {
+                store.setRdfEvalStatsDAO(new MongoStatisticsEvalStatsDAO(client));
+            }
         } else {
             rdfConfig = new AccumuloRdfConfiguration(config);
             user = rdfConfig.get(ConfigUtils.CLOUDBASE_USER);
@@ -97,7 +102,13 @@ public class RyaSailFactory {
             Objects.requireNonNull(pswd, "Accumulo user password is missing from configuration."+ConfigUtils.CLOUDBASE_PASSWORD);
             rdfConfig.setTableLayoutStrategy( new TablePrefixLayoutStrategy(ryaInstance) );
             updateAccumuloConfig((AccumuloRdfConfiguration) rdfConfig, user, pswd, ryaInstance);
-            dao = getAccumuloDAO((AccumuloRdfConfiguration)rdfConfig);
+            final AccumuloRyaDAO accumuloDao = getAccumuloDAO((AccumuloRdfConfiguration)rdfConfig);
+            if (ConfigUtils.getUseStatistics(rdfConfig)) {
+                final AccumuloRdfEvalStatsDAO evalStatsDao = new AccumuloRdfEvalStatsDAO();
+                evalStatsDao.setConnector(accumuloDao.getConnector());
+                store.setRdfEvalStatsDAO(evalStatsDao);
+            }
+            dao = accumuloDao;
         }
         store.setRyaDAO(dao);
         rdfConfig.setTablePrefix(ryaInstance);
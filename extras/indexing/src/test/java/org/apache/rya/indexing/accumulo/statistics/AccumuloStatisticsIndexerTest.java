@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.indexing.accumulo.statistics;
+
+import static org.apache.rya.api.RdfCloudTripleStoreConstants.DELIM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+import org.apache.rya.accumulo.AccumuloRdfConfiguration;
+import org.apache.rya.accumulo.AccumuloRyaDAO;
+import org.apache.rya.api.RdfCloudTripleStoreConstants;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.domain.RyaType;
+import org.apache.rya.api.domain.RyaURI;
+import org.apache.rya.indexing.accumulo.ConfigUtils;
+import org.junit.Test;
+
+/**
+ * Tests the methods of {@link AccumuloStatisticsIndexer}.
+ */
+public class AccumuloStatisticsIndexerTest {
+    private static final RyaStatement STATEMENT = new RyaStatement(
+            new RyaURI("urn:alice"), new RyaURI("urn:talksTo"), new RyaType("bob"));
+
+    @Test
+    public void createMutations() {
+        final Value delta = new Value("1".getBytes());
+        final Collection<Mutation> mutations = AccumuloStatisticsIndexer.createMutations(STATEMENT, delta);
+
+        assertEquals(6, mutations.size());
+        assertTrue(mutations.contains(expected("urn:alice", RdfCloudTripleStoreConstants.SUBJECT_CF, delta)));
+        assertTrue(mutations.contains(expected("urn:talksTo", RdfCloudTripleStoreConstants.PRED_CF, delta)));
+        assertTrue(mutations.contains(expected("bob", RdfCloudTripleStoreConstants.OBJ_CF, delta)));
+        assertTrue(mutations.contains(expected("urn:alice" + DELIM + "urn:talksTo", RdfCloudTripleStoreConstants.SUBJECTPRED_CF, delta)));
+        assertTrue(mutations.contains(expected("urn:alice" + DELIM + "bob", RdfCloudTripleStoreConstants.SUBJECTOBJECT_CF, delta)));
+        assertTrue(mutations.contains(expected("urn:talksTo" + DELIM + "bob", RdfCloudTripleStoreConstants.PREDOBJECT_CF, delta)));
+    }
+
+    @Test
+    public void countsAreSummed() throws Exception {
+        final Connector connector = new MockInstance("statistics_test").getConnector("root", new PasswordToken(""));
+        final String table = "rya_eval";
+        connector.tableOperations().create(table);
+        AccumuloStatisticsIndexer.attachCombiner(connector, table);
+        // Attaching again shouldn't fail.
+        AccumuloStatisticsIndexer.attachCombiner(connector, table);
+
+        final BatchWriter writer = connector.createBatchWriter(table, new BatchWriterConfig());
+        writer.addMutations(AccumuloStatisticsIndexer.createMutations(STATEMENT, new Value("1".getBytes())));
+        writer.addMutations(AccumuloStatisticsIndexer.createMutations(STATEMENT, new Value("1".getBytes())));
+        writer.addMutations(AccumuloStatisticsIndexer.createMutations(STATEMENT, new Value("-1".getBytes())));
+        writer.close();
+
+        final Scanner scanner = connector.createScanner(table, new Authorizations());
+        scanner.setRange(new Range("urn:talksTo"));
+        scanner.fetchColumnFamily(new Text(RdfCloudTripleStoreConstants.PRED_CF));
+        int entries = 0;
+        for (final Map.Entry<Key, Value> entry : scanner) {
+            assertEquals("1", entry.getValue().toString());
+            entries++;
+        }
+        assertEquals(1, entries);
+    }
+
+    @Test
+    public void wildcardDeleteCountsMatchedStatements() throws Exception {
+        final String instance = "statistics_delete_test";
+        final Connector connector = new MockInstance(instance).getConnector("root", new PasswordToken(""));
+        final AccumuloRdfConfiguration conf = new AccumuloRdfConfiguration();
+        conf.set(ConfigUtils.USE_MOCK_INSTANCE, "true");
+        conf.set(ConfigUtils.CLOUDBASE_INSTANCE, instance);
+        conf.set(ConfigUtils.CLOUDBASE_USER, "root");
+        conf.set(ConfigUtils.CLOUDBASE_PASSWORD, "");
+        conf.setTablePrefix("statistics_delete_");
+        conf.setAdditionalIndexers(AccumuloStatisticsIndexer.class);
+
+        final RyaURI graph = new RyaURI("urn:graph");
+        final AccumuloRyaDAO dao = new AccumuloRyaDAO();
+        dao.setConnector(connector);
+        dao.setConf(conf);
+        dao.init();
+        try {
+            dao.add(new RyaStatement(new RyaURI("urn:alice"), new RyaURI("urn:talksTo"), new RyaURI("urn:bob"), graph));
+            dao.add(new RyaStatement(new RyaURI("urn:alice"), new RyaURI("urn:talksTo"), new RyaURI("urn:carol"), graph));
+            dao.add(new RyaStatement(new RyaURI("urn:dave"), new RyaURI("urn:talksTo"), new RyaURI("urn:bob")));
+            // Delete everything alice says, without naming the object or the context.
+            dao.delete(new RyaStatement(new RyaURI("urn:alice"), new RyaURI("urn:talksTo"), null), conf);
+        } finally {
+            dao.destroy();
+        }
+
+        final String table = AccumuloStatisticsIndexer.getTableName(conf);
+        assertEquals(Long.valueOf(0), count(connector, table, "urn:talksTo", RdfCloudTripleStoreConstants.PRED_CF, "urn:graph"));
+        assertEquals(Long.valueOf(1), count(connector, table, "urn:talksTo", RdfCloudTripleStoreConstants.PRED_CF, ""));
+        assertEquals(Long.valueOf(0), count(connector, table, "urn:alice", RdfCloudTripleStoreConstants.SUBJECT_CF, "urn:graph"));
+        assertEquals(Long.valueOf(0), count(connector, table, "urn:carol", RdfCloudTripleStoreConstants.OBJ_CF, "urn:graph"));
+        // The pattern itself isn't counted under the empty context.
+        assertNull(count(connector, table, "urn:alice", RdfCloudTripleStoreConstants.SUBJECT_CF, ""));
+    }
+
+    @Test
+    public void dropGraphRemovesItsCounts() throws Exception {
+        final String instance = "statistics_drop_test";
+        final Connector connector = new MockInstance(instance).getConnector("root", new PasswordToken(""));
+        final AccumuloRdfConfiguration conf = new AccumuloRdfConfiguration();
+        conf.set(ConfigUtils.USE_MOCK_INSTANCE, "true");
+        conf.set(ConfigUtils.CLOUDBASE_INSTANCE, instance);
+        conf.set(ConfigUtils.CLOUDBASE_USER, "root");
+        conf.set(ConfigUtils.CLOUDBASE_PASSWORD, "");
+        conf.setTablePrefix("statistics_drop_");
+        conf.setAdditionalIndexers(AccumuloStatisticsIndexer.class);
+
+        final RyaURI graph = new RyaURI("urn:graph");
+        final AccumuloRyaDAO dao = new AccumuloRyaDAO();
+        dao.setConnector(connector);
+        dao.setConf(conf);
+        dao.init();
+        try {
+            dao.add(new RyaStatement(new RyaURI("urn:alice"), new RyaURI("urn:talksTo"), new RyaURI("urn:bob"), graph));
+            dao.add(new RyaStatement(new RyaURI("urn:dave"), new RyaURI("urn:talksTo"), new RyaURI("urn:bob")));
+            dao.dropGraph(conf, graph);
+        } finally {
+            dao.destroy();
+        }
+
+        final String table = AccumuloStatisticsIndexer.getTableName(conf);
+        assertNull(count(connector, table, "urn:talksTo", RdfCloudTripleStoreConstants.PRED_CF, "urn:graph"));
+        assertNull(count(connector, table, "urn:alice", RdfCloudTripleStoreConstants.SUBJECT_CF, "urn:graph"));
+        assertEquals(Long.valueOf(1), count(connector, table, "urn:talksTo", RdfCloudTripleStoreConstants.PRED_CF, ""));
+        assertEquals(Long.valueOf(1), count(connector, table, "urn:bob", RdfCloudTripleStoreConstants.OBJ_CF, ""));
+    }
+
+    private static Long count(final Connector connector, final String table, final String row,
+            final String cf, final String context) throws Exception {
+        final Scanner scanner = connector.createScanner(table, new Authorizations());
+        scanner.setRange(new Range(row));
+        scanner.fetchColumn(new Text(cf), new Text(context));
+        Long count = null;
+        for (final Map.Entry<Key, Value> entry : scanner) {
+            count = (count == null ? 0 : count) + Long.parseLong(entry.getValue().toString());
+        }
+        return count;
+    }
+
+    private static Mutation expected(final String row, final String cf, final Value value) {
+        final Mutation m = new Mutation(new Text(row));
+        m.put(new Text(cf), RdfCloudTripleStoreConstants.EMPTY_TEXT, new ColumnVisibility(), value);
+        return m;
+    }
+}
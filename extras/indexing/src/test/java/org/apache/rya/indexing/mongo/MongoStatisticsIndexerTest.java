@@ -0,0 +1,100 @@
+package org.apache.rya.indexing.mongo;
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.domain.RyaURI;
+import org.apache.rya.api.persist.RdfEvalStatsDAO.CARDINALITY_OF;
+import org.apache.rya.indexing.accumulo.ConfigUtils;
+import org.apache.rya.indexing.mongodb.statistics.MongoStatisticsIndexer;
+import org.apache.rya.mongodb.MongoDBRdfConfiguration;
+import org.apache.rya.mongodb.MongoDBRyaDAO;
+import org.apache.rya.mongodb.MongoRyaTestBase;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+
+public class MongoStatisticsIndexerTest extends MongoRyaTestBase {
+    private MongoDBRdfConfiguration conf;
+
+    @Before
+    public void before() throws Exception {
+        conf = new MongoDBRdfConfiguration();
+        conf.set(ConfigUtils.USE_MONGO, "true");
+        conf.setMongoDBName(getDbName());
+        conf.setMongoClient(mongoClient);
+        conf.setCollectionName("rya_");
+        conf.setAdditionalIndexers(MongoStatisticsIndexer.class);
+    }
+
+    @Test
+    public void wildcardDeleteCountsMatchedStatements() throws Exception {
+        final RyaURI graph = new RyaURI("urn:graph");
+        final MongoDBRyaDAO dao = new MongoDBRyaDAO(conf, mongoClient);
+        try {
+            dao.add(new RyaStatement(new RyaURI("urn:alice"), new RyaURI("urn:talksTo"), new RyaURI("urn:bob"), graph));
+            dao.add(new RyaStatement(new RyaURI("urn:alice"), new RyaURI("urn:talksTo"), new RyaURI("urn:carol"), graph));
+            dao.add(new RyaStatement(new RyaURI("urn:dave"), new RyaURI("urn:talksTo"), new RyaURI("urn:bob")));
+            dao.flush();
+            // Delete everything alice says, without naming the object or the context.
+            dao.delete(new RyaStatement(new RyaURI("urn:alice"), new RyaURI("urn:talksTo"), null), conf);
+
+            final DBCollection counts = mongoClient.getDB(getDbName()).getCollection(MongoStatisticsIndexer.getCollectionName(conf));
+            assertEquals(0, count(counts, CARDINALITY_OF.PREDICATE, "urn:talksTo", "urn:graph"));
+            assertEquals(1, count(counts, CARDINALITY_OF.PREDICATE, "urn:talksTo", ""));
+            assertEquals(0, count(counts, CARDINALITY_OF.SUBJECT, "urn:alice", "urn:graph"));
+            assertEquals(0, count(counts, CARDINALITY_OF.OBJECT, "urn:carol", "urn:graph"));
+            // The pattern itself isn't counted under the empty context.
+            assertNull(counts.findOne(new BasicDBObject(MongoStatisticsIndexer.ID,
+                    MongoStatisticsIndexer.getId(CARDINALITY_OF.SUBJECT, "urn:alice", ""))));
+        } finally {
+            dao.destroy();
+        }
+    }
+
+    @Test
+    public void dropGraphRemovesItsCounts() throws Exception {
+        final RyaURI graph = new RyaURI("urn:graph");
+        final MongoDBRyaDAO dao = new MongoDBRyaDAO(conf, mongoClient);
+        try {
+            dao.add(new RyaStatement(new RyaURI("urn:alice"), new RyaURI("urn:talksTo"), new RyaURI("urn:bob"), graph));
+            dao.add(new RyaStatement(new RyaURI("urn:dave"), new RyaURI("urn:talksTo"), new RyaURI("urn:bob")));
+            dao.dropGraph(conf, graph);
+
+            final DBCollection counts = mongoClient.getDB(getDbName()).getCollection(MongoStatisticsIndexer.getCollectionName(conf));
+            assertEquals(0, counts.count(new BasicDBObject(MongoStatisticsIndexer.CONTEXT, "urn:graph")));
+            assertEquals(1, count(counts, CARDINALITY_OF.PREDICATE, "urn:talksTo", ""));
+            assertEquals(1, count(counts, CARDINALITY_OF.OBJECT, "urn:bob", ""));
+        } finally {
+            dao.destroy();
+        }
+    }
+
+    private static long count(final DBCollection counts, final CARDINALITY_OF card, final String key, final String context) {
+        final DBObject doc = counts.findOne(new BasicDBObject(MongoStatisticsIndexer.ID,
+                MongoStatisticsIndexer.getId(card, key, context)));
+        return ((Number) doc.get(MongoStatisticsIndexer.COUNT)).longValue();
+    }
+}
@@ -78,6 +78,7 @@ public class AccumuloSelectivityEvalDAO implements SelectivityEvalDAO<RdfCloudTr
   private static final String DELIM = "\u0000";
   private Map<String,Long> joinMap = new HashMap<String,Long>();;
   private RdfEvalStatsDAO<RdfCloudTripleStoreConfiguration> resd;
+  private SamplingJoinSelectivityEstimator sampler;
 
   @Override
   public void init() throws RdfDAOException {
@@ -93,6 +94,9 @@ public class AccumuloSelectivityEvalDAO implements SelectivityEvalDAO<RdfCloudTr
       TableOperations tos = connector.tableOperations();
       AccumuloRdfUtils.createTableIfNotExist(tos, tableLayoutStrategy.getSelectivity());
       AccumuloRdfUtils.createTableIfNotExist(tos, tableLayoutStrategy.getProspects());
+      if (sampler == null && conf.getBoolean(SamplingJoinSelectivityEstimator.CONF_SAMPLING, false)) {
+        sampler = new SamplingJoinSelectivityEstimator(this, conf);
+      }
       initialized = true;
     } catch (Exception e) {
       throw new RdfDAOException(e);
@@ -172,8 +176,27 @@ public class AccumuloSelectivityEvalDAO implements SelectivityEvalDAO<RdfCloudTr
       this.denormalized = denormalize;
   }
 
+  public SamplingJoinSelectivityEstimator getSampler() {
+    return sampler;
+  }
+
+  /**
+   * Estimate join selectivities by sampling instead of from the selectivity table. Joins the
+   * sampler has no estimate for are still read from the table.
+   */
+  public void setSampler(SamplingJoinSelectivityEstimator sampler) {
+    this.sampler = sampler;
+  }
+
   private double getJoinSelect(RdfCloudTripleStoreConfiguration conf, StatementPattern sp1, StatementPattern sp2) throws TableNotFoundException {
 
+    if (sampler != null && !denormalized) {
+      SamplingJoinSelectivityEstimator.Estimate estimate = sampler.estimate(conf, sp1, sp2);
+      if (estimate != null) {
+        return estimate.getSelectivity();
+      }
+    }
+
     if (FullTableCardinality == 0) {
       this.getTableSize(conf);
     }
@@ -0,0 +1,419 @@
+package org.apache.rya.joinselect;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static org.apache.rya.api.RdfCloudTripleStoreUtils.layoutToTable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
+import org.apache.rya.accumulo.query.SampleFilter;
+import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
+import org.apache.rya.api.RdfCloudTripleStoreConstants.TABLE_LAYOUT;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.domain.RyaType;
+import org.apache.rya.api.domain.RyaURI;
+import org.apache.rya.api.persist.RdfDAOException;
+import org.apache.rya.api.persist.RdfEvalStatsDAO.CARDINALITY_OF;
+import org.apache.rya.api.query.strategy.ByteRange;
+import org.apache.rya.api.query.strategy.TriplePatternStrategy;
+import org.apache.rya.api.resolver.RdfToRyaConversions;
+import org.apache.rya.api.resolver.RyaToRdfConversions;
+import org.apache.rya.api.resolver.RyaTripleContext;
+import org.apache.rya.api.resolver.triple.TripleRow;
+import org.apache.rya.api.resolver.triple.TripleRowResolverException;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.Var;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Estimates the selectivity of joining two statement patterns at plan time, as an alternative to
+ * the join cardinalities the JoinSelect MapReduce jobs precompute into the selectivity table.
+ * <p>
+ * A {@link SampleFilter} draws a bounded random sample of the statements matching the pattern
+ * with the smaller cardinality. For every sampled statement, the other pattern is counted with
+ * its shared variables bound to the statement's values, using the cardinality statistics. The
+ * mean of those counts divided by the cardinality of the other pattern estimates the
+ * selectivity, the fraction of the cross product of the two patterns that joins, and the
+ * standard error of the mean gives a 95% confidence interval around it. Estimates are cached
+ * for a configurable time, so a pattern pair is only sampled once while the cache holds it.
+ */
+public class SamplingJoinSelectivityEstimator {
+
+  /** Whether {@link AccumuloSelectivityEvalDAO} samples join selectivities. Defaults to false. */
+  public static final String CONF_SAMPLING = "query.selectivity.sampling";
+  /** The most statements sampled from a pattern. */
+  public static final String CONF_SAMPLE_SIZE = "query.selectivity.sampling.size";
+  /** How long, in milliseconds, an estimate is cached. */
+  public static final String CONF_CACHE_TTL = "query.selectivity.sampling.ttl";
+
+  public static final int DEFAULT_SAMPLE_SIZE = 200;
+  public static final long DEFAULT_CACHE_TTL = 10 * 60 * 1000L;
+
+  private static final int CACHE_SIZE = 10000;
+  private static final int SAMPLE_PRIORITY = 20;
+  private static final double Z = 1.96;
+  private static final String DELIM = "\u0000";
+
+  private final AccumuloSelectivityEvalDAO dao;
+  private final int sampleSize;
+  private final Cache<String,Estimate> cache;
+  private final Random random = new Random();
+
+  public SamplingJoinSelectivityEstimator(AccumuloSelectivityEvalDAO dao, int sampleSize, long cacheTtl) {
+    if (sampleSize <= 0) {
+      throw new IllegalArgumentException("sampleSize must be positive, was " + sampleSize);
+    }
+    this.dao = dao;
+    this.sampleSize = sampleSize;
+    this.cache = CacheBuilder.newBuilder().expireAfterWrite(cacheTtl, TimeUnit.MILLISECONDS).maximumSize(CACHE_SIZE).build();
+  }
+
+  public SamplingJoinSelectivityEstimator(AccumuloSelectivityEvalDAO dao, RdfCloudTripleStoreConfiguration conf) {
+    this(dao, conf.getInt(CONF_SAMPLE_SIZE, DEFAULT_SAMPLE_SIZE), conf.getLong(CONF_CACHE_TTL, DEFAULT_CACHE_TTL));
+  }
+
+  /**
+   * @return the estimated selectivity of joining the patterns, or null if they share no variables,
+   *         either of them has no constants, or the sample was empty although the statistics
+   *         counted matching statements
+   */
+  public Estimate estimate(RdfCloudTripleStoreConfiguration conf, StatementPattern sp1, StatementPattern sp2) throws TableNotFoundException {
+    Var[] vars1 = getVars(sp1);
+    Var[] vars2 = getVars(sp2);
+    if (!shareVariables(vars1, vars2) || !hasConstant(vars1) || !hasConstant(vars2)) {
+      return null;
+    }
+
+    String key1 = getCacheKey(vars1, vars2);
+    String key2 = getCacheKey(vars2, vars1);
+    String key = key1.compareTo(key2) <= 0 ? key1 : key2;
+    Estimate estimate = cache.getIfPresent(key);
+    if (estimate == null) {
+      estimate = sample(conf, vars1, vars2);
+      if (estimate != null) {
+        cache.put(key, estimate);
+      }
+    }
+    return estimate;
+  }
+
+  public void invalidate() {
+    cache.invalidateAll();
+  }
+
+  private Estimate sample(RdfCloudTripleStoreConfiguration conf, Var[] vars1, Var[] vars2) throws TableNotFoundException {
+    double card1 = count(conf, vars1);
+    double card2 = count(conf, vars2);
+    if (card1 == 0 || card2 == 0) {
+      return new Estimate(0, 0, 0, 0);
+    }
+
+    // Sampling the smaller pattern covers more of it, and probes fewer statistics, for the same sample size
+    Var[] sampled = card1 <= card2 ? vars1 : vars2;
+    Var[] other = card1 <= card2 ? vars2 : vars1;
+    double sampledCard = Math.min(card1, card2);
+    double otherCard = Math.max(card1, card2);
+
+    double fraction = Math.min(1.0, sampleSize / sampledCard);
+    List<RyaStatement> statements = new ArrayList<RyaStatement>();
+    boolean complete = scan(conf, sampled, fraction, statements);
+    boolean exact = fraction >= 1.0 && complete;
+    int n = statements.size();
+    if (n == 0) {
+      return exact ? new Estimate(0, 0, 0, 0) : null;
+    }
+
+    Map<String,Double> probes = new HashMap<String,Double>();
+    double sum = 0;
+    double sumOfSquares = 0;
+    for (RyaStatement statement : statements) {
+      Var[] bound = bind(other, sampled, statement);
+      String probeKey = getSignature(bound);
+      Double count = probes.get(probeKey);
+      if (count == null) {
+        count = count(conf, bound);
+        probes.put(probeKey, count);
+      }
+      sum += count;
+      sumOfSquares += count * count;
+    }
+
+    double mean = sum / n;
+    double error = 0;
+    if (!exact && n > 1) {
+      double variance = Math.max(0, (sumOfSquares - n * mean * mean) / (n - 1));
+      double population = Math.max(sampledCard, n);
+      double correction = population > 1 ? (population - n) / (population - 1) : 0;
+      error = Z * Math.sqrt(variance / n * Math.max(0, correction));
+    }
+    return new Estimate(Math.min(1, mean / otherCard), Math.min(1, Math.max(0, mean - error) / otherCard),
+        Math.min(1, (mean + error) / otherCard), n);
+  }
+
+  /**
+   * Reads the statements of the range matching the pattern's constants that pass a
+   * {@link SampleFilter}, up to the sample size.
+   * 
+   * @return true if the whole range was read
+   */
+  private boolean scan(RdfCloudTripleStoreConfiguration conf, Var[] vars, double fraction, List<RyaStatement> statements)
+      throws TableNotFoundException {
+    RyaURI subj = vars[0].hasValue() ? RdfToRyaConversions.convertResource((Resource) vars[0].getValue()) : null;
+    RyaURI pred = vars[1].hasValue() ? RdfToRyaConversions.convertURI((URI) vars[1].getValue()) : null;
+    RyaType obj = vars[2].hasValue() ? RdfToRyaConversions.convertValue(vars[2].getValue()) : null;
+    RyaURI context = vars[3] != null && vars[3].hasValue() ? RdfToRyaConversions.convertResource((Resource) vars[3].getValue()) : null;
+
+    RyaTripleContext ryaContext = RyaTripleContext.getInstance(conf);
+    TriplePatternStrategy strategy = ryaContext.retrieveStrategy(subj, pred, obj, context);
+    if (strategy == null) {
+      return false;
+    }
+    Map.Entry<TABLE_LAYOUT,ByteRange> entry;
+    try {
+      entry = strategy.defineRange(subj, pred, obj, context, conf);
+    } catch (IOException e) {
+      throw new RdfDAOException(e);
+    }
+    TABLE_LAYOUT layout = entry.getKey();
+    ByteRange byteRange = entry.getValue();
+
+    Scanner scanner = dao.getConnector().createScanner(layoutToTable(layout, conf), getAuths(conf));
+    scanner.setRange(new Range(new Text(byteRange.getStart()), new Text(byteRange.getEnd())));
+    if (context != null) {
+      scanner.fetchColumnFamily(new Text(context.getData()));
+    }
+    if (fraction < 1.0) {
+      IteratorSetting setting = new IteratorSetting(SAMPLE_PRIORITY, "sample", SampleFilter.class);
+      SampleFilter.setOptions(setting, fraction, random.nextInt());
+      scanner.addScanIterator(setting);
+    }
+
+    Iterator<Map.Entry<Key,org.apache.accumulo.core.data.Value>> it = scanner.iterator();
+    while (it.hasNext()) {
+      if (statements.size() >= sampleSize) {
+        return false;
+      }
+      Map.Entry<Key,org.apache.accumulo.core.data.Value> kv = it.next();
+      Key key = kv.getKey();
+      try {
+        statements.add(ryaContext.deserializeTriple(layout, new TripleRow(key.getRowData().toArray(), key.getColumnFamilyData().toArray(),
+            key.getColumnQualifierData().toArray(), key.getTimestamp(), key.getColumnVisibilityData().toArray(), kv.getValue().get())));
+      } catch (TripleRowResolverException e) {
+        throw new RdfDAOException(e);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Counts the statements matching a pattern's constants the way
+   * {@link AccumuloSelectivityEvalDAO#getCardinality(RdfCloudTripleStoreConfiguration, StatementPattern)} does, without
+   * needing the full table cardinality.
+   */
+  private double count(RdfCloudTripleStoreConfiguration conf, Var[] vars) {
+    Value subj = vars[0].getValue();
+    Value pred = vars[1].getValue();
+    Value obj = vars[2].getValue();
+    Resource context = vars[3] == null ? null : (Resource) vars[3].getValue();
+
+    List<Value> values = new ArrayList<Value>();
+    CARDINALITY_OF card;
+    if (subj != null) {
+      values.add(subj);
+      card = CARDINALITY_OF.SUBJECT;
+      if (pred != null) {
+        values.add(pred);
+        card = CARDINALITY_OF.SUBJECTPREDICATE;
+      } else if (obj != null) {
+        values.add(obj);
+        card = CARDINALITY_OF.SUBJECTOBJECT;
+      }
+    } else if (pred != null) {
+      values.add(pred);
+      card = CARDINALITY_OF.PREDICATE;
+      if (obj != null) {
+        values.add(obj);
+        card = CARDINALITY_OF.PREDICATEOBJECT;
+      }
+    } else {
+      values.add(obj);
+      card = CARDINALITY_OF.OBJECT;
+    }
+    // -1 means nothing was counted under the key
+    return Math.max(0, dao.getCardinality(conf, card, values, context));
+  }
+
+  /**
+   * @return the pattern's variables with those it shares with the sampled pattern bound to the
+   *         values of a sampled statement
+   */
+  private static Var[] bind(Var[] vars, Var[] sampled, RyaStatement statement) {
+    Var[] bound = new Var[vars.length];
+    for (int i = 0; i < vars.length; i++) {
+      bound[i] = vars[i];
+      if (vars[i] == null || vars[i].hasValue()) {
+        continue;
+      }
+      for (int j = 0; j < sampled.length; j++) {
+        if (sampled[j] != null && !sampled[j].hasValue() && sampled[j].getName().equals(vars[i].getName())) {
+          Value value = getValue(statement, j);
+          if (value != null) {
+            bound[i] = new Var(vars[i].getName(), value);
+          }
+          break;
+        }
+      }
+    }
+    return bound;
+  }
+
+  private static Value getValue(RyaStatement statement, int place) {
+    switch (place) {
+      case 0:
+        return RyaToRdfConversions.convertValue(statement.getSubject());
+      case 1:
+        return RyaToRdfConversions.convertValue(statement.getPredicate());
+      case 2:
+        return RyaToRdfConversions.convertValue(statement.getObject());
+      default:
+        return statement.getContext() == null ? null : RyaToRdfConversions.convertValue(statement.getContext());
+    }
+  }
+
+  private static Var[] getVars(StatementPattern sp) {
+    return new Var[] {sp.getSubjectVar(), sp.getPredicateVar(), sp.getObjectVar(), sp.getContextVar()};
+  }
+
+  private static boolean hasConstant(Var[] vars) {
+    for (int i = 0; i < 3; i++) {
+      if (vars[i].hasValue()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean shareVariables(Var[] vars1, Var[] vars2) {
+    return getJoins(vars1, vars2).length() > 0;
+  }
+
+  /**
+   * @return the places of the variables shared by the patterns, as "i=j" pairs
+   */
+  private static String getJoins(Var[] vars1, Var[] vars2) {
+    StringBuilder joins = new StringBuilder();
+    for (int i = 0; i < vars1.length; i++) {
+      for (int j = 0; j < vars2.length; j++) {
+        if (vars1[i] != null && vars2[j] != null && !vars1[i].hasValue() && !vars2[j].hasValue()
+            && vars1[i].getName().equals(vars2[j].getName())) {
+          joins.append(DELIM).append(i).append('=').append(j);
+        }
+      }
+    }
+    return joins.toString();
+  }
+
+  /**
+   * Patterns with the same constants joined on the same places get the same key, whatever their
+   * variables are named.
+   */
+  private static String getCacheKey(Var[] vars1, Var[] vars2) {
+    return getSignature(vars1) + DELIM + getSignature(vars2) + getJoins(vars1, vars2);
+  }
+
+  private static String getSignature(Var[] vars) {
+    StringBuilder signature = new StringBuilder();
+    for (Var var : vars) {
+      if (var != null) {
+        signature.append(var.hasValue() ? var.getValue().toString() : "?");
+      }
+      signature.append(DELIM);
+    }
+    return signature.toString();
+  }
+
+  private static Authorizations getAuths(RdfCloudTripleStoreConfiguration conf) {
+    String[] auths = conf.getAuths();
+    if (auths == null || auths.length == 0) {
+      return new Authorizations();
+    }
+    return new Authorizations(auths);
+  }
+
+  /**
+   * A sampled join selectivity with its 95% confidence interval.
+   */
+  public static class Estimate {
+    private final double selectivity;
+    private final double lower;
+    private final double upper;
+    private final int sampleSize;
+
+    public Estimate(double selectivity, double lower, double upper, int sampleSize) {
+      this.selectivity = selectivity;
+      this.lower = lower;
+      this.upper = upper;
+      this.sampleSize = sampleSize;
+    }
+
+    public double getSelectivity() {
+      return selectivity;
+    }
+
+    public double getLower() {
+      return lower;
+    }
+
+    public double getUpper() {
+      return upper;
+    }
+
+    /**
+     * @return the number of statements sampled, 0 if the statistics counted no statements for a pattern
+     */
+    public int getSampleSize() {
+      return sampleSize;
+    }
+
+    @Override
+    public String toString() {
+      return selectivity + " [" + lower + ", " + upper + "] from " + sampleSize + " samples";
+    }
+  }
+}
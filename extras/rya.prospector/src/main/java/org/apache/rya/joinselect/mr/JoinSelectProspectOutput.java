@@ -26,16 +26,20 @@ import static org.apache.rya.joinselect.mr.utils.JoinSelectConstants.PROSPECTS_O
 import static org.apache.rya.joinselect.mr.utils.JoinSelectConstants.PROSPECTS_TABLE;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.regex.Pattern;
 
 import org.apache.rya.joinselect.mr.utils.CardinalityType;
 import org.apache.rya.joinselect.mr.utils.CompositeType;
 import org.apache.rya.joinselect.mr.utils.JoinSelectStatsUtil;
 import org.apache.rya.joinselect.mr.utils.TripleCard;
+import org.apache.rya.prospector.utils.ProspectorConstants;
 
 import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.mapreduce.AccumuloInputFormat;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.util.Pair;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.io.IntWritable;
@@ -111,6 +115,8 @@ public class JoinSelectProspectOutput extends Configured implements Tool {
     conf.setBoolean(MRJobConfig.MAPREDUCE_JOB_USER_CLASSPATH_FIRST, true);
 
     JoinSelectStatsUtil.initTabToSeqFileJob(job, inTable, outPath, auths);
+    // Only read the counts, not the distinct value sketches that share their rows.
+    AccumuloInputFormat.fetchColumns(job, Collections.singleton(new Pair<Text, Text>(new Text(ProspectorConstants.COUNT), null)));
     job.setMapperClass(CardinalityMapper.class);
 
     job.setNumReduceTasks(0);
@@ -18,6 +18,7 @@
  */
 package org.apache.rya.prospector.mr;
 
+import static org.apache.rya.prospector.utils.ProspectorConstants.COMBINE_SKETCHES;
 import static org.apache.rya.prospector.utils.ProspectorConstants.DEFAULT_VIS;
 import static org.apache.rya.prospector.utils.ProspectorConstants.EMPTY;
 import static org.apache.rya.prospector.utils.ProspectorConstants.METADATA;
@@ -44,6 +45,7 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.apache.rya.prospector.domain.IntermediateProspect;
+import org.apache.rya.prospector.utils.HyperLogLogCombiner;
 import org.apache.rya.prospector.utils.ProspectorUtils;
 
 /**
@@ -92,6 +94,10 @@ public class Prospector extends Configured implements Tool {
             ProspectorUtils.addMRPerformance(job.getConfiguration());
         }
 
+        if (conf.getBoolean(COMBINE_SKETCHES, false)) {
+            HyperLogLogCombiner.attach(connector(instance(conf), conf), outTable);
+        }
+
         job.setMapOutputKeyClass(IntermediateProspect.class);
         job.setMapOutputValueClass(LongWritable.class);
 
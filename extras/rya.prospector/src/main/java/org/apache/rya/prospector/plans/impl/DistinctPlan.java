@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.prospector.plans.impl;
+
+import static org.apache.rya.prospector.utils.ProspectorConstants.DISTINCT;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.rya.api.RdfCloudTripleStoreConstants;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.domain.RyaType;
+import org.apache.rya.prospector.domain.IndexEntry;
+import org.apache.rya.prospector.domain.IntermediateProspect;
+import org.apache.rya.prospector.domain.TripleValueType;
+import org.apache.rya.prospector.plans.IndexWorkPlan;
+import org.apache.rya.prospector.utils.CustomEntry;
+import org.apache.rya.prospector.utils.HyperLogLog;
+import org.apache.rya.prospector.utils.ProspectorUtils;
+
+/**
+ * An implementation of {@link IndexWorkPlan} that estimates the number of
+ * distinct subjects and objects that appear with each predicate, and the
+ * number of distinct predicates that appear with each subject, using
+ * {@link HyperLogLog} sketches.
+ * <p>
+ * The {@link IntermediateProspect}s this plan produces hold the grouping value
+ * as their data and {@link TripleValueType}, and the name of the part being
+ * counted as their data type. Each map output value is a single sketch
+ * register update made by {@link HyperLogLog#encode(String)}, so combining
+ * shrinks the shuffle to at most {@link HyperLogLog#REGISTERS} values per key.
+ * <p>
+ * Sketches are written next to {@link CountPlan}'s counts, in the row of the
+ * grouping value, with the column family {@code distinct} and the counted
+ * part's index type as the column qualifier. Sketches of different
+ * visibilities are merged when they are queried, so the {@link IndexEntry}s
+ * returned by {@link #query} have an empty visibility.
+ */
+public class DistinctPlan implements IndexWorkPlan {
+
+    @Override
+    public Collection<Map.Entry<IntermediateProspect, LongWritable>> map(RyaStatement ryaStatement) {
+        final String subject = ryaStatement.getSubject().getData();
+        final String predicate = ryaStatement.getPredicate().getData();
+        final RyaType object = ryaStatement.getObject();
+        final String visibility = new String(ryaStatement.getColumnVisibility());
+
+        final List<Map.Entry<IntermediateProspect, LongWritable>> entries = new ArrayList<>(3);
+
+        // Distinct subjects per predicate.
+        entries.add(new CustomEntry<IntermediateProspect, LongWritable>(
+                prospect(predicate, TripleValueType.PREDICATE, TripleValueType.SUBJECT, visibility),
+                new LongWritable(HyperLogLog.encode(subject))));
+
+        // Distinct objects per predicate. Literals with the same label but different types are different objects.
+        entries.add(new CustomEntry<IntermediateProspect, LongWritable>(
+                prospect(predicate, TripleValueType.PREDICATE, TripleValueType.OBJECT, visibility),
+                new LongWritable(HyperLogLog.encode(object.getData() + DELIM + object.getDataType().stringValue()))));
+
+        // Distinct predicates per subject.
+        entries.add(new CustomEntry<IntermediateProspect, LongWritable>(
+                prospect(subject, TripleValueType.SUBJECT, TripleValueType.PREDICATE, visibility),
+                new LongWritable(HyperLogLog.encode(predicate))));
+        return entries;
+    }
+
+    private static IntermediateProspect prospect(String data, TripleValueType groupedBy, TripleValueType counted, String visibility) {
+        return IntermediateProspect.builder()
+                .setIndex(DISTINCT)
+                .setData(data)
+                .setDataType(counted.getIndexType())
+                .setTripleValueType(groupedBy)
+                .setVisibility(visibility)
+                .build();
+    }
+
+    @Override
+    public Collection<Map.Entry<IntermediateProspect, LongWritable>> combine(IntermediateProspect prospect, Iterable<LongWritable> updates) {
+        final List<Long> combined = sketch(updates).getUpdates();
+        final List<Map.Entry<IntermediateProspect, LongWritable>> entries = new ArrayList<>(combined.size());
+        for(final Long update : combined) {
+            entries.add(new CustomEntry<IntermediateProspect, LongWritable>(prospect, new LongWritable(update)));
+        }
+        return entries;
+    }
+
+    @Override
+    public void reduce(IntermediateProspect prospect, Iterable<LongWritable> updates, Date timestamp, Reducer.Context context) throws IOException, InterruptedException {
+        final HyperLogLog sketch = sketch(updates);
+
+        final String indexType = prospect.getTripleValueType().getIndexType();
+        final Mutation m = new Mutation(indexType + DELIM + prospect.getData() + DELIM + ProspectorUtils.getReverseIndexDateTime(timestamp));
+        final ColumnVisibility visibility = new ColumnVisibility(prospect.getVisibility());
+        m.put(DISTINCT, prospect.getDataType(), visibility, timestamp.getTime(), new Value(sketch.toBytes()));
+
+        context.write(null, m);
+    }
+
+    private static HyperLogLog sketch(Iterable<LongWritable> updates) {
+        final HyperLogLog sketch = new HyperLogLog();
+        for(final LongWritable update : updates) {
+            sketch.merge(update.get());
+        }
+        return sketch;
+    }
+
+    @Override
+    public String getIndexType() {
+        return DISTINCT;
+    }
+
+    @Override
+    public String getCompositeValue(List<String> indices) {
+        final Iterator<String> indexIt = indices.iterator();
+        String compositeIndex = indexIt.next();
+        while (indexIt.hasNext()){
+            compositeIndex += DELIM + indexIt.next();
+        }
+        return compositeIndex;
+    }
+
+    @Override
+    public List<IndexEntry> query(Connector connector, String tableName, List<Long> prospectTimes, String type, String compositeIndex, String dataType, String[] auths) throws TableNotFoundException {
+        assert connector != null && tableName != null && type != null && compositeIndex != null;
+
+        final List<Range> ranges = new ArrayList<>();
+        if (prospectTimes != null) {
+            for(final Long prospectTime : prospectTimes) {
+                ranges.add(new Range(type + DELIM + compositeIndex + DELIM + ProspectorUtils.getReverseIndexDateTime(new Date(prospectTime))));
+            }
+        } else {
+            final String prefix = type + DELIM + compositeIndex + DELIM;
+            ranges.add(new Range(prefix, prefix + RdfCloudTripleStoreConstants.LAST));
+        }
+
+        final BatchScanner bs = connector.createBatchScanner(tableName, new Authorizations(auths), 4);
+        bs.setRanges(ranges);
+        if (dataType != null) {
+            bs.fetchColumn(new Text(DISTINCT), new Text(dataType));
+        } else {
+            bs.fetchColumnFamily(new Text(DISTINCT));
+        }
+
+        // Merge the sketches of every visibility, grouped by prospect run and counted part.
+        final SortedMap<String, Map<String, HyperLogLog>> sketches = new TreeMap<>();
+        final Map<String, Long> timestamps = new HashMap<>();
+        try {
+            for(final Entry<Key, Value> entry : bs) {
+                final Key k = entry.getKey();
+                final String row = k.getRow().toString();
+                Map<String, HyperLogLog> rowSketches = sketches.get(row);
+                if (rowSketches == null) {
+                    rowSketches = new HashMap<>();
+                    sketches.put(row, rowSketches);
+                    timestamps.put(row, k.getTimestamp());
+                }
+
+                final String counted = k.getColumnQualifier().toString();
+                final HyperLogLog sketch = HyperLogLog.fromBytes(entry.getValue().get());
+                final HyperLogLog merged = rowSketches.get(counted);
+                if (merged == null) {
+                    rowSketches.put(counted, sketch);
+                } else {
+                    merged.merge(sketch);
+                }
+            }
+        } finally {
+            bs.close();
+        }
+
+        // Rows sort newest first, so only keep the first one if no prospectTimes were given.
+        final Collection<String> rows = prospectTimes == null && !sketches.isEmpty() ?
+                Collections.singleton(sketches.firstKey()) : sketches.keySet();
+
+        final List<IndexEntry> indexEntries = new ArrayList<>();
+        for(final String row : rows) {
+            for(final Entry<String, HyperLogLog> sketch : sketches.get(row).entrySet()) {
+                indexEntries.add(
+                        IndexEntry.builder()
+                            .setData(compositeIndex)
+                            .setTripleValueType(type)
+                            .setIndex(DISTINCT)
+                            .setDataType(sketch.getKey())
+                            .setVisibility("")
+                            .setCount(sketch.getValue().cardinality())
+                            .setTimestamp(timestamps.get(row))
+                            .build());
+            }
+        }
+        return indexEntries;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.prospector.plans.impl;
+
+import static org.apache.rya.prospector.utils.ProspectorConstants.HISTOGRAM;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.rya.api.RdfCloudTripleStoreConstants;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.domain.RyaType;
+import org.apache.rya.prospector.domain.IndexEntry;
+import org.apache.rya.prospector.domain.IntermediateProspect;
+import org.apache.rya.prospector.domain.TripleValueType;
+import org.apache.rya.prospector.plans.IndexWorkPlan;
+import org.apache.rya.prospector.utils.CustomEntry;
+import org.apache.rya.prospector.utils.EquiDepthHistogram;
+import org.apache.rya.prospector.utils.ProspectorUtils;
+
+/**
+ * An implementation of {@link IndexWorkPlan} that builds an {@link EquiDepthHistogram}
+ * of the numeric objects, and one of the date objects, of each predicate.
+ * <p>
+ * The {@link IntermediateProspect}s this plan produces hold the predicate as
+ * their data and the histogram's domain as their data type. Each map output
+ * value is the bits of an object's histogram key. The reducer keeps a uniform
+ * sample of up to {@link #SAMPLE_SIZE} keys, so memory use doesn't grow with the
+ * number of objects, and builds the histogram from it.
+ * <p>
+ * Histograms are written next to {@link CountPlan}'s counts, in the
+ * predicate's row, with the column family {@code histogram} and the domain as
+ * the column qualifier.
+ */
+public class HistogramPlan implements IndexWorkPlan {
+    /**
+     * The most keys a histogram is built from.
+     */
+    public static final int SAMPLE_SIZE = 10000;
+
+    /**
+     * The most buckets a histogram has.
+     */
+    public static final int BUCKETS = 64;
+
+    @Override
+    public Collection<Map.Entry<IntermediateProspect, LongWritable>> map(RyaStatement ryaStatement) {
+        final RyaType object = ryaStatement.getObject();
+        final String dataType = object.getDataType().stringValue();
+        final Double key = EquiDepthHistogram.getKey(object.getData(), dataType);
+        if (key == null) {
+            return Collections.emptyList();
+        }
+
+        final IntermediateProspect prospect = IntermediateProspect.builder()
+                .setIndex(HISTOGRAM)
+                .setData(ryaStatement.getPredicate().getData())
+                .setDataType(EquiDepthHistogram.getDomain(dataType))
+                .setTripleValueType(TripleValueType.PREDICATE)
+                .setVisibility(new String(ryaStatement.getColumnVisibility()))
+                .build();
+        return Collections.<Map.Entry<IntermediateProspect, LongWritable>>singletonList(
+                new CustomEntry<IntermediateProspect, LongWritable>(prospect, new LongWritable(Double.doubleToLongBits(key))));
+    }
+
+    @Override
+    public Collection<Map.Entry<IntermediateProspect, LongWritable>> combine(IntermediateProspect prospect, Iterable<LongWritable> keys) {
+        // Sampling before the shuffle would weigh small splits too heavily, so every key is passed on.
+        final List<Map.Entry<IntermediateProspect, LongWritable>> entries = new ArrayList<>();
+        for(final LongWritable key : keys) {
+            entries.add(new CustomEntry<IntermediateProspect, LongWritable>(prospect, new LongWritable(key.get())));
+        }
+        return entries;
+    }
+
+    @Override
+    public void reduce(IntermediateProspect prospect, Iterable<LongWritable> keys, Date timestamp, Reducer.Context context) throws IOException, InterruptedException {
+        // Reservoir sample the keys.
+        final Random random = new Random(prospect.getData().hashCode());
+        final double[] sample = new double[SAMPLE_SIZE];
+        long count = 0;
+        for(final LongWritable key : keys) {
+            if (count < SAMPLE_SIZE) {
+                sample[(int) count] = Double.longBitsToDouble(key.get());
+            } else {
+                final long slot = (long) (random.nextDouble() * (count + 1));
+                if (slot < SAMPLE_SIZE) {
+                    sample[(int) slot] = Double.longBitsToDouble(key.get());
+                }
+            }
+            count++;
+        }
+
+        final double[] sorted = Arrays.copyOf(sample, (int) Math.min(count, SAMPLE_SIZE));
+        Arrays.sort(sorted);
+        final EquiDepthHistogram histogram = EquiDepthHistogram.build(sorted, count, BUCKETS);
+
+        final String indexType = prospect.getTripleValueType().getIndexType();
+        final Mutation m = new Mutation(indexType + DELIM + prospect.getData() + DELIM + ProspectorUtils.getReverseIndexDateTime(timestamp));
+        final ColumnVisibility visibility = new ColumnVisibility(prospect.getVisibility());
+        m.put(HISTOGRAM, prospect.getDataType(), visibility, timestamp.getTime(), new Value(histogram.toBytes()));
+
+        context.write(null, m);
+    }
+
+    @Override
+    public String getIndexType() {
+        return HISTOGRAM;
+    }
+
+    @Override
+    public String getCompositeValue(List<String> indices) {
+        final Iterator<String> indexIt = indices.iterator();
+        String compositeIndex = indexIt.next();
+        while (indexIt.hasNext()){
+            compositeIndex += DELIM + indexIt.next();
+        }
+        return compositeIndex;
+    }
+
+    /**
+     * Returns an {@link IndexEntry} for each histogram found, whose count is
+     * the number of values the histogram describes.
+     */
+    @Override
+    public List<IndexEntry> query(Connector connector, String tableName, List<Long> prospectTimes, String type, String compositeIndex, String dataType, String[] auths) throws TableNotFoundException {
+        assert connector != null && tableName != null && type != null && compositeIndex != null;
+
+        final List<Range> ranges = new ArrayList<>();
+        if (prospectTimes != null) {
+            for(final Long prospectTime : prospectTimes) {
+                ranges.add(new Range(type + DELIM + compositeIndex + DELIM + ProspectorUtils.getReverseIndexDateTime(new Date(prospectTime))));
+            }
+        } else {
+            ranges.add(latest(type, compositeIndex));
+        }
+
+        final List<IndexEntry> indexEntries = new ArrayList<>();
+        String latestRow = null;
+        for(final Range range : ranges) {
+            for(final Entry<Key, Value> entry : scan(connector, tableName, range, dataType, auths)) {
+                final Key k = entry.getKey();
+                final String row = k.getRow().toString();
+                if (prospectTimes == null) {
+                    // Rows sort newest first, so only keep the first one.
+                    if (latestRow == null) {
+                        latestRow = row;
+                    } else if (!latestRow.equals(row)) {
+                        break;
+                    }
+                }
+
+                indexEntries.add(
+                        IndexEntry.builder()
+                            .setData(compositeIndex)
+                            .setTripleValueType(type)
+                            .setIndex(HISTOGRAM)
+                            .setDataType(k.getColumnQualifier().toString())
+                            .setVisibility(k.getColumnVisibility().toString())
+                            .setCount(parse(entry.getValue()).getCount())
+                            .setTimestamp(k.getTimestamp())
+                            .build());
+            }
+        }
+        return indexEntries;
+    }
+
+    /**
+     * Get the histograms of a predicate's objects from the latest Prospect run,
+     * one for each visibility that may be read.
+     *
+     * @param connector - The Accumulo Connector used to find the table holding the data.
+     * @param tableName - The name of the table the Prospector results are stored within.
+     * @param predicate - The predicate whose objects were histogrammed.
+     * @param domain - The domain of the histograms that will be returned.
+     * @param auths - The authorizations used to search for the histograms.
+     * @return The histograms that were found.
+     * @throws TableNotFoundException No table exists for {@code tableName}.
+     */
+    public static List<EquiDepthHistogram> getHistograms(Connector connector, String tableName, String predicate, String domain, String[] auths) throws TableNotFoundException {
+        assert connector != null && tableName != null && predicate != null && domain != null;
+
+        final List<EquiDepthHistogram> histograms = new ArrayList<>();
+        String latestRow = null;
+        for(final Entry<Key, Value> entry : scan(connector, tableName, latest(TripleValueType.PREDICATE.getIndexType(), predicate), domain, auths)) {
+            final String row = entry.getKey().getRow().toString();
+            if (latestRow == null) {
+                latestRow = row;
+            } else if (!latestRow.equals(row)) {
+                break;
+            }
+
+            histograms.add(parse(entry.getValue()));
+        }
+        return histograms;
+    }
+
+    private static Range latest(String type, String index) {
+        final String prefix = type + DELIM + index + DELIM;
+        return new Range(prefix, prefix + RdfCloudTripleStoreConstants.LAST);
+    }
+
+    private static Scanner scan(Connector connector, String tableName, Range range, String domain, String[] auths) throws TableNotFoundException {
+        final Scanner scanner = connector.createScanner(tableName, new Authorizations(auths));
+        scanner.setRange(range);
+        if (domain != null) {
+            scanner.fetchColumn(new Text(HISTOGRAM), new Text(domain));
+        } else {
+            scanner.fetchColumnFamily(new Text(HISTOGRAM));
+        }
+        return scanner;
+    }
+
+    private static EquiDepthHistogram parse(Value value) {
+        try {
+            return EquiDepthHistogram.fromBytes(value.get());
+        } catch (final IOException e) {
+            throw new IllegalStateException("Could not read a histogram.", e);
+        }
+    }
+}
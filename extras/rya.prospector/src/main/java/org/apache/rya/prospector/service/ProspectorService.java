@@ -43,7 +43,9 @@ import org.apache.hadoop.io.Text;
 import org.apache.rya.prospector.domain.IndexEntry;
 import org.apache.rya.prospector.plans.IndexWorkPlan;
 import org.apache.rya.prospector.plans.IndexWorkPlanManager;
+import org.apache.rya.prospector.plans.impl.HistogramPlan;
 import org.apache.rya.prospector.plans.impl.ServicesBackedIndexWorkPlanManager;
+import org.apache.rya.prospector.utils.EquiDepthHistogram;
 import org.apache.rya.prospector.utils.ProspectorUtils;
 
 /**
@@ -162,4 +164,17 @@ public class ProspectorService {
 
         return plan.query(connector, tableName, prospectTimes, type, compositeIndex, dataType, auths);
     }
+
+    /**
+     * Get the histograms of a predicate's objects from the latest Prospect run.
+     *
+     * @param predicate - The predicate whose objects were histogrammed.
+     * @param domain - The domain of the histograms that will be returned.
+     * @param auths - The authorizations used to search for the histograms.
+     * @return One histogram for each visibility that was found.
+     * @throws TableNotFoundException No table exists for {@code tableName}.
+     */
+    public List<EquiDepthHistogram> getHistograms(String predicate, String domain, String[] auths) throws TableNotFoundException {
+        return HistogramPlan.getHistograms(connector, tableName, predicate, domain, auths);
+    }
 }
\ No newline at end of file
@@ -21,6 +21,7 @@ package org.apache.rya.prospector.service;
 import static java.util.Objects.requireNonNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -36,7 +37,9 @@ import org.apache.rya.api.persist.RdfDAOException;
 import org.apache.rya.api.persist.RdfEvalStatsDAO;
 import org.apache.rya.prospector.domain.IndexEntry;
 import org.apache.rya.prospector.domain.TripleValueType;
+import org.apache.rya.prospector.utils.EquiDepthHistogram;
 import org.apache.rya.prospector.utils.ProspectorConstants;
+import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
 import org.openrdf.model.Value;
 
@@ -138,6 +141,77 @@ public class ProspectorServiceEvalStatsDAO implements RdfEvalStatsDAO<RdfCloudTr
         return getCardinality(conf, card, val); //TODO: Not sure about the context yet
     }
 
+    @Override
+    public double getDistinctCount(RdfCloudTripleStoreConfiguration conf, DISTINCT_OF distinct, Value val) throws RdfDAOException {
+        assert conf != null && distinct != null && val != null;
+
+        TripleValueType groupedBy = null;
+        TripleValueType counted = null;
+        switch (distinct) {
+            case SUBJECTS_PER_PREDICATE:
+                groupedBy = TripleValueType.PREDICATE;
+                counted = TripleValueType.SUBJECT;
+                break;
+            case OBJECTS_PER_PREDICATE:
+                groupedBy = TripleValueType.PREDICATE;
+                counted = TripleValueType.OBJECT;
+                break;
+            case PREDICATES_PER_SUBJECT:
+                groupedBy = TripleValueType.SUBJECT;
+                counted = TripleValueType.PREDICATE;
+                break;
+        }
+
+        double estimate = -1;
+        try {
+            final List<IndexEntry> entries = prospectorService.query(null, ProspectorConstants.DISTINCT, groupedBy.getIndexType(),
+                    Collections.singletonList(val.stringValue()), counted.getIndexType(), conf.getAuths());
+            if(!entries.isEmpty()) {
+                estimate = entries.iterator().next().getCount();
+            }
+        } catch (final TableNotFoundException e) {
+            throw new RdfDAOException(e);
+        }
+        return estimate;
+    }
+
+    @Override
+    public double getRangeCardinality(RdfCloudTripleStoreConfiguration conf, Value predicate, Literal lower, Literal upper) throws RdfDAOException {
+        assert conf != null && predicate != null;
+
+        // Both bounds must be in the same domain for the histograms to compare them.
+        final String domain = getDomain(lower != null ? lower : upper);
+        if (domain == null || (lower != null && upper != null && !domain.equals(getDomain(upper)))) {
+            return -1;
+        }
+        final Double lowerKey = lower == null ? null : EquiDepthHistogram.getKey(lower.getLabel(), lower.getDatatype().stringValue());
+        final Double upperKey = upper == null ? null : EquiDepthHistogram.getKey(upper.getLabel(), upper.getDatatype().stringValue());
+        if ((lower != null && lowerKey == null) || (upper != null && upperKey == null)) {
+            return -1;
+        }
+
+        try {
+            final List<EquiDepthHistogram> histograms = prospectorService.getHistograms(predicate.stringValue(), domain, conf.getAuths());
+            if (histograms.isEmpty()) {
+                return -1;
+            }
+            double cardinality = 0;
+            for (final EquiDepthHistogram histogram : histograms) {
+                cardinality += histogram.estimate(lowerKey, upperKey);
+            }
+            return cardinality;
+        } catch (final TableNotFoundException e) {
+            throw new RdfDAOException(e);
+        }
+    }
+
+    private static String getDomain(Literal literal) {
+        if (literal == null || literal.getDatatype() == null) {
+            return null;
+        }
+        return EquiDepthHistogram.getDomain(literal.getDatatype().stringValue());
+    }
+
     @Override
     public void setConf(RdfCloudTripleStoreConfiguration conf) {
     }
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.prospector.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.rya.api.resolver.impl.DateTimeRyaTypeResolver;
+import org.joda.time.DateTime;
+import org.openrdf.model.datatypes.XMLDatatypeUtil;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+/**
+ * An equi-depth histogram over the values of numeric or date literals. Every
+ * bucket holds about the same number of values, so buckets are narrow where
+ * values are dense, and the fraction of values that fall within a range can be
+ * estimated by interpolating within the buckets the range overlaps.
+ * <p>
+ * Literals are mapped to {@code double} keys that preserve their order:
+ * numbers are their value, and dates are milliseconds since the epoch. Keys of
+ * the two domains can't be compared, so a histogram only describes one of them.
+ */
+public class EquiDepthHistogram {
+
+    /**
+     * The domain of every numeric datatype.
+     */
+    public static final String NUMERIC = "numeric";
+
+    /**
+     * The domain of {@code xsd:dateTime} and {@code xsd:date}.
+     */
+    public static final String DATETIME = "dateTime";
+
+    private final long count;
+    private final double[] bounds;
+
+    /**
+     * Constructs an instance of {@link EquiDepthHistogram}.
+     *
+     * @param count - The number of values the histogram describes.
+     * @param bounds - The bucket boundaries, in ascending order. The first is
+     *   the smallest value and the last is the largest. (not null, at least 2)
+     */
+    public EquiDepthHistogram(long count, double[] bounds) {
+        requireNonNull(bounds);
+        checkArgument(bounds.length >= 2, "A histogram needs at least one bucket.");
+        this.count = count;
+        this.bounds = bounds;
+    }
+
+    /**
+     * Build a histogram from a sample of values.
+     *
+     * @param sample - A uniform sample of the values, in ascending order. (not null, not empty)
+     * @param count - The number of values the sample was taken from.
+     * @param buckets - The most buckets the histogram may have.
+     * @return The histogram.
+     */
+    public static EquiDepthHistogram build(double[] sample, long count, int buckets) {
+        requireNonNull(sample);
+        checkArgument(sample.length > 0, "Can not build a histogram without values.");
+        final int size = Math.max(1, Math.min(buckets, sample.length - 1));
+        final double[] bounds = new double[size + 1];
+        for (int i = 0; i <= size; i++) {
+            bounds[i] = sample[(int) ((long) i * (sample.length - 1) / size)];
+        }
+        return new EquiDepthHistogram(count, bounds);
+    }
+
+    /**
+     * @return The number of values the histogram describes.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Estimate how many values fall within a range.
+     *
+     * @param lower - The inclusive lower bound, or null if there isn't one.
+     * @param upper - The inclusive upper bound, or null if there isn't one.
+     * @return The estimated number of values in the range.
+     */
+    public double estimate(Double lower, Double upper) {
+        final double lo = lower == null ? Double.NEGATIVE_INFINITY : lower;
+        final double hi = upper == null ? Double.POSITIVE_INFINITY : upper;
+        if (lo > hi) {
+            return 0;
+        }
+
+        final int buckets = bounds.length - 1;
+        double covered = 0;
+        for (int b = 0; b < buckets; b++) {
+            final double start = bounds[b];
+            final double end = bounds[b + 1];
+            if (hi < start || lo > end) {
+                continue;
+            }
+            if (end == start) {
+                // Every value in the bucket is the same.
+                covered += 1;
+            } else if (lo == hi) {
+                // A single value within a bucket is counted once.
+                covered += Math.min(1, (double) buckets / count);
+            } else {
+                covered += (Math.min(hi, end) - Math.max(lo, start)) / (end - start);
+            }
+        }
+        return count * covered / buckets;
+    }
+
+    /**
+     * Get the domain a literal's datatype belongs to.
+     *
+     * @param dataType - The datatype of the literal. (not null)
+     * @return {@link #NUMERIC}, {@link #DATETIME}, or null if its values can't be histogrammed.
+     */
+    public static String getDomain(String dataType) {
+        requireNonNull(dataType);
+        if (XMLSchema.DATETIME.stringValue().equals(dataType) || XMLSchema.DATE.stringValue().equals(dataType)) {
+            return DATETIME;
+        }
+        if (XMLDatatypeUtil.isNumericDatatype(new URIImpl(dataType))) {
+            return NUMERIC;
+        }
+        return null;
+    }
+
+    /**
+     * Get the key a literal is histogrammed by.
+     *
+     * @param data - The literal's label. (not null)
+     * @param dataType - The literal's datatype. (not null)
+     * @return The key, or null if the literal can't be histogrammed.
+     */
+    public static Double getKey(String data, String dataType) {
+        requireNonNull(data);
+        final String domain = getDomain(dataType);
+        try {
+            if (NUMERIC.equals(domain)) {
+                final double key = Double.parseDouble(data);
+                return Double.isNaN(key) || Double.isInfinite(key) ? null : key;
+            } else if (DATETIME.equals(domain)) {
+                return (double) DateTime.parse(data, DateTimeRyaTypeResolver.XMLDATETIME_PARSER).getMillis();
+            }
+        } catch (final IllegalArgumentException e) {
+            // The label isn't valid for its datatype, so it isn't counted.
+        }
+        return null;
+    }
+
+    /**
+     * @return The serialized form of this histogram.
+     */
+    public byte[] toBytes() {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + 8 * bounds.length);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(count);
+            out.writeInt(bounds.length);
+            for (final double bound : bounds) {
+                out.writeDouble(bound);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (final IOException e) {
+            throw new IllegalStateException("Could not write to an in memory stream.", e);
+        }
+    }
+
+    /**
+     * @param bytes - A histogram serialized by {@link #toBytes()}. (not null)
+     * @return The deserialized histogram.
+     * @throws IOException The bytes are not a serialized histogram.
+     */
+    public static EquiDepthHistogram fromBytes(byte[] bytes) throws IOException {
+        requireNonNull(bytes);
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        final long count = in.readLong();
+        final double[] bounds = new double[in.readInt()];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = in.readDouble();
+        }
+        return new EquiDepthHistogram(count, bounds);
+    }
+
+    @Override
+    public String toString() {
+        return "EquiDepthHistogram{count=" + count + ", bounds=" + Arrays.toString(bounds) + "}";
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.prospector.utils;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A HyperLogLog sketch that estimates the number of distinct values it has
+ * been offered. Every sketch has {@link #REGISTERS} one byte registers, and
+ * estimates within about 1.6% of the true count. Sketches that have seen few
+ * values are serialized sparsely, as only their non-empty registers, so they
+ * take a few bytes per value instead of about 4KB. Two sketches are merged by
+ * taking the larger of each pair of registers, which gives the sketch of the
+ * union of the two sets of values, so sketches can be built in parallel and
+ * combined by Map Reduce combiners or Accumulo iterators.
+ * <p>
+ * A single register update can be encoded as a {@code long} using
+ * {@link #encode(String)}, which is how the Prospector moves sketches through
+ * the shuffle without changing the type of its map output values.
+ */
+public class HyperLogLog {
+
+    /**
+     * The number of bits of a value's hash used to pick its register.
+     */
+    public static final int PRECISION = 12;
+
+    /**
+     * The number of registers in every sketch.
+     */
+    public static final int REGISTERS = 1 << PRECISION;
+
+    /**
+     * The number of bytes each non-empty register takes in the sparse form:
+     * two for its index and one for its rank.
+     */
+    private static final int SPARSE_ENTRY = 3;
+
+    private static final int MAX_RANK = Long.SIZE - PRECISION + 1;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final byte[] registers;
+
+    /**
+     * Constructs an empty instance of {@link HyperLogLog}.
+     */
+    public HyperLogLog() {
+        this(new byte[REGISTERS]);
+    }
+
+    private HyperLogLog(final byte[] registers) {
+        this.registers = registers;
+    }
+
+    /**
+     * Encode the register update a value makes as a single {@code long}. The
+     * register's index is held in the high bits and its new rank in the low
+     * eight bits.
+     *
+     * @param value - The value being counted. (not null)
+     * @return The encoded register update.
+     */
+    public static long encode(final String value) {
+        requireNonNull(value);
+        final long hash = HASH.hashString(value, StandardCharsets.UTF_8).asLong();
+        final int index = (int) (hash >>> (Long.SIZE - PRECISION));
+        final int rank = Math.min(Long.numberOfLeadingZeros(hash << PRECISION) + 1, MAX_RANK);
+        return ((long) index << 8) | rank;
+    }
+
+    /**
+     * @param value - A value to count. (not null)
+     */
+    public void offer(final String value) {
+        merge(encode(value));
+    }
+
+    /**
+     * @param update - A register update made by {@link #encode(String)}.
+     */
+    public void merge(final long update) {
+        final int index = (int) (update >>> 8);
+        final byte rank = (byte) (update & 0xFF);
+        checkArgument(index < REGISTERS, "Register index out of range: " + index);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Merge another sketch into this one.
+     *
+     * @param other - The sketch to merge. (not null)
+     */
+    public void merge(final HyperLogLog other) {
+        requireNonNull(other);
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return The register updates that rebuild this sketch when merged into
+     *   an empty one, one per non-empty register.
+     */
+    public List<Long> getUpdates() {
+        final List<Long> updates = new ArrayList<>();
+        for (int i = 0; i < REGISTERS; i++) {
+            if (registers[i] != 0) {
+                updates.add(((long) i << 8) | registers[i]);
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * @return The estimated number of distinct values this sketch has seen.
+     */
+    public long cardinality() {
+        double sum = 0;
+        int empty = 0;
+        for (final byte rank : registers) {
+            sum += 1.0 / (1L << rank);
+            if (rank == 0) {
+                empty++;
+            }
+        }
+        final double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && empty > 0) {
+            // Linear counting is more accurate for small cardinalities.
+            return Math.round(REGISTERS * Math.log((double) REGISTERS / empty));
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return The serialized form of this sketch. It holds every register if
+     *   that's smaller, otherwise the index and rank of each non-empty one.
+     */
+    public byte[] toBytes() {
+        int nonEmpty = 0;
+        for (final byte rank : registers) {
+            if (rank != 0) {
+                nonEmpty++;
+            }
+        }
+        if (nonEmpty * SPARSE_ENTRY >= REGISTERS) {
+            return Arrays.copyOf(registers, REGISTERS);
+        }
+
+        // REGISTERS isn't a multiple of SPARSE_ENTRY, so the length tells the two forms apart.
+        final byte[] bytes = new byte[nonEmpty * SPARSE_ENTRY];
+        int offset = 0;
+        for (int i = 0; i < REGISTERS; i++) {
+            if (registers[i] != 0) {
+                bytes[offset++] = (byte) (i >>> 8);
+                bytes[offset++] = (byte) i;
+                bytes[offset++] = registers[i];
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @param bytes - A sketch serialized by {@link #toBytes()}. (not null)
+     * @return The deserialized sketch.
+     */
+    public static HyperLogLog fromBytes(final byte[] bytes) {
+        requireNonNull(bytes);
+        if (bytes.length == REGISTERS) {
+            return new HyperLogLog(Arrays.copyOf(bytes, REGISTERS));
+        }
+
+        checkArgument(bytes.length % SPARSE_ENTRY == 0, "Not a serialized sketch, found " + bytes.length + " bytes");
+        final byte[] registers = new byte[REGISTERS];
+        for (int offset = 0; offset < bytes.length; offset += SPARSE_ENTRY) {
+            final int index = ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+            checkArgument(index < REGISTERS, "Register index out of range: " + index);
+            registers[index] = bytes[offset + 2];
+        }
+        return new HyperLogLog(registers);
+    }
+}
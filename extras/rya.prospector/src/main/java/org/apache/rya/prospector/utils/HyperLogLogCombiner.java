@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.prospector.utils;
+
+import static java.util.Objects.requireNonNull;
+import static org.apache.rya.prospector.utils.ProspectorConstants.DISTINCT;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.admin.TableOperations;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.Combiner;
+import org.apache.accumulo.core.iterators.IteratorUtil.IteratorScope;
+
+/**
+ * An Accumulo {@link Combiner} that merges the {@link HyperLogLog} sketches
+ * written to the same key. Each Prospector run writes its sketches to rows
+ * named by its start time, truncated to the minute, and writes each key once,
+ * so this only matters when two runs start within the same minute: without it
+ * the later run's sketch hides the earlier one's. Sketches of different runs
+ * are never merged. The Prospector attaches it to its output table when
+ * {@link ProspectorConstants#COMBINE_SKETCHES} is set, which requires the
+ * Prospector's jar to be on the tablet servers' classpath.
+ */
+public class HyperLogLogCombiner extends Combiner {
+
+    /**
+     * The name of the combiner when it is attached to a table.
+     */
+    public static final String NAME = "distinctSketches";
+    private static final int PRIORITY = 10;
+
+    @Override
+    public Value reduce(Key key, Iterator<Value> iter) {
+        final HyperLogLog sketch = new HyperLogLog();
+        while (iter.hasNext()) {
+            sketch.merge(HyperLogLog.fromBytes(iter.next().get()));
+        }
+        return new Value(sketch.toBytes());
+    }
+
+    /**
+     * Attach a {@link HyperLogLogCombiner} to the sketch column of a Prospector
+     * output table, unless it's already attached.
+     *
+     * @param connector - Connects to the Accumulo instance. (not null)
+     * @param tableName - The prospects table. (not null)
+     */
+    public static void attach(Connector connector, String tableName) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+        requireNonNull(connector);
+        requireNonNull(tableName);
+        final TableOperations tops = connector.tableOperations();
+        if (tops.listIterators(tableName).containsKey(NAME)) {
+            return;
+        }
+        final IteratorSetting setting = new IteratorSetting(PRIORITY, NAME, HyperLogLogCombiner.class);
+        Combiner.setColumns(setting, Collections.singletonList(new IteratorSetting.Column(DISTINCT)));
+        tops.attachIterator(tableName, setting, EnumSet.allOf(IteratorScope.class));
+    }
+}
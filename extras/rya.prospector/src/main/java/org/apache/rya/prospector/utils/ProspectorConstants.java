@@ -27,6 +27,16 @@ public class ProspectorConstants {
      */
     public static final String COUNT = "count";
 
+    /**
+     * The name of the distinct value sketch index.
+     */
+    public static final String DISTINCT = "distinct";
+
+    /**
+     * The name of the value histogram index.
+     */
+    public static final String HISTOGRAM = "histogram";
+
     /**
      * The Row ID within Accumulo for any metadata entry related to a Prospect run.
      */
@@ -43,6 +53,7 @@ public class ProspectorConstants {
 
     //config properties
     public static final String PERFORMANT = "performant";
+    public static final String COMBINE_SKETCHES = "prospector.combineSketches";
 
     public static final String USERNAME = "username";
     public static final String PASSWORD = "password";
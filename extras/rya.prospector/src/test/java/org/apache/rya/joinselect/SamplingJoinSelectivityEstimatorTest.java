@@ -0,0 +1,173 @@
+package org.apache.rya.joinselect;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.io.Text;
+import org.apache.rya.accumulo.AccumuloRdfConfiguration;
+import org.apache.rya.accumulo.AccumuloRyaDAO;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.domain.RyaURI;
+import org.apache.rya.api.layout.TablePrefixLayoutStrategy;
+import org.apache.rya.prospector.service.ProspectorServiceEvalStatsDAO;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.query.MalformedQueryException;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.helpers.StatementPatternCollector;
+import org.openrdf.query.parser.sparql.SPARQLParser;
+
+public class SamplingJoinSelectivityEstimatorTest {
+
+    private static final String DELIM = "\u0000";
+
+    private Connector conn;
+    private AccumuloRdfConfiguration arc;
+    private AccumuloRyaDAO ryaDAO;
+    private AccumuloSelectivityEvalDAO accc;
+
+    @Before
+    public void init() throws Exception {
+        conn = new MockInstance("sampling").getConnector("user", new PasswordToken("pass".getBytes()));
+        for (String table : conn.tableOperations().list()) {
+            if (table.startsWith("rya_")) {
+                conn.tableOperations().delete(table);
+            }
+        }
+
+        arc = new AccumuloRdfConfiguration();
+        arc.setTableLayoutStrategy(new TablePrefixLayoutStrategy());
+
+        ryaDAO = new AccumuloRyaDAO();
+        ryaDAO.setConnector(conn);
+        ryaDAO.setConf(arc);
+        ryaDAO.init();
+
+        accc = new AccumuloSelectivityEvalDAO();
+        accc.setConf(arc);
+        accc.setConnector(conn);
+        accc.setRdfEvalDAO(new ProspectorServiceEvalStatsDAO(conn, arc));
+        accc.init();
+
+        // 100 statements link a subject to an object, and the first 50 objects each have 2 names
+        List<Mutation> counts = new ArrayList<Mutation>();
+        for (int i = 0; i < 100; i++) {
+            ryaDAO.add(new RyaStatement(new RyaURI("uri:s" + i), new RyaURI("uri:links"), new RyaURI("uri:o" + i)));
+        }
+        for (int i = 0; i < 50; i++) {
+            ryaDAO.add(new RyaStatement(new RyaURI("uri:o" + i), new RyaURI("uri:name"), new RyaURI("uri:n" + i + "a")));
+            ryaDAO.add(new RyaStatement(new RyaURI("uri:o" + i), new RyaURI("uri:name"), new RyaURI("uri:n" + i + "b")));
+            counts.add(count("subjectpredicate" + DELIM + "uri:o" + i + DELIM + "uri:name", 2));
+        }
+        counts.add(count("predicate" + DELIM + "uri:links", 100));
+        counts.add(count("predicate" + DELIM + "uri:name", 100));
+        BatchWriter bw = conn.createBatchWriter("rya_prospects", new BatchWriterConfig());
+        bw.addMutations(counts);
+        bw.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ryaDAO.destroy();
+    }
+
+    @Test
+    public void testExactEstimate() throws Exception {
+        SamplingJoinSelectivityEstimator sampler = new SamplingJoinSelectivityEstimator(accc, 200, 60000);
+        List<StatementPattern> spList = getSpList("SELECT * { ?s <uri:links> ?o . ?o <uri:name> ?n . }");
+
+        // The whole pattern fits in the sample, so 100 of the 100 * 100 pairs join exactly
+        SamplingJoinSelectivityEstimator.Estimate estimate = sampler.estimate(arc, spList.get(0), spList.get(1));
+        Assert.assertEquals(100, estimate.getSampleSize());
+        Assert.assertEquals(0.01, estimate.getSelectivity(), 0.0001);
+        Assert.assertEquals(0.01, estimate.getLower(), 0.0001);
+        Assert.assertEquals(0.01, estimate.getUpper(), 0.0001);
+    }
+
+    @Test
+    public void testSampledEstimate() throws Exception {
+        SamplingJoinSelectivityEstimator sampler = new SamplingJoinSelectivityEstimator(accc, 20, 60000);
+        List<StatementPattern> spList = getSpList("SELECT * { ?s <uri:links> ?o . ?o <uri:name> ?n . }");
+
+        SamplingJoinSelectivityEstimator.Estimate estimate = sampler.estimate(arc, spList.get(0), spList.get(1));
+        Assert.assertTrue(estimate.getSampleSize() > 0 && estimate.getSampleSize() <= 20);
+        Assert.assertTrue(estimate.toString(), estimate.getSelectivity() > 0.002 && estimate.getSelectivity() < 0.02);
+        Assert.assertTrue(estimate.toString(), estimate.getLower() <= estimate.getSelectivity());
+        Assert.assertTrue(estimate.toString(), estimate.getUpper() >= estimate.getSelectivity());
+    }
+
+    @Test
+    public void testCachedEstimate() throws Exception {
+        SamplingJoinSelectivityEstimator sampler = new SamplingJoinSelectivityEstimator(accc, 20, 60000);
+        List<StatementPattern> spList1 = getSpList("SELECT * { ?s <uri:links> ?o . ?o <uri:name> ?n . }");
+        List<StatementPattern> spList2 = getSpList("SELECT * { ?x <uri:name> ?y . ?z <uri:links> ?x . }");
+
+        // The same join with other variable names, in the other order, is read from the cache
+        SamplingJoinSelectivityEstimator.Estimate estimate = sampler.estimate(arc, spList1.get(0), spList1.get(1));
+        Assert.assertSame(estimate, sampler.estimate(arc, spList2.get(0), spList2.get(1)));
+
+        sampler.invalidate();
+        Assert.assertNotSame(estimate, sampler.estimate(arc, spList1.get(0), spList1.get(1)));
+    }
+
+    @Test
+    public void testNoEstimate() throws Exception {
+        SamplingJoinSelectivityEstimator sampler = new SamplingJoinSelectivityEstimator(accc, 200, 60000);
+
+        List<StatementPattern> spList = getSpList("SELECT * { ?s <uri:links> ?o . ?n <uri:name> ?m . }");
+        Assert.assertNull(sampler.estimate(arc, spList.get(0), spList.get(1)));
+
+        spList = getSpList("SELECT * { ?s <uri:links> ?o . ?o ?p ?n . }");
+        Assert.assertNull(sampler.estimate(arc, spList.get(0), spList.get(1)));
+
+        // Nothing is counted for the predicate, so nothing joins
+        spList = getSpList("SELECT * { ?s <uri:links> ?o . ?o <uri:age> ?n . }");
+        Assert.assertEquals(0, sampler.estimate(arc, spList.get(0), spList.get(1)).getSelectivity(), 0);
+    }
+
+    @Test
+    public void testSelectivityEvalDAO() throws Exception {
+        // No full table cardinality was written to the selectivity table, so only the sampler can answer
+        accc.setSampler(new SamplingJoinSelectivityEstimator(accc, 200, 60000));
+        List<StatementPattern> spList = getSpList("SELECT * { ?s <uri:links> ?o . ?o <uri:name> ?n . }");
+        Assert.assertEquals(0.01, accc.getJoinSelect(arc, spList.get(0), spList.get(1)), 0.0001);
+    }
+
+    private static Mutation count(String row, int count) {
+        Mutation m = new Mutation(new Text(row + DELIM + "1"));
+        m.put(new Text("count"), new Text(""), new Value(Integer.toString(count).getBytes()));
+        return m;
+    }
+
+    private static List<StatementPattern> getSpList(String query) throws MalformedQueryException {
+        return StatementPatternCollector.process(new SPARQLParser().parseQuery(query, null).getTupleExpr());
+    }
+}
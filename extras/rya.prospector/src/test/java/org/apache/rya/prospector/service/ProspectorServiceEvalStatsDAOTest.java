@@ -42,6 +42,7 @@ import org.apache.rya.api.domain.RyaType;
 import org.apache.rya.api.domain.RyaURI;
 import org.apache.rya.api.persist.RdfEvalStatsDAO;
 import org.apache.rya.api.persist.RdfEvalStatsDAO.CARDINALITY_OF;
+import org.apache.rya.api.persist.RdfEvalStatsDAO.DISTINCT_OF;
 import org.apache.rya.prospector.mr.Prospector;
 import org.junit.Test;
 import org.openrdf.model.Value;
@@ -112,6 +113,110 @@ public class ProspectorServiceEvalStatsDAOTest {
         assertEquals(-1.0, count, 0.001);
     }
 
+    @Test
+    public void testDistinctCount() throws Exception {
+        // Load some data into a mock Accumulo and run the Prospector MapReduce job.
+        final Instance mock = new MockInstance("accumulo");
+
+        final Connector connector = mock.getConnector("user", new PasswordToken("pass"));
+        final String outtable = "rya_prospects";
+        if (connector.tableOperations().exists(outtable)) {
+            connector.tableOperations().delete(outtable);
+        }
+        connector.tableOperations().create(outtable);
+
+        final AccumuloRyaDAO ryaDAO = new AccumuloRyaDAO();
+        ryaDAO.setConnector(connector);
+        ryaDAO.init();
+
+        ryaDAO.add(new RyaStatement(new RyaURI("urn:gem:etype#1234"), new RyaURI("urn:gem#pred"), new RyaType("mydata1")));
+        ryaDAO.add(new RyaStatement(new RyaURI("urn:gem:etype#1234"), new RyaURI("urn:gem#pred"), new RyaType("mydata2")));
+        ryaDAO.add(new RyaStatement(new RyaURI("urn:gem:etype#1234"), new RyaURI("urn:gem#pred"), new RyaType("12")));
+        ryaDAO.add(new RyaStatement(new RyaURI("urn:gem:etype#1235"), new RyaURI("urn:gem#pred"), new RyaType(XMLSchema.INTEGER, "12")));
+        ryaDAO.add(new RyaStatement(new RyaURI("urn:gem:etype#1235"), new RyaURI("urn:gem#pred1"), new RyaType("12")));
+
+        final String confFile = "stats_cluster_config.xml";
+        final Path confPath = new Path(getClass().getClassLoader().getResource(confFile).toString());
+        final String[] args = { confPath.toString() };
+        ToolRunner.run(new Prospector(), args);
+
+        ryaDAO.destroy();
+
+        final Configuration conf = new Configuration();
+        conf.addResource(confPath);
+
+        final AccumuloRdfConfiguration rdfConf = new AccumuloRdfConfiguration(conf);
+        rdfConf.setAuths("U","FOUO");
+        final ProspectorServiceEvalStatsDAO evalDao = new ProspectorServiceEvalStatsDAO(connector, rdfConf);
+        evalDao.init();
+
+        // Two subjects and four objects, counting the typed literal separately, appear with 'urn:gem#pred'.
+        double count = evalDao.getDistinctCount(rdfConf, DISTINCT_OF.SUBJECTS_PER_PREDICATE, new URIImpl("urn:gem#pred"));
+        assertEquals(2.0, count, 0.001);
+        count = evalDao.getDistinctCount(rdfConf, DISTINCT_OF.OBJECTS_PER_PREDICATE, new URIImpl("urn:gem#pred"));
+        assertEquals(4.0, count, 0.001);
+
+        // 'urn:gem:etype#1235' is used with two predicates.
+        count = evalDao.getDistinctCount(rdfConf, DISTINCT_OF.PREDICATES_PER_SUBJECT, new URIImpl("urn:gem:etype#1235"));
+        assertEquals(2.0, count, 0.001);
+
+        // Nothing is known about 'urn:gem#pred2'.
+        count = evalDao.getDistinctCount(rdfConf, DISTINCT_OF.SUBJECTS_PER_PREDICATE, new URIImpl("urn:gem#pred2"));
+        assertEquals(-1.0, count, 0.001);
+    }
+
+    @Test
+    public void testRangeCardinality() throws Exception {
+        // Load some data into a mock Accumulo and run the Prospector MapReduce job.
+        final Instance mock = new MockInstance("accumulo");
+
+        final Connector connector = mock.getConnector("user", new PasswordToken("pass"));
+        final String outtable = "rya_prospects";
+        if (connector.tableOperations().exists(outtable)) {
+            connector.tableOperations().delete(outtable);
+        }
+        connector.tableOperations().create(outtable);
+
+        final AccumuloRyaDAO ryaDAO = new AccumuloRyaDAO();
+        ryaDAO.setConnector(connector);
+        ryaDAO.init();
+
+        for (int i = 1; i <= 100; i++) {
+            ryaDAO.add(new RyaStatement(new RyaURI("urn:gem:etype#" + i), new RyaURI("urn:gem#age"), new RyaType(XMLSchema.INTEGER, "" + i)));
+        }
+        ryaDAO.add(new RyaStatement(new RyaURI("urn:gem:etype#1"), new RyaURI("urn:gem#age"), new RyaType("unknown")));
+
+        final String confFile = "stats_cluster_config.xml";
+        final Path confPath = new Path(getClass().getClassLoader().getResource(confFile).toString());
+        final String[] args = { confPath.toString() };
+        ToolRunner.run(new Prospector(), args);
+
+        ryaDAO.destroy();
+
+        final Configuration conf = new Configuration();
+        conf.addResource(confPath);
+
+        final AccumuloRdfConfiguration rdfConf = new AccumuloRdfConfiguration(conf);
+        rdfConf.setAuths("U","FOUO");
+        final ProspectorServiceEvalStatsDAO evalDao = new ProspectorServiceEvalStatsDAO(connector, rdfConf);
+        evalDao.init();
+
+        // About half of the ages are at most 50, and the plain literal isn't histogrammed.
+        final URIImpl age = new URIImpl("urn:gem#age");
+        double count = evalDao.getRangeCardinality(rdfConf, age, null, new LiteralImpl("50", XMLSchema.INTEGER));
+        assertEquals(50.0, count, 3);
+
+        // Bounds of any numeric datatype may be used.
+        count = evalDao.getRangeCardinality(rdfConf, age, new LiteralImpl("90.5", XMLSchema.DOUBLE), null);
+        assertEquals(10.0, count, 3);
+
+        // Nothing is known about dates or other predicates.
+        count = evalDao.getRangeCardinality(rdfConf, age, new LiteralImpl("2017-01-01T00:00:00Z", XMLSchema.DATETIME), null);
+        assertEquals(-1.0, count, 0.001);
+        count = evalDao.getRangeCardinality(rdfConf, new URIImpl("urn:gem#pred2"), null, new LiteralImpl("50", XMLSchema.INTEGER));
+        assertEquals(-1.0, count, 0.001);
+    }
+
     @Test
     public void testNoAuthsCount() throws Exception {
         // Load some data into a mock Accumulo and run the Prospector MapReduce job.
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.prospector.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.openrdf.model.vocabulary.XMLSchema;
+
+/**
+ * Tests the methods of {@link EquiDepthHistogram}.
+ */
+public class EquiDepthHistogramTest {
+
+    @Test
+    public void estimateRanges() {
+        final double[] values = new double[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i + 1;
+        }
+        final EquiDepthHistogram histogram = EquiDepthHistogram.build(values, 100, 64);
+
+        assertEquals(100, histogram.estimate(null, null), 0.001);
+        assertEquals(50, histogram.estimate(1.0, 50.0), 2);
+        assertEquals(10, histogram.estimate(90.0, null), 2);
+        assertEquals(0, histogram.estimate(200.0, null), 0.001);
+        assertEquals(0, histogram.estimate(60.0, 40.0), 0.001);
+    }
+
+    @Test
+    public void estimateSkewedValues() {
+        // Most of the values are the same.
+        final double[] values = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i < 900 ? 7 : i;
+        }
+        Arrays.sort(values);
+        final EquiDepthHistogram histogram = EquiDepthHistogram.build(values, 1000, 64);
+
+        assertEquals(900, histogram.estimate(7.0, 7.0), 50);
+        assertEquals(50, histogram.estimate(950.0, null), 10);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        final EquiDepthHistogram histogram = EquiDepthHistogram.build(new double[] { 1, 2, 3, 5, 8 }, 5000, 4);
+        final EquiDepthHistogram read = EquiDepthHistogram.fromBytes(histogram.toBytes());
+        assertEquals(histogram.toString(), read.toString());
+        assertEquals(5000, read.getCount());
+    }
+
+    @Test
+    public void keysPreserveOrder() {
+        assertEquals(12.0, EquiDepthHistogram.getKey("12", XMLSchema.INTEGER.stringValue()), 0.001);
+        assertEquals(-1.5, EquiDepthHistogram.getKey("-1.5", XMLSchema.DOUBLE.stringValue()), 0.001);
+        assertEquals(EquiDepthHistogram.NUMERIC, EquiDepthHistogram.getDomain(XMLSchema.INT.stringValue()));
+        assertEquals(EquiDepthHistogram.DATETIME, EquiDepthHistogram.getDomain(XMLSchema.DATETIME.stringValue()));
+
+        final double earlier = EquiDepthHistogram.getKey("2016-12-31T23:59:59Z", XMLSchema.DATETIME.stringValue());
+        final double later = EquiDepthHistogram.getKey("2017-01-01T00:00:00Z", XMLSchema.DATETIME.stringValue());
+        assertEquals(1000, later - earlier, 0.001);
+
+        assertNull(EquiDepthHistogram.getKey("twelve", XMLSchema.INTEGER.stringValue()));
+        assertNull(EquiDepthHistogram.getKey("12", XMLSchema.STRING.stringValue()));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rya.prospector.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests the methods of {@link HyperLogLog}.
+ */
+public class HyperLogLogTest {
+
+    @Test
+    public void smallCardinalityIsExact() {
+        final HyperLogLog sketch = new HyperLogLog();
+        sketch.offer("urn:alice");
+        sketch.offer("urn:bob");
+        sketch.offer("urn:alice");
+        assertEquals(2, sketch.cardinality());
+    }
+
+    @Test
+    public void largeCardinalityIsEstimated() {
+        final HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 100000; i++) {
+            sketch.offer("urn:subject" + i);
+        }
+        assertEquals(100000, sketch.cardinality(), 5000);
+    }
+
+    @Test
+    public void mergeIsUnion() {
+        final HyperLogLog left = new HyperLogLog();
+        final HyperLogLog right = new HyperLogLog();
+        final HyperLogLog both = new HyperLogLog();
+        for (int i = 0; i < 20000; i++) {
+            final String value = "urn:subject" + i;
+            if (i < 15000) {
+                left.offer(value);
+            }
+            if (i >= 5000) {
+                right.offer(value);
+            }
+            both.offer(value);
+        }
+        left.merge(right);
+        assertArrayEquals(both.toBytes(), left.toBytes());
+    }
+
+    @Test
+    public void updatesRebuildSketch() {
+        final HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            sketch.offer("urn:object" + i);
+        }
+
+        final HyperLogLog rebuilt = new HyperLogLog();
+        for (final Long update : sketch.getUpdates()) {
+            rebuilt.merge(update);
+        }
+        assertArrayEquals(sketch.toBytes(), rebuilt.toBytes());
+        assertEquals(sketch.cardinality(), HyperLogLog.fromBytes(sketch.toBytes()).cardinality());
+    }
+
+    @Test
+    public void smallSketchesAreSparse() {
+        final HyperLogLog sketch = new HyperLogLog();
+        sketch.offer("urn:talksTo");
+        sketch.offer("urn:worksAt");
+        assertEquals(6, sketch.toBytes().length);
+        assertEquals(0, new HyperLogLog().toBytes().length);
+
+        final HyperLogLog restored = HyperLogLog.fromBytes(sketch.toBytes());
+        assertEquals(2, restored.cardinality());
+        assertEquals(sketch.getUpdates(), restored.getUpdates());
+    }
+
+    @Test
+    public void largeSketchesAreDense() {
+        final HyperLogLog sketch = new HyperLogLog();
+        for (int i = 0; i < 100000; i++) {
+            sketch.offer("urn:subject" + i);
+        }
+        assertEquals(HyperLogLog.REGISTERS, sketch.toBytes().length);
+        assertEquals(sketch.getUpdates(), HyperLogLog.fromBytes(sketch.toBytes()).getUpdates());
+    }
+}
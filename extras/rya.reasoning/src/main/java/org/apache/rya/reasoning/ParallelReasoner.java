@@ -0,0 +1,325 @@
+package org.apache.rya.reasoning;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.log4j.Logger;
+import org.apache.rya.reasoning.LocalReasoner.Relevance;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+
+/**
+ * Runs the forward-chaining reasoner in a single JVM, for graphs small enough
+ * to hold in memory. Each iteration does what the ForwardChain and
+ * DuplicateElimination jobs do, without starting a job or writing anything to
+ * HDFS:
+ * <ol>
+ * <li>Partition the known facts by node, using the same relevance rules as the
+ *      ForwardChain mapper, with incoming edges ordered before outgoing edges.
+ * <li>Run a {@link LocalReasoner} for every node in a fork-join pool. Derived
+ *      facts and inconsistencies are collected in concurrent maps shared by
+ *      all the reasoners, keeping the simplest derivation of each fact.
+ * <li>Drop facts that were already known, add the rest to the known facts, and
+ *      rebuild the schema if any schema facts were derived.
+ * </ol>
+ * Iterations repeat until nothing that could be used for further reasoning
+ * is derived. Iteration numbers and schema update numbers are tracked exactly
+ * as the MapReduce driver tracks them, so the reasoners skip the same old
+ * facts they would skip there.
+ */
+public class ParallelReasoner {
+    private static final Logger log = Logger.getLogger(ParallelReasoner.class);
+
+    // Nodes reasoned about by one task before the work is no longer split
+    private static final int NODES_PER_TASK = 64;
+
+    private final ForkJoinPool pool;
+
+    // Every triple known so far, whether input or derived
+    private final Set<Fact> known = new HashSet<>();
+    private final List<Fact> input = new ArrayList<>();
+    private final List<Statement> schemaTriples = new ArrayList<>();
+    // Derived instance facts, depending on whether they might still be used
+    private final List<Fact> useful = new ArrayList<>();
+    private final List<Fact> terminal = new ArrayList<>();
+
+    private final Set<Fact> derived = new LinkedHashSet<>();
+    private final Set<Derivation> inconsistencies = new LinkedHashSet<>();
+    private Schema schema;
+    private int iteration = 0;
+    private int lastSchemaChange = 0;
+
+    /**
+     * Constructor.
+     * @param   parallelism Number of reasoners to run at once
+     */
+    public ParallelReasoner(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Add an input triple. Schema triples are used to build the schema.
+     */
+    public void add(Statement triple) {
+        Fact fact = new Fact(triple);
+        if (known.add(fact)) {
+            input.add(fact);
+            if (Schema.isSchemaTriple(triple)) {
+                schemaTriples.add(triple);
+            }
+        }
+    }
+
+    /**
+     * Reason over the input until no new information can be derived.
+     * @return  The number of iterations run
+     */
+    public int reason() {
+        if (schema == null) {
+            schema = buildSchema();
+        }
+        boolean productive = true;
+        while (productive) {
+            iteration++;
+            // Unless the schema just changed, facts that were found to be
+            // useless for further reasoning can be left out
+            boolean schemaNew = lastSchemaChange == iteration - 1;
+            Map<Resource, Neighborhood> neighborhoods = partition(schemaNew);
+            ConcurrentMap<Fact, Fact> newFacts = new ConcurrentHashMap<>();
+            Set<Derivation> newInconsistencies = ConcurrentHashMap.newKeySet();
+            List<Resource> nodes = new ArrayList<>(neighborhoods.keySet());
+            pool.invoke(new ReasoningTask(nodes, 0, nodes.size(), neighborhoods,
+                newFacts, newInconsistencies));
+
+            // Only keep unique, newly generated facts
+            long newInstance = 0;
+            long newSchema = 0;
+            long usefulOutput = 0;
+            long numInconsistencies = 0;
+            for (Fact fact : newFacts.values()) {
+                if (!known.add(fact)) {
+                    continue;
+                }
+                derived.add(fact);
+                if (Schema.isSchemaTriple(fact.getTriple())) {
+                    schemaTriples.add(fact.getTriple());
+                    newSchema++;
+                }
+                else if (fact.isUseful()) {
+                    useful.add(fact);
+                    usefulOutput++;
+                    newInstance++;
+                }
+                else {
+                    terminal.add(fact);
+                    newInstance++;
+                }
+            }
+            for (Derivation inconsistency : newInconsistencies) {
+                if (inconsistencies.add(inconsistency)) {
+                    numInconsistencies++;
+                }
+            }
+
+            // If schema triples were just deduced, regenerate the whole schema
+            if (newSchema > 0) {
+                lastSchemaChange = iteration;
+                schema = buildSchema();
+            }
+
+            log.info("Iteration " + iteration + ": " + neighborhoods.size()
+                + " nodes, " + newInstance + " new instance triples ("
+                + usefulOutput + " useful for reasoning), " + newSchema
+                + " new schema triples, " + numInconsistencies
+                + " new inconsistencies");
+            // Repeat if we're still generating information
+            productive = usefulOutput + newSchema > 0;
+        }
+        return iteration;
+    }
+
+    /**
+     * Get every fact derived so far, including schema facts.
+     */
+    public Set<Fact> getFacts() {
+        return derived;
+    }
+
+    /**
+     * Get every inconsistency found so far.
+     */
+    public Set<Derivation> getInconsistencies() {
+        return inconsistencies;
+    }
+
+    /**
+     * Get the schema built from the input and derived schema triples.
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Stop the reasoner's threads.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private Schema buildSchema() {
+        Schema s = new Schema();
+        for (Statement triple : schemaTriples) {
+            s.processTriple(triple);
+        }
+        s.closure();
+        return s;
+    }
+
+    /**
+     * Send each fact to the nodes that might use it, the way the ForwardChain
+     * mapper does.
+     */
+    private Map<Resource, Neighborhood> partition(boolean schemaNew) {
+        Map<Resource, Neighborhood> neighborhoods = new HashMap<>();
+        partition(input, neighborhoods);
+        partition(useful, neighborhoods);
+        if (schemaNew) {
+            partition(terminal, neighborhoods);
+        }
+        return neighborhoods;
+    }
+
+    private void partition(Collection<Fact> facts,
+            Map<Resource, Neighborhood> neighborhoods) {
+        for (Fact fact : facts) {
+            Relevance rel = LocalReasoner.relevantFact(fact, schema);
+            if (rel.subject()) {
+                neighborhood(fact.getSubject(), neighborhoods).outgoing.add(fact);
+            }
+            if (rel.object()) {
+                neighborhood((Resource) fact.getObject(), neighborhoods).incoming.add(fact);
+            }
+        }
+    }
+
+    private static Neighborhood neighborhood(Resource node,
+            Map<Resource, Neighborhood> neighborhoods) {
+        Neighborhood n = neighborhoods.get(node);
+        if (n == null) {
+            n = new Neighborhood();
+            neighborhoods.put(node, n);
+        }
+        return n;
+    }
+
+    /**
+     * The facts one node's reasoner receives. Incoming edges are processed
+     * first, like the secondary sort of the ForwardChain job orders them.
+     */
+    private static class Neighborhood {
+        final List<Fact> incoming = new ArrayList<>();
+        final List<Fact> outgoing = new ArrayList<>();
+    }
+
+    /**
+     * Reasons about a range of nodes, splitting it among more tasks while it
+     * is large.
+     */
+    private class ReasoningTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<Resource> nodes;
+        private final int from;
+        private final int to;
+        private final Map<Resource, Neighborhood> neighborhoods;
+        private final ConcurrentMap<Fact, Fact> newFacts;
+        private final Set<Derivation> newInconsistencies;
+
+        ReasoningTask(List<Resource> nodes, int from, int to,
+                Map<Resource, Neighborhood> neighborhoods,
+                ConcurrentMap<Fact, Fact> newFacts,
+                Set<Derivation> newInconsistencies) {
+            this.nodes = nodes;
+            this.from = from;
+            this.to = to;
+            this.neighborhoods = neighborhoods;
+            this.newFacts = newFacts;
+            this.newInconsistencies = newInconsistencies;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > NODES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ReasoningTask(nodes, from, mid, neighborhoods,
+                        newFacts, newInconsistencies),
+                    new ReasoningTask(nodes, mid, to, neighborhoods,
+                        newFacts, newInconsistencies));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                reason(nodes.get(i));
+            }
+        }
+
+        private void reason(Resource node) {
+            Neighborhood n = neighborhoods.get(node);
+            LocalReasoner reasoner = new LocalReasoner(node, schema,
+                iteration, lastSchemaChange);
+            // Facts are shared between nodes, and the reasoner may store them
+            for (Fact fact : n.incoming) {
+                reasoner.processFact(fact.clone());
+                collect(reasoner);
+            }
+            for (Fact fact : n.outgoing) {
+                reasoner.processFact(fact.clone());
+                collect(reasoner);
+            }
+            reasoner.getTypes();
+            collect(reasoner);
+        }
+
+        /**
+         * Keep the simplest derivation of each fact, as DuplicateElimination
+         * does.
+         */
+        private void collect(LocalReasoner reasoner) {
+            if (reasoner.hasNewFacts()) {
+                for (Fact fact : reasoner.getFacts()) {
+                    newFacts.merge(fact, fact, (a, b) -> a.span() <= b.span() ? a : b);
+                }
+            }
+            if (reasoner.hasInconsistencies()) {
+                newInconsistencies.addAll(reasoner.getInconsistencies());
+            }
+        }
+    }
+}
@@ -20,9 +20,9 @@ package org.apache.rya.reasoning;
  */
 
 import java.util.HashSet;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
@@ -117,14 +117,16 @@ public class Schema {
     }
 
     /**
-     * Map URIs to schema information about a property
+     * Map URIs to schema information about a property. Concurrent, since
+     * reasoners running in parallel may each look up a property the schema
+     * has never seen.
      */
-    protected Map<URI, OwlProperty> properties = new HashMap<>();
+    protected Map<URI, OwlProperty> properties = new ConcurrentHashMap<>();
 
     /**
      * Map Resources to schema information about a class/restriction
      */
-    protected Map<Resource, OwlClass> classes = new HashMap<>();
+    protected Map<Resource, OwlClass> classes = new ConcurrentHashMap<>();
 
     /**
      * Get schema information for a class, for reading and writing.
@@ -132,7 +134,7 @@ public class Schema {
      */
     public OwlClass getClass(Resource c) {
         if (!classes.containsKey(c)) {
-            classes.put(c, new OwlClass(c));
+            classes.putIfAbsent(c, new OwlClass(c));
         }
         return classes.get(c);
     }
@@ -151,7 +153,7 @@ public class Schema {
      */
     public OwlProperty getProperty(URI p) {
         if (!properties.containsKey(p)) {
-            properties.put(p, new OwlProperty(p));
+            properties.putIfAbsent(p, new OwlProperty(p));
         }
         return properties.get(p);
     }
@@ -20,14 +20,33 @@ package org.apache.rya.reasoning.mr;
  */
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.rya.accumulo.AccumuloRdfConfiguration;
 import org.apache.rya.accumulo.mr.RyaStatementWritable;
+import org.apache.rya.api.RdfCloudTripleStoreConstants.TABLE_LAYOUT;
+import org.apache.rya.api.RdfCloudTripleStoreUtils;
+import org.apache.rya.api.resolver.RdfToRyaConversions;
+import org.apache.rya.api.resolver.RyaTripleContext;
+import org.apache.rya.api.resolver.triple.TripleRowResolverException;
 import org.apache.rya.reasoning.Derivation;
 import org.apache.rya.reasoning.Fact;
 
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.TableNotFoundException;
 import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
@@ -42,11 +61,29 @@ public class DuplicateElimination extends AbstractReasoningTool {
         System.exit(ToolRunner.run(new DuplicateElimination(), args));
     }
 
+    private static final Logger log = Logger.getLogger(DuplicateElimination.class);
+
     @Override
     protected void configureReasoningJob(String[] args) throws Exception {
-        configureMultipleInput(DuplicateTableMapper.class,
-            DuplicateRdfMapper.class, DuplicateFileMapper.class,
-            InconsistencyMapper.class, false);
+        Configuration conf = job.getConfiguration();
+        boolean filtered = MRReasoningUtils.filterDuplicates(conf);
+        Path filterPath = MRReasoningUtils.getOutputPath(conf,
+            MRReasoningUtils.FILTER_DIR);
+        if (filtered && !FileSystem.get(conf).isDirectory(filterPath)) {
+            log.warn("No triple filter found in " + filterPath
+                + "; reading the table instead");
+            filtered = false;
+        }
+        if (filtered) {
+            // Rule out existing triples with the filter instead of the table
+            configureFileInput(FilteredFileMapper.class,
+                InconsistencyMapper.class, false);
+        }
+        else {
+            configureMultipleInput(DuplicateTableMapper.class,
+                DuplicateRdfMapper.class, DuplicateFileMapper.class,
+                InconsistencyMapper.class, false);
+        }
         job.setMapOutputKeyClass(Fact.class);
         job.setMapOutputValueClass(Derivation.class);
         job.setReducerClass(DuplicateEliminationReducer.class);
@@ -127,6 +164,125 @@ public class DuplicateElimination extends AbstractReasoningTool {
         }
     }
 
+    /**
+     * Reads derived facts like DuplicateFileMapper, but drops newly derived
+     * facts that are already in the table, so the table itself doesn't need to
+     * be read. Facts the {@link TripleFilter} rules out are definitely new;
+     * the rest are looked up in the table in batches.
+     */
+    public static class FilteredFileMapper extends DuplicateFileMapper {
+        private static final int BATCH_SIZE = 1000;
+        private static final int NUM_THREADS = 4;
+        private Logger log = Logger.getLogger(FilteredFileMapper.class);
+        private TripleFilter filter;
+        private Connector connector;
+        private String table;
+        private Authorizations auths;
+        private RyaTripleContext ryaContext;
+        private int current;
+        // Facts that might be in the table, by table row
+        private Map<Text, Fact> pending = new HashMap<>();
+        private long totalNew = 0;
+        private long totalHits = 0;
+        private long totalExisting = 0;
+        @Override
+        public void setup(Context context) {
+            super.setup(context);
+            Configuration conf = context.getConfiguration();
+            current = MRReasoningUtils.getCurrentIteration(conf);
+            table = RdfCloudTripleStoreUtils.layoutPrefixToTable(
+                TABLE_LAYOUT.SPO, MRReasoningUtils.getTablePrefix(conf));
+            auths = MRReasoningUtils.getAuthorizations(conf);
+            ryaContext = RyaTripleContext.getInstance(
+                new AccumuloRdfConfiguration(conf));
+            try {
+                filter = TripleFilter.load(conf);
+                connector = MRReasoningUtils.getConnector(conf);
+            }
+            catch (IOException | AccumuloException
+                    | AccumuloSecurityException e) {
+                throw new IllegalStateException(
+                    "Couldn't set up duplicate filtering", e);
+            }
+        }
+        @Override
+        public void cleanup(Context context) throws IOException,
+                InterruptedException {
+            verify(context);
+            super.cleanup(context);
+            log.info("New facts: " + totalNew);
+            log.info("Filter hits: " + totalHits);
+            log.info("Already in table: " + totalExisting);
+        }
+        @Override
+        public void map(Fact key, NullWritable value, Context context)
+                throws IOException, InterruptedException {
+            if (key.getIteration() < current || !filter.mightContain(key)) {
+                totalNew++;
+                super.map(key, value, context);
+                return;
+            }
+            totalHits++;
+            // Only one derivation per fact could be the best one
+            Text row = getRow(key);
+            Fact previous = pending.get(row);
+            if (previous == null || previous.span() > key.span()) {
+                pending.put(row, key.clone());
+            }
+            if (pending.size() >= BATCH_SIZE) {
+                verify(context);
+            }
+        }
+        /**
+         * Look up the pending facts in the table, and output those that
+         * aren't there.
+         */
+        private void verify(Context context) throws IOException,
+                InterruptedException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<Range> ranges = new ArrayList<>();
+            for (Text row : pending.keySet()) {
+                ranges.add(new Range(row));
+            }
+            BatchScanner scanner;
+            try {
+                scanner = connector.createBatchScanner(table, auths,
+                    NUM_THREADS);
+            }
+            catch (TableNotFoundException e) {
+                throw new IOException(e);
+            }
+            try {
+                scanner.setRanges(ranges);
+                for (Map.Entry<Key, Value> entry : scanner) {
+                    if (pending.remove(entry.getKey().getRow()) != null) {
+                        totalExisting++;
+                    }
+                }
+            }
+            finally {
+                scanner.close();
+            }
+            for (Fact fact : pending.values()) {
+                totalNew++;
+                process(context, fact, "STEP-" + fact.getIteration());
+            }
+            pending.clear();
+        }
+        private Text getRow(Fact fact) throws IOException {
+            try {
+                return new Text(ryaContext.serializeTriple(
+                    RdfToRyaConversions.convertStatement(fact.getTriple()))
+                    .get(TABLE_LAYOUT.SPO).getRow());
+            }
+            catch (TripleRowResolverException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
     public static class DuplicateRdfMapper extends DuplicateEliminationMapper<
             LongWritable, RyaStatementWritable> {
         private Fact inputTriple = new Fact();
@@ -20,6 +20,7 @@ package org.apache.rya.reasoning.mr;
  */
 
 import java.io.IOException;
+import java.util.Set;
 
 import org.apache.rya.accumulo.mr.RyaStatementWritable;
 import org.apache.rya.reasoning.Derivation;
@@ -70,6 +71,8 @@ public class ForwardChain extends AbstractReasoningTool {
             ResourceWritable, Fact> {
         protected Schema schema;
         protected ResourceWritable node = new ResourceWritable();
+        // Nodes to reason about, if not all of them
+        protected Set<String> frontier;
         protected MultipleOutputs<?, ?> debugOut;
         protected boolean debug;
         private Text debugKey = new Text();
@@ -80,12 +83,13 @@ public class ForwardChain extends AbstractReasoningTool {
         public ForwardChainMapper() {}
 
         @Override
-        protected void setup(Context context) {
+        protected void setup(Context context) throws IOException {
             debugOut = new MultipleOutputs<>(context);
             Configuration conf = context.getConfiguration();
             if (schema == null) {
                 schema = MRReasoningUtils.loadSchema(context.getConfiguration());
             }
+            frontier = MRReasoningUtils.loadFrontier(conf);
             debug = MRReasoningUtils.debug(conf);
         }
         @Override
@@ -99,7 +103,7 @@ public class ForwardChain extends AbstractReasoningTool {
         protected void process(Context context, Fact inputTriple)
                 throws IOException, InterruptedException {
             Relevance rel = LocalReasoner.relevantFact(inputTriple, schema);
-            if (rel.subject()) {
+            if (rel.subject() && onFrontier(inputTriple.getSubject())) {
                 node.set(inputTriple.getSubject(), 1);
                 context.write(node, inputTriple);
                 if (debug) {
@@ -110,7 +114,7 @@ public class ForwardChain extends AbstractReasoningTool {
                         debugValue);
                 }
             }
-            if (rel.object()) {
+            if (rel.object() && onFrontier((Resource) inputTriple.getObject())) {
                 node.set((Resource) inputTriple.getObject(), -1);
                 context.write(node, inputTriple);
                 if (debug) {
@@ -122,6 +126,14 @@ public class ForwardChain extends AbstractReasoningTool {
                 }
             }
         }
+
+        /**
+         * During an incremental run, only nodes with new edges can derive
+         * anything that isn't already known.
+         */
+        protected boolean onFrontier(Resource r) {
+            return frontier == null || frontier.contains(r.stringValue());
+        }
     }
 
     /**
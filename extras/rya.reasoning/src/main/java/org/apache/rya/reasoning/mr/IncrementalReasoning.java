@@ -0,0 +1,267 @@
+package org.apache.rya.reasoning.mr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.rya.accumulo.instance.AccumuloRyaInstanceDetailsRepository;
+import org.apache.rya.accumulo.utils.TimeRangeFilter;
+import org.apache.rya.api.RdfCloudTripleStoreConstants.TABLE_LAYOUT;
+import org.apache.rya.api.RdfCloudTripleStoreUtils;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.instance.RyaDetails;
+import org.apache.rya.api.instance.RyaDetails.ReasoningDetails;
+import org.apache.rya.api.instance.RyaDetailsRepository;
+import org.apache.rya.api.instance.RyaDetailsUpdater;
+import org.apache.rya.reasoning.Fact;
+import org.apache.rya.reasoning.Schema;
+
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.log4j.Logger;
+import org.openrdf.model.Resource;
+
+import com.google.common.base.Optional;
+
+/**
+ * Keeps track of what an incremental reasoning run needs to look at.
+ * <p>
+ * The instance details record a watermark: every statement inserted up to
+ * that time has been reasoned over, and everything derived from them has been
+ * stored. A run only has to find what follows from the statements inserted
+ * since then (the delta) together with everything else. Since each
+ * LocalReasoner only combines the edges of one node, a node can only derive
+ * something new if it has a new edge. So the first iteration only reasons
+ * about the nodes the delta touches, and each later iteration only about the
+ * nodes touched by facts the previous iteration derived; ForwardChain drops
+ * edges of other nodes instead of sending them to the reducers. After the
+ * schema changes, every node is reasoned about again, just as the iteration
+ * tracking in the reasoners resets then.
+ * <p>
+ * At the end of a successful run, {@link InsertTool} inserts the derived
+ * triples into Rya with the time the run started as their timestamp, so the
+ * next run doesn't take them for new statements, and the watermark moves up
+ * to that time.
+ */
+class IncrementalReasoning {
+    private static final Logger log = Logger.getLogger(IncrementalReasoning.class);
+
+    private static final int DEFAULT_MAX_FRONTIER = 100000;
+
+    private final Configuration conf;
+    private final Connector connector;
+    private final RyaDetailsRepository details;
+    private final long runStart = System.currentTimeMillis();
+    private final int maxFrontier;
+
+    IncrementalReasoning(Configuration conf) throws Exception {
+        this.conf = conf;
+        this.connector = MRReasoningUtils.getConnector(conf);
+        this.details = new AccumuloRyaInstanceDetailsRepository(connector,
+            MRReasoningUtils.getTablePrefix(conf));
+        this.maxFrontier = conf.getInt(MRReasoningUtils.MAX_FRONTIER_PROP,
+            DEFAULT_MAX_FRONTIER);
+        conf.setLong(MRReasoningUtils.INSERT_TIMESTAMP_PROP, runStart);
+    }
+
+    /**
+     * Find the statements inserted since the last run, and limit the first
+     * iteration to the nodes they touch.
+     * @return  False if nothing was inserted since the last run, so there's
+     *          nothing to reason about.
+     */
+    boolean start() throws Exception {
+        if (!details.isInitialized()) {
+            throw new IllegalStateException("Incremental reasoning requires"
+                + " the details of Rya instance "
+                + MRReasoningUtils.getTablePrefix(conf)
+                + " to record the last run in");
+        }
+        Optional<Date> watermark = details.getRyaInstanceDetails()
+            .getReasoningDetails().getLastUpdated();
+        if (!watermark.isPresent()) {
+            log.info("No previous reasoning run; reasoning over every statement");
+            return true;
+        }
+        long from = watermark.get().getTime() + 1;
+        log.info("Reasoning over statements inserted from " + new Date(from)
+            + " to " + new Date(runStart));
+
+        IteratorSetting delta = new IteratorSetting(20, "delta",
+            TimeRangeFilter.class);
+        delta.addOption(TimeRangeFilter.START_TIME_PROP, String.valueOf(runStart));
+        delta.addOption(TimeRangeFilter.TIME_RANGE_PROP,
+            String.valueOf(runStart - from));
+        String table = RdfCloudTripleStoreUtils.layoutPrefixToTable(
+            TABLE_LAYOUT.SPO, MRReasoningUtils.getTablePrefix(conf));
+        Scanner scanner = connector.createScanner(table,
+            MRReasoningUtils.getAuthorizations(conf));
+        scanner.addScanIterator(delta);
+        Set<String> frontier = new HashSet<>();
+        long numDelta = 0;
+        boolean schemaChanged = false;
+        try {
+            // Stop as soon as it's clear every node has to be reasoned about
+            for (Map.Entry<Key, Value> entry : scanner) {
+                RyaStatement rs = MRReasoningUtils.getStatement(entry.getKey(),
+                    entry.getValue(), conf);
+                if (rs == null) {
+                    continue;
+                }
+                Fact fact = new Fact();
+                fact.setTriple(rs);
+                numDelta++;
+                if (Schema.isSchemaTriple(fact.getTriple())) {
+                    schemaChanged = true;
+                    break;
+                }
+                addNodes(fact, frontier);
+                if (frontier.size() > maxFrontier) {
+                    break;
+                }
+            }
+        }
+        finally {
+            scanner.close();
+        }
+        if (numDelta == 0) {
+            log.info("No statements inserted since the last run");
+            return false;
+        }
+        if (schemaChanged) {
+            log.info("The schema changed; reasoning over every statement");
+        }
+        else {
+            log.info(numDelta + " statements inserted since the last run");
+            setFrontier(1, frontier);
+        }
+        return true;
+    }
+
+    /**
+     * Limit the next iteration to the nodes touched by the facts this one
+     * derived, unless the schema changed.
+     */
+    void nextIteration(int iteration, boolean schemaChanged)
+            throws IOException {
+        if (schemaChanged) {
+            conf.unset(MRReasoningUtils.FRONTIER_PROP);
+            return;
+        }
+        Set<String> frontier = new HashSet<>();
+        addDerivedNodes(iteration, frontier);
+        setFrontier(iteration + 1, frontier);
+    }
+
+    /**
+     * Record the new watermark, once everything derived during the run has
+     * been inserted into Rya.
+     */
+    void commit() throws Exception {
+        final Date watermark = new Date(runStart);
+        new RyaDetailsUpdater(details).update(original ->
+            RyaDetails.builder(original)
+                .setReasoningDetails(new ReasoningDetails(Optional.of(watermark)))
+                .build());
+    }
+
+    private void setFrontier(int iteration, Set<String> frontier)
+            throws IOException {
+        if (frontier.size() > maxFrontier) {
+            log.info("Over " + maxFrontier + " nodes to reason about in"
+                + " iteration " + iteration + "; reasoning about all of them");
+            conf.unset(MRReasoningUtils.FRONTIER_PROP);
+            return;
+        }
+        log.info(frontier.size() + " nodes to reason about in iteration "
+            + iteration);
+        Path path = MRReasoningUtils.getOutputPath(conf,
+            MRReasoningUtils.FRONTIER_BASE + iteration);
+        FileSystem fs = FileSystem.get(conf);
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                fs.create(path, true), StandardCharsets.UTF_8))) {
+            for (String node : frontier) {
+                out.println(node);
+            }
+        }
+        conf.set(MRReasoningUtils.FRONTIER_PROP, path.toString());
+    }
+
+    private static void addNodes(Fact fact, Set<String> frontier) {
+        frontier.add(fact.getSubject().stringValue());
+        if (fact.getObject() instanceof Resource) {
+            frontier.add(fact.getObject().stringValue());
+        }
+    }
+
+    /**
+     * Add the nodes touched by the facts derived during one iteration that
+     * might be used for further reasoning. Reading stops as soon as there are
+     * more than maxFrontier of them, so the facts are never all in memory.
+     */
+    private void addDerivedNodes(int iteration, Set<String> frontier)
+            throws IOException {
+        FileSystem fs = FileSystem.get(conf);
+        // Prefer cleaned output, as AbstractReasoningTool does
+        Path dir = MRReasoningUtils.getOutputPath(conf,
+            MRReasoningUtils.OUTPUT_BASE + iteration);
+        if (!fs.isDirectory(dir)) {
+            dir = MRReasoningUtils.getOutputPath(conf,
+                MRReasoningUtils.OUTPUT_BASE + iteration
+                + MRReasoningUtils.TEMP_SUFFIX);
+        }
+        if (!fs.isDirectory(dir)) {
+            return;
+        }
+        for (FileStatus status : fs.listStatus(dir)) {
+            String name = status.getPath().getName();
+            if (!name.startsWith(MRReasoningUtils.INTERMEDIATE_OUT)
+                    || status.getLen() == 0) {
+                continue;
+            }
+            try (SequenceFile.Reader in = new SequenceFile.Reader(conf,
+                    SequenceFile.Reader.file(status.getPath()))) {
+                Fact fact = new Fact();
+                while (in.next(fact, NullWritable.get())) {
+                    addNodes(fact, frontier);
+                    if (frontier.size() > maxFrontier) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.apache.rya.reasoning.mr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.rya.accumulo.AccumuloRdfConfiguration;
+import org.apache.rya.accumulo.mr.RyaStatementWritable;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.resolver.RdfToRyaConversions;
+import org.apache.rya.api.resolver.RyaTripleContext;
+import org.apache.rya.reasoning.Fact;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * Insert inferred triples into Rya. If a timestamp is given, every triple is
+ * inserted with it.
+ */
+public class InsertTool extends AbstractReasoningTool {
+    @Override
+    protected void configureReasoningJob(String[] args) throws Exception {
+        configureFileInput(InsertMapper.class, false);
+        job.setMapOutputKeyClass(NullWritable.class);
+        job.setMapOutputValueClass(RyaStatementWritable.class);
+        job.setNumReduceTasks(0);
+        MRReasoningUtils.configureRyaOutput(job);
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new InsertTool(), args));
+    }
+
+    public static class InsertMapper extends Mapper<Fact, NullWritable,
+            NullWritable, RyaStatementWritable> {
+        private RyaTripleContext ryaContext;
+        private long timestamp;
+        @Override
+        public void setup(Context context) {
+            Configuration conf = context.getConfiguration();
+            ryaContext = RyaTripleContext.getInstance(
+                new AccumuloRdfConfiguration(conf));
+            timestamp = conf.getLong(MRReasoningUtils.INSERT_TIMESTAMP_PROP, 0);
+        }
+        @Override
+        public void map(Fact fact, NullWritable nw, Context context)
+                throws IOException, InterruptedException {
+            RyaStatement rs = RdfToRyaConversions.convertStatement(
+                fact.getTriple());
+            if (timestamp > 0) {
+                rs.setTimestamp(timestamp);
+            }
+            context.write(NullWritable.get(),
+                new RyaStatementWritable(rs, ryaContext));
+        }
+    }
+}
@@ -19,19 +19,27 @@ package org.apache.rya.reasoning.mr;
  * under the License.
  */
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.rya.accumulo.AccumuloRdfConfiguration;
 import org.apache.rya.accumulo.AccumuloRdfConstants;
 import org.apache.rya.accumulo.AccumuloRyaDAO;
 import org.apache.rya.accumulo.mr.MRUtils;
+import org.apache.rya.accumulo.mr.RyaOutputFormat;
+import org.apache.rya.accumulo.mr.RyaStatementWritable;
 import org.apache.rya.api.RdfCloudTripleStoreConstants;
 import org.apache.rya.api.RdfCloudTripleStoreUtils;
 import org.apache.rya.api.domain.RyaStatement;
 import org.apache.rya.api.resolver.RyaTripleContext;
 import org.apache.rya.api.resolver.triple.TripleRow;
 import org.apache.rya.api.resolver.triple.TripleRowResolverException;
+import org.apache.rya.indexing.accumulo.ConfigUtils;
 import org.apache.rya.rdftriplestore.RdfCloudTripleStore;
 import org.apache.rya.rdftriplestore.RyaSailRepository;
 import org.apache.rya.reasoning.Schema;
@@ -43,6 +51,7 @@ import org.apache.accumulo.core.client.Connector;
 import org.apache.accumulo.core.client.Instance;
 import org.apache.accumulo.core.client.ZooKeeperInstance;
 import org.apache.accumulo.core.client.mapreduce.AccumuloInputFormat;
+import org.apache.accumulo.core.client.mapreduce.AccumuloOutputFormat;
 import org.apache.accumulo.core.client.mock.MockInstance;
 import org.apache.accumulo.core.client.security.tokens.PasswordToken;
 import org.apache.accumulo.core.data.Key;
@@ -66,14 +75,24 @@ public class MRReasoningUtils {
     public static final String DEBUG_FLAG = "reasoning.debug";
     public static final String OUTPUT_FLAG = "reasoning.output";
     public static final String STATS_FLAG = "reasoning.stats";
+    public static final String INCREMENTAL_FLAG = "reasoning.incremental";
+    public static final String MAX_FRONTIER_PROP = "reasoning.incremental.maxFrontier";
+    public static final String FILTER_FLAG = "reasoning.filterDuplicates";
+    public static final String FILTER_EXPECTED_PROP = "reasoning.filter.expected";
+    public static final String FILTER_ERROR_PROP = "reasoning.filter.errorRate";
+    public static final String FILTER_PARTITIONS_PROP = "reasoning.filter.partitions";
 
     // Variables used to pass information from drivers to jobs
     public static final String STEP_PROP = "reasoning.step";
     public static final String SCHEMA_UPDATE_PROP = "reasoning.schemaUpdate";
+    public static final String FRONTIER_PROP = "reasoning.frontier";
+    public static final String INSERT_TIMESTAMP_PROP = "reasoning.insert.timestamp";
 
     // Used to construct input/output directories
     static final String OUTPUT_BASE = "step-";
     static final String SCHEMA_BASE = "schema-";
+    static final String FRONTIER_BASE = "frontier-";
+    static final String FILTER_DIR = "filter";
     static final String TEMP_SUFFIX = "a";
     // Named outputs for different kinds of facts
     static final String SCHEMA_OUT = "schema";
@@ -161,7 +180,9 @@ public class MRReasoningUtils {
                 deleteIfExists(conf, OUTPUT_BASE + i);
                 deleteIfExists(conf, OUTPUT_BASE + i + TEMP_SUFFIX);
                 deleteIfExists(conf, SCHEMA_BASE + i);
+                deleteIfExists(conf, FRONTIER_BASE + i);
             }
+            deleteIfExists(conf, FILTER_DIR);
             deleteIfExists(conf, "input");
         }
     }
@@ -202,6 +223,29 @@ public class MRReasoningUtils {
      */
     static RyaSailRepository getRepository(Configuration conf)
             throws AccumuloException, AccumuloSecurityException {
+        RdfCloudTripleStore store = new RdfCloudTripleStore();
+        store.setRyaDAO(getDAO(conf));
+        return new RyaSailRepository(store);
+    }
+
+    /**
+     * Get an uninitialized DAO from the configuration variables
+     */
+    static AccumuloRyaDAO getDAO(Configuration conf)
+            throws AccumuloException, AccumuloSecurityException {
+        AccumuloRdfConfiguration aconf = new AccumuloRdfConfiguration(conf);
+        aconf.setTablePrefix(getTablePrefix(conf));
+        AccumuloRyaDAO dao = new AccumuloRyaDAO();
+        dao.setConnector(getConnector(conf));
+        dao.setConf(aconf);
+        return dao;
+    }
+
+    /**
+     * Connect to Accumulo using the configuration variables
+     */
+    static Connector getConnector(Configuration conf)
+            throws AccumuloException, AccumuloSecurityException {
         boolean mock = conf.getBoolean(MRUtils.AC_MOCK_PROP, false);
         String instance = conf.get(MRUtils.AC_INSTANCE_PROP, "instance");
         String username = conf.get(MRUtils.AC_USERNAME_PROP, "root");
@@ -214,16 +258,7 @@ public class MRReasoningUtils {
             String zookeepers = conf.get(MRUtils.AC_ZK_PROP, "zoo");
             accumulo = new ZooKeeperInstance(instance, zookeepers);
         }
-        Connector connector = accumulo.getConnector(username, new PasswordToken(password));
-        AccumuloRdfConfiguration aconf = new AccumuloRdfConfiguration(conf);
-        aconf.setTablePrefix(conf.get(MRUtils.TABLE_PREFIX_PROPERTY,
-            RdfCloudTripleStoreConstants.TBL_PRFX_DEF));
-        AccumuloRyaDAO dao = new AccumuloRyaDAO();
-        dao.setConnector(connector);
-        dao.setConf(aconf);
-        RdfCloudTripleStore store = new RdfCloudTripleStore();
-        store.setRyaDAO(dao);
-        return new RyaSailRepository(store);
+        return accumulo.getConnector(username, new PasswordToken(password));
     }
 
     /**
@@ -236,20 +271,72 @@ public class MRReasoningUtils {
         String password = conf.get(MRUtils.AC_PWD_PROP, "");
         String instance = conf.get(MRUtils.AC_INSTANCE_PROP, "instance");
         String zookeepers = conf.get(MRUtils.AC_ZK_PROP, "zoo");
-        Authorizations auths;
-        String auth = conf.get(MRUtils.AC_AUTH_PROP);
-        if (auth != null) {
-            auths = new Authorizations(auth.split(","));
-        }
-        else {
-            auths = AccumuloRdfConstants.ALL_AUTHORIZATIONS;
-        }
         AccumuloInputFormat.setZooKeeperInstance(job,
             ClientConfiguration.loadDefault()
             .withInstance(instance).withZkHosts(zookeepers));
         AccumuloInputFormat.setConnectorInfo(job, username, new PasswordToken(password));
         AccumuloInputFormat.setInputTableName(job, getTableName(conf));
-        AccumuloInputFormat.setScanAuthorizations(job, auths);
+        AccumuloInputFormat.setScanAuthorizations(job, getAuthorizations(conf));
+    }
+
+    /**
+     * Set up a MapReduce Job to insert its output into Rya.
+     */
+    static void configureRyaOutput(Job job)
+            throws AccumuloSecurityException {
+        Configuration conf = job.getConfiguration();
+        boolean mock = conf.getBoolean(MRUtils.AC_MOCK_PROP, false);
+        String username = conf.get(MRUtils.AC_USERNAME_PROP, "root");
+        String password = conf.get(MRUtils.AC_PWD_PROP, "root");
+        String instance = conf.get(MRUtils.AC_INSTANCE_PROP, "instance");
+        String zookeepers = conf.get(MRUtils.AC_ZK_PROP, "zoo");
+        String prefix = getTablePrefix(conf);
+        // The output format's indexers connect using these properties
+        conf.set(ConfigUtils.CLOUDBASE_INSTANCE, instance);
+        conf.set(ConfigUtils.CLOUDBASE_ZOOKEEPERS, zookeepers);
+        conf.set(ConfigUtils.CLOUDBASE_USER, username);
+        conf.set(ConfigUtils.CLOUDBASE_PASSWORD, password);
+        job.setOutputFormatClass(RyaOutputFormat.class);
+        job.setOutputKeyClass(NullWritable.class);
+        job.setOutputValueClass(RyaStatementWritable.class);
+        RyaOutputFormat.setDefaultVisibility(job, conf.get(MRUtils.AC_CV_PROP));
+        RyaOutputFormat.setTablePrefix(job, prefix);
+        RyaOutputFormat.setFreeTextEnabled(job, ConfigUtils.getUseFreeText(conf));
+        RyaOutputFormat.setTemporalEnabled(job, ConfigUtils.getUseTemporal(conf));
+        RyaOutputFormat.setEntityEnabled(job, ConfigUtils.getUseEntity(conf));
+        AccumuloOutputFormat.setConnectorInfo(job, username, new PasswordToken(password));
+        AccumuloOutputFormat.setCreateTables(job, true);
+        AccumuloOutputFormat.setDefaultTableName(job,
+            prefix + RdfCloudTripleStoreConstants.TBL_SPO_SUFFIX);
+        if (mock) {
+            RyaOutputFormat.setMockInstance(job, instance);
+        }
+        else {
+            AccumuloOutputFormat.setZooKeeperInstance(job,
+                ClientConfiguration.loadDefault()
+                .withInstance(instance).withZkHosts(zookeepers));
+        }
+    }
+
+    /**
+     * Get the authorizations to scan Accumulo with.
+     */
+    static Authorizations getAuthorizations(Configuration conf) {
+        String auth = conf.get(MRUtils.AC_AUTH_PROP);
+        if (auth != null) {
+            return new Authorizations(auth.split(","));
+        }
+        else {
+            return AccumuloRdfConstants.ALL_AUTHORIZATIONS;
+        }
+    }
+
+    /**
+     * Get the table prefix, which is also the name of the Rya instance.
+     */
+    static String getTablePrefix(Configuration conf) {
+        return conf.get(MRUtils.TABLE_PREFIX_PROPERTY,
+            RdfCloudTripleStoreConstants.TBL_PRFX_DEF);
     }
 
     /**
@@ -258,8 +345,7 @@ public class MRReasoningUtils {
     static String getTableName(Configuration conf) {
         String layout = conf.get(MRUtils.TABLE_LAYOUT_PROP,
             RdfCloudTripleStoreConstants.TABLE_LAYOUT.SPO.toString());
-        String prefix = conf.get(MRUtils.TABLE_PREFIX_PROPERTY,
-            RdfCloudTripleStoreConstants.TBL_PRFX_DEF);
+        String prefix = getTablePrefix(conf);
         return RdfCloudTripleStoreUtils.layoutPrefixToTable(
             RdfCloudTripleStoreConstants.TABLE_LAYOUT.valueOf(layout), prefix);
     }
@@ -271,6 +357,42 @@ public class MRReasoningUtils {
         return conf.getBoolean(OUTPUT_FLAG, true);
     }
 
+    /**
+     * Whether to only reason about statements inserted since the last run.
+     */
+    static boolean incremental(Configuration conf) {
+        return conf.getBoolean(INCREMENTAL_FLAG, false);
+    }
+
+    /**
+     * Whether to eliminate duplicates by probing a filter over the table
+     * instead of reading the whole table. Only possible with table input.
+     */
+    static boolean filterDuplicates(Configuration conf) {
+        return conf.getBoolean(FILTER_FLAG, false) && getInputPath(conf) == null;
+    }
+
+    /**
+     * Load the nodes this iteration should reason about, or return null if
+     * every node should be reasoned about.
+     */
+    static Set<String> loadFrontier(Configuration conf) throws IOException {
+        String frontier = conf.get(FRONTIER_PROP);
+        if (frontier == null) {
+            return null;
+        }
+        Set<String> nodes = new HashSet<>();
+        FileSystem fs = FileSystem.get(conf);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                fs.open(new Path(frontier)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                nodes.add(line);
+            }
+        }
+        return nodes;
+    }
+
     /**
      * Return whether debug flag is on.
      */
@@ -0,0 +1,144 @@
+package org.apache.rya.reasoning.mr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.rya.rdftriplestore.RyaSailRepository;
+import org.apache.rya.reasoning.Derivation;
+import org.apache.rya.reasoning.Fact;
+import org.apache.rya.reasoning.ParallelReasoner;
+import org.apache.rya.reasoning.Schema;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+import org.openrdf.model.Statement;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryResult;
+
+/**
+ * Runs the forward-chaining reasoner in this JVM with a {@link ParallelReasoner}
+ * instead of a series of MapReduce jobs. Reads every triple from the Rya
+ * instance, reasons to a fixpoint, and writes the same final output as the
+ * OutputTool. Takes the same connection properties as {@link ReasoningDriver}.
+ */
+public class ParallelReasoningDriver extends Configured implements Tool {
+    private static final Logger log = Logger.getLogger(ParallelReasoningDriver.class);
+
+    public static final String THREADS_PROP = "reasoning.threads";
+
+    public static void main(String[] args) throws Exception {
+        int result = ToolRunner.run(new ParallelReasoningDriver(), args);
+        System.exit(result);
+    }
+
+    @Override
+    public int run(String[] args) throws Exception {
+        Configuration conf = getConf();
+        int threads = conf.getInt(THREADS_PROP,
+            Runtime.getRuntime().availableProcessors());
+        ParallelReasoner reasoner = new ParallelReasoner(threads);
+        try {
+            RyaSailRepository repository = MRReasoningUtils.getRepository(conf);
+            repository.initialize();
+            RepositoryConnection conn = repository.getConnection();
+            try {
+                RepositoryResult<Statement> statements = conn.getStatements(
+                    null, null, null, false);
+                while (statements.hasNext()) {
+                    reasoner.add(statements.next());
+                }
+                statements.close();
+            }
+            finally {
+                conn.close();
+                repository.shutDown();
+            }
+
+            int iterations = reasoner.reason();
+            log.info("Reasoning finished after " + iterations + " iterations: "
+                + reasoner.getFacts().size() + " new triples, "
+                + reasoner.getInconsistencies().size() + " inconsistencies");
+            if (MRReasoningUtils.shouldOutput(conf)) {
+                writeOutput(conf, reasoner);
+            }
+        }
+        finally {
+            reasoner.shutdown();
+        }
+        return 0;
+    }
+
+    /**
+     * Write triples and inconsistencies to the files OutputTool would.
+     */
+    private void writeOutput(Configuration conf, ParallelReasoner reasoner)
+            throws IOException {
+        MRReasoningUtils.deleteIfExists(conf, "final");
+        FileSystem fs = FileSystem.get(conf);
+        Path dir = MRReasoningUtils.getOutputPath(conf, "final");
+        PrintWriter schemaOut = null;
+        PrintWriter instanceOut = null;
+        for (Fact fact : reasoner.getFacts()) {
+            if (Schema.isSchemaTriple(fact.getTriple())) {
+                if (schemaOut == null) {
+                    schemaOut = open(fs, dir, MRReasoningUtils.SCHEMA_OUT);
+                }
+                schemaOut.println(fact.toString());
+            }
+            else {
+                if (instanceOut == null) {
+                    instanceOut = open(fs, dir, MRReasoningUtils.TERMINAL_OUT);
+                }
+                instanceOut.println(fact.toString());
+            }
+        }
+        close(schemaOut);
+        close(instanceOut);
+        if (!reasoner.getInconsistencies().isEmpty()) {
+            PrintWriter out = open(fs, dir, MRReasoningUtils.INCONSISTENT_OUT);
+            for (Derivation inconsistency : reasoner.getInconsistencies()) {
+                out.println("Inconsistency:\n"
+                    + inconsistency.explain(true, reasoner.getSchema()) + "\n");
+            }
+            close(out);
+        }
+    }
+
+    private static PrintWriter open(FileSystem fs, Path dir, String name)
+            throws IOException {
+        return new PrintWriter(new OutputStreamWriter(
+            fs.create(new Path(dir, name)), StandardCharsets.UTF_8));
+    }
+
+    private static void close(PrintWriter out) {
+        if (out != null) {
+            out.close();
+        }
+    }
+}
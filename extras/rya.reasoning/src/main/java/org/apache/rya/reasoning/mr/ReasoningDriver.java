@@ -56,7 +56,14 @@ public class ReasoningDriver extends Configured implements Tool {
         RunStatistics runStats = new RunStatistics(MRReasoningUtils.getTableName(conf));
 
         // If running against a local file, upload it
-        MRReasoningUtils.uploadIfNecessary(conf);
+        boolean fileInput = MRReasoningUtils.uploadIfNecessary(conf);
+
+        // If only reasoning about new statements, find them
+        IncrementalReasoning incremental = null;
+        if (MRReasoningUtils.incremental(conf) && !fileInput) {
+            incremental = new IncrementalReasoning(conf);
+            productive = incremental.start();
+        }
 
         // Extract schema information from the database and save it to a file,
         // unless the file already exists
@@ -71,6 +78,20 @@ public class ReasoningDriver extends Configured implements Tool {
             runStats.collect(filter, "SchemaFilter");
         }
 
+        // Summarize the table, if duplicates are to be eliminated without it,
+        // unless the filter already exists
+        Path filterPath = MRReasoningUtils.getOutputPath(conf,
+            MRReasoningUtils.FILTER_DIR);
+        if (productive && MRReasoningUtils.filterDuplicates(conf)
+                && !FileSystem.get(conf).isDirectory(filterPath)) {
+            TripleFilterBuilder builder = new TripleFilterBuilder();
+            result = ToolRunner.run(conf, builder, args);
+            runStats.collect(builder, "TripleFilterBuilder");
+            if (result != 0) {
+                productive = false;
+            }
+        }
+
         // Perform forward-chaining reasoning:
         while (productive) {
             MRReasoningUtils.nextIteration(conf);
@@ -125,6 +146,21 @@ public class ReasoningDriver extends Configured implements Tool {
             numInconsistencies += newInconsistencies;
             // Repeat if we're still generating information
             productive = usefulOutput + newSchema > 0;
+            if (productive && incremental != null) {
+                incremental.nextIteration(iteration, newSchema > 0);
+            }
+        }
+
+        // Store the results of an incremental run
+        if (result == 0 && incremental != null) {
+            if (findings) {
+                InsertTool insert = new InsertTool();
+                result = ToolRunner.run(conf, insert, args);
+                runStats.collect(insert, "InsertTool");
+            }
+            if (result == 0) {
+                incremental.commit();
+            }
         }
 
         // Generate final output, if appropriate
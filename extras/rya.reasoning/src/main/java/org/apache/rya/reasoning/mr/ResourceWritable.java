@@ -52,6 +52,10 @@ public class ResourceWritable implements WritableComparable<ResourceWritable> {
         this.key = key;
     }
 
+    public int getSortKey() {
+        return key;
+    }
+
     @Override
     public void write(DataOutput out) throws IOException {
         if (val == null) {
@@ -0,0 +1,463 @@
+package org.apache.rya.reasoning.mr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.rya.accumulo.AccumuloRdfConfiguration;
+import org.apache.rya.accumulo.mr.AbstractAccumuloMRTool;
+import org.apache.rya.accumulo.mr.RdfFileInputFormat;
+import org.apache.rya.accumulo.mr.RyaInputFormat;
+import org.apache.rya.accumulo.mr.RyaStatementWritable;
+import org.apache.rya.api.resolver.RdfToRyaConversions;
+import org.apache.rya.api.resolver.RyaToRdfConversions;
+import org.apache.rya.api.resolver.RyaTripleContext;
+import org.apache.rya.reasoning.Derivation;
+import org.apache.rya.reasoning.Fact;
+import org.apache.rya.reasoning.LocalReasoner;
+import org.apache.rya.reasoning.LocalReasoner.Relevance;
+import org.apache.rya.reasoning.Schema;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Logger;
+import org.apache.spark.HashPartitioner;
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaPairRDD;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.PairFlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.serializer.KryoSerializer;
+import org.apache.spark.storage.StorageLevel;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.rio.RDFFormat;
+
+import scala.Tuple2;
+
+/**
+ * Runs the forward-chaining reasoner as a Spark application instead of a
+ * series of MapReduce jobs. Each iteration runs the ForwardChain and
+ * DuplicateElimination stages over RDDs that stay cached between iterations,
+ * rather than writing every iteration's facts to HDFS and reading them back:
+ * <ol>
+ * <li>Send each fact to the nodes it's relevant to, keyed by
+ *      {@link ResourceWritable}. Partitioning by node and sorting within each
+ *      partition gives every node's incoming edges, then its outgoing edges,
+ *      just like the primary and secondary sort of the ForwardChain job.
+ * <li>Run a {@link LocalReasoner} for each node, using a broadcast copy of
+ *      the schema.
+ * <li>Keep the simplest derivation of each derived fact and drop the facts
+ *      that were already known, as DuplicateElimination does.
+ * </ol>
+ * The derived facts are checkpointed every few iterations so that their
+ * lineage doesn't grow without bound. Input is read from Rya through
+ * {@link RyaInputFormat}, or from an RDF file if one is given. Output is
+ * written to the same final files as the OutputTool, and can also be inserted
+ * into Rya through {@link org.apache.rya.accumulo.mr.RyaOutputFormat}.
+ * Takes the same connection properties as {@link ReasoningDriver}.
+ */
+public class SparkReasoningDriver extends AbstractAccumuloMRTool {
+    private static final Logger log = Logger.getLogger(SparkReasoningDriver.class);
+
+    public static final String CHECKPOINT_INTERVAL_PROP = "reasoning.spark.checkpointInterval";
+    public static final String PARTITIONS_PROP = "reasoning.spark.partitions";
+    public static final String INSERT_FLAG = "reasoning.spark.insert";
+
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 10;
+    private static final String CHECKPOINT_DIR = "checkpoint";
+
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new SparkReasoningDriver(), args));
+    }
+
+    @Override
+    public int run(String[] args) throws Exception {
+        init();
+        JavaSparkContext sc = new JavaSparkContext(sparkConf());
+        try {
+            sc.setCheckpointDir(MRReasoningUtils.getOutputPath(conf,
+                CHECKPOINT_DIR).toString());
+            reason(sc);
+        }
+        finally {
+            sc.stop();
+            if (!MRReasoningUtils.debug(conf)) {
+                MRReasoningUtils.deleteIfExists(conf, CHECKPOINT_DIR);
+                MRReasoningUtils.deleteIfExists(conf, "input");
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Spark settings the reasoner needs, in particular the Kryo registrations
+     * for the classes that are shuffled and cached.
+     */
+    static SparkConf sparkConf() {
+        return new SparkConf()
+            .setAppName("Rya forward-chaining reasoner")
+            .set("spark.serializer", KryoSerializer.class.getName())
+            .set("spark.kryo.registrator", ReasoningKryoRegistrator.class.getName());
+    }
+
+    private void reason(JavaSparkContext sc) throws Exception {
+        JavaRDD<Fact> input = readInput(sc).persist(StorageLevel.MEMORY_AND_DISK());
+        Results results = reason(sc, input);
+        log.info("Reasoning finished after " + results.iterations
+            + " iterations: " + results.derived.count() + " new triples, "
+            + results.inconsistencies.count() + " inconsistencies");
+        if (MRReasoningUtils.shouldOutput(conf)) {
+            writeOutput(results.derived, results.inconsistencies, results.schema);
+        }
+        if (conf.getBoolean(INSERT_FLAG, false)) {
+            insert(results.derived);
+        }
+    }
+
+    /**
+     * Reason over a set of input facts until no new information is derived.
+     * @param   sc  Context to run in; must have a checkpoint directory
+     * @param   input   Input facts, both schema and instance triples
+     * @return  Everything derived from the input
+     */
+    Results reason(JavaSparkContext sc, JavaRDD<Fact> input) {
+        int partitions = conf.getInt(PARTITIONS_PROP, sc.defaultParallelism());
+        int checkpointInterval = conf.getInt(CHECKPOINT_INTERVAL_PROP,
+            DEFAULT_CHECKPOINT_INTERVAL);
+        HashPartitioner byNode = new HashPartitioner(partitions);
+
+        List<Statement> schemaTriples = new ArrayList<>();
+        for (Fact fact : input.filter(f -> Schema.isSchemaTriple(f.getTriple())).collect()) {
+            schemaTriples.add(fact.getTriple());
+        }
+        Broadcast<SchemaWritable> schema = sc.broadcast(buildSchema(schemaTriples));
+
+        JavaRDD<Fact> derived = sc.emptyRDD();
+        JavaRDD<Derivation> inconsistencies = sc.emptyRDD();
+        // Per-iteration results that are cached until the next checkpoint
+        List<JavaRDD<?>> cached = new ArrayList<>();
+        int iteration = 0;
+        int lastSchemaUpdate = 0;
+        boolean productive = true;
+        while (productive) {
+            iteration++;
+            // Unless the schema just changed, facts that were found to be
+            // useless for further reasoning can be left out
+            boolean schemaNew = lastSchemaUpdate == iteration - 1;
+            JavaRDD<Fact> known = input.union(derived);
+            JavaRDD<Fact> relevant = schemaNew ? known
+                : known.filter(f -> f.isUseful() || !f.isInference());
+
+            // ForwardChain
+            Broadcast<SchemaWritable> currentSchema = schema;
+            JavaPairRDD<Fact, Derivation> results = relevant
+                .flatMapToPair(fact -> route(fact, currentSchema.value()))
+                .repartitionAndSortWithinPartitions(byNode, new NodeComparator())
+                .mapPartitionsToPair(new ReasoningFunction(currentSchema,
+                    iteration, lastSchemaUpdate))
+                .persist(StorageLevel.MEMORY_AND_DISK());
+
+            // DuplicateElimination: inconsistencies are wrapped in empty facts
+            JavaRDD<Fact> newFacts = results.filter(r -> !r._1().isEmpty())
+                .reduceByKey((a, b) -> a.span() <= b.span() ? a : b)
+                .map(r -> {
+                    r._1().setDerivation(r._2());
+                    return r._1();
+                })
+                .subtract(known)
+                .persist(StorageLevel.MEMORY_AND_DISK());
+            JavaRDD<Derivation> newInconsistencies = results
+                .filter(r -> r._1().isEmpty()).values().distinct()
+                .subtract(inconsistencies)
+                .persist(StorageLevel.MEMORY_AND_DISK());
+
+            List<Fact> newSchemaFacts = newFacts
+                .filter(f -> Schema.isSchemaTriple(f.getTriple())).collect();
+            long newInstance = newFacts.count() - newSchemaFacts.size();
+            long usefulOutput = newFacts.filter(f -> f.isUseful()
+                && !Schema.isSchemaTriple(f.getTriple())).count();
+            long numInconsistencies = newInconsistencies.count();
+            results.unpersist(false);
+
+            derived = derived.union(newFacts);
+            inconsistencies = inconsistencies.union(newInconsistencies);
+            cached.add(newFacts);
+            cached.add(newInconsistencies);
+            if (iteration % checkpointInterval == 0) {
+                derived = checkpoint(derived.coalesce(partitions));
+                inconsistencies = checkpoint(inconsistencies.coalesce(partitions));
+                // Everything derived so far is now in the checkpointed RDDs
+                for (JavaRDD<?> rdd : cached) {
+                    rdd.unpersist(false);
+                }
+                cached.clear();
+                cached.add(derived);
+                cached.add(inconsistencies);
+            }
+
+            // If schema triples were just deduced, regenerate the whole schema
+            if (!newSchemaFacts.isEmpty()) {
+                lastSchemaUpdate = iteration;
+                for (Fact fact : newSchemaFacts) {
+                    schemaTriples.add(fact.getTriple());
+                }
+                schema = sc.broadcast(buildSchema(schemaTriples));
+            }
+
+            log.info("Iteration " + iteration + ": " + newInstance
+                + " new instance triples (" + usefulOutput
+                + " useful for reasoning), " + newSchemaFacts.size()
+                + " new schema triples, " + numInconsistencies
+                + " new inconsistencies");
+            // Repeat if we're still generating information
+            productive = usefulOutput + newSchemaFacts.size() > 0;
+        }
+
+        return new Results(derived, inconsistencies, schema, iteration);
+    }
+
+    /**
+     * Facts and inconsistencies derived by a run of the reasoner.
+     */
+    static class Results {
+        final JavaRDD<Fact> derived;
+        final JavaRDD<Derivation> inconsistencies;
+        final Broadcast<SchemaWritable> schema;
+        final int iterations;
+
+        Results(JavaRDD<Fact> derived, JavaRDD<Derivation> inconsistencies,
+                Broadcast<SchemaWritable> schema, int iterations) {
+            this.derived = derived;
+            this.inconsistencies = inconsistencies;
+            this.schema = schema;
+            this.iterations = iterations;
+        }
+    }
+
+    /**
+     * Read the input triples from an RDF file if one was given, otherwise from
+     * Rya.
+     */
+    private JavaRDD<Fact> readInput(JavaSparkContext sc) throws Exception {
+        Job job = Job.getInstance(conf);
+        JavaRDD<RyaStatementWritable> statements;
+        MRReasoningUtils.uploadIfNecessary(conf);
+        Path inputPath = MRReasoningUtils.getInputPath(conf);
+        if (inputPath != null) {
+            setupFileInput(job, inputPath.toString(), RDFFormat.RDFXML);
+            statements = sc.newAPIHadoopRDD(job.getConfiguration(),
+                RdfFileInputFormat.class, LongWritable.class,
+                RyaStatementWritable.class).values();
+        }
+        else {
+            setupRyaInput(job);
+            statements = sc.newAPIHadoopRDD(job.getConfiguration(),
+                RyaInputFormat.class, Text.class,
+                RyaStatementWritable.class).values();
+        }
+        return statements.map(rsw -> new Fact(
+            RyaToRdfConversions.convertStatement(rsw.getRyaStatement())));
+    }
+
+    /**
+     * Write triples and inconsistencies to the files OutputTool would.
+     */
+    private void writeOutput(JavaRDD<Fact> derived,
+            JavaRDD<Derivation> inconsistencies,
+            Broadcast<SchemaWritable> schema) throws Exception {
+        MRReasoningUtils.deleteIfExists(conf, "final");
+        derived.filter(f -> Schema.isSchemaTriple(f.getTriple()))
+            .map(Fact::toString)
+            .saveAsTextFile(finalPath(MRReasoningUtils.SCHEMA_OUT));
+        derived.filter(f -> !Schema.isSchemaTriple(f.getTriple()))
+            .map(Fact::toString)
+            .saveAsTextFile(finalPath(MRReasoningUtils.TERMINAL_OUT));
+        if (!inconsistencies.isEmpty()) {
+            inconsistencies.map(inconsistency -> "Inconsistency:\n"
+                    + inconsistency.explain(true, schema.value()) + "\n")
+                .saveAsTextFile(finalPath(MRReasoningUtils.INCONSISTENT_OUT));
+        }
+    }
+
+    private String finalPath(String name) {
+        return MRReasoningUtils.getOutputPath(conf, "final/" + name).toString();
+    }
+
+    /**
+     * Insert the derived triples into Rya.
+     */
+    private void insert(JavaRDD<Fact> derived) throws Exception {
+        Job job = Job.getInstance(conf);
+        setupRyaOutput(job);
+        derived.mapPartitionsToPair(facts -> {
+            RyaTripleContext ryaContext = RyaTripleContext.getInstance(
+                new AccumuloRdfConfiguration());
+            List<Tuple2<Writable, RyaStatementWritable>> out = new ArrayList<>();
+            while (facts.hasNext()) {
+                out.add(new Tuple2<Writable, RyaStatementWritable>(
+                    NullWritable.get(), new RyaStatementWritable(
+                    RdfToRyaConversions.convertStatement(facts.next().getTriple()),
+                    ryaContext)));
+            }
+            return out;
+        }).saveAsNewAPIHadoopDataset(job.getConfiguration());
+    }
+
+    private static <T> JavaRDD<T> checkpoint(JavaRDD<T> rdd) {
+        rdd.persist(StorageLevel.MEMORY_AND_DISK());
+        rdd.checkpoint();
+        rdd.count();
+        return rdd;
+    }
+
+    private static SchemaWritable buildSchema(List<Statement> triples) {
+        SchemaWritable schema = new SchemaWritable();
+        for (Statement triple : triples) {
+            schema.processTriple(triple);
+        }
+        schema.closure();
+        return schema;
+    }
+
+    /**
+     * Send a fact to the nodes that might use it, the way the ForwardChain
+     * mapper does.
+     */
+    private static List<Tuple2<ResourceWritable, Fact>> route(Fact fact,
+            Schema schema) {
+        List<Tuple2<ResourceWritable, Fact>> out = new ArrayList<>(2);
+        Relevance rel = LocalReasoner.relevantFact(fact, schema);
+        if (rel.subject()) {
+            ResourceWritable node = new ResourceWritable();
+            node.set(fact.getSubject(), 1);
+            out.add(new Tuple2<>(node, fact));
+        }
+        if (rel.object()) {
+            ResourceWritable node = new ResourceWritable();
+            node.set((Resource) fact.getObject(), -1);
+            out.add(new Tuple2<>(node, fact));
+        }
+        return out;
+    }
+
+    /**
+     * Orders edges by node, then incoming edges before outgoing edges, like
+     * {@link ResourceWritable.SecondaryComparator}.
+     */
+    private static class NodeComparator implements Comparator<ResourceWritable>,
+            Serializable {
+        private static final long serialVersionUID = 1L;
+        @Override
+        public int compare(ResourceWritable node1, ResourceWritable node2) {
+            int result = node1.compareTo(node2);
+            if (result == 0) {
+                result = Integer.compare(node1.getSortKey(), node2.getSortKey());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Reasons about each node of a sorted partition in turn, the way the
+     * ForwardChain reducer does. Outputs each derived fact with its derivation
+     * separated, and each inconsistency wrapped in an empty fact, like the
+     * DuplicateElimination mapper.
+     */
+    private static class ReasoningFunction implements PairFlatMapFunction<
+            Iterator<Tuple2<ResourceWritable, Fact>>, Fact, Derivation> {
+        private static final long serialVersionUID = 1L;
+        private final Broadcast<SchemaWritable> schema;
+        private final int iteration;
+        private final int lastSchemaUpdate;
+
+        ReasoningFunction(Broadcast<SchemaWritable> schema, int iteration,
+                int lastSchemaUpdate) {
+            this.schema = schema;
+            this.iteration = iteration;
+            this.lastSchemaUpdate = lastSchemaUpdate;
+        }
+
+        @Override
+        public Iterable<Tuple2<Fact, Derivation>> call(
+                Iterator<Tuple2<ResourceWritable, Fact>> edges) {
+            return () -> new Iterator<Tuple2<Fact, Derivation>>() {
+                private final Deque<Tuple2<Fact, Derivation>> buffer = new ArrayDeque<>();
+                private Tuple2<ResourceWritable, Fact> next = edges.hasNext()
+                    ? edges.next() : null;
+
+                @Override
+                public boolean hasNext() {
+                    // Reason about one node at a time, so only one node's
+                    // results are held in memory
+                    while (buffer.isEmpty() && next != null) {
+                        ResourceWritable node = next._1();
+                        LocalReasoner reasoner = new LocalReasoner(node.get(),
+                            schema.value(), iteration, lastSchemaUpdate);
+                        while (next != null && next._1().compareTo(node) == 0) {
+                            reasoner.processFact(next._2());
+                            collect(reasoner);
+                            next = edges.hasNext() ? edges.next() : null;
+                        }
+                        reasoner.getTypes();
+                        collect(reasoner);
+                    }
+                    return !buffer.isEmpty();
+                }
+
+                @Override
+                public Tuple2<Fact, Derivation> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return buffer.poll();
+                }
+
+                private void collect(LocalReasoner reasoner) {
+                    if (reasoner.hasNewFacts()) {
+                        for (Fact fact : reasoner.getFacts()) {
+                            Fact triple = fact.clone();
+                            Derivation derivation = triple.unsetDerivation();
+                            buffer.add(new Tuple2<>(triple, derivation));
+                        }
+                    }
+                    if (reasoner.hasInconsistencies()) {
+                        for (Derivation inconsistency : reasoner.getInconsistencies()) {
+                            buffer.add(new Tuple2<>(new Fact(), inconsistency));
+                        }
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.apache.rya.reasoning.mr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.rya.reasoning.Fact;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+
+/**
+ * Partitioned Bloom filter over triples. Each triple belongs to exactly one
+ * partition, determined by a hash of its subject, predicate, and object, so
+ * the partitions can be built independently by separate reducers and each
+ * stays a manageable size. Like {@link Fact#equals}, membership ignores where
+ * a triple came from.
+ * <p>
+ * The filter is sized according to the expected number of triples and the
+ * acceptable false positive rate. If more triples than expected are added,
+ * it still never gives false negatives, but gives false positives more often.
+ */
+public class TripleFilter {
+    private static final int DEFAULT_PARTITIONS = 16;
+    private static final long DEFAULT_EXPECTED = 10000000;
+    private static final float DEFAULT_ERROR_RATE = 0.01f;
+
+    private final BloomFilter[] partitions;
+
+    /**
+     * Create an empty filter, sized according to the configuration.
+     */
+    public TripleFilter(Configuration conf) {
+        this(getNumPartitions(conf));
+        long expected = conf.getLong(MRReasoningUtils.FILTER_EXPECTED_PROP,
+            DEFAULT_EXPECTED);
+        double errorRate = conf.getFloat(MRReasoningUtils.FILTER_ERROR_PROP,
+            DEFAULT_ERROR_RATE);
+        double perPartition = Math.max(1.0, (double) expected / partitions.length);
+        // Optimal size and number of hash functions for that many elements:
+        int vectorSize = (int) Math.ceil(-perPartition * Math.log(errorRate)
+            / (Math.log(2) * Math.log(2)));
+        int nbHash = Math.max(1, (int) Math.round(
+            vectorSize / perPartition * Math.log(2)));
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new BloomFilter(vectorSize, nbHash, Hash.MURMUR_HASH);
+        }
+    }
+
+    private TripleFilter(int numPartitions) {
+        partitions = new BloomFilter[numPartitions];
+    }
+
+    /**
+     * Get the number of partitions the filter is split into.
+     */
+    public static int getNumPartitions(Configuration conf) {
+        return conf.getInt(MRReasoningUtils.FILTER_PARTITIONS_PROP,
+            DEFAULT_PARTITIONS);
+    }
+
+    /**
+     * Get the filter key for a fact's triple.
+     */
+    public static Key getKey(Fact fact) {
+        String spo = fact.getSubject().toString() + '\u0000'
+            + fact.getPredicate().toString() + '\u0000'
+            + fact.getObject().toString();
+        return new Key(spo.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the partition a key belongs to.
+     */
+    public int getPartition(Key key) {
+        return (Arrays.hashCode(key.getBytes()) & Integer.MAX_VALUE)
+            % partitions.length;
+    }
+
+    /**
+     * Get one partition of the filter.
+     */
+    public BloomFilter getPartition(int i) {
+        return partitions[i];
+    }
+
+    /**
+     * Add a fact's triple to the filter.
+     */
+    public void add(Fact fact) {
+        Key key = getKey(fact);
+        partitions[getPartition(key)].add(key);
+    }
+
+    /**
+     * Test whether a fact's triple might have been added to the filter. If
+     * false, it definitely wasn't.
+     */
+    public boolean mightContain(Fact fact) {
+        Key key = getKey(fact);
+        return partitions[getPartition(key)].membershipTest(key);
+    }
+
+    /**
+     * Load the filter built by {@link TripleFilterBuilder}.
+     * @throws IOException if any partition is missing.
+     */
+    public static TripleFilter load(Configuration conf) throws IOException {
+        TripleFilter filter = new TripleFilter(getNumPartitions(conf));
+        FileSystem fs = FileSystem.get(conf);
+        Path filterPath = MRReasoningUtils.getOutputPath(conf,
+            MRReasoningUtils.FILTER_DIR);
+        if (!fs.isDirectory(filterPath)) {
+            throw new IOException("No triple filter found in " + filterPath);
+        }
+        IntWritable partition = new IntWritable();
+        for (FileStatus status : fs.listStatus(filterPath)) {
+            String name = status.getPath().getName();
+            if (!status.isFile() || status.getLen() == 0
+                    || name.startsWith("_")
+                    || name.startsWith(MRReasoningUtils.DEBUG_OUT)) {
+                continue;
+            }
+            try (SequenceFile.Reader in = new SequenceFile.Reader(conf,
+                    SequenceFile.Reader.file(status.getPath()))) {
+                BloomFilter bloom = new BloomFilter();
+                while (in.next(partition, bloom)) {
+                    filter.partitions[partition.get()] = bloom;
+                    bloom = new BloomFilter();
+                }
+            }
+        }
+        for (int i = 0; i < filter.partitions.length; i++) {
+            if (filter.partitions[i] == null) {
+                throw new IOException("Partition " + i + " of the triple filter"
+                    + " not found in " + filterPath);
+            }
+        }
+        return filter;
+    }
+}
@@ -0,0 +1,136 @@
+package org.apache.rya.reasoning.mr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.reasoning.Fact;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.log4j.Logger;
+
+/**
+ * Builds a {@link TripleFilter} over every triple in the table, so that
+ * {@link DuplicateElimination} can tell which derived facts are definitely
+ * new without reading the table again. Each mapper fills in a whole filter
+ * for its part of the table, and each reducer combines one partition of the
+ * mappers' filters.
+ */
+public class TripleFilterBuilder extends AbstractReasoningTool {
+    public static void main(String[] args) throws Exception {
+        System.exit(ToolRunner.run(new TripleFilterBuilder(), args));
+    }
+
+    @Override
+    protected void configureReasoningJob(String[] args) throws Exception {
+        Configuration conf = job.getConfiguration();
+        configureAccumuloInput(FilterTableMapper.class);
+        job.setMapOutputKeyClass(IntWritable.class);
+        job.setMapOutputValueClass(BloomFilter.class);
+        job.setReducerClass(FilterReducer.class);
+        job.setNumReduceTasks(TripleFilter.getNumPartitions(conf));
+        // Replace any filter left over from an earlier run
+        MRReasoningUtils.deleteIfExists(conf, MRReasoningUtils.FILTER_DIR);
+        Path outPath = MRReasoningUtils.getOutputPath(conf,
+            MRReasoningUtils.FILTER_DIR);
+        SequenceFileOutputFormat.setOutputPath(job, outPath);
+        job.setOutputFormatClass(SequenceFileOutputFormat.class);
+        job.setOutputKeyClass(IntWritable.class);
+        job.setOutputValueClass(BloomFilter.class);
+    }
+
+    @Override
+    protected String getJobName() {
+        return "Rya reasoning: " + this.getClass().getSimpleName() + "_"
+            + System.currentTimeMillis();
+    }
+
+    public static class FilterTableMapper extends Mapper<Key, Value,
+            IntWritable, BloomFilter> {
+        private TripleFilter filter;
+        private Fact fact = new Fact();
+        @Override
+        public void setup(Context context) {
+            filter = new TripleFilter(context.getConfiguration());
+        }
+        /**
+         * Add every triple to this mapper's filter.
+         */
+        @Override
+        public void map(Key row, Value data, Context context) {
+            RyaStatement rs = MRReasoningUtils.getStatement(row, data,
+                context.getConfiguration());
+            if (rs != null) {
+                fact.setTriple(rs);
+                filter.add(fact);
+            }
+        }
+        /**
+         * Output each partition of the filter once all the triples are in.
+         */
+        @Override
+        public void cleanup(Context context) throws IOException,
+                InterruptedException {
+            int n = TripleFilter.getNumPartitions(context.getConfiguration());
+            for (int i = 0; i < n; i++) {
+                context.write(new IntWritable(i), filter.getPartition(i));
+            }
+        }
+    }
+
+    public static class FilterReducer extends Reducer<IntWritable,
+            BloomFilter, IntWritable, BloomFilter> {
+        private Logger log = Logger.getLogger(FilterReducer.class);
+        /**
+         * Combine the mappers' filters for one partition.
+         */
+        @Override
+        public void reduce(IntWritable partition, Iterable<BloomFilter> filters,
+                Context context) throws IOException, InterruptedException {
+            BloomFilter combined = null;
+            int count = 0;
+            for (BloomFilter filter : filters) {
+                if (combined == null) {
+                    // Hadoop reuses the value object, so copy the first one
+                    combined = WritableUtils.clone(filter,
+                        context.getConfiguration());
+                }
+                else {
+                    combined.or(filter);
+                }
+                count++;
+            }
+            log.info("Combined " + count + " filters for partition "
+                + partition.get());
+            context.write(partition, combined);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.apache.rya.reasoning.mr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * Kryo serializer that uses a class's Writable methods, so that Spark
+ * serializes facts, derivations, and the schema exactly as the MapReduce jobs
+ * do.
+ */
+public class WritableSerializer<T extends Writable> extends Serializer<T> {
+    @Override
+    public void write(Kryo kryo, Output output, T object) {
+        try {
+            object.write(new DataOutputStream(output));
+        }
+        catch (IOException e) {
+            throw new KryoException(e);
+        }
+    }
+
+    @Override
+    public T read(Kryo kryo, Input input, Class<T> type) {
+        T object = ReflectionUtils.newInstance(type, null);
+        try {
+            object.readFields(new DataInputStream(input));
+        }
+        catch (IOException e) {
+            throw new KryoException(e);
+        }
+        return object;
+    }
+}
@@ -0,0 +1,90 @@
+package org.apache.rya.reasoning;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+
+public class ParallelReasonerTest {
+    private ParallelReasoner reasoner;
+
+    @Before
+    public void setUp() {
+        reasoner = new ParallelReasoner(4);
+    }
+
+    @After
+    public void tearDown() {
+        reasoner.shutdown();
+    }
+
+    @Test
+    public void testTypesAndInconsistencies() throws Exception {
+        reasoner.add(TestUtils.statement(TestUtils.uri("Professor"),
+            RDFS.SUBCLASSOF, TestUtils.uri("Faculty")));
+        reasoner.add(TestUtils.statement(TestUtils.uri("Faculty"),
+            RDFS.SUBCLASSOF, TestUtils.uri("Employee")));
+        reasoner.add(TestUtils.statement(TestUtils.uri("Employee"),
+            OWL.DISJOINTWITH, TestUtils.uri("Student")));
+        reasoner.add(TestUtils.statement(TestUtils.uri("Alice"),
+            RDF.TYPE, TestUtils.uri("Professor")));
+        reasoner.add(TestUtils.statement(TestUtils.uri("Bob"),
+            RDF.TYPE, TestUtils.uri("Faculty")));
+        reasoner.add(TestUtils.statement(TestUtils.uri("Bob"),
+            RDF.TYPE, TestUtils.uri("Student")));
+        reasoner.reason();
+        Assert.assertTrue(reasoner.getFacts().contains(TestUtils.fact(
+            TestUtils.uri("Alice"), RDF.TYPE, TestUtils.uri("Employee"))));
+        Assert.assertTrue(reasoner.getFacts().contains(TestUtils.fact(
+            TestUtils.uri("Bob"), RDF.TYPE, TestUtils.uri("Employee"))));
+        Assert.assertFalse("Disjoint types should be inconsistent",
+            reasoner.getInconsistencies().isEmpty());
+    }
+
+    @Test
+    public void testTransitiveChain() throws Exception {
+        URI partOf = TestUtils.uri("partOf");
+        reasoner.add(TestUtils.statement(partOf, RDF.TYPE,
+            OWL.TRANSITIVEPROPERTY));
+        String[] chain = { "a", "b", "c", "d", "e", "f" };
+        for (int i = 0; i < chain.length - 1; i++) {
+            reasoner.add(TestUtils.statement(TestUtils.uri(chain[i]), partOf,
+                TestUtils.uri(chain[i + 1])));
+        }
+        reasoner.reason();
+        for (int i = 0; i < chain.length; i++) {
+            for (int j = i + 2; j < chain.length; j++) {
+                Assert.assertTrue("Missing " + chain[i] + " partOf " + chain[j],
+                    reasoner.getFacts().contains(TestUtils.fact(
+                    TestUtils.uri(chain[i]), partOf, TestUtils.uri(chain[j]))));
+            }
+        }
+        // every pair at least two steps apart, and nothing else
+        Assert.assertEquals(10, reasoner.getFacts().size());
+        Assert.assertTrue(reasoner.getInconsistencies().isEmpty());
+    }
+}
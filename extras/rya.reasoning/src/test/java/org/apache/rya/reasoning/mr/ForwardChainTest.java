@@ -19,6 +19,10 @@ package org.apache.rya.reasoning.mr;
  * under the License.
  */
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -127,6 +131,28 @@ public class ForwardChainTest {
             .runTest();
     }
 
+    @Test
+    public void testFileMapperFrontier() throws Exception {
+        // Only the edge of the node on the frontier is sent on
+        File frontier = File.createTempFile("frontier", null);
+        frontier.deleteOnExit();
+        Files.write(frontier.toPath(),
+            Arrays.asList(TestUtils.uri("y").stringValue()),
+            StandardCharsets.UTF_8);
+        ResourceWritable rw2 = new ResourceWritable();
+        rw2.set(TestUtils.uri("y"));
+        MapDriver<Fact, NullWritable, ResourceWritable, Fact> driver =
+            new MapDriver<Fact, NullWritable, ResourceWritable, Fact>()
+            .withMapper(new ForwardChain.FileMapper(schema));
+        driver.getConfiguration().set(MRReasoningUtils.FRONTIER_PROP,
+            frontier.toURI().toString());
+        driver.withInput(X_SUB_Y, NullWritable.get())
+            .withInput(Y_SUB_Z, NullWritable.get())
+            .withOutput(rw2, X_SUB_Y)
+            .withOutput(rw2, Y_SUB_Z)
+            .runTest();
+    }
+
     @Test
     public void testRdfMapperOutput() throws Exception {
         RyaStatement rya = TestUtils.ryaStatement("x", "subOrganizationOf", "y");
@@ -0,0 +1,202 @@
+package org.apache.rya.reasoning.mr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.rya.accumulo.AccumuloRyaDAO;
+import org.apache.rya.accumulo.instance.AccumuloRyaInstanceDetailsRepository;
+import org.apache.rya.accumulo.mr.MRUtils;
+import org.apache.rya.api.domain.RyaStatement;
+import org.apache.rya.api.instance.RyaDetails;
+import org.apache.rya.api.instance.RyaDetails.EntityCentricIndexDetails;
+import org.apache.rya.api.instance.RyaDetails.FreeTextIndexDetails;
+import org.apache.rya.api.instance.RyaDetails.JoinSelectivityDetails;
+import org.apache.rya.api.instance.RyaDetails.PCJIndexDetails;
+import org.apache.rya.api.instance.RyaDetails.ProspectorDetails;
+import org.apache.rya.api.instance.RyaDetails.ReasoningDetails;
+import org.apache.rya.api.instance.RyaDetails.TemporalIndexDetails;
+import org.apache.rya.api.resolver.RdfToRyaConversions;
+import org.apache.rya.reasoning.Fact;
+import org.apache.rya.reasoning.TestUtils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Statement;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+
+import com.google.common.base.Optional;
+
+public class IncrementalReasoningTest {
+    private static final String PREFIX = "incremental_";
+    private static final long WATERMARK = System.currentTimeMillis() - 60000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Configuration conf;
+    private AccumuloRyaDAO dao;
+
+    @Before
+    public void setUp() throws Exception {
+        conf = new Configuration();
+        conf.setBoolean(MRUtils.AC_MOCK_PROP, true);
+        conf.set(MRUtils.AC_INSTANCE_PROP, IncrementalReasoningTest.class.getSimpleName()
+            + System.nanoTime());
+        conf.set(MRUtils.AC_USERNAME_PROP, "root");
+        conf.set(MRUtils.AC_PWD_PROP, "");
+        conf.set(MRUtils.TABLE_PREFIX_PROPERTY, PREFIX);
+        conf.set(MRReasoningUtils.WORKING_DIR, folder.getRoot().toString());
+        dao = MRReasoningUtils.getDAO(conf);
+        dao.init();
+        new AccumuloRyaInstanceDetailsRepository(MRReasoningUtils.getConnector(conf),
+            PREFIX).initialize(RyaDetails.builder()
+                .setRyaInstanceName(PREFIX)
+                .setRyaVersion("1.2.3.4")
+                .setEntityCentricIndexDetails(new EntityCentricIndexDetails(false))
+                .setTemporalIndexDetails(new TemporalIndexDetails(false))
+                .setFreeTextDetails(new FreeTextIndexDetails(false))
+                .setPCJIndexDetails(PCJIndexDetails.builder().setEnabled(false))
+                .setProspectorDetails(new ProspectorDetails(Optional.<Date>absent()))
+                .setJoinSelectivityDetails(new JoinSelectivityDetails(Optional.<Date>absent()))
+                .setReasoningDetails(new ReasoningDetails(Optional.of(new Date(WATERMARK))))
+                .build());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dao.destroy();
+    }
+
+    private void insert(Statement triple, long timestamp) throws Exception {
+        RyaStatement rs = RdfToRyaConversions.convertStatement(triple);
+        rs.setTimestamp(timestamp);
+        dao.add(rs);
+    }
+
+    @Test
+    public void testFrontierFromDelta() throws Exception {
+        insert(TestUtils.statement(TestUtils.uri("a"), TestUtils.uri("p"),
+            TestUtils.uri("b")), WATERMARK - 1000);
+        insert(TestUtils.statement(TestUtils.uri("x"), TestUtils.uri("p"),
+            TestUtils.uri("y")), WATERMARK + 1000);
+        insert(TestUtils.statement(TestUtils.uri("z"), TestUtils.uri("q"),
+            TestUtils.stringLiteral("z")), WATERMARK + 2000);
+        IncrementalReasoning incremental = new IncrementalReasoning(conf);
+        Assert.assertTrue(incremental.start());
+        Set<String> expected = new HashSet<>(Arrays.asList(
+            TestUtils.uri("x").stringValue(), TestUtils.uri("y").stringValue(),
+            TestUtils.uri("z").stringValue()));
+        Assert.assertEquals(expected, MRReasoningUtils.loadFrontier(conf));
+        Assert.assertTrue(conf.getLong(MRReasoningUtils.INSERT_TIMESTAMP_PROP, 0)
+            > WATERMARK);
+    }
+
+    @Test
+    public void testNothingNew() throws Exception {
+        insert(TestUtils.statement(TestUtils.uri("a"), TestUtils.uri("p"),
+            TestUtils.uri("b")), WATERMARK - 1000);
+        IncrementalReasoning incremental = new IncrementalReasoning(conf);
+        Assert.assertFalse(incremental.start());
+    }
+
+    @Test
+    public void testSchemaChange() throws Exception {
+        insert(TestUtils.statement(TestUtils.uri("x"), TestUtils.uri("p"),
+            TestUtils.uri("y")), WATERMARK + 1000);
+        insert(TestUtils.statement(TestUtils.uri("p"), RDF.TYPE,
+            OWL.TRANSITIVEPROPERTY), WATERMARK + 1000);
+        IncrementalReasoning incremental = new IncrementalReasoning(conf);
+        Assert.assertTrue(incremental.start());
+        Assert.assertNull(MRReasoningUtils.loadFrontier(conf));
+    }
+
+    @Test
+    public void testMaxFrontier() throws Exception {
+        conf.setInt(MRReasoningUtils.MAX_FRONTIER_PROP, 2);
+        insert(TestUtils.statement(TestUtils.uri("x"), TestUtils.uri("p"),
+            TestUtils.uri("y")), WATERMARK + 1000);
+        insert(TestUtils.statement(TestUtils.uri("y"), TestUtils.uri("p"),
+            TestUtils.uri("z")), WATERMARK + 1000);
+        IncrementalReasoning incremental = new IncrementalReasoning(conf);
+        Assert.assertTrue(incremental.start());
+        Assert.assertNull(MRReasoningUtils.loadFrontier(conf));
+    }
+
+    @Test
+    public void testNextIteration() throws Exception {
+        insert(TestUtils.statement(TestUtils.uri("x"), TestUtils.uri("p"),
+            TestUtils.uri("y")), WATERMARK + 1000);
+        IncrementalReasoning incremental = new IncrementalReasoning(conf);
+        Assert.assertTrue(incremental.start());
+        // Only facts that might be used for further reasoning count
+        Path dir = MRReasoningUtils.getOutputPath(conf, MRReasoningUtils.OUTPUT_BASE + 1);
+        write(new Path(dir, MRReasoningUtils.INTERMEDIATE_OUT + "-m-00000"),
+            TestUtils.fact(TestUtils.uri("y"), TestUtils.uri("q"), TestUtils.uri("w")));
+        write(new Path(dir, MRReasoningUtils.TERMINAL_OUT + "-m-00000"),
+            TestUtils.fact(TestUtils.uri("u"), TestUtils.uri("q"), TestUtils.uri("v")));
+        incremental.nextIteration(1, false);
+        Set<String> expected = new HashSet<>(Arrays.asList(
+            TestUtils.uri("y").stringValue(), TestUtils.uri("w").stringValue()));
+        Assert.assertEquals(expected, MRReasoningUtils.loadFrontier(conf));
+        incremental.nextIteration(2, true);
+        Assert.assertNull(MRReasoningUtils.loadFrontier(conf));
+    }
+
+    @Test
+    public void testNextIterationMaxFrontier() throws Exception {
+        conf.setInt(MRReasoningUtils.MAX_FRONTIER_PROP, 2);
+        insert(TestUtils.statement(TestUtils.uri("x"), TestUtils.uri("p"),
+            TestUtils.uri("y")), WATERMARK + 1000);
+        IncrementalReasoning incremental = new IncrementalReasoning(conf);
+        Assert.assertTrue(incremental.start());
+        Path dir = MRReasoningUtils.getOutputPath(conf, MRReasoningUtils.OUTPUT_BASE + 1);
+        write(new Path(dir, MRReasoningUtils.INTERMEDIATE_OUT + "-m-00000"),
+            TestUtils.fact(TestUtils.uri("a"), TestUtils.uri("q"), TestUtils.uri("b")),
+            TestUtils.fact(TestUtils.uri("c"), TestUtils.uri("q"), TestUtils.uri("d")));
+        incremental.nextIteration(1, false);
+        Assert.assertNull(MRReasoningUtils.loadFrontier(conf));
+    }
+
+    private void write(Path path, Fact... facts) throws Exception {
+        FileSystem.get(conf).mkdirs(path.getParent());
+        try (SequenceFile.Writer out = SequenceFile.createWriter(conf,
+                SequenceFile.Writer.file(path),
+                SequenceFile.Writer.keyClass(Fact.class),
+                SequenceFile.Writer.valueClass(NullWritable.class))) {
+            for (Fact fact : facts) {
+                out.append(fact, NullWritable.get());
+            }
+        }
+    }
+}
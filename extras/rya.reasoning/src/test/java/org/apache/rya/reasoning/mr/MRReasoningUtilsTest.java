@@ -0,0 +1,63 @@
+package org.apache.rya.reasoning.mr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MRReasoningUtilsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testNoFrontier() throws Exception {
+        Assert.assertNull(MRReasoningUtils.loadFrontier(new Configuration()));
+    }
+
+    @Test
+    public void testLoadFrontier() throws Exception {
+        File file = folder.newFile("frontier-1");
+        Files.write(file.toPath(), Arrays.asList("http://test.org#x",
+            "http://test.org#y", "b1"), StandardCharsets.UTF_8);
+        Configuration conf = new Configuration();
+        conf.set(MRReasoningUtils.FRONTIER_PROP, file.toURI().toString());
+        Set<String> expected = new HashSet<>(Arrays.asList("http://test.org#x",
+            "http://test.org#y", "b1"));
+        Assert.assertEquals(expected, MRReasoningUtils.loadFrontier(conf));
+    }
+
+    @Test
+    public void testLoadEmptyFrontier() throws Exception {
+        File file = folder.newFile("frontier-2");
+        Configuration conf = new Configuration();
+        conf.set(MRReasoningUtils.FRONTIER_PROP, file.toURI().toString());
+        Assert.assertTrue(MRReasoningUtils.loadFrontier(conf).isEmpty());
+    }
+}
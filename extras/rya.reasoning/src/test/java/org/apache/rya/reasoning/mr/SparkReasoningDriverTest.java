@@ -0,0 +1,122 @@
+package org.apache.rya.reasoning.mr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.rya.reasoning.Fact;
+import org.apache.rya.reasoning.ParallelReasoner;
+import org.apache.rya.reasoning.TestUtils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.model.vocabulary.RDFS;
+
+public class SparkReasoningDriverTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JavaSparkContext sc;
+    private ParallelReasoner expected;
+
+    @Before
+    public void setUp() throws Exception {
+        sc = new JavaSparkContext(SparkReasoningDriver.sparkConf()
+            .setMaster("local[2]"));
+        sc.setCheckpointDir(folder.newFolder("checkpoint").toString());
+        // Runs the same per-node reasoning and duplicate elimination as the
+        // ForwardChain and DuplicateElimination jobs, in memory
+        expected = new ParallelReasoner(2);
+    }
+
+    @After
+    public void tearDown() {
+        sc.stop();
+        expected.shutdown();
+    }
+
+    @Test
+    public void testSameFactsAsMapReduce() throws Exception {
+        URI partOf = TestUtils.uri("partOf");
+        URI hasPart = TestUtils.uri("hasPart");
+        List<Statement> triples = new ArrayList<>();
+        triples.add(TestUtils.statement(TestUtils.uri("Professor"),
+            RDFS.SUBCLASSOF, TestUtils.uri("Faculty")));
+        triples.add(TestUtils.statement(TestUtils.uri("Faculty"),
+            RDFS.SUBCLASSOF, TestUtils.uri("Employee")));
+        triples.add(TestUtils.statement(TestUtils.uri("Employee"),
+            OWL.DISJOINTWITH, TestUtils.uri("Student")));
+        triples.add(TestUtils.statement(partOf, RDF.TYPE,
+            OWL.TRANSITIVEPROPERTY));
+        triples.add(TestUtils.statement(partOf, OWL.INVERSEOF, hasPart));
+        triples.add(TestUtils.statement(TestUtils.uri("Alice"),
+            RDF.TYPE, TestUtils.uri("Professor")));
+        triples.add(TestUtils.statement(TestUtils.uri("Bob"),
+            RDF.TYPE, TestUtils.uri("Faculty")));
+        triples.add(TestUtils.statement(TestUtils.uri("Bob"),
+            RDF.TYPE, TestUtils.uri("Student")));
+        String[] chain = { "a", "b", "c", "d", "e" };
+        for (int i = 0; i < chain.length - 1; i++) {
+            triples.add(TestUtils.statement(TestUtils.uri(chain[i]), partOf,
+                TestUtils.uri(chain[i + 1])));
+        }
+
+        List<Fact> input = new ArrayList<>();
+        for (Statement triple : triples) {
+            expected.add(triple);
+            input.add(new Fact(triple));
+        }
+        expected.reason();
+
+        SparkReasoningDriver driver = new SparkReasoningDriver();
+        Configuration conf = new Configuration();
+        // Make sure checkpointing happens along the way
+        conf.setInt(SparkReasoningDriver.CHECKPOINT_INTERVAL_PROP, 2);
+        driver.setConf(conf);
+        SparkReasoningDriver.Results results = driver.reason(sc,
+            sc.parallelize(input));
+
+        Set<Statement> expectedTriples = new HashSet<>();
+        for (Fact fact : expected.getFacts()) {
+            expectedTriples.add(fact.getTriple());
+        }
+        Set<Statement> actualTriples = new HashSet<>();
+        for (Fact fact : results.derived.collect()) {
+            actualTriples.add(fact.getTriple());
+        }
+        Assert.assertFalse(expectedTriples.isEmpty());
+        Assert.assertEquals(expectedTriples, actualTriples);
+        Assert.assertEquals(expected.getInconsistencies().size(),
+            results.inconsistencies.count());
+    }
+}
@@ -0,0 +1,151 @@
+package org.apache.rya.reasoning.mr;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.rya.accumulo.AccumuloRyaDAO;
+import org.apache.rya.accumulo.mr.MRUtils;
+import org.apache.rya.api.resolver.RdfToRyaConversions;
+import org.apache.rya.reasoning.Derivation;
+import org.apache.rya.reasoning.Fact;
+import org.apache.rya.reasoning.OwlRule;
+import org.apache.rya.reasoning.TestUtils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.mrunit.mapreduce.MapDriver;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TripleFilterTest {
+    // Derived in the current iteration, and:
+    // not in the filter
+    static Fact NEW = new Fact(TestUtils.uri("x"), TestUtils.uri("memberOf"),
+        TestUtils.uri("y"), 2, OwlRule.PRP_SPO1, TestUtils.uri("x"));
+    // in the filter and in the table
+    static Fact EXISTING = new Fact(TestUtils.uri("x"), TestUtils.uri("worksFor"),
+        TestUtils.uri("y"), 2, OwlRule.PRP_SPO1, TestUtils.uri("x"));
+    // in the filter but not in the table, as if it were a false positive
+    static Fact FALSE_POSITIVE = new Fact(TestUtils.uri("x"),
+        TestUtils.uri("headOf"), TestUtils.uri("y"), 2, OwlRule.PRP_SPO1,
+        TestUtils.uri("x"));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Configuration conf;
+
+    @Before
+    public void setUp() {
+        conf = new Configuration();
+        conf.set(MRReasoningUtils.WORKING_DIR, folder.getRoot().toString());
+        conf.setInt(MRReasoningUtils.FILTER_PARTITIONS_PROP, 4);
+        conf.setLong(MRReasoningUtils.FILTER_EXPECTED_PROP, 1000);
+    }
+
+    @Test
+    public void testNoFalseNegatives() {
+        TripleFilter filter = new TripleFilter(conf);
+        filter.add(EXISTING);
+        filter.add(FALSE_POSITIVE);
+        Assert.assertTrue(filter.mightContain(EXISTING));
+        Assert.assertTrue(filter.mightContain(FALSE_POSITIVE));
+        // Membership doesn't depend on the derivation
+        Assert.assertTrue(filter.mightContain(new Fact(EXISTING.getTriple())));
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        TripleFilter filter = new TripleFilter(conf);
+        filter.add(EXISTING);
+        save(filter);
+        TripleFilter loaded = TripleFilter.load(conf);
+        Assert.assertTrue(loaded.mightContain(EXISTING));
+        for (int i = 0; i < TripleFilter.getNumPartitions(conf); i++) {
+            Assert.assertEquals(filter.getPartition(i).toString(),
+                loaded.getPartition(i).toString());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadMissing() throws Exception {
+        TripleFilter.load(conf);
+    }
+
+    @Test
+    public void testFilteredFileMapper() throws Exception {
+        conf.setBoolean(MRUtils.AC_MOCK_PROP, true);
+        conf.set(MRUtils.AC_INSTANCE_PROP, TripleFilterTest.class.getSimpleName());
+        conf.set(MRUtils.AC_USERNAME_PROP, "root");
+        conf.set(MRUtils.AC_PWD_PROP, "");
+        conf.set(MRUtils.TABLE_PREFIX_PROPERTY, "triplefilter_");
+        conf.setInt(MRReasoningUtils.STEP_PROP, 2);
+        TripleFilter filter = new TripleFilter(conf);
+        filter.add(EXISTING);
+        filter.add(FALSE_POSITIVE);
+        save(filter);
+        AccumuloRyaDAO dao = MRReasoningUtils.getDAO(conf);
+        dao.init();
+        try {
+            dao.add(RdfToRyaConversions.convertStatement(EXISTING.getTriple()));
+        }
+        finally {
+            dao.destroy();
+        }
+
+        Fact newFact = NEW.clone();
+        Derivation newDerivation = newFact.unsetDerivation();
+        Fact falsePositive = FALSE_POSITIVE.clone();
+        Derivation falsePositiveDerivation = falsePositive.unsetDerivation();
+        MapDriver<Fact, NullWritable, Fact, Derivation> driver =
+            new MapDriver<Fact, NullWritable, Fact, Derivation>()
+            .withMapper(new DuplicateElimination.FilteredFileMapper())
+            .withConfiguration(conf);
+        // Facts the filter rules out are output right away; the others only
+        // once the table shows they're new
+        driver.withInput(NEW.clone(), NullWritable.get())
+            .withInput(EXISTING.clone(), NullWritable.get())
+            .withInput(FALSE_POSITIVE.clone(), NullWritable.get())
+            .withOutput(newFact, newDerivation)
+            .withOutput(falsePositive, falsePositiveDerivation)
+            .runTest();
+    }
+
+    private void save(TripleFilter filter) throws IOException {
+        Path path = new Path(MRReasoningUtils.getOutputPath(conf,
+            MRReasoningUtils.FILTER_DIR), "part-r-00000");
+        try (SequenceFile.Writer out = SequenceFile.createWriter(conf,
+                SequenceFile.Writer.file(path),
+                SequenceFile.Writer.keyClass(IntWritable.class),
+                SequenceFile.Writer.valueClass(BloomFilter.class))) {
+            for (int i = 0; i < TripleFilter.getNumPartitions(conf); i++) {
+                out.append(new IntWritable(i), filter.getPartition(i));
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.text.DecimalFormat;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.rya.api.client.RyaClient;
 import org.apache.rya.api.client.RyaClientException;
@@ -129,10 +130,22 @@ public class RyaCommands implements CommandMarker {
         }
     }
 
+    /**
+     * Executes a SPARQL Query without a timeout.
+     *
+     * @param file - A local file containing the SPARQL Query, or null to prompt the user for it.
+     * @return The results of the query.
+     */
+    public String sparqlQuery(final String file) {
+        return sparqlQuery(file, null);
+    }
+
     @CliCommand(value = SPARQL_QUERY_CMD, help = "Executes the provided SPARQL Query on the connected Rya instance.")
     public String sparqlQuery(
             @CliOption(key = { "file" }, mandatory = false, help = "A local file containing the SPARQL Query that is to be read and executed.")
-            final String file) {
+            final String file,
+            @CliOption(key = { "timeout" }, mandatory = false, help = "The number of seconds the query may run before it is cancelled.")
+            final Integer timeout) {
         // Fetch the command that is connected to the store.
         final ShellState shellState = state.getShellState();
         final RyaClient commands = shellState.getConnectedCommands().get();
@@ -157,6 +170,9 @@ public class RyaCommands implements CommandMarker {
 
             consolePrinter.println("Executing Query...");
             consolePrinter.flush();
+            if (timeout != null) {
+                return commands.getExecuteSparqlQuery().executeSparqlQuery(ryaInstanceName.get(), sparqlQuery, TimeUnit.SECONDS.toMillis(timeout));
+            }
             return commands.getExecuteSparqlQuery().executeSparqlQuery(ryaInstanceName.get(), sparqlQuery);
         } catch (final RyaClientException | IOException e) {
             log.error("Error", e);
@@ -34,6 +34,8 @@ import org.apache.rya.api.persist.RdfEvalStatsDAO;
 import org.apache.rya.api.persist.RyaDAO;
 import org.apache.rya.api.persist.RyaDAOException;
 import org.apache.rya.api.persist.joinselect.SelectivityEvalDAO;
+import org.apache.rya.rdftriplestore.cache.QueryResultCache;
+import org.apache.rya.rdftriplestore.evaluation.QueryEvaluationScheduler;
 import org.apache.rya.rdftriplestore.inference.InferenceEngine;
 import org.apache.rya.rdftriplestore.namespace.NamespaceManager;
 import org.apache.rya.rdftriplestore.provenance.ProvenanceCollector;
@@ -48,6 +50,8 @@ public class RdfCloudTripleStore extends SailBase {
     protected SelectivityEvalDAO selectEvalDAO;
     private NamespaceManager namespaceManager;
     protected ProvenanceCollector provenanceCollector;
+    protected QueryResultCache queryResultCache;
+    protected QueryEvaluationScheduler evaluationScheduler;
 
     private ValueFactory vf = new ValueFactoryImpl();
 
@@ -83,6 +87,17 @@ public class RdfCloudTripleStore extends SailBase {
         if (namespaceManager == null) {
             this.namespaceManager = new NamespaceManager(ryaDAO, this.conf);
         }
+
+        if (queryResultCache == null && this.conf.isUseResultCache()) {
+            this.queryResultCache = new QueryResultCache(this.conf);
+        }
+        if (inferenceEngine != null) {
+            inferenceEngine.setQueryResultCache(queryResultCache);
+        }
+
+        if (evaluationScheduler == null) {
+            this.evaluationScheduler = new QueryEvaluationScheduler(this.conf);
+        }
     }
 
     @Override
@@ -98,6 +113,13 @@ public class RdfCloudTripleStore extends SailBase {
             if (rdfEvalStatsDAO != null) {
                 rdfEvalStatsDAO.destroy();
             }
+            if (queryResultCache != null) {
+                queryResultCache.invalidateAll();
+            }
+            if (evaluationScheduler != null) {
+                evaluationScheduler.shutdown();
+                evaluationScheduler = null;
+            }
             ryaDAO.destroy();
         } catch (Exception e) {
             throw new SailException(e);
@@ -170,4 +192,20 @@ public class RdfCloudTripleStore extends SailBase {
 		this.provenanceCollector = provenanceCollector;
 	}
 
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    public QueryEvaluationScheduler getEvaluationScheduler() {
+        return evaluationScheduler;
+    }
+
+    public void setEvaluationScheduler(QueryEvaluationScheduler evaluationScheduler) {
+        this.evaluationScheduler = evaluationScheduler;
+    }
+
 }
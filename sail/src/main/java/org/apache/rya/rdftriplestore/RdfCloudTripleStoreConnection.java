@@ -42,16 +42,21 @@ import org.apache.rya.api.persist.RdfEvalStatsDAO;
 import org.apache.rya.api.persist.RyaDAO;
 import org.apache.rya.api.persist.RyaDAOException;
 import org.apache.rya.api.persist.joinselect.SelectivityEvalDAO;
+import org.apache.rya.api.persist.query.QueryContext;
 import org.apache.rya.api.persist.utils.RyaDAOHelper;
 import org.apache.rya.api.resolver.RdfToRyaConversions;
+import org.apache.rya.rdftriplestore.cache.QueryDependencies;
+import org.apache.rya.rdftriplestore.cache.QueryResultCache;
 import org.apache.rya.rdftriplestore.evaluation.FilterRangeVisitor;
 import org.apache.rya.rdftriplestore.evaluation.ParallelEvaluationStrategyImpl;
+import org.apache.rya.rdftriplestore.evaluation.QueryEvaluationScheduler;
 import org.apache.rya.rdftriplestore.evaluation.QueryJoinSelectOptimizer;
 import org.apache.rya.rdftriplestore.evaluation.RdfCloudTripleStoreEvaluationStatistics;
 import org.apache.rya.rdftriplestore.evaluation.RdfCloudTripleStoreSelectivityEvaluationStatistics;
 import org.apache.rya.rdftriplestore.evaluation.SeparateFilterJoinsVisitor;
 import org.apache.rya.rdftriplestore.inference.HasValueVisitor;
 import org.apache.rya.rdftriplestore.inference.InferenceEngine;
+import org.apache.rya.rdftriplestore.inference.InferenceEngineException;
 import org.apache.rya.rdftriplestore.inference.InverseOfVisitor;
 import org.apache.rya.rdftriplestore.inference.PropertyChainVisitor;
 import org.apache.rya.rdftriplestore.inference.SameAsVisitor;
@@ -98,6 +103,8 @@ import org.openrdf.query.impl.EmptyBindingSet;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.helpers.SailConnectionBase;
 
+import com.google.common.base.Joiner;
+
 import info.aduna.iteration.CloseableIteration;
 
 public class RdfCloudTripleStoreConnection extends SailConnectionBase {
@@ -109,6 +116,8 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
     private RyaDAO ryaDAO;
     private InferenceEngine inferenceEngine;
     private NamespaceManager namespaceManager;
+    private QueryResultCache queryResultCache;
+    private QueryEvaluationScheduler evaluationScheduler;
     private final RdfCloudTripleStoreConfiguration conf;
 
 
@@ -138,6 +147,8 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
             this.inferenceEngine = store.getInferenceEngine();
             this.namespaceManager = store.getNamespaceManager();
             this.provenanceCollector = store.getProvenanceCollector();
+            this.queryResultCache = store.getQueryResultCache();
+            this.evaluationScheduler = store.getEvaluationScheduler();
 
         } catch (final Exception e) {
             throw new SailException(e);
@@ -172,7 +183,13 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
                 ryaStatements.add(statement);
             }
             ryaDAO.add(ryaStatements.iterator());
-        } catch (final RyaDAOException e) {
+            if (queryResultCache != null) {
+                queryResultCache.invalidate(predicate, contexts, false);
+            }
+            if (isIncrementalInference()) {
+                inferenceEngine.statementAdded(new StatementImpl(subject, predicate, object));
+            }
+        } catch (final RyaDAOException | InferenceEngineException e) {
             throw new SailException(e);
         }
     }
@@ -188,7 +205,17 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
                 graphs[i] = RdfToRyaConversions.convertResource(aresource[i]);
             }
             ryaDAO.dropGraph(conf, graphs);
-        } catch (final RyaDAOException e) {
+            if (queryResultCache != null) {
+                if (aresource.length == 0) {
+                    queryResultCache.invalidateAll();
+                } else {
+                    queryResultCache.invalidate(null, aresource, false);
+                }
+            }
+            if (isIncrementalInference()) {
+                inferenceEngine.statementsRemoved(null, null, null);
+            }
+        } catch (final RyaDAOException | InferenceEngineException e) {
             throw new SailException(e);
         }
     }
@@ -252,6 +279,31 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
                 queryConf.setBoolean(RdfCloudTripleStoreConfiguration.CONF_PERFORMANT, Boolean.parseBoolean(performantBinding.getValue().stringValue()));
             }
 
+            final Binding batchSizeBinding = bindings.getBinding(RdfCloudTripleStoreConfiguration.CONF_JOIN_BATCH_SIZE);
+            if (batchSizeBinding != null) {
+                queryConf.setJoinBatchSize(Integer.valueOf(batchSizeBinding.getValue().stringValue()));
+            }
+
+            final Binding adaptiveBatchBinding = bindings.getBinding(RdfCloudTripleStoreConfiguration.CONF_BATCH_ADAPTIVE);
+            if (adaptiveBatchBinding != null) {
+                queryConf.setAdaptiveBatchSize(Boolean.parseBoolean(adaptiveBatchBinding.getValue().stringValue()));
+            }
+
+            final Binding semiJoinBinding = bindings.getBinding(RdfCloudTripleStoreConfiguration.CONF_SEMIJOIN);
+            if (semiJoinBinding != null) {
+                queryConf.setSemiJoin(Boolean.parseBoolean(semiJoinBinding.getValue().stringValue()));
+            }
+
+            final Binding parallelUnionBinding = bindings.getBinding(RdfCloudTripleStoreConfiguration.CONF_UNION_PARALLEL);
+            if (parallelUnionBinding != null) {
+                queryConf.setParallelUnion(Boolean.parseBoolean(parallelUnionBinding.getValue().stringValue()));
+            }
+
+            final Binding memoryBudgetBinding = bindings.getBinding(RdfCloudTripleStoreConfiguration.CONF_QUERY_MEMORY_BUDGET);
+            if (memoryBudgetBinding != null) {
+                queryConf.setQueryMemoryBudget(Long.parseLong(memoryBudgetBinding.getValue().stringValue()));
+            }
+
             final Binding inferBinding = bindings.getBinding(RdfCloudTripleStoreConfiguration.CONF_INFER);
             if (inferBinding != null) {
                 queryConf.setInfer(Boolean.parseBoolean(inferBinding.getValue().stringValue()));
@@ -271,6 +323,26 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
             if (limitBinding != null) {
                 queryConf.setLimit(Long.parseLong(limitBinding.getValue().stringValue()));
             }
+
+            final Binding queryIdBinding = bindings.getBinding(RdfCloudTripleStoreConfiguration.CONF_QUERY_ID);
+            if (queryIdBinding != null) {
+                queryConf.setQueryId(queryIdBinding.getValue().stringValue());
+            }
+
+            final Binding timeoutBinding = bindings.getBinding(RdfCloudTripleStoreConfiguration.CONF_QUERY_TIMEOUT);
+            if (timeoutBinding != null) {
+                queryConf.setQueryTimeout(Long.parseLong(timeoutBinding.getValue().stringValue()));
+            }
+
+            final Binding resultCacheBinding = bindings.getBinding(RdfCloudTripleStoreConfiguration.CONF_RESULT_CACHE);
+            if (resultCacheBinding != null) {
+                queryConf.setUseResultCache(Boolean.parseBoolean(resultCacheBinding.getValue().stringValue()));
+            }
+
+            final Binding topKIndexOrderBinding = bindings.getBinding(RdfCloudTripleStoreConfiguration.CONF_TOPK_INDEX_ORDER);
+            if (topKIndexOrderBinding != null) {
+                queryConf.setUseTopKIndexOrder(Boolean.parseBoolean(topKIndexOrderBinding.getValue().stringValue()));
+            }
         } else {
             bindings = new QueryBindingSet();
         }
@@ -279,6 +351,47 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
             tupleExpr = new QueryRoot(tupleExpr);
         }
 
+        if (queryResultCache != null && queryConf.isUseResultCache()) {
+            final TupleExpr query = tupleExpr;
+            final BindingSet queryBindings = bindings;
+            try {
+                return queryResultCache.evaluate(getResultCacheKey(tupleExpr, dataset, bindings, queryConf),
+                        dependencies -> evaluateQuery(query, dataset, queryBindings, queryConf, dependencies),
+                        queryConf.getQueryTimeout());
+            } catch (final QueryEvaluationException e) {
+                throw new SailException(e);
+            }
+        }
+        return evaluateQuery(tupleExpr, dataset, bindings, queryConf, null);
+    }
+
+    /**
+     * @return a key identifying the results of a query, ignoring bindings that do not change them
+     */
+    private static String getResultCacheKey(final TupleExpr tupleExpr, final Dataset dataset, final BindingSet bindings,
+            final RdfCloudTripleStoreConfiguration queryConf) {
+        final QueryBindingSet resultBindings = new QueryBindingSet(bindings);
+        resultBindings.removeBinding(RdfCloudTripleStoreConfiguration.CONF_QUERY_ID);
+        resultBindings.removeBinding(RdfCloudTripleStoreConfiguration.CONF_QUERY_TIMEOUT);
+        return Joiner.on('\n').useForNull("").join(tupleExpr, dataset, resultBindings,
+                Joiner.on(',').join(queryConf.getAuths()), queryConf.isInfer());
+    }
+
+    /**
+     * Optimizes and evaluates a query. The query is registered under a {@link QueryContext} until
+     * the returned iteration is closed, so it can be cancelled or time out.
+     * @param dependencies if not null, collects the predicates and graphs read by the optimized query
+     */
+    private CloseableIteration<BindingSet, QueryEvaluationException> evaluateQuery(TupleExpr tupleExpr,
+            final Dataset dataset, final BindingSet bindings, final RdfCloudTripleStoreConfiguration queryConf,
+            final QueryDependencies dependencies) throws SailException {
+        final QueryContext queryContext;
+        try {
+            queryContext = QueryContext.start(queryConf.getQueryId(), queryConf.getQueryTimeout());
+        } catch (final IllegalArgumentException e) {
+            throw new SailException(e);
+        }
+        queryConf.setQueryId(queryContext.getQueryId());
         try {
             final List<Class<QueryOptimizer>> optimizers = queryConf.getOptimizers();
             final Class<QueryOptimizer> pcjOptimizer = queryConf.getPcjOptimizer();
@@ -294,13 +407,15 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
                     throw new NoSuchMethodException("Could not find valid constructor for " + pcjOptimizer.getName());
                 }
                 if (opt instanceof Configurable) {
-                    ((Configurable) opt).setConf(conf);
+                    ((Configurable) opt).setConf(queryConf);
                 }
                 opt.optimize(tupleExpr, dataset, bindings);
             }
 
             final ParallelEvaluationStrategyImpl strategy = new ParallelEvaluationStrategyImpl(
-                    new StoreTripleSource(queryConf, ryaDAO), inferenceEngine, dataset, queryConf);
+                    new StoreTripleSource(queryConf, ryaDAO), inferenceEngine, dataset, queryConf,
+                    evaluationScheduler != null ? evaluationScheduler : QueryEvaluationScheduler.getDefault());
+            queryContext.onCancel(strategy::shutdown);
 
                 (new BindingAssigner()).optimize(tupleExpr, dataset, bindings);
                 (new ConstantOptimizer(strategy)).optimize(tupleExpr, dataset,
@@ -334,7 +449,7 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
                         throw new NoSuchMethodException("Could not find valid constructor for " + optclz.getName());
                     }
                     if (result instanceof Configurable) {
-                        ((Configurable) result).setConf(conf);
+                        ((Configurable) result).setConf(queryConf);
                     }
                     result.optimize(tupleExpr, dataset, bindings);
                 }
@@ -393,6 +508,12 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
                             bindings); // TODO: Make pluggable
                 }
             }
+            strategy.setEvaluationStatistics(stats);
+
+            if (dependencies != null) {
+                dependencies.setInferred(queryConf.isInfer());
+                dependencies.collect(tupleExpr);
+            }
 
             final CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy
                     .evaluate(tupleExpr, EmptyBindingSet.getInstance());
@@ -415,14 +536,20 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
 
                 @Override
                 public void close() throws QueryEvaluationException {
-                    iter.close();
-                    strategy.shutdown();
+                    try {
+                        iter.close();
+                    } finally {
+                        strategy.shutdown();
+                        queryContext.finish();
+                    }
                 }
             };
             return iterWrap;
         } catch (final QueryEvaluationException e) {
+            queryContext.finish();
             throw new SailException(e);
         } catch (final Exception e) {
+            queryContext.finish();
             throw new SailException(e);
         }
     }
@@ -568,11 +695,24 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
 
                 ryaDAO.delete(statement, conf);
             }
-        } catch (final RyaDAOException e) {
+            if (queryResultCache != null) {
+                queryResultCache.invalidate(predicate, contexts, contexts == null || contexts.length == 0);
+            }
+            if (isIncrementalInference()) {
+                inferenceEngine.statementsRemoved(subject, predicate, object);
+            }
+        } catch (final RyaDAOException | InferenceEngineException e) {
             throw new SailException(e);
         }
     }
 
+    /**
+     * @return true if schema changes are passed to the inference engine as they are written
+     */
+    private boolean isIncrementalInference() {
+        return inferenceEngine != null && conf.isInferIncremental();
+    }
+
     @Override
     protected void rollbackInternal() throws SailException {
         //TODO: No transactional layer as of yet
@@ -620,6 +760,20 @@ public class RdfCloudTripleStoreConnection extends SailConnectionBase {
             return RyaDAOHelper.query(ryaDAO, statements, conf);
         }
 
+        /**
+         * Queries the statements with a configuration other than the one of the query, such as one
+         * carrying a hint for how the DAO should scan this batch.
+         */
+        public CloseableIteration<? extends Entry<Statement, BindingSet>, QueryEvaluationException> getStatements(
+                final Collection<Map.Entry<Statement, BindingSet>> statements,
+                final RdfCloudTripleStoreConfiguration batchConf) throws QueryEvaluationException {
+            return RyaDAOHelper.query(ryaDAO, statements, batchConf);
+        }
+
+        public RdfCloudTripleStoreConfiguration getConf() {
+            return conf;
+        }
+
         @Override
 		public ValueFactory getValueFactory() {
             return RdfCloudTripleStoreConstants.VALUE_FACTORY;
@@ -0,0 +1,129 @@
+package org.apache.rya.rdftriplestore.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.algebra.QueryModelNode;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+
+/**
+ * The predicates and named graphs a query reads. Used by {@link QueryResultCache} to decide which
+ * cached results a write invalidates. A statement pattern with an unbound predicate, or a query
+ * node the collector does not understand, makes the query depend on every predicate.
+ */
+public class QueryDependencies {
+
+    private final Set<URI> predicates = new HashSet<>();
+    private final Set<Resource> graphs = new HashSet<>();
+    private boolean anyPredicate = false;
+    private boolean anyGraph = false;
+    private boolean inferred = false;
+
+    /**
+     * Adds the dependencies of every statement pattern in the (optimized) query tree.
+     * @param tupleExpr the query tree that will be evaluated
+     */
+    public void collect(final TupleExpr tupleExpr) {
+        tupleExpr.visit(new QueryModelVisitorBase<RuntimeException>() {
+            @Override
+            public void meet(final StatementPattern node) {
+                addPattern(node);
+            }
+
+            @Override
+            public void meetOther(final QueryModelNode node) {
+                //external index nodes read data we cannot track by predicate
+                dependOnEverything();
+                super.meetOther(node);
+            }
+        });
+    }
+
+    private void addPattern(final StatementPattern sp) {
+        final Value pred = getValue(sp.getPredicateVar());
+        if (pred instanceof URI) {
+            predicates.add((URI) pred);
+        } else {
+            anyPredicate = true;
+        }
+        final Value context = getValue(sp.getContextVar());
+        if (context instanceof Resource) {
+            graphs.add((Resource) context);
+        } else {
+            anyGraph = true;
+        }
+    }
+
+    private static Value getValue(final Var var) {
+        return var == null ? null : var.getValue();
+    }
+
+    /**
+     * @param inferred true if the query was evaluated with inference, so its results also depend on the schema
+     */
+    public void setInferred(final boolean inferred) {
+        this.inferred = inferred;
+    }
+
+    public boolean isInferred() {
+        return inferred;
+    }
+
+    public void dependOnEverything() {
+        anyPredicate = true;
+        anyGraph = true;
+    }
+
+    /**
+     * @param predicate the predicate of a written statement, null for any predicate
+     * @param contexts the graphs of a written statement, empty for the default graph
+     * @param allGraphs true if the write may touch every graph, as an unscoped delete does
+     * @return true if the write may change the results of the query
+     */
+    public boolean isAffectedBy(final URI predicate, final Resource[] contexts, final boolean allGraphs) {
+        if (!anyPredicate && predicate != null && !predicates.contains(predicate)) {
+            return false;
+        }
+        if (anyGraph || allGraphs) {
+            return true;
+        }
+        if (contexts != null) {
+            for (final Resource context : contexts) {
+                if (context == null || graphs.contains(context)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryDependencies{predicates=" + (anyPredicate ? "*" : predicates) + ", graphs=" + (anyGraph ? "*" : graphs) + ", inferred=" + inferred + "}";
+    }
+}
@@ -0,0 +1,370 @@
+package org.apache.rya.rdftriplestore.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+
+/**
+ * Instance wide cache of complete SPARQL query results.
+ * <p>
+ * Results are serialized and kept in direct (off heap) buffers. The total size of all entries is
+ * bounded by {@link RdfCloudTripleStoreConfiguration#getResultCacheMaxBytes()}; the least recently
+ * used entries are evicted first. An entry is dropped when its time to live expires or when a
+ * write touches one of the predicates and graphs recorded in its {@link QueryDependencies}.
+ * <p>
+ * Concurrent requests for the same key are single flighted: only the first caller evaluates the
+ * query, the others wait for and share its result. Results that turn out too large to cache are not
+ * shared; waiting callers then evaluate the query themselves, as they do when their wait times out.
+ */
+public class QueryResultCache {
+    private static final Logger logger = Logger.getLogger(QueryResultCache.class);
+
+    /**
+     * Evaluates a query on a cache miss.
+     */
+    public interface ResultLoader {
+        /**
+         * @param dependencies collects the predicates and graphs read by the query
+         * @return the query results
+         */
+        CloseableIteration<BindingSet, QueryEvaluationException> load(QueryDependencies dependencies) throws Exception;
+    }
+
+    private final long maxBytes;
+    private final long ttl;
+
+    //access ordered, guarded by this
+    private final LinkedHashMap<String, CachedResult> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes = 0;
+
+    private final ConcurrentHashMap<String, CompletableFuture<List<BindingSet>>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong writeEpoch = new AtomicLong();
+
+    public QueryResultCache(final RdfCloudTripleStoreConfiguration conf) {
+        this(conf.getResultCacheMaxBytes(), conf.getResultCacheTtl());
+    }
+
+    public QueryResultCache(final long maxBytes, final long ttl) {
+        checkArgument(maxBytes > 0, "maxBytes must be greater than 0");
+        checkArgument(ttl > 0, "ttl must be greater than 0");
+        this.maxBytes = maxBytes;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the cached results for a key, or evaluates the query through the loader and caches
+     * its results.
+     * @param key identifies the query, its dataset, bindings and any settings that change the results
+     * @param loader evaluates the query on a miss
+     * @return the query results
+     */
+    public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(final String key, final ResultLoader loader)
+            throws QueryEvaluationException {
+        return evaluate(key, loader, null);
+    }
+
+    /**
+     * Returns the cached results for a key, or evaluates the query through the loader and caches
+     * its results.
+     * @param key identifies the query, its dataset, bindings and any settings that change the results
+     * @param loader evaluates the query on a miss
+     * @param timeout the number of milliseconds to wait for another caller that is already evaluating
+     *        the same query before evaluating it again, null to wait until it is done
+     * @return the query results
+     */
+    public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(final String key, final ResultLoader loader,
+            final Long timeout) throws QueryEvaluationException {
+        checkNotNull(key);
+        checkNotNull(loader);
+
+        final List<BindingSet> cached = getIfPresent(key);
+        if (cached != null) {
+            return new CloseableIteratorIteration<>(cached.iterator());
+        }
+
+        final CompletableFuture<List<BindingSet>> flight = new CompletableFuture<>();
+        final CompletableFuture<List<BindingSet>> running = inFlight.putIfAbsent(key, flight);
+        if (running == null) {
+            try {
+                return loadAndCache(key, loader, flight);
+            } finally {
+                inFlight.remove(key, flight);
+                //followers evaluate the query themselves if there are no results to share
+                flight.complete(null);
+            }
+        }
+
+        final List<BindingSet> shared = await(running, timeout);
+        if (shared != null) {
+            return new CloseableIteratorIteration<>(shared.iterator());
+        }
+        try {
+            return loader.load(new QueryDependencies());
+        } catch (final QueryEvaluationException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new QueryEvaluationException(e);
+        }
+    }
+
+    /**
+     * @return the results of the query another caller is evaluating, or null if they could not be
+     *         shared or were not ready in time
+     */
+    private static List<BindingSet> await(final Future<List<BindingSet>> running, final Long timeout)
+            throws QueryEvaluationException {
+        try {
+            return timeout == null ? running.get() : running.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryEvaluationException(e);
+        } catch (final ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Evaluates a query and serializes its results as they are read. Once they no longer fit in
+     * the cache, they are no longer buffered and the rest are passed through as they are read.
+     * @param flight completed with the results when they are cached, so waiting callers can share them
+     */
+    private CloseableIteration<BindingSet, QueryEvaluationException> loadAndCache(final String key,
+            final ResultLoader loader, final CompletableFuture<List<BindingSet>> flight) throws QueryEvaluationException {
+        final long epoch = writeEpoch.get();
+        final QueryDependencies dependencies = new QueryDependencies();
+        final CloseableIteration<BindingSet, QueryEvaluationException> iter;
+        try {
+            iter = loader.load(dependencies);
+        } catch (final QueryEvaluationException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new QueryEvaluationException(e);
+        }
+
+        final List<BindingSet> results = new ArrayList<>();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            final ObjectOutputStream out = new ObjectOutputStream(bytes);
+            while (iter.hasNext()) {
+                final BindingSet result = iter.next();
+                results.add(result);
+                out.writeObject(result);
+                out.flush();
+                if (bytes.size() > maxBytes) {
+                    return new UncachedIteration(results, iter);
+                }
+            }
+            out.writeObject(null);
+            out.close();
+        } catch (final IOException e) {
+            logger.warn("Unable to serialize query results, they will not be cached", e);
+            return new UncachedIteration(results, iter);
+        } catch (final QueryEvaluationException | RuntimeException e) {
+            iter.close();
+            throw e;
+        }
+        iter.close();
+
+        synchronized (this) {
+            //a write during evaluation may not be reflected in the results, so do not keep them
+            if (epoch == writeEpoch.get() && bytes.size() <= maxBytes) {
+                final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.size());
+                buffer.put(bytes.toByteArray());
+                buffer.flip();
+                put(key, new CachedResult(buffer, dependencies, System.currentTimeMillis() + ttl));
+            }
+        }
+        flight.complete(results);
+        return new CloseableIteratorIteration<>(results.iterator());
+    }
+
+    private synchronized List<BindingSet> getIfPresent(final String key) throws QueryEvaluationException {
+        final CachedResult result = entries.get(key);
+        if (result == null) {
+            return null;
+        }
+        if (result.expiration < System.currentTimeMillis()) {
+            remove(key);
+            return null;
+        }
+        return deserialize(result.buffer);
+    }
+
+    private void put(final String key, final CachedResult result) {
+        remove(key);
+        final Iterator<Map.Entry<String, CachedResult>> lru = entries.entrySet().iterator();
+        while (usedBytes + result.size() > maxBytes && lru.hasNext()) {
+            usedBytes -= lru.next().getValue().size();
+            lru.remove();
+        }
+        entries.put(key, result);
+        usedBytes += result.size();
+    }
+
+    private void remove(final String key) {
+        final CachedResult removed = entries.remove(key);
+        if (removed != null) {
+            usedBytes -= removed.size();
+        }
+    }
+
+    /**
+     * Drops every cached result that may be changed by a write.
+     * @param predicate the predicate of the written statement, null for any predicate
+     * @param contexts the graphs of the written statement, empty for the default graph
+     * @param allGraphs true if the write may touch every graph
+     */
+    public synchronized void invalidate(final URI predicate, final Resource[] contexts, final boolean allGraphs) {
+        writeEpoch.incrementAndGet();
+        final Iterator<Map.Entry<String, CachedResult>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            final CachedResult result = it.next().getValue();
+            if (result.dependencies.isAffectedBy(predicate, contexts, allGraphs)) {
+                usedBytes -= result.size();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops every cached result of a query evaluated with inference, for when the schema changes.
+     */
+    public synchronized void invalidateInferred() {
+        writeEpoch.incrementAndGet();
+        final Iterator<Map.Entry<String, CachedResult>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            final CachedResult result = it.next().getValue();
+            if (result.dependencies.isInferred()) {
+                usedBytes -= result.size();
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        writeEpoch.incrementAndGet();
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private static List<BindingSet> deserialize(final ByteBuffer buffer) throws QueryEvaluationException {
+        final ByteBuffer view = buffer.duplicate();
+        final byte[] serialized = new byte[view.remaining()];
+        view.get(serialized);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            final List<BindingSet> results = new ArrayList<>();
+            BindingSet result;
+            while ((result = (BindingSet) in.readObject()) != null) {
+                results.add(result);
+            }
+            return results;
+        } catch (IOException | ClassNotFoundException e) {
+            logger.warn("Unable to read cached query results", e);
+            throw new QueryEvaluationException(e);
+        }
+    }
+
+    /**
+     * The results of a query that were too large to cache: those already read, then the rest.
+     */
+    private static class UncachedIteration implements CloseableIteration<BindingSet, QueryEvaluationException> {
+        private final Iterator<BindingSet> read;
+        private final CloseableIteration<BindingSet, QueryEvaluationException> rest;
+
+        private UncachedIteration(final List<BindingSet> read, final CloseableIteration<BindingSet, QueryEvaluationException> rest) {
+            this.read = read.iterator();
+            this.rest = rest;
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            return read.hasNext() || rest.hasNext();
+        }
+
+        @Override
+        public BindingSet next() throws QueryEvaluationException {
+            return read.hasNext() ? read.next() : rest.next();
+        }
+
+        @Override
+        public void remove() throws QueryEvaluationException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() throws QueryEvaluationException {
+            rest.close();
+        }
+    }
+
+    private static class CachedResult {
+        private final ByteBuffer buffer;
+        private final QueryDependencies dependencies;
+        private final long expiration;
+
+        private CachedResult(final ByteBuffer buffer, final QueryDependencies dependencies, final long expiration) {
+            this.buffer = buffer;
+            this.dependencies = dependencies;
+            this.expiration = expiration;
+        }
+
+        private int size() {
+            return buffer.capacity();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.apache.rya.api.persist.query.QueryContext;
+
+/**
+ * Chooses how many left side binding sets a batching join sends to its right side at once.
+ * <p>
+ * A batch whose right side answered quickly and selectively doubles the next batch, since the
+ * round trip dominates. A batch whose results would exceed the result budget at the current size is
+ * shrunk to fit the observed fan-out, and a slow batch is halved to bring the first results back
+ * sooner. Every decision is recorded in the metrics of the query.
+ */
+public class AdaptiveBatchSizer {
+    private static final Logger logger = Logger.getLogger(AdaptiveBatchSizer.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int MIN_BATCH_SIZE = 16;
+    private static final long TARGET_BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final boolean adaptive;
+    private final int maxBatchSize;
+    private final long maxBatchResults;
+    private final QueryContext queryContext;
+    private int batchSize;
+
+    /**
+     * @param batchSize the size of the first batch
+     * @param adaptive false to always use the first batch size
+     * @param maxBatchSize the largest batch
+     * @param maxBatchResults the number of right side results a batch aims to stay under
+     * @param queryContext the query to report decisions to, may be null
+     */
+    public AdaptiveBatchSizer(int batchSize, boolean adaptive, int maxBatchSize, long maxBatchResults, QueryContext queryContext) {
+        this.adaptive = adaptive;
+        this.maxBatchSize = Math.max(maxBatchSize, MIN_BATCH_SIZE);
+        this.maxBatchResults = maxBatchResults;
+        this.queryContext = queryContext;
+        this.batchSize = adaptive ? clamp(batchSize) : batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Records a finished batch and picks the size of the next one.
+     * @param bindingSets the number of left side binding sets in the batch
+     * @param results the number of results the right side produced for them
+     * @param nanos the time spent waiting on the right side
+     */
+    public void batchFinished(int bindingSets, long results, long nanos) {
+        if (queryContext != null) {
+            queryContext.addMetric("join.batches", 1);
+            queryContext.addMetric("join.batch.bindingsets", bindingSets);
+            queryContext.addMetric("join.batch.results", results);
+            queryContext.addMetric("join.batch.millis", TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+        if (!adaptive || bindingSets == 0) {
+            return;
+        }
+        double fanOut = (double) results / bindingSets;
+        int next = batchSize;
+        if (fanOut * batchSize > maxBatchResults) {
+            next = (int) (maxBatchResults / fanOut);
+        } else if (bindingSets >= batchSize && nanos < TARGET_BATCH_NANOS) {
+            next = batchSize * 2;
+            if (fanOut > 0) {
+                next = (int) Math.min(next, maxBatchResults / fanOut);
+            }
+        } else if (nanos > 4 * TARGET_BATCH_NANOS) {
+            next = batchSize / 2;
+        }
+        next = clamp(next);
+        if (next != batchSize) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Batch of " + bindingSets + " binding sets returned " + results + " results in "
+                        + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms, next batch size " + next);
+            }
+            if (queryContext != null) {
+                queryContext.addMetric(next > batchSize ? "join.batch.grown" : "join.batch.shrunk", 1);
+                queryContext.setMetric("join.batch.size", next);
+            }
+            batchSize = next;
+        }
+    }
+
+    private int clamp(int size) {
+        return Math.min(maxBatchSize, Math.max(MIN_BATCH_SIZE, size));
+    }
+}
@@ -0,0 +1,163 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.LeftJoin;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.ValueExpr;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+/**
+ * Evaluates an OPTIONAL whose right side is a statement pattern by sending batches of left binding
+ * sets to the pattern at once, like {@link MultipleBindingSetsIterator} does for inner joins.
+ * <p>
+ * Every left binding set of a batch is tagged with its position in the batch, so each right
+ * result can be traced back to the left binding set it extends. Once the results of a batch are
+ * exhausted, the left binding sets none of them extended are returned on their own.
+ */
+public class BatchedLeftJoinIterator extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+    static final String BATCH_INDEX_BINDING = "-rya-leftjoin-index-";
+
+    private final ParallelEvaluationStrategyImpl strategy;
+    private final CloseableIteration<BindingSet, QueryEvaluationException> leftIter;
+    private final StatementPattern stmtPtrn;
+    private final ValueExpr condition;
+    private final Set<String> scopeBindingNames;
+    private final AdaptiveBatchSizer batchSizer;
+    private List<BindingSet> batch;
+    private BitSet matched;
+    private int unmatchedFrom;
+    private CloseableIteration<BindingSet, QueryEvaluationException> iter;
+    private long batchResults;
+    private long batchNanos;
+
+    public BatchedLeftJoinIterator(ParallelEvaluationStrategyImpl strategy, LeftJoin leftJoin, BindingSet bindings)
+            throws QueryEvaluationException {
+        this.strategy = strategy;
+        this.stmtPtrn = (StatementPattern) leftJoin.getRightArg();
+        this.condition = leftJoin.getCondition();
+        this.scopeBindingNames = leftJoin.getBindingNames();
+        this.batchSizer = strategy.newBatchSizer();
+        this.leftIter = strategy.evaluate(leftJoin.getLeftArg(), bindings);
+    }
+
+    @Override
+    protected BindingSet getNextElement() throws QueryEvaluationException {
+        while (true) {
+            if (iter != null) {
+                while (true) {
+                    long start = System.nanoTime();
+                    boolean hasNext = iter.hasNext();
+                    batchNanos += System.nanoTime() - start;
+                    if (!hasNext) {
+                        break;
+                    }
+                    BindingSet next = iter.next();
+                    batchResults++;
+                    QueryBindingSet result = new QueryBindingSet(next);
+                    result.removeBinding(BATCH_INDEX_BINDING);
+                    if (isTrue(result)) {
+                        matched.set(((Literal) next.getValue(BATCH_INDEX_BINDING)).intValue());
+                        return result;
+                    }
+                }
+                iter.close();
+                iter = null;
+                batchSizer.batchFinished(batch.size(), batchResults, batchNanos);
+            }
+            if (batch != null) {
+                int unmatched = matched.nextClearBit(unmatchedFrom);
+                if (unmatched < batch.size()) {
+                    unmatchedFrom = unmatched + 1;
+                    return batch.get(unmatched);
+                }
+                batch = null;
+            }
+            if (!leftIter.hasNext()) {
+                return null;
+            }
+            nextBatch();
+        }
+    }
+
+    private void nextBatch() throws QueryEvaluationException {
+        int batchSize = batchSizer.getBatchSize();
+        batch = new ArrayList<BindingSet>(batchSize);
+        List<BindingSet> tagged = new ArrayList<BindingSet>(batchSize);
+        while (batch.size() < batchSize && leftIter.hasNext()) {
+            BindingSet left = leftIter.next();
+            QueryBindingSet bs = new QueryBindingSet(left);
+            bs.addBinding(BATCH_INDEX_BINDING, new LiteralImpl(Integer.toString(batch.size()), XMLSchema.INT));
+            batch.add(left);
+            tagged.add(bs);
+        }
+        matched = new BitSet(batch.size());
+        unmatchedFrom = 0;
+        batchResults = 0;
+        long start = System.nanoTime();
+        iter = strategy.evaluate(stmtPtrn, tagged);
+        batchNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Applies the condition of the OPTIONAL the way Sesame's LeftJoinIterator does, to the result
+     * restricted to the variables of the join.
+     */
+    private boolean isTrue(QueryBindingSet result) throws QueryEvaluationException {
+        if (condition == null) {
+            return true;
+        }
+        QueryBindingSet scopeBindings = new QueryBindingSet(result);
+        scopeBindings.retainAll(scopeBindingNames);
+        try {
+            return strategy.isTrue(condition, scopeBindings);
+        } catch (ValueExprEvaluationException e) {
+            // a condition that cannot be evaluated is false
+            return false;
+        }
+    }
+
+    @Override
+    protected void handleClose() throws QueryEvaluationException {
+        try {
+            super.handleClose();
+        } finally {
+            leftIter.close();
+            if (iter != null) {
+                iter.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.log4j.Logger;
+import org.apache.rya.api.RdfCloudTripleStoreConstants;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+
+import info.aduna.iteration.LookAheadIteration;
+
+/**
+ * A temporary file of serialized binding sets that an operator over its memory budget writes to,
+ * read back once all of them have been written. Closing the file deletes it.
+ */
+public class BindingSetSpillFile implements Closeable {
+    private static final Logger logger = Logger.getLogger(BindingSetSpillFile.class);
+
+    private static final byte URI_VALUE = 1;
+    private static final byte BNODE_VALUE = 2;
+    private static final byte LITERAL_VALUE = 3;
+    private static final byte LANG_LITERAL_VALUE = 4;
+    private static final byte TYPED_LITERAL_VALUE = 5;
+
+    private final File file;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private long count;
+
+    /**
+     * @param directory the directory to create the file in, the default temporary directory if null
+     */
+    public BindingSetSpillFile(File directory) throws QueryEvaluationException {
+        try {
+            file = File.createTempFile("rya-spill-", ".bin", directory);
+        } catch (IOException e) {
+            throw new QueryEvaluationException("Could not create a spill file in " + directory, e);
+        }
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        } catch (IOException e) {
+            delete();
+            throw new QueryEvaluationException("Could not open spill file " + file, e);
+        }
+    }
+
+    public void write(BindingSet bs) throws QueryEvaluationException {
+        try {
+            out.writeInt(bs.size());
+            for (Binding binding : bs) {
+                writeString(out, binding.getName());
+                writeValue(out, binding.getValue());
+            }
+            count++;
+        } catch (IOException e) {
+            throw new QueryEvaluationException("Could not write to spill file " + file, e);
+        }
+    }
+
+    /**
+     * @return the number of binding sets written
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Finishes writing and reads the binding sets back in the order they were written.
+     */
+    public LookAheadIteration<BindingSet, QueryEvaluationException> read() throws QueryEvaluationException {
+        try {
+            out.close();
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        } catch (IOException e) {
+            close();
+            throw new QueryEvaluationException("Could not read spill file " + file, e);
+        }
+        final ValueFactory vf = RdfCloudTripleStoreConstants.VALUE_FACTORY;
+        return new LookAheadIteration<BindingSet, QueryEvaluationException>() {
+            @Override
+            protected BindingSet getNextElement() throws QueryEvaluationException {
+                try {
+                    int size;
+                    try {
+                        size = in.readInt();
+                    } catch (EOFException e) {
+                        return null;
+                    }
+                    QueryBindingSet bs = new QueryBindingSet(size);
+                    for (int i = 0; i < size; i++) {
+                        String name = readString(in);
+                        bs.addBinding(name, readValue(in, vf));
+                    }
+                    return bs;
+                } catch (IOException e) {
+                    throw new QueryEvaluationException("Could not read spill file " + file, e);
+                }
+            }
+
+            @Override
+            protected void handleClose() throws QueryEvaluationException {
+                super.handleClose();
+                BindingSetSpillFile.this.close();
+            }
+        };
+    }
+
+    /**
+     * Closes and deletes the file. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        try {
+            if (in != null) {
+                in.close();
+            }
+            out.close();
+        } catch (IOException e) {
+            logger.warn("Could not close spill file " + file, e);
+        } finally {
+            delete();
+        }
+    }
+
+    private void delete() {
+        if (file.exists() && !file.delete()) {
+            logger.warn("Could not delete spill file " + file);
+        }
+    }
+
+    /**
+     * @return the approximate number of heap bytes the binding set takes up
+     */
+    public static long estimateSize(BindingSet bs) {
+        long size = 64;
+        for (Binding binding : bs) {
+            size += 96 + 2 * binding.getName().length();
+            Value value = binding.getValue();
+            size += 2 * value.stringValue().length();
+            if (value instanceof Literal && ((Literal) value).getDatatype() != null) {
+                size += 2 * ((Literal) value).getDatatype().stringValue().length();
+            }
+        }
+        return size;
+    }
+
+    private static void writeValue(DataOutputStream out, Value value) throws IOException {
+        if (value instanceof URI) {
+            out.writeByte(URI_VALUE);
+            writeString(out, value.stringValue());
+        } else if (value instanceof BNode) {
+            out.writeByte(BNODE_VALUE);
+            writeString(out, ((BNode) value).getID());
+        } else if (value instanceof Literal) {
+            Literal literal = (Literal) value;
+            if (literal.getLanguage() != null) {
+                out.writeByte(LANG_LITERAL_VALUE);
+                writeString(out, literal.getLabel());
+                writeString(out, literal.getLanguage());
+            } else if (literal.getDatatype() != null) {
+                out.writeByte(TYPED_LITERAL_VALUE);
+                writeString(out, literal.getLabel());
+                writeString(out, literal.getDatatype().stringValue());
+            } else {
+                out.writeByte(LITERAL_VALUE);
+                writeString(out, literal.getLabel());
+            }
+        } else {
+            out.writeByte(LITERAL_VALUE);
+            writeString(out, value.stringValue());
+        }
+    }
+
+    private static Value readValue(DataInputStream in, ValueFactory vf) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case URI_VALUE:
+                return vf.createURI(readString(in));
+            case BNODE_VALUE:
+                return vf.createBNode(readString(in));
+            case LITERAL_VALUE:
+                return vf.createLiteral(readString(in));
+            case LANG_LITERAL_VALUE:
+                return vf.createLiteral(readString(in), readString(in));
+            case TYPED_LITERAL_VALUE:
+                return vf.createLiteral(readString(in), vf.createURI(readString(in)));
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    // writeUTF is limited to 64k, which literals may exceed
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,315 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.ArbitraryLengthPath;
+import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+/**
+ * Evaluates a property path such as {@code ?x :p+ ?y} with a bound end by a breadth first search,
+ * sending every level of the search to the path's statement patterns as batches of binding sets,
+ * the way {@link MultipleBindingSetsIterator} sends the left side of a join. Sesame's PathIteration
+ * instead reads the statements of one node at a time.
+ * <p>
+ * The path is followed forward from a bound subject, backward from a bound object, or from both
+ * ends at once when both are bound, always expanding the smaller of the two frontiers, until the
+ * two searches meet.
+ */
+public class BreadthFirstPathIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+    static final String PATH_START_BINDING = "-rya-path-start-";
+    static final String PATH_END_BINDING = "-rya-path-end-";
+
+    private final ParallelEvaluationStrategyImpl strategy;
+    private final BindingSet bindings;
+    private final List<StatementPattern> hops;
+    private final AdaptiveBatchSizer batchSizer;
+    private final String subjName;
+    private final String objName;
+    private final Value subj;
+    private final Value obj;
+    private final boolean bindSubj;
+    private final boolean bindObj;
+
+    //values reached from the start and the end, and the ones to expand from next
+    private final Set<Value> forwardSeen = new HashSet<Value>();
+    private final Set<Value> backwardSeen = new HashSet<Value>();
+    private Collection<Value> forwardFrontier = Collections.emptyList();
+    private Collection<Value> backwardFrontier = Collections.emptyList();
+    private final Set<Value> emitted = new HashSet<Value>();
+    private final Deque<Value> reported = new ArrayDeque<Value>();
+    private boolean done;
+
+    /**
+     * @return true if the path is a sequence of statement patterns with at least one bound end
+     *      and a bound or no context, the paths this iteration evaluates
+     */
+    public static boolean isBatchable(ArbitraryLengthPath path, BindingSet bindings) {
+        long minLength = path.getMinLength();
+        Var subjVar = path.getSubjectVar();
+        Var objVar = path.getObjectVar();
+        if ((minLength != 0 && minLength != 1) || subjVar.getName().equals(objVar.getName())) {
+            return false;
+        }
+        if (path.getContextVar() != null && getValue(path.getContextVar(), bindings) == null) {
+            // each named graph would need a search of its own
+            return false;
+        }
+        if (getValue(subjVar, bindings) == null && getValue(objVar, bindings) == null) {
+            return false;
+        }
+        return collectHops(path.getPathExpression(), new ArrayList<StatementPattern>());
+    }
+
+    public BreadthFirstPathIteration(ParallelEvaluationStrategyImpl strategy, ArbitraryLengthPath path, BindingSet bindings) {
+        this.strategy = strategy;
+        this.bindings = bindings;
+        this.batchSizer = strategy.newBatchSizer();
+        Var subjVar = path.getSubjectVar();
+        Var objVar = path.getObjectVar();
+        this.subjName = subjVar.getName();
+        this.objName = objVar.getName();
+        this.subj = getValue(subjVar, bindings);
+        this.obj = getValue(objVar, bindings);
+        this.bindSubj = subj == null;
+        this.bindObj = obj == null;
+
+        // the ends of the path are renamed so that a constant end can be bound to each node
+        TupleExpr expr = path.getPathExpression().clone();
+        expr.visit(new QueryModelVisitorBase<RuntimeException>() {
+            @Override
+            public void meet(Var var) {
+                if (var.getName().equals(subjName)) {
+                    rename(var, PATH_START_BINDING);
+                } else if (var.getName().equals(objName)) {
+                    rename(var, PATH_END_BINDING);
+                }
+            }
+        });
+        this.hops = new ArrayList<StatementPattern>();
+        collectHops(expr, hops);
+
+        boolean zeroLength = path.getMinLength() == 0;
+        if (subj != null) {
+            forwardSeen.add(subj);
+            forwardFrontier = Collections.singletonList(subj);
+        }
+        if (obj != null) {
+            backwardSeen.add(obj);
+            backwardFrontier = Collections.singletonList(obj);
+        }
+        if (zeroLength && subj != null && obj != null) {
+            if (subj.equals(obj)) {
+                reported.add(subj);
+                done = true;
+            }
+        } else if (zeroLength) {
+            Value end = subj != null ? subj : obj;
+            emitted.add(end);
+            reported.add(end);
+        }
+    }
+
+    private static void rename(Var var, String name) {
+        var.setName(name);
+        var.setValue(null);
+        var.setAnonymous(false);
+    }
+
+    /**
+     * Collects the statement patterns of a sequence, in the order they follow the path.
+     */
+    private static boolean collectHops(TupleExpr expr, List<StatementPattern> hops) {
+        if (expr instanceof StatementPattern) {
+            hops.add((StatementPattern) expr);
+            return true;
+        }
+        if (expr instanceof Join) {
+            Join join = (Join) expr;
+            return collectHops(join.getLeftArg(), hops) && collectHops(join.getRightArg(), hops);
+        }
+        return false;
+    }
+
+    private static Value getValue(Var var, BindingSet bindings) {
+        return var.hasValue() ? var.getValue() : bindings.getValue(var.getName());
+    }
+
+    @Override
+    protected BindingSet getNextElement() throws QueryEvaluationException {
+        while (reported.isEmpty()) {
+            if (done) {
+                return null;
+            }
+            if (subj != null && obj != null) {
+                meetLevel();
+            } else if (subj != null) {
+                searchLevel(true);
+            } else {
+                searchLevel(false);
+            }
+        }
+        Value next = reported.poll();
+        QueryBindingSet result = new QueryBindingSet(bindings);
+        if (bindSubj) {
+            result.addBinding(subjName, next);
+        }
+        if (bindObj) {
+            result.addBinding(objName, next);
+        }
+        return result;
+    }
+
+    /**
+     * Expands one level from the single bound end, reporting every value reached for the first time.
+     */
+    private void searchLevel(boolean forward) throws QueryEvaluationException {
+        Collection<Value> frontier = forward ? forwardFrontier : backwardFrontier;
+        Set<Value> seen = forward ? forwardSeen : backwardSeen;
+        if (frontier.isEmpty()) {
+            done = true;
+            return;
+        }
+        List<Value> next = new ArrayList<Value>();
+        for (Value value : expand(frontier, forward)) {
+            // the bound end is seen from the start, but only reported once a cycle leads back to it
+            if (emitted.add(value)) {
+                reported.add(value);
+            }
+            if (seen.add(value)) {
+                next.add(value);
+            }
+        }
+        if (forward) {
+            forwardFrontier = next;
+        } else {
+            backwardFrontier = next;
+        }
+    }
+
+    /**
+     * Expands the smaller frontier of a search from both ends by one level, ending the search once
+     * a value reached from one end has been seen from the other.
+     */
+    private void meetLevel() throws QueryEvaluationException {
+        if (forwardFrontier.isEmpty() || backwardFrontier.isEmpty()) {
+            done = true;
+            return;
+        }
+        boolean forward = forwardFrontier.size() <= backwardFrontier.size();
+        Set<Value> seen = forward ? forwardSeen : backwardSeen;
+        Set<Value> other = forward ? backwardSeen : forwardSeen;
+        List<Value> next = new ArrayList<Value>();
+        for (Value value : expand(forward ? forwardFrontier : backwardFrontier, forward)) {
+            if (other.contains(value)) {
+                // both ends are bound, so the only solution is the binding set itself
+                reported.add(value);
+                done = true;
+                return;
+            }
+            if (seen.add(value)) {
+                next.add(value);
+            }
+        }
+        if (forward) {
+            forwardFrontier = next;
+        } else {
+            backwardFrontier = next;
+        }
+    }
+
+    /**
+     * Follows the path one step from every value of a frontier, sending the frontier through its
+     * statement patterns in batches.
+     *
+     * @return the distinct values the step reaches
+     */
+    private Set<Value> expand(Collection<Value> frontier, boolean forward) throws QueryEvaluationException {
+        String from = forward ? PATH_START_BINDING : PATH_END_BINDING;
+        String to = forward ? PATH_END_BINDING : PATH_START_BINDING;
+        List<StatementPattern> order = hops;
+        if (!forward) {
+            order = new ArrayList<StatementPattern>(hops);
+            Collections.reverse(order);
+        }
+        Set<Value> reached = new LinkedHashSet<Value>();
+        Iterator<Value> values = frontier.iterator();
+        while (values.hasNext()) {
+            int batchSize = batchSizer.getBatchSize();
+            List<BindingSet> batch = new ArrayList<BindingSet>(Math.min(batchSize, frontier.size()));
+            while (batch.size() < batchSize && values.hasNext()) {
+                QueryBindingSet bs = new QueryBindingSet(bindings);
+                bs.addBinding(from, values.next());
+                batch.add(bs);
+            }
+            int batchBindingSets = batch.size();
+            long start = System.nanoTime();
+            for (StatementPattern hop : order) {
+                batch = drain(strategy.evaluate(hop, batch));
+                if (batch.isEmpty()) {
+                    break;
+                }
+            }
+            for (BindingSet bs : batch) {
+                Value value = bs.getValue(to);
+                if (value != null) {
+                    reached.add(value);
+                }
+            }
+            batchSizer.batchFinished(batchBindingSets, batch.size(), System.nanoTime() - start);
+        }
+        return reached;
+    }
+
+    private static List<BindingSet> drain(CloseableIteration<BindingSet, QueryEvaluationException> iter)
+            throws QueryEvaluationException {
+        List<BindingSet> results = new ArrayList<BindingSet>();
+        try {
+            while (iter.hasNext()) {
+                results.add(iter.next());
+            }
+        } finally {
+            iter.close();
+        }
+        return results;
+    }
+}
@@ -40,14 +40,17 @@ public class ExternalMultipleBindingSetsIterator extends LookAheadIteration<Bind
     private final CloseableIteration leftIter;
     private ExternalBatchingIterator stmtPtrn;
     private CloseableIteration<BindingSet, QueryEvaluationException> iter;
-    //TODO: configurable
-    private int batchSize = 1000;
+    private final AdaptiveBatchSizer batchSizer;
+    private int batchBindingSets;
+    private long batchResults;
+    private long batchNanos;
 
     public ExternalMultipleBindingSetsIterator(ParallelEvaluationStrategyImpl strategy, TupleExpr leftArg, ExternalBatchingIterator stmtPattern, BindingSet bindings)
             throws QueryEvaluationException {
         this.strategy = strategy;
         leftIter = strategy.evaluate(leftArg, bindings);
         this.stmtPtrn = stmtPattern;
+        this.batchSizer = strategy.newBatchSizer();
         initIter();
     }
 
@@ -56,15 +59,16 @@ public class ExternalMultipleBindingSetsIterator extends LookAheadIteration<Bind
         this.strategy = strategy;
         this.leftIter = leftIter;
         this.stmtPtrn = stmtPattern;
+        this.batchSizer = strategy.newBatchSizer();
         initIter();
     }
 
     protected void initIter() throws QueryEvaluationException {
         try {
             Collection<BindingSet> sets = new ArrayList<BindingSet>();
+            int batchSize = batchSizer.getBatchSize();
             int i = 0;
             while (leftIter.hasNext()) {
-                //default to 1K for the batch size
                 if (i >= batchSize) {
                     break;
                 }
@@ -72,7 +76,11 @@ public class ExternalMultipleBindingSetsIterator extends LookAheadIteration<Bind
                 i++;
             }
             if (iter != null) iter.close();
+            batchBindingSets = i;
+            batchResults = 0;
+            long start = System.nanoTime();
             iter = stmtPtrn.evaluate(sets);
+            batchNanos = System.nanoTime() - start;
         } catch (Exception e) {
             throw new QueryEvaluationException(e);
         }
@@ -82,10 +90,15 @@ public class ExternalMultipleBindingSetsIterator extends LookAheadIteration<Bind
             throws QueryEvaluationException {
         try {
             while (true) {
-                if (iter.hasNext()) {
+                long start = System.nanoTime();
+                boolean hasNext = iter.hasNext();
+                batchNanos += System.nanoTime() - start;
+                if (hasNext) {
+                    batchResults++;
                     return iter.next();
                 }
 
+                batchSizer.batchFinished(batchBindingSets, batchResults, batchNanos);
                 if (leftIter.hasNext()) {
                     initIter();
                 } else
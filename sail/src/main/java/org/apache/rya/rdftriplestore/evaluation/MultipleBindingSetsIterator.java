@@ -39,14 +39,17 @@ public class MultipleBindingSetsIterator extends LookAheadIteration<BindingSet,
     private final CloseableIteration leftIter;
     private StatementPattern stmtPtrn;
     private CloseableIteration<BindingSet, QueryEvaluationException> iter;
-    //TODO: configurable
-    private int batchSize = 1000;
+    private final AdaptiveBatchSizer batchSizer;
+    private int batchBindingSets;
+    private long batchResults;
+    private long batchNanos;
 
     public MultipleBindingSetsIterator(ParallelEvaluationStrategyImpl strategy, TupleExpr leftArg, StatementPattern stmtPattern, BindingSet bindings)
             throws QueryEvaluationException {
         this.strategy = strategy;
         leftIter = strategy.evaluate(leftArg, bindings);
         this.stmtPtrn = stmtPattern;
+        this.batchSizer = strategy.newBatchSizer();
         initIter();
     }
 
@@ -55,15 +58,16 @@ public class MultipleBindingSetsIterator extends LookAheadIteration<BindingSet,
         this.strategy = strategy;
         this.leftIter = leftIter;
         this.stmtPtrn = stmtPattern;
+        this.batchSizer = strategy.newBatchSizer();
         initIter();
     }
 
     protected void initIter() throws QueryEvaluationException {
         try {
             Collection<BindingSet> sets = new ArrayList<BindingSet>();
+            int batchSize = batchSizer.getBatchSize();
             int i = 0;
             while (leftIter.hasNext()) {
-                //default to 1K for the batch size
                 if (i >= batchSize) {
                     break;
                 }
@@ -71,7 +75,11 @@ public class MultipleBindingSetsIterator extends LookAheadIteration<BindingSet,
                 i++;
             }
             if (iter != null) iter.close();
+            batchBindingSets = i;
+            batchResults = 0;
+            long start = System.nanoTime();
             iter = strategy.evaluate(stmtPtrn, sets);
+            batchNanos = System.nanoTime() - start;
         } catch (Exception e) {
             throw new QueryEvaluationException(e);
         }
@@ -81,10 +89,15 @@ public class MultipleBindingSetsIterator extends LookAheadIteration<BindingSet,
             throws QueryEvaluationException {
         try {
             while (true) {
-                if (iter.hasNext()) {
+                long start = System.nanoTime();
+                boolean hasNext = iter.hasNext();
+                batchNanos += System.nanoTime() - start;
+                if (hasNext) {
+                    batchResults++;
                     return iter.next();
                 }
 
+                batchSizer.batchFinished(batchBindingSets, batchResults, batchNanos);
                 if (leftIter.hasNext()) {
                     initIter();
                 } else
@@ -29,22 +29,27 @@ import info.aduna.iteration.IteratorIteration;
 import info.aduna.iteration.LimitIteration;
 import info.aduna.iteration.OffsetIteration;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
 import org.apache.rya.api.RdfCloudTripleStoreUtils;
+import org.apache.rya.api.persist.query.QueryContext;
 import org.apache.rya.api.utils.NullableStatementImpl;
 import org.apache.rya.rdftriplestore.RdfCloudTripleStoreConnection;
 import org.apache.rya.rdftriplestore.RdfCloudTripleStoreConnection.StoreTripleSource;
 import org.apache.rya.rdftriplestore.inference.InferenceEngine;
 import org.apache.rya.rdftriplestore.inference.InferenceEngineException;
+import org.apache.rya.rdftriplestore.inference.MultiValueStatementPattern;
+import org.apache.rya.rdftriplestore.utils.DefaultStatistics;
 import org.apache.rya.rdftriplestore.utils.FixedStatementPattern;
 import org.apache.rya.rdftriplestore.utils.TransitivePropertySP;
 
@@ -56,20 +61,34 @@ import org.openrdf.model.Value;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
 import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.ArbitraryLengthPath;
+import org.openrdf.query.algebra.Distinct;
+import org.openrdf.query.algebra.Extension;
 import org.openrdf.query.algebra.Filter;
+import org.openrdf.query.algebra.Group;
 import org.openrdf.query.algebra.Join;
+import org.openrdf.query.algebra.LeftJoin;
+import org.openrdf.query.algebra.Order;
+import org.openrdf.query.algebra.OrderElem;
+import org.openrdf.query.algebra.Projection;
+import org.openrdf.query.algebra.QueryModelNode;
 import org.openrdf.query.algebra.QueryRoot;
 import org.openrdf.query.algebra.Slice;
 import org.openrdf.query.algebra.StatementPattern;
 import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.UnaryTupleOperator;
+import org.openrdf.query.algebra.Union;
 import org.openrdf.query.algebra.ValueExpr;
 import org.openrdf.query.algebra.Var;
 import org.openrdf.query.algebra.evaluation.QueryBindingSet;
 import org.openrdf.query.algebra.evaluation.ValueExprEvaluationException;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
 import org.openrdf.query.algebra.evaluation.iterator.FilterIterator;
 import org.openrdf.query.algebra.evaluation.iterator.JoinIterator;
+import org.openrdf.query.algebra.evaluation.util.OrderComparator;
 import org.openrdf.query.algebra.evaluation.util.QueryEvaluationUtil;
+import org.openrdf.query.algebra.evaluation.util.ValueComparator;
 
 import com.google.common.collect.Lists;
 
@@ -77,15 +96,45 @@ import com.google.common.collect.Lists;
  */
 public class ParallelEvaluationStrategyImpl extends EvaluationStrategyImpl {
     private static Logger logger = Logger.getLogger(ParallelEvaluationStrategyImpl.class);
+    //rows a scan reads in the time it takes to seek to the next range
+    private static final int SEMIJOIN_ROWS_PER_RANGE = 100;
     
     private int numOfThreads = 10;
     private boolean performant = true;
     private boolean displayQueryPlan = false;
+    private boolean topKIndexOrder = false;
+    private int batchSize = AdaptiveBatchSizer.DEFAULT_BATCH_SIZE;
+    private boolean adaptiveBatchSize = true;
+    private int maxBatchSize;
+    private long maxBatchResults;
+    private boolean semiJoin = false;
+    private int semiJoinMinBindings;
+    private RdfCloudTripleStoreConfiguration semiJoinConf;
+    private EvaluationStatistics statistics;
+    //estimated number of statements matching each pattern, looked up once per query
+    private final Map<StatementPattern, Double> cardinalities = Collections.synchronizedMap(new IdentityHashMap<StatementPattern, Double>());
+    //number of results each ORDER BY under a LIMIT has to produce
+    private final Map<Order, Integer> topKLimits = Collections.synchronizedMap(new IdentityHashMap<Order, Integer>());
     private ExecutorService executorService;
     private InferenceEngine inferenceEngine;
+    private QueryContext queryContext;
+    private QueryMemoryBudget memoryBudget;
+    private boolean parallelUnion = false;
+    private int unionBufferSize;
+    private boolean orderedUnion = false;
 
     public ParallelEvaluationStrategyImpl(StoreTripleSource tripleSource, InferenceEngine inferenceEngine,
                                           Dataset dataset, RdfCloudTripleStoreConfiguration conf) {
+        this(tripleSource, inferenceEngine, dataset, conf, QueryEvaluationScheduler.getDefault());
+    }
+
+    /**
+     * @param scheduler the threads shared with the other queries of the store, of which this query
+     *        uses at most {@link RdfCloudTripleStoreConfiguration#getNumThreads()} at a time
+     */
+    public ParallelEvaluationStrategyImpl(StoreTripleSource tripleSource, InferenceEngine inferenceEngine,
+                                          Dataset dataset, RdfCloudTripleStoreConfiguration conf,
+                                          QueryEvaluationScheduler scheduler) {
         super(tripleSource, dataset);
         Integer nthreads = conf.getNumThreads();
         this.numOfThreads = (nthreads != null) ? nthreads : this.numOfThreads;
@@ -93,8 +142,31 @@ public class ParallelEvaluationStrategyImpl extends EvaluationStrategyImpl {
         this.performant = (val != null) ? val : this.performant;
         val = conf.isDisplayQueryPlan();
         this.displayQueryPlan = (val != null) ? val : this.displayQueryPlan;
-        this.executorService = Executors.newFixedThreadPool(this.numOfThreads);
+        val = conf.isUseTopKIndexOrder();
+        this.topKIndexOrder = (val != null) ? val : this.topKIndexOrder;
+        Integer size = conf.getJoinBatchSize();
+        this.batchSize = (size != null) ? size : this.batchSize;
+        val = conf.isAdaptiveBatchSize();
+        this.adaptiveBatchSize = (val != null) ? val : this.adaptiveBatchSize;
+        this.maxBatchSize = conf.getMaxBatchSize();
+        this.maxBatchResults = conf.getMaxBatchResults();
+        val = conf.isSemiJoin();
+        this.semiJoin = (val != null) ? val : this.semiJoin;
+        this.semiJoinMinBindings = conf.getSemiJoinMinBindings();
+        if (this.semiJoin && !conf.isPrefixRowsWithHash()) {
+            this.semiJoinConf = conf.clone();
+            this.semiJoinConf.setSemiJoinScan(true);
+        }
+        this.executorService = scheduler.newQueryExecutor(this.numOfThreads);
         this.inferenceEngine = inferenceEngine;
+        this.queryContext = QueryContext.get(conf);
+        val = conf.isParallelUnion();
+        this.parallelUnion = (val != null) ? val : this.parallelUnion;
+        this.unionBufferSize = conf.getUnionBufferSize();
+        val = conf.isOrderedUnion();
+        this.orderedUnion = (val != null) ? val : this.orderedUnion;
+        String spillDir = conf.getSpillDirectory();
+        this.memoryBudget = new QueryMemoryBudget(conf.getQueryMemoryBudget(), spillDir != null ? new File(spillDir) : null, queryContext);
     }
 
     @Override
@@ -140,6 +212,30 @@ public class ParallelEvaluationStrategyImpl extends EvaluationStrategyImpl {
         }
     }
 
+    @Override
+    public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(LeftJoin leftJoin, BindingSet bindings)
+            throws QueryEvaluationException {
+        if (performant && leftJoin.getRightArg() instanceof StatementPattern) {
+            // only well designed optionals, the others need Sesame's BadlyDesignedLeftJoinIterator
+            Set<String> problemVars = new HashSet<String>(bindings.getBindingNames());
+            problemVars.retainAll(leftJoin.getRightArg().getBindingNames());
+            problemVars.removeAll(leftJoin.getLeftArg().getBindingNames());
+            if (problemVars.isEmpty()) {
+                return new BatchedLeftJoinIterator(this, leftJoin, bindings);
+            }
+        }
+        return super.evaluate(leftJoin, bindings);
+    }
+
+    @Override
+    public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(ArbitraryLengthPath path, BindingSet bindings)
+            throws QueryEvaluationException {
+        if (performant && BreadthFirstPathIteration.isBatchable(path, bindings)) {
+            return new BreadthFirstPathIteration(this, path, bindings);
+        }
+        return super.evaluate(path, bindings);
+    }
+
     @Override
     public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(StatementPattern sp, BindingSet bindings) throws QueryEvaluationException {
         //TODO: Wonder if creating a Collection here hurts performance
@@ -174,6 +270,22 @@ public class ParallelEvaluationStrategyImpl extends EvaluationStrategyImpl {
                 }
             }
             iter = new IteratorIteration(coll.iterator());
+        } else if (sp instanceof TransitivePropertySP && cntxtVar == null && predVar != null
+                && predVar.getValue() instanceof URI && inferenceEngine.hasTransitiveClosure((URI) predVar.getValue())) {
+            //the closure is kept by the inference engine, either end may be unbound
+            URI prop = (URI) predVar.getValue();
+            Collection<Map.Entry<Statement, BindingSet>> coll = new ArrayList<Map.Entry<Statement, BindingSet>>();
+            for (BindingSet binding : bindings) {
+                Value subjValue = getVarValue(subjVar, binding);
+                Value objValue = getVarValue(objVar, binding);
+                if (subjValue != null && !(subjValue instanceof Resource)) {
+                    continue;
+                }
+                for (Statement st : inferenceEngine.findTransitiveClosure((Resource) subjValue, prop, objValue)) {
+                    coll.add(new RdfCloudTripleStoreUtils.CustomEntry<Statement, BindingSet>(st, binding));
+                }
+            }
+            iter = new IteratorIteration(coll.iterator());
         } else if (sp instanceof TransitivePropertySP &&
                 ((subjVar != null && subjVar.getValue() != null) ||
                         (objVar != null && objVar.getValue() != null)) &&
@@ -196,6 +308,38 @@ public class ParallelEvaluationStrategyImpl extends EvaluationStrategyImpl {
                 }
             }
             iter = new IteratorIteration(coll.iterator());
+        } else if (sp instanceof MultiValueStatementPattern) {
+            //one statement per combination of values and binding set, all read by a single multi-range query
+            MultiValueStatementPattern msp = (MultiValueStatementPattern) sp;
+            for (BindingSet binding : bindings) {
+                Value subjValue = getVarValue(subjVar, binding);
+                Value predValue = getVarValue(predVar, binding);
+                Value objValue = getVarValue(objVar, binding);
+                Resource contxtValue = (Resource) getVarValue(cntxtVar, binding);
+                Collection<? extends Value> subjects = msp.getSubjectValues().isEmpty()
+                        ? Collections.singleton(subjValue) : msp.getSubjectValues();
+                Collection<? extends Value> values = msp.getValues().isEmpty()
+                        ? Collections.singleton(msp.isPredicateValues() ? predValue : objValue) : msp.getValues();
+                for (Value subj : subjects) {
+                    if (subj != null && !(subj instanceof Resource)) {
+                        continue;
+                    }
+                    for (Value value : values) {
+                        Value pred = msp.isPredicateValues() ? value : predValue;
+                        if (pred != null && !(pred instanceof URI)) {
+                            continue;
+                        }
+                        stmts.add(new RdfCloudTripleStoreUtils.CustomEntry<Statement, BindingSet>(new NullableStatementImpl((Resource) subj,
+                                (URI) pred, msp.isPredicateValues() ? objValue : value, contxtValue), binding));
+                    }
+                }
+            }
+            if (stmts.size() == 0) {
+                return new EmptyIteration();
+            }
+            //like the join over the hierarchy it replaces, a solution matching several of the values
+            //is returned once per value it matches
+            iter = ((RdfCloudTripleStoreConnection.StoreTripleSource) tripleSource).getStatements(stmts);
         } else {
             for (BindingSet binding : bindings) {
                 Value subjValue = getVarValue(subjVar, binding);
@@ -213,7 +357,11 @@ public class ParallelEvaluationStrategyImpl extends EvaluationStrategyImpl {
                 return new EmptyIteration();
             }
 
-            iter = ((RdfCloudTripleStoreConnection.StoreTripleSource) tripleSource).getStatements(stmts);
+            if (useSemiJoin(sp, stmts.size())) {
+                iter = ((RdfCloudTripleStoreConnection.StoreTripleSource) tripleSource).getStatements(stmts, semiJoinConf);
+            } else {
+                iter = ((RdfCloudTripleStoreConnection.StoreTripleSource) tripleSource).getStatements(stmts);
+            }
         }
         return new ConvertingIteration<Map.Entry<Statement, BindingSet>, BindingSet, QueryEvaluationException>(iter) {
 
@@ -256,11 +404,26 @@ public class ParallelEvaluationStrategyImpl extends EvaluationStrategyImpl {
                 logger.info("================= End Rya Query =================");
             }
         }
+        if (queryContext != null) {
+            queryContext.checkCancelled();
+            return new QueryContextIteration(super.evaluate(expr, bindings), queryContext);
+        }
         return super.evaluate(expr, bindings);
     }
 
     public CloseableIteration evaluate(Slice slice, BindingSet bindings)
             throws QueryEvaluationException {
+        if (slice.hasLimit()) {
+            //projections and extensions keep the number of results, so the order below them only needs offset + limit
+            TupleExpr arg = slice.getArg();
+            while (arg instanceof Projection || arg instanceof Extension) {
+                arg = ((UnaryTupleOperator) arg).getArg();
+            }
+            long k = slice.getLimit() + (slice.hasOffset() ? slice.getOffset() : 0);
+            if (arg instanceof Order && k <= Integer.MAX_VALUE) {
+                topKLimits.put((Order) arg, (int) k);
+            }
+        }
         CloseableIteration result = evaluate(slice.getArg(), bindings);
         if (slice.hasOffset()) {
             result = new OffsetIteration(result, slice.getOffset());
@@ -271,6 +434,112 @@ public class ParallelEvaluationStrategyImpl extends EvaluationStrategyImpl {
         return result;
     }
 
+    @Override
+    public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Order order, BindingSet bindings)
+            throws QueryEvaluationException {
+        Integer k = topKLimits.get(order);
+        OrderComparator comparator = new OrderComparator(this, order, new ValueComparator());
+        if (k == null) {
+            return new SpillingOrderIteration(evaluate(order.getArg(), bindings), comparator, memoryBudget);
+        }
+        boolean indexOrdered = topKIndexOrder && isIndexOrdered(order, bindings);
+        if (indexOrdered && logger.isDebugEnabled()) {
+            logger.debug("Reading " + k + " results of " + order.getArg() + " in index order");
+        }
+        return new TopKIteration(evaluate(order.getArg(), bindings), comparator, k, indexOrdered);
+    }
+
+    @Override
+    public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Union union, BindingSet bindings)
+            throws QueryEvaluationException {
+        if (!parallelUnion || isJoinedPerBinding(union)) {
+            return super.evaluate(union, bindings);
+        }
+        return new ParallelUnionIteration(this, union, bindings, executorService, unionBufferSize, orderedUnion, queryContext);
+    }
+
+    /**
+     * @return true if the node is on the right side of a join, where it is evaluated again for every
+     * batch of left bindings and parallel branches would be started for each of them
+     */
+    private static boolean isJoinedPerBinding(QueryModelNode node) {
+        QueryModelNode child = node;
+        QueryModelNode parent = node.getParentNode();
+        while (parent != null) {
+            if ((parent instanceof Join && ((Join) parent).getRightArg() == child)
+                    || (parent instanceof LeftJoin && ((LeftJoin) parent).getRightArg() == child)) {
+                return true;
+            }
+            child = parent;
+            parent = parent.getParentNode();
+        }
+        return false;
+    }
+
+    @Override
+    public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Distinct distinct, BindingSet bindings)
+            throws QueryEvaluationException {
+        return new SpillingDistinctIteration(evaluate(distinct.getArg(), bindings), memoryBudget);
+    }
+
+    @Override
+    public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Group group, BindingSet bindings)
+            throws QueryEvaluationException {
+        if (group.getGroupBindingNames().isEmpty()) {
+            //a single group only holds the state of its aggregates
+            return super.evaluate(group, bindings);
+        }
+        return new SpillingGroupIteration(this, group, bindings, evaluate(group.getArg(), bindings), memoryBudget);
+    }
+
+    /**
+     * An ascending order on the object of a single statement pattern with a fixed predicate and an
+     * unbound subject is the order of the predicate-object index, which a single range scan returns.
+     */
+    private boolean isIndexOrdered(Order order, BindingSet bindings) {
+        if (order.getElements().size() != 1 || order.getArg().getClass() != StatementPattern.class) {
+            return false;
+        }
+        OrderElem elem = order.getElements().get(0);
+        if (!elem.isAscending() || !(elem.getExpr() instanceof Var)) {
+            return false;
+        }
+        StatementPattern sp = (StatementPattern) order.getArg();
+        Var objVar = sp.getObjectVar();
+        return getVarValue(sp.getPredicateVar(), bindings) instanceof URI
+                && getVarValue(sp.getSubjectVar(), bindings) == null
+                && getVarValue(objVar, bindings) == null
+                && objVar.getName().equals(((Var) elem.getExpr()).getName());
+    }
+
+    /**
+     * A batch is read with one Bloom filtered scan of all the statements matching the pattern when
+     * that scan is estimated to return no more rows than a range per binding set would seek past.
+     */
+    private boolean useSemiJoin(StatementPattern sp, int bindingSets) {
+        if (semiJoinConf == null || statistics == null || bindingSets < semiJoinMinBindings) {
+            return false;
+        }
+        Double cardinality = cardinalities.get(sp);
+        if (cardinality == null) {
+            cardinality = statistics.getCardinality(sp);
+            cardinalities.put(sp, cardinality);
+        }
+        boolean use = cardinality <= (double) bindingSets * SEMIJOIN_ROWS_PER_RANGE;
+        if (use && logger.isDebugEnabled()) {
+            logger.debug("Reading " + bindingSets + " binding sets of " + sp + " with a semi-join scan of ~" + cardinality.longValue() + " rows");
+        }
+        return use;
+    }
+
+    /**
+     * @param statistics the cardinality estimates used to choose between a range per binding set
+     *        and a semi-join scan, ignored if they are only the default heuristics
+     */
+    public void setEvaluationStatistics(EvaluationStatistics statistics) {
+        this.statistics = (statistics instanceof DefaultStatistics) ? null : statistics;
+    }
+
     protected Value getVarValue(Var var) {
         if (var == null)
             return null;
@@ -278,6 +547,20 @@ public class ParallelEvaluationStrategyImpl extends EvaluationStrategyImpl {
             return var.getValue();
     }
 
+    /**
+     * @return the batch size controller of a new batching join
+     */
+    public AdaptiveBatchSizer newBatchSizer() {
+        return new AdaptiveBatchSizer(batchSize, adaptiveBatchSize, maxBatchSize, maxBatchResults, queryContext);
+    }
+
+    /**
+     * @return the context of the query being evaluated, or null if the query is not tracked
+     */
+    public QueryContext getQueryContext() {
+        return queryContext;
+    }
+
     public void shutdown() {
         executorService.shutdownNow();
     }
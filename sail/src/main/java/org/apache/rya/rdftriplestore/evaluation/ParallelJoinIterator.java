@@ -50,6 +50,7 @@ public class ParallelJoinIterator extends LookAheadIteration<BindingSet, QueryEv
     private Queue<ParallelIteratorWork> workQueue = new LinkedBlockingQueue<ParallelIteratorWork>();
     private ParallelIteratorWork currentWork;
     private int batch;
+    private volatile boolean closed = false;
 
     public ParallelJoinIterator(EvaluationStrategy strategy, Join join, BindingSet bindings, ExecutorService executorService, int batch)
             throws QueryEvaluationException {
@@ -66,7 +67,7 @@ public class ParallelJoinIterator extends LookAheadIteration<BindingSet, QueryEv
     protected BindingSet getNextElement() throws QueryEvaluationException {
 
         try {
-            while (leftIter.hasNext() || !workQueue.isEmpty() || currentWork != null) {
+            while (!closed && (leftIter.hasNext() || !workQueue.isEmpty() || currentWork != null)) {
                 if (!workQueue.isEmpty() && currentWork == null) {
                     currentWork = workQueue.poll();
                 }
@@ -102,6 +103,7 @@ public class ParallelJoinIterator extends LookAheadIteration<BindingSet, QueryEv
 
     @Override
     protected void handleClose() throws QueryEvaluationException {
+        closed = true;
         try {
             super.handleClose();
             leftIter.close();
@@ -126,11 +128,15 @@ public class ParallelJoinIterator extends LookAheadIteration<BindingSet, QueryEv
         public void run() {
             try {
                 CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(rightTupleExpr, leftBindingSet);
-                while (iter.hasNext()) {
-                    queue.add(iter.next());
+                try {
+                    //stop early once the join is closed, for example because the query was cancelled
+                    while (!closed && iter.hasNext()) {
+                        queue.add(iter.next());
+                    }
+                    queue.add(EMPTY_BINDING_SET);
+                } finally {
+                    iter.close();
                 }
-                queue.add(EMPTY_BINDING_SET);
-                iter.close();
             } catch (QueryEvaluationException e) {
                 throw new RuntimeException(e);
             }
@@ -0,0 +1,260 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.rya.api.persist.query.QueryContext;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Union;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+/**
+ * Evaluates the branches of a union, including the nested unions inference rewrites produce,
+ * concurrently on the executor of the query, so the union takes as long as its slowest branch
+ * rather than the sum of them.
+ * <p>
+ * Every branch fills a bounded buffer and blocks while it is full. Results are returned as they
+ * arrive, or branch by branch in the order of the union if the merge is ordered. A branch the
+ * executor has not started by the time its results are needed is evaluated by the consumer itself,
+ * so a union nested inside a branch cannot wait on threads held by its ancestors.
+ */
+public class ParallelUnionIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+    // identity marker for the end of a branch, an empty result is a legitimate binding set
+    private static final BindingSet END = new EmptyBindingSet();
+    private static final long WAIT_MILLIS = 10;
+
+    private final EvaluationStrategy strategy;
+    private final BindingSet bindings;
+    private final boolean ordered;
+    private final QueryContext queryContext;
+    private final List<Branch> branches = new ArrayList<Branch>();
+    private final Semaphore available = new Semaphore(0);
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private volatile boolean closed;
+    private CloseableIteration<BindingSet, QueryEvaluationException> inline;
+    private int nextBranch;
+    private int remaining;
+    private int scanFrom;
+
+    /**
+     * @param union the union to evaluate, nested unions are evaluated as branches of it
+     * @param bufferSize the number of results a branch may buffer
+     * @param ordered true to return the results branch by branch in the order of the union
+     * @param queryContext the query to stop with, may be null
+     */
+    public ParallelUnionIteration(EvaluationStrategy strategy, Union union, BindingSet bindings, ExecutorService executorService,
+                                  int bufferSize, boolean ordered, QueryContext queryContext) {
+        this.strategy = strategy;
+        this.bindings = bindings;
+        this.ordered = ordered;
+        this.queryContext = queryContext;
+        List<TupleExpr> args = new ArrayList<TupleExpr>();
+        flatten(union, args);
+        for (TupleExpr arg : args) {
+            branches.add(new Branch(arg, bufferSize));
+        }
+        remaining = branches.size();
+        try {
+            for (Branch branch : branches) {
+                executorService.execute(branch);
+            }
+        } catch (RejectedExecutionException e) {
+            // the query is shutting down, unstarted branches are evaluated inline until it stops
+        }
+    }
+
+    static void flatten(TupleExpr expr, List<TupleExpr> args) {
+        if (expr instanceof Union) {
+            flatten(((Union) expr).getLeftArg(), args);
+            flatten(((Union) expr).getRightArg(), args);
+        } else {
+            args.add(expr);
+        }
+    }
+
+    @Override
+    protected BindingSet getNextElement() throws QueryEvaluationException {
+        while (!closed) {
+            if (queryContext != null) {
+                queryContext.checkCancelled();
+            }
+            if (inline != null) {
+                if (inline.hasNext()) {
+                    return inline.next();
+                }
+                inline.close();
+                inline = null;
+                remaining--;
+                continue;
+            }
+            checkFailure();
+            if (remaining == 0) {
+                return null;
+            }
+            BindingSet next = ordered ? nextOrdered() : nextUnordered();
+            if (next == END) {
+                remaining--;
+            } else if (next != null) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    private BindingSet nextOrdered() throws QueryEvaluationException {
+        Branch branch = branches.get(nextBranch);
+        if (branch.claimed.compareAndSet(false, true)) {
+            nextBranch++;
+            inline = strategy.evaluate(branch.expr, bindings);
+            return null;
+        }
+        BindingSet next = poll(branch.queue);
+        if (next == END) {
+            nextBranch++;
+        }
+        return next;
+    }
+
+    private BindingSet nextUnordered() throws QueryEvaluationException {
+        try {
+            if (available.tryAcquire(WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                // every permit stands for a result or end marker in one of the buffers
+                for (int i = 0; i < branches.size(); i++) {
+                    int index = (scanFrom + i) % branches.size();
+                    BindingSet next = branches.get(index).queue.poll();
+                    if (next != null) {
+                        scanFrom = index + 1;
+                        return next;
+                    }
+                }
+                throw new IllegalStateException("No buffered result for an acquired permit");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryEvaluationException(e);
+        }
+        // nothing arrived, the executor may be busy, possibly with the ancestors of this union
+        for (Branch branch : branches) {
+            if (branch.claimed.compareAndSet(false, true)) {
+                inline = strategy.evaluate(branch.expr, bindings);
+                break;
+            }
+        }
+        return null;
+    }
+
+    private BindingSet poll(BlockingQueue<BindingSet> queue) throws QueryEvaluationException {
+        try {
+            return queue.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryEvaluationException(e);
+        }
+    }
+
+    private void checkFailure() throws QueryEvaluationException {
+        Throwable t = failure.get();
+        if (t instanceof QueryEvaluationException) {
+            throw (QueryEvaluationException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t != null) {
+            throw new QueryEvaluationException(t);
+        }
+    }
+
+    @Override
+    protected void handleClose() throws QueryEvaluationException {
+        closed = true;
+        try {
+            super.handleClose();
+        } finally {
+            if (inline != null) {
+                inline.close();
+            }
+        }
+    }
+
+    private class Branch implements Runnable {
+        private final TupleExpr expr;
+        private final BlockingQueue<BindingSet> queue;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Branch(TupleExpr expr, int bufferSize) {
+            this.expr = expr;
+            this.queue = new ArrayBlockingQueue<BindingSet>(Math.max(1, bufferSize));
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                CloseableIteration<BindingSet, QueryEvaluationException> iter = strategy.evaluate(expr, bindings);
+                try {
+                    while (!closed && iter.hasNext()) {
+                        put(iter.next());
+                    }
+                } finally {
+                    iter.close();
+                }
+            } catch (InterruptedException e) {
+                // the query was cancelled
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                try {
+                    put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void put(BindingSet bs) throws InterruptedException {
+            while (!closed) {
+                if (queue.offer(bs, 100, TimeUnit.MILLISECONDS)) {
+                    if (!ordered) {
+                        available.release();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
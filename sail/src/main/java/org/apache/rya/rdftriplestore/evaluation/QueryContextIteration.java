@@ -0,0 +1,52 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.rya.api.persist.query.QueryContext;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.IterationWrapper;
+
+/**
+ * Stops an iteration of the evaluation tree as soon as its query is cancelled or times out.
+ */
+public class QueryContextIteration extends IterationWrapper<BindingSet, QueryEvaluationException> {
+
+    private final QueryContext context;
+
+    public QueryContextIteration(final CloseableIteration<BindingSet, QueryEvaluationException> iter, final QueryContext context) {
+        super(iter);
+        this.context = context;
+    }
+
+    @Override
+    public boolean hasNext() throws QueryEvaluationException {
+        context.checkCancelled();
+        return super.hasNext();
+    }
+
+    @Override
+    public BindingSet next() throws QueryEvaluationException {
+        context.checkCancelled();
+        return super.next();
+    }
+}
@@ -0,0 +1,233 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A thread pool shared by all queries of a store. Each query gets its own {@link ExecutorService}
+ * view through {@link #newQueryExecutor(int)} that runs at most a fixed number of its tasks on the
+ * shared threads at a time, so the number of threads stays flat however many queries run.
+ */
+public class QueryEvaluationScheduler {
+
+    private static final int DEFAULT_THREADS = 64;
+    private static QueryEvaluationScheduler defaultScheduler;
+
+    private final ThreadPoolExecutor pool;
+
+    public QueryEvaluationScheduler(RdfCloudTripleStoreConfiguration conf) {
+        this(conf.getEvaluationPoolThreads());
+    }
+
+    public QueryEvaluationScheduler(int threads) {
+        Preconditions.checkArgument(threads > 0, "threads must be greater than 0");
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("rya-query-eval-%d").setDaemon(true).build());
+        // idle stores do not hold on to threads
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the scheduler used by strategies that are not created by a store
+     */
+    public static synchronized QueryEvaluationScheduler getDefault() {
+        if (defaultScheduler == null) {
+            defaultScheduler = new QueryEvaluationScheduler(DEFAULT_THREADS);
+        }
+        return defaultScheduler;
+    }
+
+    /**
+     * @param maxConcurrency the number of tasks of the query that may run at the same time
+     * @return an executor for the tasks of a single query. Shutting it down only affects that query.
+     */
+    public ExecutorService newQueryExecutor(int maxConcurrency) {
+        return new QueryExecutor(maxConcurrency);
+    }
+
+    /**
+     * @return the number of threads currently in the shared pool
+     */
+    public int getPoolSize() {
+        return pool.getPoolSize();
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private class QueryExecutor extends AbstractExecutorService {
+        private final int maxConcurrency;
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final Set<QueryTask> active = Collections.newSetFromMap(new ConcurrentHashMap<QueryTask, Boolean>());
+        private volatile boolean shutdown = false;
+        private volatile boolean stopped = false;
+
+        private QueryExecutor(int maxConcurrency) {
+            Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency must be greater than 0");
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            Preconditions.checkNotNull(command);
+            if (shutdown) {
+                throw new RejectedExecutionException("The query has been shut down");
+            }
+            queue.add(command);
+            drain();
+        }
+
+        private void drain() {
+            while (!queue.isEmpty()) {
+                int current = running.get();
+                if (current >= maxConcurrency) {
+                    return;
+                }
+                if (running.compareAndSet(current, current + 1)) {
+                    final Runnable task = queue.poll();
+                    if (task == null) {
+                        finished();
+                        continue;
+                    }
+                    try {
+                        pool.execute(new QueryTask(task));
+                    } catch (RejectedExecutionException e) {
+                        finished();
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        private void finished() {
+            if (running.decrementAndGet() == 0 && shutdown) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            stopped = true;
+            List<Runnable> pending = new ArrayList<Runnable>();
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                pending.add(task);
+            }
+            for (QueryTask task : active) {
+                task.interrupt();
+            }
+            return pending;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && running.get() == 0 && queue.isEmpty();
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+
+        /**
+         * Runs one task of the query on a shared thread. The thread is only interrupted while it
+         * runs this task, since it goes on to run other queries' tasks afterwards.
+         */
+        private class QueryTask implements Runnable {
+            private final Runnable task;
+            // guarded by this
+            private Thread runner;
+
+            private QueryTask(Runnable task) {
+                this.task = task;
+            }
+
+            @Override
+            public void run() {
+                active.add(this);
+                try {
+                    synchronized (this) {
+                        runner = Thread.currentThread();
+                    }
+                    if (!stopped) {
+                        task.run();
+                    }
+                } finally {
+                    synchronized (this) {
+                        runner = null;
+                        // clear an interrupt meant for this query before the thread is reused
+                        Thread.interrupted();
+                    }
+                    active.remove(this);
+                    finished();
+                    drain();
+                }
+            }
+
+            private synchronized void interrupt() {
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.rya.api.persist.query.QueryContext;
+import org.openrdf.query.QueryEvaluationException;
+
+/**
+ * The heap a single query may use for the binding sets its DISTINCT, ORDER BY and GROUP BY
+ * operators hold, shared by all of those operators of the query. An operator that cannot reserve
+ * memory for its next binding set spills to temporary files instead.
+ */
+public class QueryMemoryBudget {
+    private final long limit;
+    private final File spillDirectory;
+    private final QueryContext queryContext;
+    private final AtomicLong used = new AtomicLong();
+
+    /**
+     * @param limit the number of bytes the operators of the query may hold
+     * @param spillDirectory the directory of the spill files, the default temporary directory if null
+     * @param queryContext the query to report spills to, may be null
+     */
+    public QueryMemoryBudget(long limit, File spillDirectory, QueryContext queryContext) {
+        this.limit = limit;
+        this.spillDirectory = spillDirectory;
+        this.queryContext = queryContext;
+    }
+
+    /**
+     * @return true if the bytes were reserved, false if they would exceed the budget
+     */
+    public boolean tryReserve(long bytes) {
+        while (true) {
+            long current = used.get();
+            if (current + bytes > limit) {
+                return false;
+            }
+            if (used.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reserves the bytes even if they exceed the budget, for state an operator cannot spill.
+     */
+    public void forceReserve(long bytes) {
+        used.addAndGet(bytes);
+    }
+
+    public void release(long bytes) {
+        used.addAndGet(-bytes);
+    }
+
+    public long getUsed() {
+        return used.get();
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param operator the name of the operator spilling, recorded in the metrics of the query
+     */
+    public BindingSetSpillFile newSpillFile(String operator) throws QueryEvaluationException {
+        if (queryContext != null) {
+            queryContext.addMetric("spill.files", 1);
+            queryContext.addMetric("spill." + operator + ".files", 1);
+        }
+        return new BindingSetSpillFile(spillDirectory);
+    }
+
+    /**
+     * Records binding sets written to spill files in the metrics of the query.
+     */
+    public void spilled(long bindingSets) {
+        if (queryContext != null) {
+            queryContext.addMetric("spill.bindingsets", bindingSets);
+        }
+    }
+}
@@ -33,17 +33,22 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
+import org.apache.rya.api.domain.RangeValue;
 import org.apache.rya.api.persist.RdfEvalStatsDAO;
 import org.apache.rya.api.persist.RdfEvalStatsDAO.CARDINALITY_OF;
+import org.apache.rya.api.persist.RdfEvalStatsDAO.DISTINCT_OF;
 import org.apache.rya.rdftriplestore.inference.DoNotExpandSP;
 import org.apache.rya.rdftriplestore.utils.FixedStatementPattern;
 
+import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.query.algebra.BinaryTupleOperator;
+import org.openrdf.query.algebra.Compare;
+import org.openrdf.query.algebra.Compare.CompareOp;
 import org.openrdf.query.algebra.Filter;
 import org.openrdf.query.algebra.Join;
 import org.openrdf.query.algebra.Projection;
@@ -51,8 +56,11 @@ import org.openrdf.query.algebra.Slice;
 import org.openrdf.query.algebra.StatementPattern;
 import org.openrdf.query.algebra.TupleExpr;
 import org.openrdf.query.algebra.UnaryTupleOperator;
+import org.openrdf.query.algebra.ValueConstant;
+import org.openrdf.query.algebra.ValueExpr;
 import org.openrdf.query.algebra.Var;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
+import org.openrdf.query.algebra.helpers.StatementPatternCollector;
 
 /**
  * Class RdfCloudTripleStoreEvaluationStatistics
@@ -83,12 +91,83 @@ public class RdfCloudTripleStoreEvaluationStatistics extends EvaluationStatistic
     public double getCardinality(TupleExpr expr) {
         if (expr instanceof Filter) {
             Filter f = (Filter) expr;
+            double argCard = super.getCardinality(f.getArg());
+            double selectivity = getRangeSelectivity(f);
+            if (selectivity >= 0) {
+                return argCard * selectivity;
+            }
             // filters must make sets smaller
-            return super.getCardinality(f.getArg()) / 10;
+            return argCard / 10;
         }
         return super.getCardinality(expr);
     }
 
+    /**
+     * Estimate the fraction of its argument's results a filter that compares an
+     * object variable against a literal keeps, using the histograms of the
+     * predicate the variable is the object of.
+     *
+     * @return The fraction, or -1 if it could not be estimated.
+     */
+    protected double getRangeSelectivity(Filter filter) {
+        if (!(filter.getCondition() instanceof Compare)) {
+            return -1;
+        }
+        Compare compare = (Compare) filter.getCondition();
+        CompareOp op = compare.getOperator();
+        Var var;
+        ValueExpr constant;
+        if (compare.getLeftArg() instanceof Var) {
+            var = (Var) compare.getLeftArg();
+            constant = compare.getRightArg();
+        } else if (compare.getRightArg() instanceof Var) {
+            // ?x < 5 is 5 > ?x
+            var = (Var) compare.getRightArg();
+            constant = compare.getLeftArg();
+            op = op == CompareOp.LT ? CompareOp.GT : op == CompareOp.LE ? CompareOp.GE
+                    : op == CompareOp.GT ? CompareOp.LT : op == CompareOp.GE ? CompareOp.LE : op;
+        } else {
+            return -1;
+        }
+        if (!(constant instanceof ValueConstant) || !(((ValueConstant) constant).getValue() instanceof Literal)) {
+            return -1;
+        }
+        Literal literal = (Literal) ((ValueConstant) constant).getValue();
+
+        Literal lower = null;
+        Literal upper = null;
+        switch (op) {
+            case EQ:
+                lower = literal;
+                upper = literal;
+                break;
+            case LT:
+            case LE:
+                upper = literal;
+                break;
+            case GT:
+            case GE:
+                lower = literal;
+                break;
+            default:
+                return -1;
+        }
+
+        for (StatementPattern sp : StatementPatternCollector.process(filter.getArg())) {
+            Value pred = sp.getPredicateVar().getValue();
+            if (pred instanceof URI && !sp.getObjectVar().hasValue() && var.getName().equals(sp.getObjectVar().getName())) {
+                List<Value> values = new ArrayList<Value>();
+                values.add(pred);
+                double predCard = rdfEvalStatsDAO.getCardinality(conf, CARDINALITY_OF.PREDICATE, values);
+                double rangeCard = rdfEvalStatsDAO.getRangeCardinality(conf, pred, lower, upper);
+                if (predCard > 0 && rangeCard >= 0) {
+                    return Math.min(1, rangeCard / predCard);
+                }
+            }
+        }
+        return -1;
+    }
+
     @Override
     protected CardinalityCalculator createCardinalityCalculator() {
         return new RdfCloudTripleStoreCardinalityCalculator(this);
@@ -121,6 +200,17 @@ public class RdfCloudTripleStoreEvaluationStatistics extends EvaluationStatistic
             Value obj = getConstantValue(objectVar);
             Resource context = (Resource) getConstantValue(sp.getContextVar());
 
+            // FilterRangeVisitor replaces a range filter over the object with the range
+            double rangeCard = -1;
+            if (obj instanceof RangeValue) {
+                RangeValue<?> range = (RangeValue<?>) obj;
+                if (pred != null && range.getStart() instanceof Literal && range.getEnd() instanceof Literal) {
+                    rangeCard = rdfEvalStatsDAO.getRangeCardinality(conf, pred, (Literal) range.getStart(), (Literal) range.getEnd());
+                }
+                // ranges don't have counts of their own
+                obj = null;
+            }
+
             // set rdf type to be a max value (as long as the object/subject aren't specified) to 
                 if (pred != null) {
                     if (statistics.pushEmptyRdfTypeDown && RDF.TYPE.equals(pred) && subj == null && obj == null) {
@@ -196,6 +286,9 @@ public class RdfCloudTripleStoreEvaluationStatistics extends EvaluationStatistic
                    	    }
             		}
                 	double evalCard = evalCard = rdfEvalStatsDAO.getCardinality(conf, card, values, context);
+                	if (pred != null && card != RdfEvalStatsDAO.CARDINALITY_OF.SUBJECTPREDICATE) {
+                	    evalCard = withFanOut(evalCard, pred, DISTINCT_OF.SUBJECTS_PER_PREDICATE, context);
+                	}
                 	// the cardinality will be -1 if there was no value found (if the index does not exist)
                     if (evalCard >= 0) {
                         cardinality = Math.min(cardinality, evalCard);
@@ -214,6 +307,9 @@ public class RdfCloudTripleStoreEvaluationStatistics extends EvaluationStatistic
                    	    }
             		}
                 	double evalCard = evalCard = rdfEvalStatsDAO.getCardinality(conf, card, values, context);
+                	if (obj != null && card != RdfEvalStatsDAO.CARDINALITY_OF.PREDICATEOBJECT) {
+                	    evalCard = withFanOut(evalCard, pred, DISTINCT_OF.OBJECTS_PER_PREDICATE, context);
+                	}
                     if (evalCard >= 0) {
                         cardinality = Math.min(cardinality, evalCard);
                     } else {
@@ -234,9 +330,33 @@ public class RdfCloudTripleStoreEvaluationStatistics extends EvaluationStatistic
                 throw new RuntimeException(e);
             }
 
+            if (rangeCard >= 0) {
+                cardinality = Math.min(cardinality, Math.max(rangeCard, 1));
+            }
             return cardinality;
         }
 
+        /**
+         * Without composite cardinalities, a pattern with a bound predicate and a
+         * bound subject or object is only estimated by the count of one of them.
+         * Tighten that with the average number of statements per distinct
+         * subject or object of the predicate.
+         *
+         * @param evalCard - The cardinality found so far, or -1 if none was found.
+         * @return The smaller of {@code evalCard} and the average, or whichever of them is known.
+         */
+        protected double withFanOut(double evalCard, URI pred, DISTINCT_OF distinct, Resource context) {
+            List<Value> values = new ArrayList<Value>();
+            values.add(pred);
+            double predCard = rdfEvalStatsDAO.getCardinality(conf, RdfEvalStatsDAO.CARDINALITY_OF.PREDICATE, values, context);
+            double distinctCard = rdfEvalStatsDAO.getDistinctCount(conf, distinct, pred);
+            if (predCard < 0 || distinctCard <= 0) {
+                return evalCard;
+            }
+            double fanOut = predCard / distinctCard;
+            return evalCard < 0 ? fanOut : Math.min(evalCard, fanOut);
+        }
+
         @Override
         protected void meetUnaryTupleOperator(UnaryTupleOperator node) {
             if (node instanceof Projection) {
@@ -253,6 +373,15 @@ public class RdfCloudTripleStoreEvaluationStatistics extends EvaluationStatistic
             cardinality += leftArgCost;
         }
         
+        @Override
+        public void meet(Filter node) {
+            node.getArg().visit(this);
+            double selectivity = statistics.getRangeSelectivity(node);
+            if (selectivity >= 0) {
+                cardinality *= selectivity;
+            }
+        }
+
         // TODO Is this sufficient for add capability of slice node?
         @Override
         public void meet(Slice node) {
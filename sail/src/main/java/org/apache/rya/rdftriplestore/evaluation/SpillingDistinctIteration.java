@@ -0,0 +1,190 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+/**
+ * Removes duplicate binding sets within the memory budget of its query.
+ * <p>
+ * New binding sets are returned as they arrive while the binding sets seen so far fit in the
+ * budget. Once they do not, the binding sets not seen yet are hash partitioned into spill files,
+ * and after the source is exhausted each partition is deduplicated the same way, on its own. A
+ * binding set only ever lands in the partition of its hash, so no duplicate crosses partitions.
+ */
+public class SpillingDistinctIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+    private static final Logger logger = Logger.getLogger(SpillingDistinctIteration.class);
+
+    static final int PARTITIONS = 16;
+    // below this depth partitions are split further, at it the budget is overdrawn
+    static final int MAX_DEPTH = 3;
+
+    private final CloseableIteration<BindingSet, QueryEvaluationException> source;
+    private final QueryMemoryBudget budget;
+    private final Deque<Partition> pending = new ArrayDeque<Partition>();
+    private CloseableIteration<BindingSet, QueryEvaluationException> current;
+    private int depth;
+    private Set<BindingSet> seen = new HashSet<BindingSet>();
+    private long reserved;
+    private BindingSetSpillFile[] partitions;
+
+    public SpillingDistinctIteration(CloseableIteration<BindingSet, QueryEvaluationException> source, QueryMemoryBudget budget) {
+        this.source = source;
+        this.budget = budget;
+        this.current = source;
+    }
+
+    @Override
+    protected BindingSet getNextElement() throws QueryEvaluationException {
+        try {
+            return nextElement();
+        } catch (QueryEvaluationException | RuntimeException e) {
+            // deletes the spill files, the caller may never close an iteration that failed
+            close();
+            throw e;
+        }
+    }
+
+    private BindingSet nextElement() throws QueryEvaluationException {
+        while (true) {
+            if (current == null) {
+                Partition next = pending.poll();
+                if (next == null) {
+                    return null;
+                }
+                current = next.file.read();
+                depth = next.depth;
+                seen = new HashSet<BindingSet>();
+            }
+            while (current.hasNext()) {
+                BindingSet bs = current.next();
+                if (seen.contains(bs)) {
+                    continue;
+                }
+                if (partitions != null) {
+                    partitions[partition(bs.hashCode(), depth)].write(bs);
+                    continue;
+                }
+                long size = BindingSetSpillFile.estimateSize(bs);
+                if (!budget.tryReserve(size)) {
+                    if (depth < MAX_DEPTH && seen.size() >= SpillingOrderIteration.MIN_RUN_SIZE) {
+                        partitions = new BindingSetSpillFile[PARTITIONS];
+                        for (int i = 0; i < PARTITIONS; i++) {
+                            partitions[i] = budget.newSpillFile("distinct");
+                        }
+                        partitions[partition(bs.hashCode(), depth)].write(bs);
+                        continue;
+                    }
+                    budget.forceReserve(size);
+                }
+                reserved += size;
+                seen.add(bs);
+                return bs;
+            }
+            finishCurrent();
+        }
+    }
+
+    private void finishCurrent() throws QueryEvaluationException {
+        current.close();
+        current = null;
+        seen = null;
+        budget.release(reserved);
+        reserved = 0;
+        if (partitions != null) {
+            long spilled = 0;
+            for (BindingSetSpillFile partition : partitions) {
+                spilled += partition.size();
+                if (partition.size() > 0) {
+                    pending.add(new Partition(partition, depth + 1));
+                } else {
+                    partition.close();
+                }
+            }
+            budget.spilled(spilled);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Spilled " + spilled + " binding sets into " + PARTITIONS + " partitions at depth " + depth);
+            }
+            partitions = null;
+        }
+    }
+
+    /**
+     * Every depth hashes differently, so a partition splits up when it is partitioned again.
+     */
+    static int partition(int hash, int depth) {
+        int h = hash * (2 * depth + 1) + depth * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return Math.floorMod(h, PARTITIONS);
+    }
+
+    /**
+     * Closes the spill files of a partitioning, some of which may not have been created yet.
+     */
+    static void closeAll(BindingSetSpillFile[] partitions) {
+        if (partitions != null) {
+            for (BindingSetSpillFile partition : partitions) {
+                if (partition != null) {
+                    partition.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void handleClose() throws QueryEvaluationException {
+        try {
+            super.handleClose();
+        } finally {
+            source.close();
+            if (current != null) {
+                current.close();
+            }
+            closeAll(partitions);
+            for (Partition partition : pending) {
+                partition.file.close();
+            }
+            budget.release(reserved);
+            reserved = 0;
+        }
+    }
+
+    private static class Partition {
+        private final BindingSetSpillFile file;
+        private final int depth;
+
+        Partition(BindingSetSpillFile file, int depth) {
+            this.file = file;
+            this.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.openrdf.model.Value;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.Group;
+import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
+import org.openrdf.query.algebra.evaluation.iterator.GroupIterator;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+/**
+ * Groups and aggregates an iteration within the memory budget of its query.
+ * <p>
+ * The input is buffered while it fits in the budget and then aggregated by Sesame's
+ * {@link GroupIterator}. Input that does not fit is hash partitioned on the values of the group
+ * variables into spill files, so every group lands whole in one partition, and the partitions are
+ * aggregated one at a time.
+ */
+public class SpillingGroupIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+    private static final Logger logger = Logger.getLogger(SpillingGroupIteration.class);
+
+    private final EvaluationStrategy strategy;
+    private final Group group;
+    private final BindingSet parentBindings;
+    private final CloseableIteration<BindingSet, QueryEvaluationException> source;
+    private final QueryMemoryBudget budget;
+    private final Deque<Partition> pending = new ArrayDeque<Partition>();
+    private boolean started;
+    private CloseableIteration<BindingSet, QueryEvaluationException> groups;
+    private long reserved;
+
+    /**
+     * @param source the evaluated argument of the group
+     */
+    public SpillingGroupIteration(EvaluationStrategy strategy, Group group, BindingSet parentBindings,
+                                  CloseableIteration<BindingSet, QueryEvaluationException> source, QueryMemoryBudget budget) {
+        this.strategy = strategy;
+        this.group = group;
+        this.parentBindings = parentBindings;
+        this.source = source;
+        this.budget = budget;
+    }
+
+    @Override
+    protected BindingSet getNextElement() throws QueryEvaluationException {
+        try {
+            return nextElement();
+        } catch (QueryEvaluationException | RuntimeException e) {
+            // deletes the spill files, the caller may never close an iteration that failed
+            close();
+            throw e;
+        }
+    }
+
+    private BindingSet nextElement() throws QueryEvaluationException {
+        while (true) {
+            if (groups != null) {
+                if (groups.hasNext()) {
+                    return groups.next();
+                }
+                groups.close();
+                groups = null;
+                budget.release(reserved);
+                reserved = 0;
+            }
+            if (!started) {
+                started = true;
+                load(source, 0);
+                continue;
+            }
+            Partition next = pending.poll();
+            if (next == null) {
+                return null;
+            }
+            load(next.file.read(), next.depth);
+        }
+    }
+
+    /**
+     * Aggregates the input if it fits in the budget, otherwise partitions it.
+     */
+    private void load(CloseableIteration<BindingSet, QueryEvaluationException> input, int depth) throws QueryEvaluationException {
+        List<BindingSet> buffer = new ArrayList<BindingSet>();
+        BindingSetSpillFile[] partitions = null;
+        try {
+            while (input.hasNext()) {
+                BindingSet bs = input.next();
+                if (partitions != null) {
+                    partitions[partition(bs, depth)].write(bs);
+                    continue;
+                }
+                long size = BindingSetSpillFile.estimateSize(bs);
+                if (!budget.tryReserve(size)) {
+                    if (depth < SpillingDistinctIteration.MAX_DEPTH && buffer.size() >= SpillingOrderIteration.MIN_RUN_SIZE) {
+                        partitions = new BindingSetSpillFile[SpillingDistinctIteration.PARTITIONS];
+                        for (int i = 0; i < partitions.length; i++) {
+                            partitions[i] = budget.newSpillFile("group");
+                        }
+                        for (BindingSet buffered : buffer) {
+                            partitions[partition(buffered, depth)].write(buffered);
+                        }
+                        partitions[partition(bs, depth)].write(bs);
+                        buffer = null;
+                        budget.release(reserved);
+                        reserved = 0;
+                        continue;
+                    }
+                    budget.forceReserve(size);
+                }
+                reserved += size;
+                buffer.add(bs);
+            }
+        } catch (QueryEvaluationException | RuntimeException e) {
+            SpillingDistinctIteration.closeAll(partitions);
+            throw e;
+        } finally {
+            input.close();
+        }
+        if (partitions == null) {
+            Group copy = group.clone();
+            BindingSetAssignment assignment = new BindingSetAssignment();
+            assignment.setBindingSets(buffer);
+            copy.setArg(assignment);
+            groups = new GroupIterator(strategy, copy, parentBindings);
+            return;
+        }
+        long spilled = 0;
+        for (BindingSetSpillFile partition : partitions) {
+            spilled += partition.size();
+            if (partition.size() > 0) {
+                pending.add(new Partition(partition, depth + 1));
+            } else {
+                partition.close();
+            }
+        }
+        budget.spilled(spilled);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Spilled " + spilled + " binding sets of " + group.getGroupBindingNames() + " into "
+                    + partitions.length + " partitions at depth " + depth);
+        }
+    }
+
+    private int partition(BindingSet bs, int depth) {
+        int hash = 0;
+        for (String name : group.getGroupBindingNames()) {
+            Value value = bs.getValue(name);
+            hash = 31 * hash + (value == null ? 0 : value.hashCode());
+        }
+        return SpillingDistinctIteration.partition(hash, depth);
+    }
+
+    @Override
+    protected void handleClose() throws QueryEvaluationException {
+        try {
+            super.handleClose();
+        } finally {
+            source.close();
+            if (groups != null) {
+                groups.close();
+            }
+            for (Partition partition : pending) {
+                partition.file.close();
+            }
+            budget.release(reserved);
+            reserved = 0;
+        }
+    }
+
+    private static class Partition {
+        private final BindingSetSpillFile file;
+        private final int depth;
+
+        Partition(BindingSetSpillFile file, int depth) {
+            this.file = file;
+            this.depth = depth;
+        }
+    }
+}
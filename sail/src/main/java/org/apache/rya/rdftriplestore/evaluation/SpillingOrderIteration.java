@@ -0,0 +1,222 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+/**
+ * Sorts an iteration within the memory budget of its query. Binding sets are sorted in memory
+ * until the budget is used up, at which point the sorted binding sets are written to a run file
+ * and the buffer starts over. The runs are merged on the way out.
+ */
+public class SpillingOrderIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+    private static final Logger logger = Logger.getLogger(SpillingOrderIteration.class);
+
+    // runs smaller than this are not worth a file, the budget is overdrawn instead
+    static final int MIN_RUN_SIZE = 1024;
+    static final int MAX_MERGE_FAN_IN = 64;
+
+    private final CloseableIteration<BindingSet, QueryEvaluationException> source;
+    private final Comparator<BindingSet> comparator;
+    private final QueryMemoryBudget budget;
+    private final List<BindingSetSpillFile> runs = new ArrayList<BindingSetSpillFile>();
+    private long reserved;
+    private Iterator<BindingSet> sorted;
+    private PriorityQueue<Run> merge;
+
+    public SpillingOrderIteration(CloseableIteration<BindingSet, QueryEvaluationException> source, Comparator<BindingSet> comparator,
+                                  QueryMemoryBudget budget) {
+        this.source = source;
+        this.comparator = comparator;
+        this.budget = budget;
+    }
+
+    @Override
+    protected BindingSet getNextElement() throws QueryEvaluationException {
+        try {
+            return nextElement();
+        } catch (QueryEvaluationException | RuntimeException e) {
+            // deletes the spill files, the caller may never close an iteration that failed
+            close();
+            throw e;
+        }
+    }
+
+    private BindingSet nextElement() throws QueryEvaluationException {
+        if (sorted == null && merge == null) {
+            sort();
+        }
+        if (sorted != null) {
+            if (sorted.hasNext()) {
+                return sorted.next();
+            }
+            releaseAll();
+            return null;
+        }
+        Run run = merge.poll();
+        if (run == null) {
+            return null;
+        }
+        BindingSet next = run.current;
+        if (run.advance()) {
+            merge.add(run);
+        }
+        return next;
+    }
+
+    private void sort() throws QueryEvaluationException {
+        List<BindingSet> buffer = new ArrayList<BindingSet>();
+        try {
+            while (source.hasNext()) {
+                BindingSet bs = source.next();
+                long size = BindingSetSpillFile.estimateSize(bs);
+                if (!budget.tryReserve(size)) {
+                    if (buffer.size() >= MIN_RUN_SIZE) {
+                        runs.add(writeRun(buffer));
+                        buffer = new ArrayList<BindingSet>();
+                    }
+                    if (!budget.tryReserve(size)) {
+                        budget.forceReserve(size);
+                    }
+                }
+                reserved += size;
+                buffer.add(bs);
+            }
+        } finally {
+            source.close();
+        }
+        if (runs.isEmpty()) {
+            Collections.sort(buffer, comparator);
+            sorted = buffer.iterator();
+            return;
+        }
+        if (!buffer.isEmpty()) {
+            runs.add(writeRun(buffer));
+        }
+        while (runs.size() > MAX_MERGE_FAN_IN) {
+            List<BindingSetSpillFile> merged = new ArrayList<BindingSetSpillFile>(runs.subList(0, MAX_MERGE_FAN_IN));
+            runs.subList(0, MAX_MERGE_FAN_IN).clear();
+            try {
+                PriorityQueue<Run> queue = open(merged);
+                BindingSetSpillFile run = budget.newSpillFile("order");
+                runs.add(run);
+                while (!queue.isEmpty()) {
+                    Run head = queue.poll();
+                    run.write(head.current);
+                    if (head.advance()) {
+                        queue.add(head);
+                    }
+                }
+            } finally {
+                for (BindingSetSpillFile file : merged) {
+                    file.close();
+                }
+            }
+        }
+        merge = open(runs);
+    }
+
+    private BindingSetSpillFile writeRun(List<BindingSet> buffer) throws QueryEvaluationException {
+        Collections.sort(buffer, comparator);
+        BindingSetSpillFile run = budget.newSpillFile("order");
+        try {
+            for (BindingSet bs : buffer) {
+                run.write(bs);
+            }
+        } catch (QueryEvaluationException | RuntimeException e) {
+            run.close();
+            throw e;
+        }
+        budget.spilled(buffer.size());
+        releaseAll();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Spilled a sorted run of " + buffer.size() + " binding sets");
+        }
+        return run;
+    }
+
+    private PriorityQueue<Run> open(List<BindingSetSpillFile> files) throws QueryEvaluationException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            Run run = new Run(files.get(i).read(), i);
+            if (run.advance()) {
+                queue.add(run);
+            }
+        }
+        return queue;
+    }
+
+    private void releaseAll() {
+        budget.release(reserved);
+        reserved = 0;
+    }
+
+    @Override
+    protected void handleClose() throws QueryEvaluationException {
+        try {
+            super.handleClose();
+        } finally {
+            source.close();
+            for (BindingSetSpillFile run : runs) {
+                run.close();
+            }
+            releaseAll();
+        }
+    }
+
+    private class Run implements Comparable<Run> {
+        private final CloseableIteration<BindingSet, QueryEvaluationException> iter;
+        private final int index;
+        private BindingSet current;
+
+        Run(CloseableIteration<BindingSet, QueryEvaluationException> iter, int index) {
+            this.iter = iter;
+            this.index = index;
+        }
+
+        boolean advance() throws QueryEvaluationException {
+            if (iter.hasNext()) {
+                current = iter.next();
+                return true;
+            }
+            iter.close();
+            return false;
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            int cmp = comparator.compare(current, other.current);
+            // ties are broken by run so the merge order is deterministic
+            return cmp != 0 ? cmp : Integer.compare(index, other.index);
+        }
+    }
+}
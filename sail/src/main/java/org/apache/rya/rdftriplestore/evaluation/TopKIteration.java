@@ -0,0 +1,111 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+/**
+ * Returns the first k binding sets of an iteration in the order of a comparator, keeping only k
+ * binding sets in memory instead of sorting the whole result.
+ * <p>
+ * If the source is known to arrive in comparator order, for example a scan over the index of the
+ * ordered variable, the source is only read until k binding sets have been seen. Should a binding
+ * set arrive out of order the rest of the source is read into the heap as usual.
+ */
+public class TopKIteration extends LookAheadIteration<BindingSet, QueryEvaluationException> {
+
+    private final CloseableIteration<BindingSet, QueryEvaluationException> source;
+    private final Comparator<BindingSet> comparator;
+    private final int k;
+    private boolean sourceOrdered;
+    private Iterator<BindingSet> sorted;
+
+    /**
+     * @param source the binding sets to order
+     * @param comparator the order of the results
+     * @param k the number of binding sets to return, usually the offset plus the limit of the query
+     * @param sourceOrdered true if the source arrives in comparator order
+     */
+    public TopKIteration(CloseableIteration<BindingSet, QueryEvaluationException> source, Comparator<BindingSet> comparator,
+                         int k, boolean sourceOrdered) {
+        this.source = source;
+        this.comparator = comparator;
+        this.k = k;
+        this.sourceOrdered = sourceOrdered;
+    }
+
+    @Override
+    protected BindingSet getNextElement() throws QueryEvaluationException {
+        if (sorted == null) {
+            sorted = selectTopK().iterator();
+        }
+        return sorted.hasNext() ? sorted.next() : null;
+    }
+
+    private List<BindingSet> selectTopK() throws QueryEvaluationException {
+        // max-heap on the comparator, the head is the first binding set to drop
+        PriorityQueue<BindingSet> heap = new PriorityQueue<BindingSet>(Math.max(1, Math.min(k, 1024)),
+                Collections.reverseOrder(comparator));
+        BindingSet previous = null;
+        try {
+            while (k > 0 && source.hasNext()) {
+                BindingSet next = source.next();
+                if (sourceOrdered && previous != null && comparator.compare(previous, next) > 0) {
+                    sourceOrdered = false;
+                }
+                previous = next;
+                if (heap.size() < k) {
+                    heap.add(next);
+                } else if (comparator.compare(next, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(next);
+                }
+                if (sourceOrdered && heap.size() == k) {
+                    break;
+                }
+            }
+        } finally {
+            source.close();
+        }
+        List<BindingSet> result = new ArrayList<BindingSet>(heap);
+        Collections.sort(result, comparator);
+        return result;
+    }
+
+    @Override
+    protected void handleClose() throws QueryEvaluationException {
+        try {
+            super.handleClose();
+        } finally {
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package org.apache.rya.rdftriplestore.inference;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.openrdf.model.URI;
+
+/**
+ * The transitive closure of a hierarchy such as rdfs:subClassOf, computed once from its direct
+ * edges. Every term is numbered, and its ancestors and descendants are kept as sorted arrays of
+ * term numbers, so a lookup is a map access and returns a read only view of the array.
+ * <p>
+ * A closure is immutable, so the {@link InferenceEngine} can replace it on refresh while queries
+ * are reading the previous one. An added edge only recomputes the terms it connects, while a
+ * batch of added edges or a removed edge rederives the closure from the direct edges.
+ */
+public final class HierarchyClosure {
+
+    private static final int[] NONE = new int[0];
+
+    public static final HierarchyClosure EMPTY = new Builder().build();
+
+    private final URI[] terms;
+    private final Map<URI, Integer> index;
+    private final int[][] parents;
+    private final int[][] ancestors;
+    private final int[][] descendants;
+
+    private HierarchyClosure(URI[] terms, Map<URI, Integer> index, int[][] parents, int[][] ancestors, int[][] descendants) {
+        this.terms = terms;
+        this.index = index;
+        this.parents = parents;
+        this.ancestors = ancestors;
+        this.descendants = descendants;
+    }
+
+    /**
+     * @return the terms the given term is directly or indirectly below, not including itself
+     *      unless it is part of a cycle
+     */
+    public Set<URI> getAncestors(URI term) {
+        Integer i = index.get(term);
+        return i == null ? Collections.<URI>emptySet() : new TermSet(ancestors[i]);
+    }
+
+    /**
+     * @return the terms directly or indirectly below the given term, not including itself unless
+     *      it is part of a cycle
+     */
+    public Set<URI> getDescendants(URI term) {
+        Integer i = index.get(term);
+        return i == null ? Collections.<URI>emptySet() : new TermSet(descendants[i]);
+    }
+
+    /**
+     * @return the terms the given term is directly below
+     */
+    public Set<URI> getParents(URI term) {
+        Integer i = index.get(term);
+        return i == null ? Collections.<URI>emptySet() : new TermSet(parents[i]);
+    }
+
+    /**
+     * @return every term of the hierarchy
+     */
+    public List<URI> getTerms() {
+        return Collections.unmodifiableList(Arrays.asList(terms));
+    }
+
+    /**
+     * @return the number of terms in the hierarchy
+     */
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * @return true if the hierarchy has the direct edge
+     */
+    public boolean hasEdge(URI sub, URI sup) {
+        Integer s = index.get(sub);
+        Integer p = index.get(sup);
+        return s != null && p != null && Arrays.binarySearch(parents[s], p) >= 0;
+    }
+
+    /**
+     * @return a closure that also has the direct edge, this one if it already had it
+     */
+    public HierarchyClosure withEdge(URI sub, URI sup) {
+        if (hasEdge(sub, sup)) {
+            return this;
+        }
+        Map<URI, Integer> newIndex = new HashMap<URI, Integer>(index);
+        List<URI> newTerms = new ArrayList<URI>(Arrays.asList(terms));
+        int s = term(sub, newIndex, newTerms);
+        int p = term(sup, newIndex, newTerms);
+        int n = newTerms.size();
+        int[][] newParents = grow(parents, n);
+        int[][] newAncestors = grow(ancestors, n);
+        int[][] newDescendants = grow(descendants, n);
+        newParents[s] = merge(newParents[s], new int[] {p});
+
+        // every path the edge adds leads from sub or a term below it to sup or a term above it
+        int[] below = merge(newDescendants[s], new int[] {s});
+        int[] above = merge(newAncestors[p], new int[] {p});
+        for (int d : below) {
+            newAncestors[d] = merge(newAncestors[d], above);
+        }
+        for (int a : above) {
+            newDescendants[a] = merge(newDescendants[a], below);
+        }
+        return new HierarchyClosure(newTerms.toArray(new URI[n]), Collections.unmodifiableMap(newIndex),
+                newParents, newAncestors, newDescendants);
+    }
+
+    /**
+     * Adds several direct edges at once. Each {@link #withEdge} copies the closure, so a batch of
+     * more than one edge is instead rederived together with the existing edges in a single pass.
+     * @param edges pairs of sub and super term
+     * @return a closure that also has the direct edges, this one if it already had all of them
+     */
+    public HierarchyClosure withEdges(List<URI[]> edges) {
+        List<URI[]> added = new ArrayList<URI[]>(edges.size());
+        for (URI[] edge : edges) {
+            if (!hasEdge(edge[0], edge[1])) {
+                added.add(edge);
+            }
+        }
+        if (added.isEmpty()) {
+            return this;
+        }
+        if (added.size() == 1) {
+            return withEdge(added.get(0)[0], added.get(0)[1]);
+        }
+        Builder builder = toBuilder(-1, -1);
+        for (URI[] edge : added) {
+            builder.addEdge(edge[0], edge[1]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return a closure rederived without the direct edge, this one if it did not have it
+     */
+    public HierarchyClosure withoutEdge(URI sub, URI sup) {
+        if (!hasEdge(sub, sup)) {
+            return this;
+        }
+        return toBuilder(index.get(sub), index.get(sup)).build();
+    }
+
+    /**
+     * @return a builder with the direct edges of this closure, except the one from s to p
+     */
+    private Builder toBuilder(int s, int p) {
+        Builder builder = new Builder();
+        for (int i = 0; i < terms.length; i++) {
+            for (int parent : parents[i]) {
+                if (i != s || parent != p) {
+                    builder.addEdge(terms[i], terms[parent]);
+                }
+            }
+        }
+        return builder;
+    }
+
+    private static int term(URI uri, Map<URI, Integer> index, List<URI> terms) {
+        Integer i = index.get(uri);
+        if (i == null) {
+            i = terms.size();
+            index.put(uri, i);
+            terms.add(uri);
+        }
+        return i;
+    }
+
+    private static int[][] grow(int[][] arrays, int n) {
+        int[][] grown = Arrays.copyOf(arrays, n);
+        for (int i = arrays.length; i < n; i++) {
+            grown[i] = NONE;
+        }
+        return grown;
+    }
+
+    /**
+     * @return the sorted union of two sorted arrays
+     */
+    private static int[] merge(int[] a, int[] b) {
+        int[] merged = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.length || j < b.length) {
+            int next;
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                next = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                next = b[j++];
+            } else {
+                next = a[i++];
+                j++;
+            }
+            merged[k++] = next;
+        }
+        return k == merged.length ? merged : Arrays.copyOf(merged, k);
+    }
+
+    /**
+     * A read only set over a sorted array of term numbers.
+     */
+    private class TermSet extends AbstractSet<URI> {
+        private final int[] members;
+
+        TermSet(int[] members) {
+            this.members = members;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            Integer i = index.get(o);
+            return i != null && Arrays.binarySearch(members, i) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return members.length;
+        }
+
+        @Override
+        public Iterator<URI> iterator() {
+            return new Iterator<URI>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < members.length;
+                }
+
+                @Override
+                public URI next() {
+                    if (next >= members.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return terms[members[next++]];
+                }
+            };
+        }
+    }
+
+    /**
+     * Collects the direct edges of a hierarchy and computes its closure.
+     */
+    public static class Builder {
+        private final List<URI> terms = new ArrayList<URI>();
+        private final Map<URI, Integer> index = new HashMap<URI, Integer>();
+        private final List<List<Integer>> up = new ArrayList<List<Integer>>();
+        private final List<List<Integer>> down = new ArrayList<List<Integer>>();
+
+        /**
+         * Adds a direct edge, such as {@code sub rdfs:subClassOf sup}.
+         */
+        public Builder addEdge(URI sub, URI sup) {
+            int s = term(sub);
+            int p = term(sup);
+            up.get(s).add(p);
+            down.get(p).add(s);
+            return this;
+        }
+
+        private int term(URI uri) {
+            Integer i = index.get(uri);
+            if (i == null) {
+                i = terms.size();
+                index.put(uri, i);
+                terms.add(uri);
+                up.add(new ArrayList<Integer>(2));
+                down.add(new ArrayList<Integer>(2));
+            }
+            return i;
+        }
+
+        public HierarchyClosure build() {
+            int n = terms.size();
+            int[][] parents = new int[n][];
+            int[][] ancestors = new int[n][];
+            int[][] descendants = new int[n][];
+            int[] visited = new int[n];
+            int[] stack = new int[n + 1];
+            for (int i = 0; i < n; i++) {
+                parents[i] = direct(up.get(i));
+                ancestors[i] = reach(i, up, visited, stack, 2 * i + 1);
+                descendants[i] = reach(i, down, visited, stack, 2 * i + 2);
+            }
+            return new HierarchyClosure(terms.toArray(new URI[n]), Collections.unmodifiableMap(new HashMap<URI, Integer>(index)),
+                    parents, ancestors, descendants);
+        }
+
+        private static int[] direct(List<Integer> edges) {
+            if (edges.isEmpty()) {
+                return NONE;
+            }
+            int[] sorted = new int[edges.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = edges.get(i);
+            }
+            Arrays.sort(sorted);
+            int k = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (k == 0 || sorted[i] != sorted[k - 1]) {
+                    sorted[k++] = sorted[i];
+                }
+            }
+            return k == sorted.length ? sorted : Arrays.copyOf(sorted, k);
+        }
+
+        /**
+         * Walks the edges from a term, using a mark that is unique to the walk so the visited
+         * array never needs clearing. The start term is only reached through a cycle.
+         */
+        private static int[] reach(int from, List<List<Integer>> edges, int[] visited, int[] stack, int mark) {
+            if (edges.get(from).isEmpty()) {
+                return NONE;
+            }
+            int found = 0;
+            int top = 0;
+            stack[top++] = from;
+            int[] reached = new int[8];
+            while (top > 0) {
+                for (int next : edges.get(stack[--top])) {
+                    if (visited[next] != mark) {
+                        visited[next] = mark;
+                        stack[top++] = next;
+                        if (found == reached.length) {
+                            reached = Arrays.copyOf(reached, found * 2);
+                        }
+                        reached[found++] = next;
+                    }
+                }
+            }
+            int[] sorted = Arrays.copyOf(reached, found);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
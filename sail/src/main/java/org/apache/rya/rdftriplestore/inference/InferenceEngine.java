@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -58,6 +59,7 @@ import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
 import org.apache.rya.api.persist.RyaDAO;
 import org.apache.rya.api.persist.RyaDAOException;
 import org.apache.rya.api.persist.utils.RyaDAOHelper;
+import org.apache.rya.rdftriplestore.cache.QueryResultCache;
 
 /**
  * Will pull down inference relationships from dao every x seconds. <br>
@@ -66,13 +68,20 @@ import org.apache.rya.api.persist.utils.RyaDAOHelper;
  */
 public class InferenceEngine {
 
-    private Graph subClassOfGraph;
-    private Graph subPropertyOfGraph;
-    private Set<URI> symmetricPropertySet;
-    private Map<URI, URI> inverseOfMap;
-    private Set<URI> transitivePropertySet;
-    private Map<Resource, Map<URI, Value>> hasValueByType;
-    private Map<URI, Map<Resource, Value>> hasValueByProperty;
+    private volatile Hierarchies hierarchies = Hierarchies.EMPTY;
+    //hierarchy edges and sameAs pairs added since the hierarchies and index were last built, guarded by this
+    private final List<URI[]> pendingSubClassOf = new ArrayList<URI[]>();
+    private final List<URI[]> pendingSubPropertyOf = new ArrayList<URI[]>();
+    private final List<Resource[]> pendingSameAs = new ArrayList<Resource[]>();
+    private volatile boolean pendingChanges = false;
+    private volatile QueryResultCache queryResultCache;
+    private volatile SameAsIndex sameAsIndex = new SameAsIndex.Builder().build();
+    private volatile TransitiveClosure transitiveClosure;
+    private volatile Set<URI> symmetricPropertySet;
+    private volatile Map<URI, URI> inverseOfMap;
+    private volatile Set<URI> transitivePropertySet;
+    private volatile Map<Resource, Map<URI, Value>> hasValueByType;
+    private volatile Map<URI, Map<Resource, Value>> hasValueByProperty;
 
     private RyaDAO ryaDAO;
     private RdfCloudTripleStoreConfiguration conf;
@@ -81,9 +90,13 @@ public class InferenceEngine {
 
     private long refreshGraphSchedule = 5 * 60 * 1000; //5 min
     private Timer timer;
-	private HashMap<URI, List<URI>> propertyChainPropertyToChain = new HashMap<URI, List<URI>>();
+    private volatile HashMap<URI, List<URI>> propertyChainPropertyToChain = new HashMap<URI, List<URI>>();
     public static final String URI_PROP = "uri";
 
+    private static final URI PROPERTY_CHAIN_AXIOM = ValueFactoryImpl.getInstance().createURI("http://www.w3.org/2002/07/owl#propertyChainAxiom");
+    private static final Set<URI> SCHEMA_PREDICATES = new HashSet<URI>(Arrays.asList(RDFS.SUBCLASSOF, RDFS.SUBPROPERTYOF,
+            OWL.EQUIVALENTPROPERTY, RDF.TYPE, OWL.INVERSEOF, OWL.ONPROPERTY, OWL.HASVALUE, PROPERTY_CHAIN_AXIOM, OWL.SAMEAS));
+
     public void init() throws InferenceEngineException {
         try {
             if (isInitialized()) {
@@ -124,17 +137,18 @@ public class InferenceEngine {
         }
     }
 
-    public void refreshGraph() throws InferenceEngineException {
+    public synchronized void refreshGraph() throws InferenceEngineException {
         try {
+            //the edges were written before they were passed in, so the rescan finds them
+            clearPendingChanges();
             //get all subclassof
-            Graph graph = TinkerGraph.open();
+            HierarchyClosure.Builder closure = new HierarchyClosure.Builder();
             CloseableIteration<Statement, QueryEvaluationException> iter = RyaDAOHelper.query(ryaDAO, null,
                     RDFS.SUBCLASSOF, null, conf);
             try {
                 while (iter.hasNext()) {
-                    String edgeName = RDFS.SUBCLASSOF.stringValue();
                     Statement st = iter.next();
-                    addStatementEdge(graph, edgeName, st);
+                    addClosureEdge(closure, st.getSubject(), st.getObject());
                 }
             } finally {
                 if (iter != null) {
@@ -142,17 +156,16 @@ public class InferenceEngine {
                 }
             }
 
-            subClassOfGraph = graph; //TODO: Should this be synchronized?
+            HierarchyClosure subClassOfClosure = closure.build();
 
-            graph = TinkerGraph.open();
+            closure = new HierarchyClosure.Builder();
 
             iter = RyaDAOHelper.query(ryaDAO, null,
                     RDFS.SUBPROPERTYOF, null, conf);
             try {
                 while (iter.hasNext()) {
-                    String edgeName = RDFS.SUBPROPERTYOF.stringValue();
                     Statement st = iter.next();
-                    addStatementEdge(graph, edgeName, st);
+                    addClosureEdge(closure, st.getSubject(), st.getObject());
                 }
             } finally {
                 if (iter != null) {
@@ -164,11 +177,10 @@ public class InferenceEngine {
             iter = RyaDAOHelper.query(ryaDAO, null, OWL.EQUIVALENTPROPERTY, null, conf);
             try {
                 while (iter.hasNext()) {
-                    String edgeName = RDFS.SUBPROPERTYOF.stringValue();
                     Statement st = iter.next();
-                    addStatementEdge(graph, edgeName, st);
+                    addClosureEdge(closure, st.getSubject(), st.getObject());
                     //reverse is also true
-                    addStatementEdge(graph, edgeName, new StatementImpl((Resource) st.getObject(), st.getPredicate(), st.getSubject()));
+                    addClosureEdge(closure, st.getObject(), st.getSubject());
                 }
             } finally {
                 if (iter != null) {
@@ -176,7 +188,8 @@ public class InferenceEngine {
                 }
             }
 
-            subPropertyOfGraph = graph; //TODO: Should this be synchronized?
+            // publish both hierarchies at once, queries see either the old or the new ones
+            hierarchies = new Hierarchies(subClassOfClosure, closure.build());
 
             iter = RyaDAOHelper.query(ryaDAO, null, RDF.TYPE, OWL.SYMMETRICPROPERTY, conf);
             Set<URI> symProp = new HashSet();
@@ -205,6 +218,9 @@ public class InferenceEngine {
                 }
             }
             transitivePropertySet = transProp;
+            if (isTransitiveClosureEnabled()) {
+                getTransitiveClosure().refresh(transProp);
+            }
 
             iter = RyaDAOHelper.query(ryaDAO, null, OWL.INVERSEOF, null, conf);
             Map<URI, URI> invProp = new HashMap();
@@ -221,153 +237,173 @@ public class InferenceEngine {
             }
             inverseOfMap = invProp;
             
-            ValueFactory vf = ValueFactoryImpl.getInstance();
-            iter = RyaDAOHelper.query(ryaDAO, null, 
-            		vf.createURI("http://www.w3.org/2002/07/owl#propertyChainAxiom"),
-            		null, conf);
-            Map<URI,URI> propertyChainPropertiesToBNodes = new HashMap<URI, URI>();
-            propertyChainPropertyToChain = new HashMap<URI, List<URI>>();
-            try {
-            	while (iter.hasNext()){
-            		Statement st = iter.next();
-            		propertyChainPropertiesToBNodes.put((URI)st.getSubject(), (URI)st.getObject());
-            	}
-            } finally {
-                if (iter != null) {
-                    iter.close();
+            refreshPropertyChains();
+            refreshPropertyRestrictions();
+            refreshSameAs();
+            schemaChanged();
+        } catch (QueryEvaluationException e) {
+            throw new InferenceEngineException(e);
+        }
+    }
+
+    private void refreshSameAs() throws QueryEvaluationException {
+        SameAsIndex.Builder index = new SameAsIndex.Builder();
+        CloseableIteration<Statement, QueryEvaluationException> iter = RyaDAOHelper.query(ryaDAO, null, OWL.SAMEAS, null, conf);
+        try {
+            while (iter.hasNext()) {
+                Statement st = iter.next();
+                if (st.getObject() instanceof Resource) {
+                    index.add(st.getSubject(), (Resource) st.getObject());
                 }
             }
-            // now for each property chain bNode, get the indexed list of properties associated with that chain
-            for (URI propertyChainProperty : propertyChainPropertiesToBNodes.keySet()){
-            	URI bNode = propertyChainPropertiesToBNodes.get(propertyChainProperty);
-            	// query for the list of indexed properties
-            	iter = RyaDAOHelper.query(ryaDAO, bNode, vf.createURI("http://www.w3.org/2000/10/swap/list#index"),
-            			null, conf);
-            	TreeMap<Integer, URI> orderedProperties = new TreeMap<Integer, URI>();
-            	// TODO refactor this.  Wish I could execute sparql
-            	try {
-            		while (iter.hasNext()){
-            		  Statement st = iter.next();
-            		  String indexedElement = st.getObject().stringValue();
-            		  System.out.println(indexedElement);
-            		  CloseableIteration<Statement, QueryEvaluationException>  iter2 = RyaDAOHelper.query(ryaDAO, vf.createURI(st.getObject().stringValue()), RDF.FIRST,
-                    			null, conf);
-            		  String integerValue = "";
-            		  Value anonPropNode = null;
-            		  Value propURI = null;
-            		  if (iter2 != null){
-            			  while (iter2.hasNext()){
+        } finally {
+            if (iter != null) {
+                iter.close();
+            }
+        }
+        sameAsIndex = index.build();
+    }
+
+    private void refreshPropertyChains() throws QueryEvaluationException {
+        ValueFactory vf = ValueFactoryImpl.getInstance();
+        CloseableIteration<Statement, QueryEvaluationException> iter = RyaDAOHelper.query(ryaDAO, null,
+        		PROPERTY_CHAIN_AXIOM, null, conf);
+        Map<URI,URI> propertyChainPropertiesToBNodes = new HashMap<URI, URI>();
+        HashMap<URI, List<URI>> propertyChainPropertyToChain = new HashMap<URI, List<URI>>();
+        try {
+        	while (iter.hasNext()){
+        		Statement st = iter.next();
+        		propertyChainPropertiesToBNodes.put((URI)st.getSubject(), (URI)st.getObject());
+        	}
+        } finally {
+            if (iter != null) {
+                iter.close();
+            }
+        }
+        // now for each property chain bNode, get the indexed list of properties associated with that chain
+        for (URI propertyChainProperty : propertyChainPropertiesToBNodes.keySet()){
+        	URI bNode = propertyChainPropertiesToBNodes.get(propertyChainProperty);
+        	// query for the list of indexed properties
+        	iter = RyaDAOHelper.query(ryaDAO, bNode, vf.createURI("http://www.w3.org/2000/10/swap/list#index"),
+        			null, conf);
+        	TreeMap<Integer, URI> orderedProperties = new TreeMap<Integer, URI>();
+        	// TODO refactor this.  Wish I could execute sparql
+        	try {
+        		while (iter.hasNext()){
+        		  Statement st = iter.next();
+        		  CloseableIteration<Statement, QueryEvaluationException>  iter2 = RyaDAOHelper.query(ryaDAO, vf.createURI(st.getObject().stringValue()), RDF.FIRST,
+                			null, conf);
+        		  String integerValue = "";
+        		  Value anonPropNode = null;
+        		  Value propURI = null;
+        		  if (iter2 != null){
+        			  while (iter2.hasNext()){
+        				  Statement iter2Statement = iter2.next();
+        				  integerValue = iter2Statement.getObject().stringValue();
+        				  break;
+        			  }
+        			  iter2.close();
+        		  }
+        		  iter2 = RyaDAOHelper.query(ryaDAO, vf.createURI(st.getObject().stringValue()), RDF.REST,
+              			null, conf);
+        		  if (iter2 != null){
+        			  while (iter2.hasNext()){
+        				  Statement iter2Statement = iter2.next();
+        				  anonPropNode = iter2Statement.getObject();
+        				  break;
+        			  }
+        			  iter2.close();
+        			  if (anonPropNode != null){
+        				  iter2 = RyaDAOHelper.query(ryaDAO, vf.createURI(anonPropNode.stringValue()), RDF.FIRST,
+                        			null, conf);
+        				  while (iter2.hasNext()){
             				  Statement iter2Statement = iter2.next();
-            				  integerValue = iter2Statement.getObject().stringValue();
+            				  propURI = iter2Statement.getObject();
             				  break;
             			  }
             			  iter2.close();
-            		  }
-            		  iter2 = RyaDAOHelper.query(ryaDAO, vf.createURI(st.getObject().stringValue()), RDF.REST,
-                  			null, conf);
-            		  if (iter2 != null){
-            			  while (iter2.hasNext()){
-            				  Statement iter2Statement = iter2.next();
-            				  anonPropNode = iter2Statement.getObject();
-            				  break;
+        			  }
+        		  }
+        		  if (!integerValue.isEmpty() && propURI!=null) {
+        			  try {
+            			  int indexValue = Integer.parseInt(integerValue);
+            			  URI chainPropURI = vf.createURI(propURI.stringValue());
+            			  orderedProperties.put(indexValue, chainPropURI);
+        			  }
+        			  catch (Exception ex){
+        				  // TODO log an error here
+        				  
+        			  }
+        		  }
+        		}
+        	} finally{
+        		if (iter != null){
+        			iter.close();
+        		}
+        	}
+        	List<URI> properties = new ArrayList<URI>();
+        	for (Map.Entry<Integer, URI> entry : orderedProperties.entrySet()){
+        		properties.add(entry.getValue());
+        	}
+        	propertyChainPropertyToChain.put(propertyChainProperty, properties);
+        }
+        
+        // could also be represented as a list of properties (some of which may be blank nodes)
+        for (URI propertyChainProperty : propertyChainPropertiesToBNodes.keySet()){
+        	List<URI> existingChain = propertyChainPropertyToChain.get(propertyChainProperty);
+        	// if we didn't get a chain, try to get it through following the collection
+        	if ((existingChain == null) || existingChain.isEmpty()) {
+        		
+      		  CloseableIteration<Statement, QueryEvaluationException>  iter2 = RyaDAOHelper.query(ryaDAO, propertyChainPropertiesToBNodes.get(propertyChainProperty), RDF.FIRST,
+          			null, conf);
+      		  List<URI> properties = new ArrayList<URI>();
+      		  URI previousBNode = propertyChainPropertiesToBNodes.get(propertyChainProperty);
+        	  if (iter2.hasNext()) {
+        		  Statement iter2Statement = iter2.next();
+        		  Value currentPropValue = iter2Statement.getObject();
+        		  while ((currentPropValue != null) && (!currentPropValue.stringValue().equalsIgnoreCase(RDF.NIL.stringValue()))){
+            		  if (currentPropValue instanceof URI){
+                		  iter2 = RyaDAOHelper.query(ryaDAO, vf.createURI(currentPropValue.stringValue()), RDF.FIRST,
+                      			null, conf);
+            			  if (iter2.hasNext()){
+            				  iter2Statement = iter2.next();
+            				  if (iter2Statement.getObject() instanceof URI){
+            					  properties.add((URI)iter2Statement.getObject());
+            				  }
             			  }
-            			  iter2.close();
-            			  if (anonPropNode != null){
-            				  iter2 = RyaDAOHelper.query(ryaDAO, vf.createURI(anonPropNode.stringValue()), RDF.FIRST,
+            			  // otherwise see if there is an inverse declaration
+            			  else {
+            				  iter2 = RyaDAOHelper.query(ryaDAO, vf.createURI(currentPropValue.stringValue()), OWL.INVERSEOF,
                             			null, conf);
-            				  while (iter2.hasNext()){
-                				  Statement iter2Statement = iter2.next();
-                				  propURI = iter2Statement.getObject();
-                				  break;
-                			  }
-                			  iter2.close();
-            			  }
-            		  }
-            		  if (!integerValue.isEmpty() && propURI!=null) {
-            			  try {
-                			  int indexValue = Integer.parseInt(integerValue);
-                			  URI chainPropURI = vf.createURI(propURI.stringValue());
-                			  orderedProperties.put(indexValue, chainPropURI);
-            			  }
-            			  catch (Exception ex){
-            				  // TODO log an error here
-            				  
-            			  }
-            		  }
-            		}
-            	} finally{
-            		if (iter != null){
-            			iter.close();
-            		}
-            	}
-            	List<URI> properties = new ArrayList<URI>();
-            	for (Map.Entry<Integer, URI> entry : orderedProperties.entrySet()){
-            		properties.add(entry.getValue());
-            	}
-            	propertyChainPropertyToChain.put(propertyChainProperty, properties);
-            }
-            
-            // could also be represented as a list of properties (some of which may be blank nodes)
-            for (URI propertyChainProperty : propertyChainPropertiesToBNodes.keySet()){
-            	List<URI> existingChain = propertyChainPropertyToChain.get(propertyChainProperty);
-            	// if we didn't get a chain, try to get it through following the collection
-            	if ((existingChain == null) || existingChain.isEmpty()) {
-            		
-          		  CloseableIteration<Statement, QueryEvaluationException>  iter2 = RyaDAOHelper.query(ryaDAO, propertyChainPropertiesToBNodes.get(propertyChainProperty), RDF.FIRST,
-              			null, conf);
-          		  List<URI> properties = new ArrayList<URI>();
-          		  URI previousBNode = propertyChainPropertiesToBNodes.get(propertyChainProperty);
-            	  if (iter2.hasNext()) {
-            		  Statement iter2Statement = iter2.next();
-            		  Value currentPropValue = iter2Statement.getObject();
-            		  while ((currentPropValue != null) && (!currentPropValue.stringValue().equalsIgnoreCase(RDF.NIL.stringValue()))){
-                		  if (currentPropValue instanceof URI){
-                    		  iter2 = RyaDAOHelper.query(ryaDAO, vf.createURI(currentPropValue.stringValue()), RDF.FIRST,
-                          			null, conf);
-                			  if (iter2.hasNext()){
+            				  if (iter2.hasNext()){
                 				  iter2Statement = iter2.next();
                 				  if (iter2Statement.getObject() instanceof URI){
-                					  properties.add((URI)iter2Statement.getObject());
+                					  properties.add(new InverseURI((URI)iter2Statement.getObject()));
                 				  }
                 			  }
-                			  // otherwise see if there is an inverse declaration
-                			  else {
-                				  iter2 = RyaDAOHelper.query(ryaDAO, vf.createURI(currentPropValue.stringValue()), OWL.INVERSEOF,
-                                			null, conf);
-                				  if (iter2.hasNext()){
-                    				  iter2Statement = iter2.next();
-                    				  if (iter2Statement.getObject() instanceof URI){
-                    					  properties.add(new InverseURI((URI)iter2Statement.getObject()));
-                    				  }
-                    			  }
-                			  }
-            				  // get the next prop pointer
-            				  iter2 = RyaDAOHelper.query(ryaDAO, previousBNode, RDF.REST,
-                            			null, conf);
-            				  if (iter2.hasNext()){
-                				  iter2Statement = iter2.next();
-                				  previousBNode = (URI)currentPropValue;
-                				  currentPropValue = iter2Statement.getObject();
-                			  }
-            				  else {
-            					  currentPropValue = null;
-            				  }
-                		  }
-                		  else {
-                		    currentPropValue = null;
-                		  }
-            			  
+            			  }
+        				  // get the next prop pointer
+        				  iter2 = RyaDAOHelper.query(ryaDAO, previousBNode, RDF.REST,
+                        			null, conf);
+        				  if (iter2.hasNext()){
+            				  iter2Statement = iter2.next();
+            				  previousBNode = (URI)currentPropValue;
+            				  currentPropValue = iter2Statement.getObject();
+            			  }
+        				  else {
+        					  currentPropValue = null;
+        				  }
             		  }
-                  	propertyChainPropertyToChain.put(propertyChainProperty, properties);
-            	  }
-            	}
-            }
-
-            refreshPropertyRestrictions();
-
-        } catch (QueryEvaluationException e) {
-            throw new InferenceEngineException(e);
+            		  else {
+            		    currentPropValue = null;
+            		  }
+        			  
+        		  }
+              	propertyChainPropertyToChain.put(propertyChainProperty, properties);
+        	  }
+        	}
         }
+        this.propertyChainPropertyToChain = propertyChainPropertyToChain;
     }
 
     private void refreshPropertyRestrictions() throws QueryEvaluationException {
@@ -416,6 +452,312 @@ public class InferenceEngine {
         }
     }
 
+    /**
+     * @return true if statements with the predicate are part of the schema the engine reads
+     */
+    public static boolean isSchemaPredicate(URI predicate) {
+        return SCHEMA_PREDICATES.contains(predicate);
+    }
+
+    /**
+     * Applies a written statement to the schema, so inferences reflect it without waiting for the
+     * next refresh. Hierarchy edges and property characteristics are updated in place, property
+     * chains and restrictions are reread. Statements outside the schema are ignored.
+     */
+    public synchronized void statementAdded(Statement st) throws InferenceEngineException {
+        URI pred = st.getPredicate();
+        if (isTransitiveClosureEnabled() && isTransitiveProperty(pred)) {
+            getTransitiveClosure().added(st.getSubject(), pred, st.getObject());
+            schemaChanged();
+        }
+        //a schema predicate, rdfs:subClassOf for example, may be declared transitive too
+        if (!isSchemaPredicate(pred)) {
+            return;
+        }
+        Resource subj = st.getSubject();
+        Value obj = st.getObject();
+        //hierarchy edges and sameAs pairs are collected and applied together on the next read
+        if (RDFS.SUBCLASSOF.equals(pred)) {
+            if (subj instanceof URI && obj instanceof URI) {
+                pendingSubClassOf.add(new URI[] {(URI) subj, (URI) obj});
+                pendingChanges = true;
+            }
+        } else if (RDFS.SUBPROPERTYOF.equals(pred)) {
+            if (subj instanceof URI && obj instanceof URI) {
+                pendingSubPropertyOf.add(new URI[] {(URI) subj, (URI) obj});
+                pendingChanges = true;
+            }
+        } else if (OWL.EQUIVALENTPROPERTY.equals(pred)) {
+            if (subj instanceof URI && obj instanceof URI) {
+                pendingSubPropertyOf.add(new URI[] {(URI) subj, (URI) obj});
+                pendingSubPropertyOf.add(new URI[] {(URI) obj, (URI) subj});
+                pendingChanges = true;
+            }
+        } else if (RDF.TYPE.equals(pred)) {
+            if (subj instanceof URI && OWL.SYMMETRICPROPERTY.equals(obj)) {
+                symmetricPropertySet = with(symmetricPropertySet, (URI) subj);
+            } else if (subj instanceof URI && OWL.TRANSITIVEPROPERTY.equals(obj)) {
+                transitivePropertySet = with(transitivePropertySet, (URI) subj);
+                if (isTransitiveClosureEnabled()) {
+                    try {
+                        getTransitiveClosure().materialize((URI) subj);
+                    } catch (QueryEvaluationException e) {
+                        throw new InferenceEngineException(e);
+                    }
+                }
+            }
+        } else if (OWL.SAMEAS.equals(pred)) {
+            if (obj instanceof Resource) {
+                pendingSameAs.add(new Resource[] {subj, (Resource) obj});
+                pendingChanges = true;
+            }
+        } else if (OWL.INVERSEOF.equals(pred)) {
+            if (!(subj instanceof URI && obj instanceof URI)) {
+                return;
+            }
+            Map<URI, URI> invProp = inverseOfMap == null ? new HashMap<URI, URI>() : new HashMap<URI, URI>(inverseOfMap);
+            invProp.put((URI) subj, (URI) obj);
+            invProp.put((URI) obj, (URI) subj);
+            inverseOfMap = invProp;
+        } else {
+            refreshSchemaResources(pred);
+        }
+        schemaChanged();
+    }
+
+    /**
+     * Applies deleted statements to the schema. The pattern may leave the subject or object
+     * unbound, in which case the whole schema is refreshed. A statement that is still stored, in
+     * another context for example, or that is still implied by another schema statement, is kept.
+     */
+    public synchronized void statementsRemoved(Resource subj, URI pred, Value obj) throws InferenceEngineException {
+        if (isTransitiveClosureEnabled() && (pred == null || isTransitiveProperty(pred))) {
+            removeFromTransitiveClosures(subj, pred, obj);
+            schemaChanged();
+        }
+        if (pred != null && !isSchemaPredicate(pred)) {
+            return;
+        }
+        if (RDF.TYPE.equals(pred) && obj != null && !OWL.SYMMETRICPROPERTY.equals(obj) && !OWL.TRANSITIVEPROPERTY.equals(obj)) {
+            return;
+        }
+        if (subj == null || pred == null || obj == null) {
+            refreshGraph();
+            return;
+        }
+        try {
+            if (exists(subj, pred, obj)) {
+                return;
+            }
+            applyPendingChanges();
+            Hierarchies current = hierarchies;
+            if (RDFS.SUBCLASSOF.equals(pred)) {
+                if (subj instanceof URI && obj instanceof URI) {
+                    hierarchies = new Hierarchies(current.subClassOf.withoutEdge((URI) subj, (URI) obj), current.subPropertyOf);
+                }
+            } else if (RDFS.SUBPROPERTYOF.equals(pred) || OWL.EQUIVALENTPROPERTY.equals(pred)) {
+                if (subj instanceof URI && obj instanceof URI) {
+                    HierarchyClosure subPropertyOf = current.subPropertyOf;
+                    if (!isSubPropertyAsserted((URI) subj, (URI) obj)) {
+                        subPropertyOf = subPropertyOf.withoutEdge((URI) subj, (URI) obj);
+                    }
+                    if (OWL.EQUIVALENTPROPERTY.equals(pred) && !isSubPropertyAsserted((URI) obj, (URI) subj)) {
+                        subPropertyOf = subPropertyOf.withoutEdge((URI) obj, (URI) subj);
+                    }
+                    hierarchies = new Hierarchies(current.subClassOf, subPropertyOf);
+                }
+            } else if (RDF.TYPE.equals(pred)) {
+                if (OWL.SYMMETRICPROPERTY.equals(obj)) {
+                    symmetricPropertySet = without(symmetricPropertySet, subj);
+                } else if (OWL.TRANSITIVEPROPERTY.equals(obj)) {
+                    transitivePropertySet = without(transitivePropertySet, subj);
+                    if (isTransitiveClosureEnabled() && subj instanceof URI) {
+                        getTransitiveClosure().drop((URI) subj);
+                    }
+                }
+            } else if (OWL.SAMEAS.equals(pred)) {
+                // the class may split, it is found again from the remaining statements of its members
+                if (sameAsIndex.contains(subj)) {
+                    rebuildSameAsClass(sameAsIndex.getSameAs(subj));
+                }
+            } else if (OWL.INVERSEOF.equals(pred)) {
+                // the pair is declared both ways in the map, it stays if the reverse is stated
+                if (inverseOfMap != null && subj instanceof URI && obj instanceof URI
+                        && !exists((Resource) obj, OWL.INVERSEOF, subj)) {
+                    Map<URI, URI> invProp = new HashMap<URI, URI>(inverseOfMap);
+                    invProp.remove(subj, obj);
+                    invProp.remove(obj, subj);
+                    inverseOfMap = invProp;
+                }
+            } else {
+                refreshSchemaResources(pred);
+            }
+            schemaChanged();
+        } catch (QueryEvaluationException e) {
+            throw new InferenceEngineException(e);
+        }
+    }
+
+    /**
+     * @return the hierarchies with every edge added so far
+     */
+    private Hierarchies hierarchies() {
+        if (pendingChanges) {
+            applyPendingChanges();
+        }
+        return hierarchies;
+    }
+
+    /**
+     * @return the sameAs index with every statement added so far
+     */
+    private SameAsIndex sameAsIndex() {
+        if (pendingChanges) {
+            applyPendingChanges();
+        }
+        return sameAsIndex;
+    }
+
+    private synchronized void applyPendingChanges() {
+        if (!pendingChanges) {
+            return;
+        }
+        Hierarchies current = hierarchies;
+        hierarchies = new Hierarchies(current.subClassOf.withEdges(pendingSubClassOf),
+                current.subPropertyOf.withEdges(pendingSubPropertyOf));
+        sameAsIndex = sameAsIndex.withUnions(pendingSameAs);
+        clearPendingChanges();
+    }
+
+    private synchronized void clearPendingChanges() {
+        pendingSubClassOf.clear();
+        pendingSubPropertyOf.clear();
+        pendingSameAs.clear();
+        pendingChanges = false;
+    }
+
+    /**
+     * Replaces a sameAs class with the classes its remaining statements form. Only the members of
+     * the class are looked up, no statement outside of it can connect them.
+     */
+    private void rebuildSameAsClass(Set<Resource> members) throws QueryEvaluationException {
+        SameAsIndex.Builder remaining = new SameAsIndex.Builder();
+        for (Resource member : members) {
+            CloseableIteration<Statement, QueryEvaluationException> iter = RyaDAOHelper.query(ryaDAO, member, OWL.SAMEAS, null, conf);
+            try {
+                while (iter.hasNext()) {
+                    Statement st = iter.next();
+                    if (st.getObject() instanceof Resource) {
+                        remaining.add(st.getSubject(), (Resource) st.getObject());
+                    }
+                }
+            } finally {
+                iter.close();
+            }
+        }
+        sameAsIndex = sameAsIndex.withClassRebuilt(members, remaining);
+    }
+
+    /**
+     * Drops the cached results of inferred queries, they may no longer hold for the new schema.
+     */
+    private void schemaChanged() {
+        QueryResultCache cache = queryResultCache;
+        if (cache != null) {
+            cache.invalidateInferred();
+        }
+    }
+
+    /**
+     * @param queryResultCache the cache whose inferred results are dropped when the schema changes, may be null
+     */
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    private void removeFromTransitiveClosures(Resource subj, URI pred, Value obj) throws InferenceEngineException {
+        try {
+            if (pred != null) {
+                if (subj == null || obj == null || !exists(subj, pred, obj)) {
+                    getTransitiveClosure().removed(subj, pred, obj);
+                }
+            } else if (transitivePropertySet != null) {
+                for (URI prop : transitivePropertySet) {
+                    if (subj == null || obj == null || !exists(subj, prop, obj)) {
+                        getTransitiveClosure().removed(subj, prop, obj);
+                    }
+                }
+            }
+        } catch (QueryEvaluationException e) {
+            throw new InferenceEngineException(e);
+        }
+    }
+
+    private boolean isTransitiveClosureEnabled() {
+        return conf != null && conf.isInferTransitiveClosure();
+    }
+
+    private TransitiveClosure getTransitiveClosure() {
+        if (transitiveClosure == null) {
+            transitiveClosure = new TransitiveClosure(ryaDAO, conf);
+        }
+        return transitiveClosure;
+    }
+
+    /**
+     * @return true if the closure of the transitive property is kept in memory
+     */
+    public boolean hasTransitiveClosure(URI prop) {
+        return isTransitiveClosureEnabled() && transitiveClosure != null && transitiveClosure.isMaterialized(prop);
+    }
+
+    /**
+     * @param subj the start of the paths, null for any
+     * @param obj the end of the paths, null for any
+     * @return a statement for every matching pair of the closure of the property, see {@link #hasTransitiveClosure}
+     */
+    public List<Statement> findTransitiveClosure(Resource subj, URI prop, Value obj) {
+        return transitiveClosure != null ? transitiveClosure.find(subj, prop, obj) : new ArrayList<Statement>();
+    }
+
+    private void refreshSchemaResources(URI pred) throws InferenceEngineException {
+        try {
+            if (PROPERTY_CHAIN_AXIOM.equals(pred)) {
+                refreshPropertyChains();
+            } else {
+                refreshPropertyRestrictions();
+            }
+        } catch (QueryEvaluationException e) {
+            throw new InferenceEngineException(e);
+        }
+    }
+
+    private boolean isSubPropertyAsserted(URI sub, URI sup) throws QueryEvaluationException {
+        return exists(sub, RDFS.SUBPROPERTYOF, sup) || exists(sub, OWL.EQUIVALENTPROPERTY, sup)
+                || exists(sup, OWL.EQUIVALENTPROPERTY, sub);
+    }
+
+    private boolean exists(Resource subj, URI pred, Value obj) throws QueryEvaluationException {
+        CloseableIteration<Statement, QueryEvaluationException> iter = RyaDAOHelper.query(ryaDAO, subj, pred, obj, conf);
+        try {
+            return iter.hasNext();
+        } finally {
+            iter.close();
+        }
+    }
+
+    private static Set<URI> with(Set<URI> set, URI uri) {
+        Set<URI> copy = set == null ? new HashSet<URI>() : new HashSet<URI>(set);
+        copy.add(uri);
+        return copy;
+    }
+
+    private static Set<URI> without(Set<URI> set, Resource resource) {
+        Set<URI> copy = set == null ? new HashSet<URI>() : new HashSet<URI>(set);
+        copy.remove(resource);
+        return copy;
+    }
+
     private static Vertex getVertex(Graph graph, Object id) {
         Iterator<Vertex> it = graph.vertices(id.toString());
         if (it.hasNext()) {
@@ -424,7 +766,7 @@ public class InferenceEngine {
         return null;
     }
 
-    private void addStatementEdge(Graph graph, String edgeName, Statement st) {
+    private static void addStatementEdge(Graph graph, String edgeName, Statement st) {
         Resource subj = st.getSubject();
         Vertex a = getVertex(graph, subj);
         if (a == null) {
@@ -440,11 +782,30 @@ public class InferenceEngine {
         a.addEdge(edgeName, b);
    }
 
+    private static void addClosureEdge(HierarchyClosure.Builder closure, Value sub, Value sup) {
+        // only URIs are ever looked up or returned, so edges through blank nodes are left out
+        if (sub instanceof URI && sup instanceof URI) {
+            closure.addEdge((URI) sub, (URI) sup);
+        }
+    }
+
+    /**
+     * @return a new set of the terms below the given one in the graph, such as its subclasses
+     */
     public Set<URI> findParents(Graph graph, URI vertexId) {
         Set<URI> parents = new HashSet<>();
         if (graph == null) {
             return parents;
         }
+        Hierarchies current = hierarchies();
+        if (graph == current.subClassOfGraph) {
+            parents.addAll(current.subClassOf.getDescendants(vertexId));
+            return parents;
+        } else if (graph == current.subPropertyOfGraph) {
+            parents.addAll(current.subPropertyOf.getDescendants(vertexId));
+            return parents;
+        }
+        // a graph of an earlier refresh
         Vertex v = getVertex(graph, vertexId);
         if (v == null) {
             return parents;
@@ -493,15 +854,30 @@ public class InferenceEngine {
     }
 
     /**
-     * TODO: This chaining can be slow at query execution. the other option is to perform this in the query itself, but that will be constrained to how many levels we decide to go
+     * Finds the resources the value is the same as, including itself. Without a context this is a
+     * lookup in the sameAs index, within contexts the statements of those contexts are chained.
      */
     public Set<Resource> findSameAs(Resource value, Resource... contxts) throws InferenceEngineException{
+        if (isAnyContext(contxts)) {
+            return sameAsIndex().getSameAs(value);
+        }
 		Set<Resource> sameAs = new HashSet<Resource>();
 		sameAs.add(value);
 		findSameAsChaining(value, sameAs, contxts);
 		return sameAs;
     }
 
+    private static boolean isAnyContext(Resource[] contxts) {
+        if (contxts != null) {
+            for (Resource context : contxts) {
+                if (context != null) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * TODO: This chaining can be slow at query execution. the other option is to perform this in the query itself, but that will be constrained to how many levels we decide to go
      */
@@ -576,7 +952,35 @@ public class InferenceEngine {
     }
 
     public Graph getSubClassOfGraph() {
-        return subClassOfGraph;
+        return hierarchies().getSubClassOfGraph();
+    }
+
+    /**
+     * @return the direct and indirect subclasses of the type, read only
+     */
+    public Set<URI> getSubClasses(URI type) {
+        return hierarchies().subClassOf.getDescendants(type);
+    }
+
+    /**
+     * @return the direct and indirect superclasses of the type, read only
+     */
+    public Set<URI> getSuperClasses(URI type) {
+        return hierarchies().subClassOf.getAncestors(type);
+    }
+
+    /**
+     * @return the direct and indirect subproperties of the property, read only
+     */
+    public Set<URI> getSubProperties(URI property) {
+        return hierarchies().subPropertyOf.getDescendants(property);
+    }
+
+    /**
+     * @return the direct and indirect superproperties of the property, read only
+     */
+    public Set<URI> getSuperProperties(URI property) {
+        return hierarchies().subPropertyOf.getAncestors(property);
     }
 
     public Map<URI, List<URI>> getPropertyChainMap() {
@@ -591,7 +995,7 @@ public class InferenceEngine {
     }
 
     public Graph getSubPropertyOfGraph() {
-        return subPropertyOfGraph;
+        return hierarchies().getSubPropertyOfGraph();
     }
 
     public long getRefreshGraphSchedule() {
@@ -650,7 +1054,7 @@ public class InferenceEngine {
             Set<Resource> types = new HashSet<>();
             types.add(type);
             if (type instanceof URI) {
-                types.addAll(findParents(subClassOfGraph, (URI) type));
+                types.addAll(getSubClasses((URI) type));
             }
             for (Resource relevantType : types) {
                 if (hasValueByType.containsKey(relevantType)) {
@@ -687,7 +1091,7 @@ public class InferenceEngine {
                 }
                 implications.get(type).add(typeToValue.getValue());
                 if (type instanceof URI) {
-                    for (URI subtype : findParents(subClassOfGraph, (URI) type)) {
+                    for (URI subtype : getSubClasses((URI) type)) {
                         if (!implications.containsKey(subtype)) {
                             implications.put(subtype, new HashSet<>());
                         }
@@ -698,4 +1102,46 @@ public class InferenceEngine {
         }
         return implications;
     }
+
+    /**
+     * The class and property hierarchies as of the last refresh or schema change, replaced as a
+     * whole. The graphs are only built for callers that still ask for them.
+     */
+    private static final class Hierarchies {
+        static final Hierarchies EMPTY = new Hierarchies(HierarchyClosure.EMPTY, HierarchyClosure.EMPTY);
+
+        final HierarchyClosure subClassOf;
+        final HierarchyClosure subPropertyOf;
+        volatile Graph subClassOfGraph;
+        volatile Graph subPropertyOfGraph;
+
+        Hierarchies(HierarchyClosure subClassOf, HierarchyClosure subPropertyOf) {
+            this.subClassOf = subClassOf;
+            this.subPropertyOf = subPropertyOf;
+        }
+
+        synchronized Graph getSubClassOfGraph() {
+            if (subClassOfGraph == null) {
+                subClassOfGraph = toGraph(subClassOf, RDFS.SUBCLASSOF);
+            }
+            return subClassOfGraph;
+        }
+
+        synchronized Graph getSubPropertyOfGraph() {
+            if (subPropertyOfGraph == null) {
+                subPropertyOfGraph = toGraph(subPropertyOf, RDFS.SUBPROPERTYOF);
+            }
+            return subPropertyOfGraph;
+        }
+
+        private static Graph toGraph(HierarchyClosure closure, URI edge) {
+            Graph graph = TinkerGraph.open();
+            for (URI term : closure.getTerms()) {
+                for (URI parent : closure.getParents(term)) {
+                    addStatementEdge(graph, edge.stringValue(), new StatementImpl(term, edge, parent));
+                }
+            }
+            return graph;
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package org.apache.rya.rdftriplestore.inference;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.openrdf.model.Resource;
+import org.openrdf.model.Value;
+import org.openrdf.query.algebra.Var;
+
+/**
+ * A statement pattern whose constant predicate or object stands for any of a set of values, such as
+ * a class and all of its subclasses. The constant subject may stand for a set of values as well,
+ * such as the resources it is the same as. The evaluation strategy reads all of the combinations
+ * with one multi-range scan and, like the join over the hierarchy it replaces, returns one solution
+ * per value matched, so a resource matching several of the values is returned once for each.
+ */
+public class MultiValueStatementPattern extends DoNotExpandSP {
+    private final Set<Resource> subjectValues = new LinkedHashSet<Resource>();
+    private final Set<Value> values = new LinkedHashSet<Value>();
+    private boolean predicateValues;
+
+    public MultiValueStatementPattern() {
+    }
+
+    /**
+     * @param predicateValues true if the values replace the predicate, false if they replace the object
+     * @param values the values the predicate or object stands for, usually including its own
+     */
+    public MultiValueStatementPattern(Var subject, Var predicate, Var object, Var context, boolean predicateValues,
+                                      Collection<? extends Value> values) {
+        super(subject, predicate, object, context);
+        this.predicateValues = predicateValues;
+        this.values.addAll(values);
+    }
+
+    /**
+     * @param subjectValues the values the subject stands for, none to use the subject itself
+     * @param values the values the object stands for, none to use the object itself
+     */
+    public MultiValueStatementPattern(Var subject, Var predicate, Var object, Var context,
+                                      Collection<? extends Resource> subjectValues, Collection<? extends Value> values) {
+        this(subject, predicate, object, context, false, values);
+        this.subjectValues.addAll(subjectValues);
+    }
+
+    /**
+     * @return the values the subject stands for, empty if it stands for itself
+     */
+    public Set<Resource> getSubjectValues() {
+        return subjectValues;
+    }
+
+    /**
+     * @return the values the predicate or object stands for, empty if it stands for itself
+     */
+    public Set<Value> getValues() {
+        return values;
+    }
+
+    public boolean isPredicateValues() {
+        return predicateValues;
+    }
+
+    @Override
+    public String getSignature() {
+        String signature = super.getSignature();
+        if (!subjectValues.isEmpty()) {
+            signature += "(subject in " + subjectValues + ")";
+        }
+        if (!values.isEmpty()) {
+            signature += "(" + (predicateValues ? "predicate" : "object") + " in " + values + ")";
+        }
+        return signature;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof MultiValueStatementPattern && super.equals(other)
+                && predicateValues == ((MultiValueStatementPattern) other).predicateValues
+                && subjectValues.equals(((MultiValueStatementPattern) other).subjectValues)
+                && values.equals(((MultiValueStatementPattern) other).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode() ^ subjectValues.hashCode() ^ values.hashCode();
+    }
+
+    @Override
+    public MultiValueStatementPattern clone() {
+        // the values are never modified, so the clone shares them
+        return (MultiValueStatementPattern) super.clone();
+    }
+}
@@ -0,0 +1,178 @@
+package org.apache.rya.rdftriplestore.inference;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openrdf.model.Resource;
+
+/**
+ * The owl:sameAs equivalence classes of the store. Every resource stated to be the same as another
+ * maps to the read only set of all the resources of its class, so finding them is one lookup
+ * however large the class is.
+ * <p>
+ * Classes are found with a union-find over all owl:sameAs statements when the index is built. An
+ * index is immutable: statements added later, or a class split by a removed statement, produce a
+ * new index that the {@link InferenceEngine} publishes as a whole, so readers never see a class
+ * half merged.
+ */
+public class SameAsIndex {
+
+    private final Map<Resource, Set<Resource>> classes;
+
+    private SameAsIndex(Map<Resource, Set<Resource>> classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * @return the resources the given one is the same as, including itself, read only
+     */
+    public Set<Resource> getSameAs(Resource resource) {
+        Set<Resource> sameAs = classes.get(resource);
+        return sameAs != null ? sameAs : Collections.singleton(resource);
+    }
+
+    /**
+     * @return true if the resource is stated to be the same as another
+     */
+    public boolean contains(Resource resource) {
+        return classes.containsKey(resource);
+    }
+
+    /**
+     * @param pairs resources stated to be the same
+     * @return an index with the classes of every pair merged, this one if they already were
+     */
+    public SameAsIndex withUnions(List<Resource[]> pairs) {
+        Map<Resource, Set<Resource>> merged = null;
+        for (Resource[] pair : pairs) {
+            Map<Resource, Set<Resource>> current = merged != null ? merged : classes;
+            Set<Resource> classA = current.get(pair[0]);
+            if (classA != null && classA == current.get(pair[1])) {
+                continue;
+            }
+            if (merged == null) {
+                merged = new HashMap<Resource, Set<Resource>>(classes);
+            }
+            union(merged, pair[0], pair[1]);
+        }
+        return merged != null ? new SameAsIndex(merged) : this;
+    }
+
+    /**
+     * @return an index with the classes of both resources merged, this one if they already were
+     */
+    public SameAsIndex withUnion(Resource a, Resource b) {
+        return withUnions(Collections.singletonList(new Resource[] {a, b}));
+    }
+
+    private static void union(Map<Resource, Set<Resource>> classes, Resource a, Resource b) {
+        Set<Resource> merged = new LinkedHashSet<Resource>();
+        merged.add(a);
+        merged.add(b);
+        Set<Resource> classA = classes.get(a);
+        Set<Resource> classB = classes.get(b);
+        if (classA != null) {
+            merged.addAll(classA);
+        }
+        if (classB != null) {
+            merged.addAll(classB);
+        }
+        Set<Resource> members = Collections.unmodifiableSet(merged);
+        for (Resource member : members) {
+            classes.put(member, members);
+        }
+    }
+
+    /**
+     * Replaces a class with the classes found again from its remaining statements, after one of
+     * them was removed.
+     * @param members the members of the class before the removal
+     * @param remaining the owl:sameAs statements still stated between the members
+     * @return an index with the class replaced by the classes it split into
+     */
+    public SameAsIndex withClassRebuilt(Set<Resource> members, Builder remaining) {
+        Map<Resource, Set<Resource>> rebuilt = new HashMap<Resource, Set<Resource>>(classes);
+        for (Resource member : members) {
+            rebuilt.remove(member);
+        }
+        rebuilt.putAll(remaining.build().classes);
+        return new SameAsIndex(rebuilt);
+    }
+
+    /**
+     * Collects owl:sameAs statements and computes the classes with a union-find.
+     */
+    public static class Builder {
+        private final Map<Resource, Resource> parents = new HashMap<Resource, Resource>();
+
+        public Builder add(Resource a, Resource b) {
+            Resource rootA = find(a);
+            Resource rootB = find(b);
+            if (!rootA.equals(rootB)) {
+                parents.put(rootA, rootB);
+            }
+            return this;
+        }
+
+        private Resource find(Resource resource) {
+            Resource parent = parents.get(resource);
+            if (parent == null) {
+                parents.put(resource, resource);
+                return resource;
+            }
+            // path halving, each resource on the way skips its parent
+            while (!parent.equals(resource)) {
+                Resource grandparent = parents.get(parent);
+                parents.put(resource, grandparent);
+                resource = grandparent;
+                parent = parents.get(resource);
+            }
+            return resource;
+        }
+
+        public SameAsIndex build() {
+            Map<Resource, Set<Resource>> byRoot = new HashMap<Resource, Set<Resource>>();
+            for (Resource resource : new HashSet<Resource>(parents.keySet())) {
+                Resource root = find(resource);
+                Set<Resource> members = byRoot.get(root);
+                if (members == null) {
+                    members = new LinkedHashSet<Resource>();
+                    byRoot.put(root, members);
+                }
+                members.add(resource);
+            }
+            Map<Resource, Set<Resource>> classes = new HashMap<Resource, Set<Resource>>();
+            for (Set<Resource> members : byRoot.values()) {
+                Set<Resource> readOnly = Collections.unmodifiableSet(members);
+                for (Resource member : members) {
+                    classes.put(member, readOnly);
+                }
+            }
+            return new SameAsIndex(classes);
+        }
+    }
+}
@@ -35,6 +35,7 @@ import org.openrdf.model.vocabulary.SESAME;
 import org.openrdf.query.algebra.StatementPattern;
 import org.openrdf.query.algebra.Var;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
@@ -87,7 +88,17 @@ public class SameAsVisitor extends AbstractInferVisitor {
         final Var cntxtVar = sp.getContextVar();
         if (shouldExpand
                 && !EXPANDED.equals(cntxtVar) && !(objVar == null) && !(subjVar == null)){
-            if (objVar.getValue() == null) {
+            if (conf.isInferMultiValueScan()) {
+                // one index lookup per constant, every combination is read by a single scan
+                Set<Resource> subjURIs = findSameAs(subjVar, cntxtVar);
+                Set<Resource> objURIs = findSameAs(objVar, cntxtVar);
+                if (subjURIs.size() > 1 || objURIs.size() > 1) {
+                    node.replaceWith(new MultiValueStatementPattern(subjVar, predVar, objVar, cntxtVar,
+                            subjURIs.size() > 1 ? subjURIs : Collections.<Resource>emptySet(),
+                            objURIs.size() > 1 ? objURIs : Collections.<Resource>emptySet()));
+                }
+            }
+            else if (objVar.getValue() == null) {
             	Value subjVarValue = subjVar.getValue();
             	if (subjVarValue instanceof Resource){
             		Set<Resource> uris = inferenceEngine.findSameAs((Resource)subjVar.getValue(), getVarValue(cntxtVar));
@@ -177,6 +188,13 @@ public class SameAsVisitor extends AbstractInferVisitor {
        return join;
     }
     
+    private Set<Resource> findSameAs(Var var, Var cntxtVar) throws InferenceEngineException {
+        if (var.getValue() instanceof Resource) {
+            return inferenceEngine.findSameAs((Resource) var.getValue(), getVarValue(cntxtVar));
+        }
+        return Collections.emptySet();
+    }
+
     protected Resource getVarValue(Var var) {
         if (var == null)
             return null;
@@ -29,6 +29,8 @@ import org.openrdf.query.algebra.StatementPattern;
 import org.openrdf.query.algebra.Var;
 
 import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -63,8 +65,13 @@ public class SubClassOfVisitor extends AbstractInferVisitor {
 //            node.replaceWith(join);
 
             URI subclassof_uri = (URI) objVar.getValue();
-            Collection<URI> parents = inferenceEngine.findParents(inferenceEngine.getSubClassOfGraph(), subclassof_uri);
-            if (parents != null && parents.size() > 0) {
+            Collection<URI> parents = inferenceEngine.getSubClasses(subclassof_uri);
+            if (parents != null && parents.size() > 0 && conf.isInferMultiValueScan()) {
+                Set<URI> types = new LinkedHashSet<URI>();
+                types.add(subclassof_uri);
+                types.addAll(parents);
+                node.replaceWith(new MultiValueStatementPattern(sp.getSubjectVar(), predVar, objVar, conVar, false, types));
+            } else if (parents != null && parents.size() > 0) {
                 String s = UUID.randomUUID().toString();
                 Var typeVar = new Var(s);
                 FixedStatementPattern fsp = new FixedStatementPattern(typeVar, new Var("c-" + s, RDFS.SUBCLASSOF), objVar, conVar);
@@ -29,6 +29,7 @@ import org.openrdf.model.vocabulary.SESAME;
 import org.openrdf.query.algebra.StatementPattern;
 import org.openrdf.query.algebra.Var;
 
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.UUID;
 
@@ -96,14 +97,21 @@ public class SubPropertyOfVisitor extends AbstractInferVisitor {
 //            }
 
             URI subprop_uri = (URI) predVar.getValue();
-            Set<URI> parents = inferenceEngine.findParents(inferenceEngine.getSubPropertyOfGraph(), subprop_uri);
-            if (parents != null && parents.size() > 0) {
+            Set<URI> parents = inferenceEngine.getSubProperties(subprop_uri);
+            if (parents != null && parents.size() > 0 && conf.isInferMultiValueScan()) {
+                Set<URI> properties = new LinkedHashSet<URI>();
+                properties.add(subprop_uri);
+                properties.addAll(parents);
+                node.replaceWith(new MultiValueStatementPattern(sp.getSubjectVar(), predVar, objVar, cntxtVar, true, properties));
+            } else if (parents != null && parents.size() > 0) {
                 String s = UUID.randomUUID().toString();
                 Var typeVar = new Var(s);
                 FixedStatementPattern fsp = new FixedStatementPattern(typeVar, new Var("c-" + s, RDFS.SUBPROPERTYOF), predVar, cntxtVar);
 //                fsp.statements.add(new NullableStatementImpl(subprop_uri, RDFS.SUBPROPERTYOF, subprop_uri));
-                //add self
-                parents.add(subprop_uri);
+                //add self, unless an equivalent property already made it its own subproperty
+                if (!parents.contains(subprop_uri)) {
+                    fsp.statements.add(new NullableStatementImpl(subprop_uri, RDFS.SUBPROPERTYOF, subprop_uri));
+                }
                 for (URI u : parents) {
                     fsp.statements.add(new NullableStatementImpl(u, RDFS.SUBPROPERTYOF, subprop_uri));
                 }
@@ -0,0 +1,363 @@
+package org.apache.rya.rdftriplestore.inference;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
+import org.apache.rya.api.persist.RyaDAO;
+import org.apache.rya.api.persist.utils.RyaDAOHelper;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.StatementImpl;
+import org.openrdf.query.QueryEvaluationException;
+
+import info.aduna.iteration.CloseableIteration;
+
+/**
+ * Keeps the closures of transitive properties in memory. For a property p, every pair x, y such
+ * that y is reachable from x over p statements is indexed both ways, so a transitive pattern is
+ * answered with a lookup instead of one query per hop, whether its subject, its object or neither
+ * is bound. Nothing is written to the store, so user queries and indexers never see the closure.
+ * <p>
+ * A closure is built from one scan of the property's statements when the property is first seen
+ * to be transitive, and rebuilt the same way on every refresh, so statements written to the store
+ * by anything other than the sail are picked up too. An added p statement adds the pairs it
+ * connects. A removed one drops every
+ * pair that may have depended on it and rederives those still reachable over the remaining p
+ * statements. Each term's set of successors and predecessors is replaced as a whole, so a reader
+ * never sees a set change while it uses it.
+ */
+public class TransitiveClosure {
+    private static final Logger logger = Logger.getLogger(TransitiveClosure.class);
+
+    private final RyaDAO ryaDAO;
+    private final RdfCloudTripleStoreConfiguration conf;
+    private final Map<URI, Pairs> closures = new ConcurrentHashMap<URI, Pairs>();
+
+    public TransitiveClosure(RyaDAO ryaDAO, RdfCloudTripleStoreConfiguration conf) {
+        this.ryaDAO = ryaDAO;
+        this.conf = conf;
+    }
+
+    /**
+     * @return true if the closure of the property is complete
+     */
+    public boolean isMaterialized(URI prop) {
+        return closures.containsKey(prop);
+    }
+
+    /**
+     * Rebuilds the closure of every transitive property from the store, and drops those of
+     * properties that are no longer transitive. Readers use the old closure until the new one
+     * replaces it.
+     */
+    public void refresh(Set<URI> transitiveProperties) throws QueryEvaluationException {
+        closures.keySet().retainAll(transitiveProperties);
+        for (URI prop : transitiveProperties) {
+            materialize(prop);
+        }
+    }
+
+    /**
+     * Computes the closure of the property from all of its statements, then replaces the one
+     * kept for it.
+     */
+    public void materialize(URI prop) throws QueryEvaluationException {
+        Map<Value, Set<Value>> edges = new HashMap<Value, Set<Value>>();
+        CloseableIteration<Statement, QueryEvaluationException> iter = RyaDAOHelper.query(ryaDAO, null, prop, null, conf);
+        try {
+            while (iter.hasNext()) {
+                Statement st = iter.next();
+                Set<Value> objects = edges.get(st.getSubject());
+                if (objects == null) {
+                    objects = new HashSet<Value>();
+                    edges.put(st.getSubject(), objects);
+                }
+                objects.add(st.getObject());
+            }
+        } finally {
+            iter.close();
+        }
+        Map<Value, Set<Value>> successors = new HashMap<Value, Set<Value>>();
+        Map<Value, Set<Value>> predecessors = new HashMap<Value, Set<Value>>();
+        long count = 0;
+        for (Value subj : edges.keySet()) {
+            Set<Value> reached = reach(subj, edges);
+            successors.put(subj, reached);
+            for (Value target : reached) {
+                Set<Value> sources = predecessors.get(target);
+                if (sources == null) {
+                    sources = new LinkedHashSet<Value>();
+                    predecessors.put(target, sources);
+                }
+                sources.add(subj);
+            }
+            count += reached.size();
+        }
+        closures.put(prop, new Pairs(successors, predecessors));
+        logger.info("Materialized " + count + " pairs in the closure of " + prop);
+    }
+
+    /**
+     * Forgets the closure of the property.
+     */
+    public void drop(URI prop) {
+        closures.remove(prop);
+    }
+
+    /**
+     * @param subj the start of the paths, null for any
+     * @param obj the end of the paths, null for any
+     * @return a statement for every pair of the closure of the property that matches, empty if the
+     *      closure is not materialized
+     */
+    public List<Statement> find(Resource subj, URI prop, Value obj) {
+        Pairs pairs = closures.get(prop);
+        List<Statement> statements = new ArrayList<Statement>();
+        if (pairs == null) {
+            return statements;
+        }
+        if (subj != null) {
+            for (Value target : pairs.successors(subj)) {
+                if (obj == null || obj.equals(target)) {
+                    statements.add(new StatementImpl(subj, prop, target));
+                }
+            }
+        } else if (obj != null) {
+            for (Value source : pairs.predecessors(obj)) {
+                statements.add(new StatementImpl((Resource) source, prop, obj));
+            }
+        } else {
+            for (Map.Entry<Value, Set<Value>> entry : pairs.successors.entrySet()) {
+                for (Value target : entry.getValue()) {
+                    statements.add(new StatementImpl((Resource) entry.getKey(), prop, target));
+                }
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * Adds the pairs a new {@code subj prop obj} statement connects: everything that reaches subj,
+     * and subj itself, now reaches obj and everything obj reaches.
+     */
+    public void added(Resource subj, URI prop, Value obj) {
+        Pairs pairs = closures.get(prop);
+        if (pairs == null) {
+            return;
+        }
+        Set<Value> targets = new LinkedHashSet<Value>();
+        targets.add(obj);
+        targets.addAll(pairs.successors(obj));
+        Set<Value> sources = new LinkedHashSet<Value>();
+        sources.add(subj);
+        sources.addAll(pairs.predecessors(subj));
+        pairs.add(sources, targets);
+    }
+
+    /**
+     * Removes the pairs that {@code subj prop obj} statements may have connected and rederives the
+     * ones still connected by other statements. An unbound obj stands for all the objects subj had.
+     */
+    public void removed(Resource subj, URI prop, Value obj) throws QueryEvaluationException {
+        Pairs pairs = closures.get(prop);
+        if (pairs == null) {
+            return;
+        }
+        if (subj == null) {
+            materialize(prop);
+            return;
+        }
+        Set<Value> targets = new LinkedHashSet<Value>();
+        if (obj != null) {
+            targets.add(obj);
+            targets.addAll(pairs.successors(obj));
+        } else {
+            targets.addAll(pairs.successors(subj));
+        }
+        Set<Value> sources = new LinkedHashSet<Value>();
+        sources.add(subj);
+        sources.addAll(pairs.predecessors(subj));
+
+        // every pair that may have gone through the removed statements is rederived from the
+        // remaining statements
+        Map<Value, Set<Value>> edges = new HashMap<Value, Set<Value>>();
+        Map<Value, Set<Value>> kept = new HashMap<Value, Set<Value>>();
+        for (Value source : sources) {
+            Set<Value> reached = reach(source, edges, prop);
+            reached.retainAll(targets);
+            kept.put(source, reached);
+        }
+        pairs.replace(sources, targets, kept);
+    }
+
+    /**
+     * Walks the edges from a value, reading the p statements of every value it has not read yet.
+     */
+    private Set<Value> reach(Value from, Map<Value, Set<Value>> edges, URI prop) throws QueryEvaluationException {
+        Set<Value> reached = new LinkedHashSet<Value>();
+        Deque<Value> queue = new ArrayDeque<Value>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            Value next = queue.poll();
+            if (!edges.containsKey(next)) {
+                Set<Value> objects = new HashSet<Value>();
+                if (next instanceof Resource) {
+                    CloseableIteration<Statement, QueryEvaluationException> iter = RyaDAOHelper.query(ryaDAO,
+                            (Resource) next, prop, null, conf);
+                    try {
+                        while (iter.hasNext()) {
+                            objects.add(iter.next().getObject());
+                        }
+                    } finally {
+                        iter.close();
+                    }
+                }
+                edges.put(next, objects);
+            }
+            for (Value object : edges.get(next)) {
+                if (reached.add(object)) {
+                    queue.add(object);
+                }
+            }
+        }
+        return reached;
+    }
+
+    private static Set<Value> reach(Value from, Map<Value, Set<Value>> edges) {
+        Set<Value> reached = new LinkedHashSet<Value>();
+        Deque<Value> queue = new ArrayDeque<Value>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            Set<Value> objects = edges.get(queue.poll());
+            if (objects != null) {
+                for (Value object : objects) {
+                    if (reached.add(object)) {
+                        queue.add(object);
+                    }
+                }
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * The pairs of one closure, indexed from both ends. Writers are serialized by the
+     * {@link InferenceEngine}; the sets are read only and replaced whenever they change.
+     */
+    private static class Pairs {
+        private final Map<Value, Set<Value>> successors = new ConcurrentHashMap<Value, Set<Value>>();
+        private final Map<Value, Set<Value>> predecessors = new ConcurrentHashMap<Value, Set<Value>>();
+
+        Pairs(Map<Value, Set<Value>> successors, Map<Value, Set<Value>> predecessors) {
+            for (Map.Entry<Value, Set<Value>> entry : successors.entrySet()) {
+                put(this.successors, entry.getKey(), entry.getValue());
+            }
+            for (Map.Entry<Value, Set<Value>> entry : predecessors.entrySet()) {
+                put(this.predecessors, entry.getKey(), entry.getValue());
+            }
+        }
+
+        Set<Value> successors(Value source) {
+            Set<Value> targets = successors.get(source);
+            return targets != null ? targets : Collections.<Value>emptySet();
+        }
+
+        Set<Value> predecessors(Value target) {
+            Set<Value> sources = predecessors.get(target);
+            return sources != null ? sources : Collections.<Value>emptySet();
+        }
+
+        /**
+         * Adds a pair for every source and target. Only resources can start a path.
+         */
+        void add(Set<Value> sources, Set<Value> targets) {
+            if (targets.isEmpty()) {
+                return;
+            }
+            for (Value source : sources) {
+                if (source instanceof Resource) {
+                    successors.put(source, union(successors(source), targets));
+                }
+            }
+            for (Value target : targets) {
+                Set<Value> resources = new LinkedHashSet<Value>();
+                for (Value source : sources) {
+                    if (source instanceof Resource) {
+                        resources.add(source);
+                    }
+                }
+                if (!resources.isEmpty()) {
+                    predecessors.put(target, union(predecessors(target), resources));
+                }
+            }
+        }
+
+        /**
+         * Replaces the pairs between the sources and targets with the ones kept for each source.
+         */
+        void replace(Set<Value> sources, Set<Value> targets, Map<Value, Set<Value>> kept) {
+            for (Value source : sources) {
+                Set<Value> updated = new LinkedHashSet<Value>(successors(source));
+                updated.removeAll(targets);
+                updated.addAll(kept.get(source));
+                put(successors, source, updated);
+            }
+            for (Value target : targets) {
+                Set<Value> updated = new LinkedHashSet<Value>(predecessors(target));
+                updated.removeAll(sources);
+                for (Value source : sources) {
+                    if (kept.get(source).contains(target)) {
+                        updated.add(source);
+                    }
+                }
+                put(predecessors, target, updated);
+            }
+        }
+
+        private static Set<Value> union(Set<Value> a, Set<Value> b) {
+            Set<Value> union = new LinkedHashSet<Value>(a);
+            union.addAll(b);
+            return Collections.unmodifiableSet(union);
+        }
+
+        private static void put(Map<Value, Set<Value>> index, Value key, Set<Value> values) {
+            if (values.isEmpty()) {
+                index.remove(key);
+            } else {
+                index.put(key, Collections.unmodifiableSet(values));
+            }
+        }
+    }
+}
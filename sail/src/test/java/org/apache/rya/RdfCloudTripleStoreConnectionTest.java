@@ -28,6 +28,7 @@ import org.apache.rya.accumulo.AccumuloRdfConfiguration;
 import org.apache.rya.accumulo.AccumuloRyaDAO;
 import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
 import org.apache.rya.api.RdfCloudTripleStoreConstants;
+import org.apache.rya.api.resolver.RdfToRyaConversions;
 import org.apache.rya.rdftriplestore.RdfCloudTripleStore;
 import org.apache.rya.rdftriplestore.RyaSailRepository;
 import org.apache.rya.rdftriplestore.inference.InferenceEngine;
@@ -52,6 +53,7 @@ import org.openrdf.query.BindingSet;
 import org.openrdf.query.QueryLanguage;
 import org.openrdf.query.QueryResultHandlerException;
 import org.openrdf.query.TupleQuery;
+import org.openrdf.query.TupleQueryResult;
 import org.openrdf.query.TupleQueryResultHandler;
 import org.openrdf.query.TupleQueryResultHandlerException;
 import org.openrdf.query.Update;
@@ -203,6 +205,55 @@ public class RdfCloudTripleStoreConnectionTest extends TestCase {
         assertEquals(cth.getCount(), 1);
     }
 
+    public void testOptional() throws Exception {
+        RepositoryConnection conn = repository.getConnection();
+        URI loadPerc = vf.createURI(litdupsNS, "loadPerc");
+        URI pred2 = vf.createURI(litdupsNS, "pred2");
+        URI cpu2 = vf.createURI(litdupsNS, "cpu2");
+        URI uri1 = vf.createURI(litdupsNS, "uri1");
+        URI uri2 = vf.createURI(litdupsNS, "uri2");
+        URI uri3 = vf.createURI(litdupsNS, "uri3");
+        conn.add(cpu, loadPerc, uri1);
+        conn.add(cpu2, loadPerc, uri2);
+        conn.add(cpu, pred2, uri3);
+        conn.commit();
+
+        String query = "select * where {" +
+                "?x <" + loadPerc.stringValue() + "> ?o1." +
+                "OPTIONAL { ?x <" + pred2.stringValue() + "> ?o2. }" +
+                "}";
+        TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, query);
+        TupleQueryResult result = tupleQuery.evaluate();
+        int count = 0;
+        while (result.hasNext()) {
+            BindingSet bs = result.next();
+            count++;
+            if (cpu.equals(bs.getValue("x"))) {
+                assertEquals(uri3, bs.getValue("o2"));
+            } else {
+                assertEquals(cpu2, bs.getValue("x"));
+                assertFalse(bs.hasBinding("o2"));
+            }
+        }
+        result.close();
+        assertEquals(2, count);
+
+        query = "select * where {" +
+                "?x <" + loadPerc.stringValue() + "> ?o1." +
+                "OPTIONAL { ?x <" + pred2.stringValue() + "> ?o2. FILTER(?o2 = <" + uri1.stringValue() + ">) }" +
+                "}";
+        tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, query);
+        result = tupleQuery.evaluate();
+        count = 0;
+        while (result.hasNext()) {
+            assertFalse(result.next().hasBinding("o2"));
+            count++;
+        }
+        result.close();
+        assertEquals(2, count);
+        conn.close();
+    }
+
     public void testPOObjRange() throws Exception {
         RepositoryConnection conn = repository.getConnection();
         URI loadPerc = vf.createURI(litdupsNS, "loadPerc");
@@ -694,6 +745,133 @@ public class RdfCloudTripleStoreConnectionTest extends TestCase {
         conn.close();
     }
 
+    public void testTransitivePropClosure() throws Exception {
+        if(internalInferenceEngine == null)
+            return; //infer not supported;
+        store.getConf().setInferTransitiveClosure(true);
+
+        RepositoryConnection conn = repository.getConnection();
+        URI partOf = vf.createURI(litdupsNS, "closurePartOf");
+        conn.add(new StatementImpl(partOf, RDF.TYPE, OWL.TRANSITIVEPROPERTY));
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "Piston"), partOf, vf.createURI(litdupsNS, "Engine")));
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "Engine"), partOf, vf.createURI(litdupsNS, "Car")));
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "Car"), partOf, vf.createURI(litdupsNS, "Fleet")));
+        conn.commit();
+        conn.close();
+
+        assertTrue(internalInferenceEngine.hasTransitiveClosure(partOf));
+
+        conn = repository.getConnection();
+        String query = "PREFIX lit: <" + litdupsNS + ">\n" +
+                "select * where {lit:Piston lit:closurePartOf ?s.}";
+        CountTupleHandler tupleHandler = new CountTupleHandler();
+        conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate(tupleHandler);
+        assertEquals(3, tupleHandler.getCount());
+
+        query = "PREFIX lit: <" + litdupsNS + ">\n" +
+                "select * where {?s lit:closurePartOf lit:Fleet.}";
+        tupleHandler = new CountTupleHandler();
+        conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate(tupleHandler);
+        assertEquals(3, tupleHandler.getCount());
+
+        query = "PREFIX lit: <" + litdupsNS + ">\n" +
+                "select * where {?s lit:closurePartOf ?o.}";
+        tupleHandler = new CountTupleHandler();
+        conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate(tupleHandler);
+        assertEquals(6, tupleHandler.getCount());
+
+        // the closure is not written to the store
+        query = "PREFIX lit: <" + litdupsNS + ">\n" +
+                "select * where {lit:Piston ?p ?o.}";
+        tupleHandler = new CountTupleHandler();
+        conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate(tupleHandler);
+        assertEquals(1, tupleHandler.getCount());
+
+        // removing a link rederives the rest of the closure
+        conn.remove(new StatementImpl(vf.createURI(litdupsNS, "Engine"), partOf, vf.createURI(litdupsNS, "Car")));
+        conn.commit();
+
+        query = "PREFIX lit: <" + litdupsNS + ">\n" +
+                "select * where {lit:Piston lit:closurePartOf ?s.}";
+        tupleHandler = new CountTupleHandler();
+        conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate(tupleHandler);
+        assertEquals(1, tupleHandler.getCount());
+
+        query = "PREFIX lit: <" + litdupsNS + ">\n" +
+                "select * where {?s lit:closurePartOf lit:Fleet.}";
+        tupleHandler = new CountTupleHandler();
+        conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate(tupleHandler);
+        assertEquals(1, tupleHandler.getCount());
+
+        // statements written around the sail show up after the next refresh
+        store.getRyaDAO().add(RdfToRyaConversions.convertStatement(
+                new StatementImpl(vf.createURI(litdupsNS, "Engine"), partOf, vf.createURI(litdupsNS, "Car"))));
+        internalInferenceEngine.refreshGraph();
+
+        query = "PREFIX lit: <" + litdupsNS + ">\n" +
+                "select * where {lit:Piston lit:closurePartOf ?s.}";
+        tupleHandler = new CountTupleHandler();
+        conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate(tupleHandler);
+        assertEquals(3, tupleHandler.getCount());
+
+        conn.close();
+    }
+
+    public void testTransitiveSchemaPropClosure() throws Exception {
+        if(internalInferenceEngine == null)
+            return; //infer not supported;
+        store.getConf().setInferTransitiveClosure(true);
+
+        RepositoryConnection conn = repository.getConnection();
+        conn.add(new StatementImpl(RDFS.SUBCLASSOF, RDF.TYPE, OWL.TRANSITIVEPROPERTY));
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "closureCar"), RDFS.SUBCLASSOF, vf.createURI(litdupsNS, "closureVehicle")));
+        conn.commit();
+        conn.close();
+
+        // the hierarchy is updated as well as the closure
+        assertTrue(internalInferenceEngine.getSubClasses(vf.createURI(litdupsNS, "closureVehicle"))
+                .contains(vf.createURI(litdupsNS, "closureCar")));
+    }
+
+    public void testPropertyPath() throws Exception {
+        RepositoryConnection conn = repository.getConnection();
+        URI regionOf = vf.createURI(litdupsNS, "pathRegionOf");
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "Queens"), regionOf, vf.createURI(litdupsNS, "NYC")));
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "NYC"), regionOf, vf.createURI(litdupsNS, "NY")));
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "NY"), regionOf, vf.createURI(litdupsNS, "US")));
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "Brooklyn"), regionOf, vf.createURI(litdupsNS, "NYC")));
+        conn.commit();
+
+        String query = "PREFIX lit: <" + litdupsNS + ">\n" +
+                "select * where {lit:Queens lit:pathRegionOf+ ?s.}";
+        CountTupleHandler tupleHandler = new CountTupleHandler();
+        conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate(tupleHandler);
+        assertEquals(3, tupleHandler.getCount());
+
+        query = "PREFIX lit: <" + litdupsNS + ">\n" +
+                "select * where {?s lit:pathRegionOf* lit:NY.}";
+        tupleHandler = new CountTupleHandler();
+        conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate(tupleHandler);
+        assertEquals(4, tupleHandler.getCount());
+
+        query = "PREFIX lit: <" + litdupsNS + ">\n" +
+                "select * where {?s lit:pathRegionOf/lit:pathRegionOf+ lit:US.}";
+        tupleHandler = new CountTupleHandler();
+        conn.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate(tupleHandler);
+        assertEquals(3, tupleHandler.getCount());
+
+        // both ends bound
+        query = "PREFIX lit: <" + litdupsNS + ">\n" +
+                "ask {lit:Queens lit:pathRegionOf+ lit:US.}";
+        assertTrue(conn.prepareBooleanQuery(QueryLanguage.SPARQL, query).evaluate());
+
+        query = "PREFIX lit: <" + litdupsNS + ">\n" +
+                "ask {lit:US lit:pathRegionOf+ lit:Queens.}";
+        assertFalse(conn.prepareBooleanQuery(QueryLanguage.SPARQL, query).evaluate());
+
+        conn.close();
+    }
+
     public void testInverseOf() throws Exception {
         if(internalInferenceEngine == null)
 		 {
@@ -797,6 +975,43 @@ public class RdfCloudTripleStoreConnectionTest extends TestCase {
         conn.close();
     }
 
+    public void testSubClassOfReturnsSolutionPerMatchedClass() throws Exception {
+        if(internalInferenceEngine == null)
+		 {
+			return; //infer not supported;
+		}
+
+        RepositoryConnection conn = repository.getConnection();
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "UndergraduateStudent"), RDFS.SUBCLASSOF, vf.createURI(litdupsNS, "Student")));
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "GraduateStudent"), RDFS.SUBCLASSOF, vf.createURI(litdupsNS, "Student")));
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "UgradA"), RDF.TYPE, vf.createURI(litdupsNS, "UndergraduateStudent")));
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "UgradA"), RDF.TYPE, vf.createURI(litdupsNS, "Student")));
+        conn.add(new StatementImpl(vf.createURI(litdupsNS, "GradB"), RDF.TYPE, vf.createURI(litdupsNS, "GraduateStudent")));
+        conn.commit();
+        conn.close();
+
+        internalInferenceEngine.refreshGraph();
+
+        conn = repository.getConnection();
+        String query = "PREFIX rdf: <" + RDF.NAMESPACE + ">\n" +
+                "PREFIX lit: <" + litdupsNS + ">\n" +
+                "select * where {?s rdf:type lit:Student.}";
+
+        //one scan over all three classes, UgradA is returned once for each class it is typed with
+        TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, query);
+        CountTupleHandler tupleHandler = new CountTupleHandler();
+        tupleQuery.evaluate(tupleHandler);
+        assertEquals(3, tupleHandler.getCount());
+
+        //DISTINCT collapses them
+        tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, query.replace("select *", "select distinct *"));
+        tupleHandler = new CountTupleHandler();
+        tupleQuery.evaluate(tupleHandler);
+        assertEquals(2, tupleHandler.getCount());
+
+        conn.close();
+    }
+
     public void testSameAs() throws Exception {
         if(internalInferenceEngine == null)
 		 {
@@ -0,0 +1,211 @@
+package org.apache.rya.rdftriplestore.cache;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.parser.sparql.SPARQLParser;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+
+public class QueryResultCacheTest {
+
+    private static final URI TALKS_TO = new URIImpl("uri:talksTo");
+    private static final URI WORKS_AT = new URIImpl("uri:worksAt");
+    private static final String QUERY = "select ?x where { ?x <uri:talksTo> <uri:Bob> }";
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private QueryResultCache.ResultLoader loader(final String query) {
+        return dependencies -> {
+            loads.incrementAndGet();
+            dependencies.collect(new SPARQLParser().parseQuery(query, null).getTupleExpr());
+            final QueryBindingSet bs = new QueryBindingSet();
+            bs.addBinding("x", new URIImpl("uri:Joe"));
+            return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(Arrays.<BindingSet>asList(bs).iterator());
+        };
+    }
+
+    private static List<BindingSet> toList(final CloseableIteration<BindingSet, QueryEvaluationException> iter) throws Exception {
+        final List<BindingSet> results = new ArrayList<>();
+        while (iter.hasNext()) {
+            results.add(iter.next());
+        }
+        iter.close();
+        return results;
+    }
+
+    @Test
+    public void cachesResults() throws Exception {
+        final QueryResultCache cache = new QueryResultCache(1024 * 1024, 60000);
+        final List<BindingSet> first = toList(cache.evaluate(QUERY, loader(QUERY)));
+        final List<BindingSet> second = toList(cache.evaluate(QUERY, loader(QUERY)));
+
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void invalidatedByTouchedPredicateOnly() throws Exception {
+        final QueryResultCache cache = new QueryResultCache(1024 * 1024, 60000);
+        toList(cache.evaluate(QUERY, loader(QUERY)));
+
+        cache.invalidate(WORKS_AT, new Resource[0], false);
+        Assert.assertEquals(1, cache.size());
+
+        cache.invalidate(TALKS_TO, new Resource[0], false);
+        Assert.assertEquals(0, cache.size());
+
+        toList(cache.evaluate(QUERY, loader(QUERY)));
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void schemaChangeInvalidatesInferredResultsOnly() throws Exception {
+        final String inferred = "select ?x where { ?x <uri:worksAt> <uri:CoffeeShop> }";
+        final QueryResultCache cache = new QueryResultCache(1024 * 1024, 60000);
+        toList(cache.evaluate(QUERY, loader(QUERY)));
+        toList(cache.evaluate(inferred, dependencies -> {
+            dependencies.setInferred(true);
+            return loader(inferred).load(dependencies);
+        }));
+        Assert.assertEquals(2, cache.size());
+
+        cache.invalidateInferred();
+        Assert.assertEquals(1, cache.size());
+        toList(cache.evaluate(QUERY, loader(QUERY)));
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void namedGraphQueryIgnoresOtherGraphs() throws Exception {
+        final String query = "select ?x where { graph <uri:g1> { ?x <uri:talksTo> <uri:Bob> } }";
+        final QueryResultCache cache = new QueryResultCache(1024 * 1024, 60000);
+        toList(cache.evaluate(query, loader(query)));
+
+        cache.invalidate(TALKS_TO, new Resource[] { new URIImpl("uri:g2") }, false);
+        Assert.assertEquals(1, cache.size());
+
+        cache.invalidate(TALKS_TO, new Resource[] { new URIImpl("uri:g1") }, false);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void expiresAfterTtl() throws Exception {
+        final QueryResultCache cache = new QueryResultCache(1024 * 1024, 1);
+        toList(cache.evaluate(QUERY, loader(QUERY)));
+        Thread.sleep(10);
+        toList(cache.evaluate(QUERY, loader(QUERY)));
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void evictsWhenOverBudget() throws Exception {
+        final QueryResultCache cache = new QueryResultCache(1024 * 1024, 60000);
+        toList(cache.evaluate(QUERY, loader(QUERY)));
+        final long entrySize = cache.getUsedBytes();
+
+        final QueryResultCache small = new QueryResultCache(entrySize, 60000);
+        toList(small.evaluate("q1", loader(QUERY)));
+        toList(small.evaluate("q2", loader(QUERY)));
+        Assert.assertEquals(1, small.size());
+        Assert.assertTrue(small.getUsedBytes() <= entrySize);
+    }
+
+    @Test
+    public void singleFlightsConcurrentQueries() throws Exception {
+        final QueryResultCache cache = new QueryResultCache(1024 * 1024, 60000);
+        final CountDownLatch release = new CountDownLatch(1);
+        final QueryResultCache.ResultLoader slowLoader = dependencies -> {
+            release.await();
+            return loader(QUERY).load(dependencies);
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<List<BindingSet>>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> toList(cache.evaluate(QUERY, slowLoader))));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (final Future<List<BindingSet>> future : futures) {
+                Assert.assertEquals(1, future.get(10, TimeUnit.SECONDS).size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void tooLargeResultsAreNotCached() throws Exception {
+        final QueryResultCache cache = new QueryResultCache(1024 * 1024, 60000);
+        toList(cache.evaluate(QUERY, loader(QUERY)));
+        final long entrySize = cache.getUsedBytes();
+
+        final QueryResultCache small = new QueryResultCache(entrySize - 1, 60000);
+        Assert.assertEquals(1, toList(small.evaluate(QUERY, loader(QUERY))).size());
+        Assert.assertEquals(0, small.size());
+        Assert.assertEquals(0, small.getUsedBytes());
+    }
+
+    @Test
+    public void followerEvaluatesAfterTimeout() throws Exception {
+        final QueryResultCache cache = new QueryResultCache(1024 * 1024, 60000);
+        final CountDownLatch release = new CountDownLatch(1);
+        final QueryResultCache.ResultLoader slowLoader = dependencies -> {
+            release.await();
+            return loader(QUERY).load(dependencies);
+        };
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<List<BindingSet>> leader = executor.submit(() -> toList(cache.evaluate(QUERY, slowLoader)));
+            Thread.sleep(100);
+            // the leader is still running, so the follower gives up waiting and evaluates the query itself
+            Assert.assertEquals(1, toList(cache.evaluate(QUERY, loader(QUERY), 50L)).size());
+            Assert.assertEquals(1, loads.get());
+            release.countDown();
+            Assert.assertEquals(1, leader.get(10, TimeUnit.SECONDS).size());
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(2, loads.get());
+    }
+}
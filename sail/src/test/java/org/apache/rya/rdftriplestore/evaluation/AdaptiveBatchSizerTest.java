@@ -0,0 +1,81 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.rya.api.persist.query.QueryContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdaptiveBatchSizerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(5);
+
+    @Test
+    public void growsForSelectiveFastBatches() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, true, 10000, 100000, null);
+        sizer.batchFinished(1000, 10, FAST);
+        Assert.assertEquals(2000, sizer.getBatchSize());
+        sizer.batchFinished(2000, 10, FAST);
+        sizer.batchFinished(4000, 10, FAST);
+        sizer.batchFinished(8000, 10, FAST);
+        Assert.assertEquals(10000, sizer.getBatchSize());
+    }
+
+    @Test
+    public void shrinksToResultBudgetForLargeFanOut() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, true, 10000, 100000, null);
+        sizer.batchFinished(1000, 500000, FAST);
+        Assert.assertEquals(200, sizer.getBatchSize());
+    }
+
+    @Test
+    public void shrinksSlowBatches() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, true, 10000, 100000, null);
+        sizer.batchFinished(1000, 1000, SLOW);
+        Assert.assertEquals(500, sizer.getBatchSize());
+    }
+
+    @Test
+    public void fixedWhenNotAdaptive() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, false, 10000, 100000, null);
+        sizer.batchFinished(1000, 10, FAST);
+        sizer.batchFinished(1000, 500000, SLOW);
+        Assert.assertEquals(1000, sizer.getBatchSize());
+    }
+
+    @Test
+    public void reportsDecisionsInQueryMetrics() {
+        QueryContext context = QueryContext.start(null, null);
+        try {
+            AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(1000, true, 10000, 100000, context);
+            sizer.batchFinished(1000, 10, FAST);
+            sizer.batchFinished(2000, 10, SLOW);
+            Assert.assertEquals(Long.valueOf(2), context.getMetrics().get("join.batches"));
+            Assert.assertEquals(Long.valueOf(1), context.getMetrics().get("join.batch.grown"));
+            Assert.assertEquals(Long.valueOf(1), context.getMetrics().get("join.batch.shrunk"));
+            Assert.assertEquals(Long.valueOf(1000), context.getMetrics().get("join.batch.size"));
+        } finally {
+            context.finish();
+        }
+    }
+}
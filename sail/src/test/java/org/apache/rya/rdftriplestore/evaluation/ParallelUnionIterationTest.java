@@ -0,0 +1,146 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.rya.rdftriplestore.inference.InferUnion;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.BindingSetAssignment;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Union;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+import org.openrdf.query.algebra.evaluation.TripleSource;
+import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
+import org.openrdf.query.impl.EmptyBindingSet;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.EmptyIteration;
+
+public class ParallelUnionIterationTest {
+
+    private final QueryEvaluationScheduler scheduler = new QueryEvaluationScheduler(2);
+
+    private final EvaluationStrategyImpl strategy = new EvaluationStrategyImpl(new TripleSource() {
+        @Override
+        public CloseableIteration<? extends Statement, QueryEvaluationException> getStatements(Resource subj, URI pred, Value obj,
+                Resource... contexts) {
+            return new EmptyIteration<Statement, QueryEvaluationException>();
+        }
+
+        @Override
+        public ValueFactory getValueFactory() {
+            return ValueFactoryImpl.getInstance();
+        }
+    });
+
+    @After
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private static TupleExpr branch(int from, int to) {
+        List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+        for (int i = from; i < to; i++) {
+            QueryBindingSet bs = new QueryBindingSet();
+            bs.addBinding("x", new LiteralImpl(Integer.toString(i)));
+            bindingSets.add(bs);
+        }
+        BindingSetAssignment assignment = new BindingSetAssignment();
+        assignment.setBindingSets(bindingSets);
+        return assignment;
+    }
+
+    // the shape inference rewrites produce, a union nested in a union
+    private static Union union() {
+        return new InferUnion(branch(0, 100), new InferUnion(branch(100, 2000), branch(2000, 2500)));
+    }
+
+    private static List<Integer> values(CloseableIteration<BindingSet, QueryEvaluationException> iter) throws QueryEvaluationException {
+        List<Integer> values = new ArrayList<Integer>();
+        try {
+            while (iter.hasNext()) {
+                values.add(((Literal) iter.next().getValue("x")).intValue());
+            }
+        } finally {
+            iter.close();
+        }
+        return values;
+    }
+
+    @Test
+    public void returnsEveryBranch() throws Exception {
+        List<Integer> values = values(new ParallelUnionIteration(strategy, union(), EmptyBindingSet.getInstance(),
+                scheduler.newQueryExecutor(4), 16, false, null));
+
+        Assert.assertEquals(2500, values.size());
+        Collections.sort(values);
+        for (int i = 0; i < values.size(); i++) {
+            Assert.assertEquals(Integer.valueOf(i), values.get(i));
+        }
+    }
+
+    @Test
+    public void orderedMergeKeepsBranchOrder() throws Exception {
+        List<Integer> values = values(new ParallelUnionIteration(strategy, union(), EmptyBindingSet.getInstance(),
+                scheduler.newQueryExecutor(4), 16, true, null));
+
+        Assert.assertEquals(2500, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            Assert.assertEquals(Integer.valueOf(i), values.get(i));
+        }
+    }
+
+    @Test
+    public void completesWhenTheExecutorIsBusy() throws Exception {
+        ExecutorService query = scheduler.newQueryExecutor(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        query.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            List<Integer> values = values(new ParallelUnionIteration(strategy, union(), EmptyBindingSet.getInstance(),
+                    query, 16, false, null));
+            Assert.assertEquals(2500, values.size());
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QueryEvaluationSchedulerTest {
+
+    private final QueryEvaluationScheduler scheduler = new QueryEvaluationScheduler(4);
+
+    @After
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void limitsConcurrencyPerQuery() throws Exception {
+        final ExecutorService query = scheduler.newQueryExecutor(2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            query.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int now = running.incrementAndGet();
+                    maxRunning.accumulateAndGet(now, Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void threadCountStaysFlat() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(50);
+        final List<ExecutorService> queries = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            final ExecutorService query = scheduler.newQueryExecutor(10);
+            queries.add(query);
+            for (int j = 0; j < 2; j++) {
+                query.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                });
+            }
+        }
+        Assert.assertTrue(scheduler.getPoolSize() <= 4);
+        release.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (ExecutorService query : queries) {
+            query.shutdown();
+            Assert.assertTrue(query.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void shutdownNowOnlyStopsItsQuery() throws Exception {
+        final ExecutorService first = scheduler.newQueryExecutor(1);
+        final ExecutorService second = scheduler.newQueryExecutor(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        first.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        first.execute(() -> Assert.fail("queued task of a stopped query ran"));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(1, first.shutdownNow().size());
+        Assert.assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(first.awaitTermination(10, TimeUnit.SECONDS));
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        second.execute(ran::countDown);
+        Assert.assertTrue(ran.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shutdownNowLeavesSharedThreadsOfOtherQueries() throws Exception {
+        final QueryEvaluationScheduler single = new QueryEvaluationScheduler(1);
+        try {
+            final ExecutorService first = single.newQueryExecutor(1);
+            final ExecutorService second = single.newQueryExecutor(1);
+            final CountDownLatch firstDone = new CountDownLatch(1);
+            first.execute(firstDone::countDown);
+            Assert.assertTrue(firstDone.await(10, TimeUnit.SECONDS));
+
+            // the only shared thread now runs a task of the second query
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch interrupted = new CountDownLatch(1);
+            second.execute(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            });
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+            first.shutdownNow();
+            Assert.assertFalse(interrupted.await(1, TimeUnit.SECONDS));
+        } finally {
+            single.shutdown();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.rya.api.persist.query.QueryContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Literal;
+import org.openrdf.model.impl.BNodeImpl;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.vocabulary.XMLSchema;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.LookAheadIteration;
+
+public class SpillingIterationsTest {
+
+    private static final Comparator<BindingSet> BY_X = new Comparator<BindingSet>() {
+        @Override
+        public int compare(BindingSet bs1, BindingSet bs2) {
+            return Integer.compare(((Literal) bs1.getValue("x")).intValue(), ((Literal) bs2.getValue("x")).intValue());
+        }
+    };
+
+    // room for roughly a thousand of the binding sets below
+    private static final long SMALL_BUDGET = 200 * 1024;
+
+    @Rule
+    public TemporaryFolder spillDir = new TemporaryFolder();
+
+    private QueryContext context;
+
+    @Before
+    public void start() {
+        context = QueryContext.start(null, null);
+    }
+
+    @After
+    public void finish() {
+        context.finish();
+    }
+
+    private static CloseableIteration<BindingSet, QueryEvaluationException> source(List<Integer> values) {
+        List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+        for (Integer value : values) {
+            QueryBindingSet bs = new QueryBindingSet();
+            bs.addBinding("x", new LiteralImpl(value.toString(), XMLSchema.INT));
+            bindingSets.add(bs);
+        }
+        return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(bindingSets.iterator());
+    }
+
+    private static List<Integer> shuffled(int count, int copies) {
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < copies; j++) {
+                values.add(i);
+            }
+        }
+        Collections.shuffle(values, new Random(42));
+        return values;
+    }
+
+    private static List<Integer> values(CloseableIteration<BindingSet, QueryEvaluationException> iter) throws QueryEvaluationException {
+        List<Integer> values = new ArrayList<Integer>();
+        try {
+            while (iter.hasNext()) {
+                values.add(((Literal) iter.next().getValue("x")).intValue());
+            }
+        } finally {
+            iter.close();
+        }
+        return values;
+    }
+
+    @Test
+    public void orderSpillsRunsAndMergesThem() throws Exception {
+        QueryMemoryBudget budget = new QueryMemoryBudget(SMALL_BUDGET, spillDir.getRoot(), context);
+        List<Integer> values = values(new SpillingOrderIteration(source(shuffled(10000, 1)), BY_X, budget));
+
+        Assert.assertEquals(10000, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            Assert.assertEquals(Integer.valueOf(i), values.get(i));
+        }
+        Assert.assertTrue(context.getMetrics().get("spill.files") > 1);
+        Assert.assertEquals(0, budget.getUsed());
+        Assert.assertEquals(0, spillDir.getRoot().list().length);
+    }
+
+    @Test
+    public void orderStaysInMemoryWithinBudget() throws Exception {
+        QueryMemoryBudget budget = new QueryMemoryBudget(Long.MAX_VALUE, spillDir.getRoot(), context);
+        List<Integer> values = values(new SpillingOrderIteration(source(shuffled(100, 1)), BY_X, budget));
+
+        Assert.assertEquals(100, values.size());
+        Assert.assertEquals(Integer.valueOf(0), values.get(0));
+        Assert.assertEquals(Integer.valueOf(99), values.get(99));
+        Assert.assertNull(context.getMetrics().get("spill.files"));
+        Assert.assertEquals(0, budget.getUsed());
+    }
+
+    @Test
+    public void distinctSpillsPartitions() throws Exception {
+        QueryMemoryBudget budget = new QueryMemoryBudget(SMALL_BUDGET, spillDir.getRoot(), context);
+        List<Integer> values = values(new SpillingDistinctIteration(source(shuffled(5000, 3)), budget));
+
+        Set<Integer> unique = new HashSet<Integer>(values);
+        Assert.assertEquals(values.size(), unique.size());
+        Assert.assertEquals(5000, unique.size());
+        Assert.assertTrue(context.getMetrics().get("spill.files") > 0);
+        Assert.assertEquals(0, budget.getUsed());
+        Assert.assertEquals(0, spillDir.getRoot().list().length);
+    }
+
+    @Test
+    public void closingEarlyDeletesSpillFiles() throws Exception {
+        QueryMemoryBudget budget = new QueryMemoryBudget(SMALL_BUDGET, spillDir.getRoot(), context);
+        CloseableIteration<BindingSet, QueryEvaluationException> iter = new SpillingOrderIteration(source(shuffled(10000, 1)), BY_X, budget);
+        Assert.assertTrue(iter.hasNext());
+        iter.close();
+
+        Assert.assertEquals(0, budget.getUsed());
+        Assert.assertEquals(0, spillDir.getRoot().list().length);
+    }
+
+    private static CloseableIteration<BindingSet, QueryEvaluationException> failingAfter(final int count) {
+        final CloseableIteration<BindingSet, QueryEvaluationException> values = source(shuffled(count, 1));
+        return new LookAheadIteration<BindingSet, QueryEvaluationException>() {
+            @Override
+            protected BindingSet getNextElement() throws QueryEvaluationException {
+                if (values.hasNext()) {
+                    return values.next();
+                }
+                throw new QueryEvaluationException("source failed");
+            }
+        };
+    }
+
+    @Test
+    public void failingSourceDeletesSpillFiles() throws Exception {
+        QueryMemoryBudget budget = new QueryMemoryBudget(SMALL_BUDGET, spillDir.getRoot(), context);
+        for (CloseableIteration<BindingSet, QueryEvaluationException> iter : Arrays.asList(
+                new SpillingOrderIteration(failingAfter(10000), BY_X, budget),
+                new SpillingDistinctIteration(failingAfter(10000), budget))) {
+            try {
+                values(iter);
+                Assert.fail("the source failure should be rethrown");
+            } catch (QueryEvaluationException e) {
+                Assert.assertEquals("source failed", e.getMessage());
+            }
+            Assert.assertEquals(0, spillDir.getRoot().list().length);
+        }
+        Assert.assertTrue(context.getMetrics().get("spill.files") > 0);
+        Assert.assertEquals(0, budget.getUsed());
+    }
+
+    @Test
+    public void spillFileRoundTripsValues() throws Exception {
+        StringBuilder longLabel = new StringBuilder();
+        for (int i = 0; i < 70000; i++) {
+            longLabel.append('a');
+        }
+        QueryBindingSet bs = new QueryBindingSet();
+        bs.addBinding("uri", new URIImpl("urn:test#uri"));
+        bs.addBinding("bnode", new BNodeImpl("b1"));
+        bs.addBinding("plain", new LiteralImpl(longLabel.toString()));
+        bs.addBinding("lang", new LiteralImpl("chat", "fr"));
+        bs.addBinding("typed", new LiteralImpl("12", XMLSchema.INTEGER));
+
+        BindingSetSpillFile file = new BindingSetSpillFile(spillDir.getRoot());
+        file.write(bs);
+        file.write(new QueryBindingSet());
+        CloseableIteration<BindingSet, QueryEvaluationException> iter = file.read();
+        Assert.assertEquals(bs, iter.next());
+        Assert.assertEquals(0, iter.next().size());
+        Assert.assertFalse(iter.hasNext());
+        iter.close();
+        Assert.assertEquals(0, spillDir.getRoot().list().length);
+    }
+}
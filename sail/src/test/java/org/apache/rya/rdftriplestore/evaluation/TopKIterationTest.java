@@ -0,0 +1,106 @@
+package org.apache.rya.rdftriplestore.evaluation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.Literal;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryEvaluationException;
+import org.openrdf.query.algebra.evaluation.QueryBindingSet;
+
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+
+public class TopKIterationTest {
+
+    private static final Comparator<BindingSet> BY_X = new Comparator<BindingSet>() {
+        @Override
+        public int compare(BindingSet bs1, BindingSet bs2) {
+            return ((Literal) bs1.getValue("x")).intValue() - ((Literal) bs2.getValue("x")).intValue();
+        }
+    };
+
+    private int read = 0;
+
+    private CloseableIteration<BindingSet, QueryEvaluationException> source(Integer... values) {
+        List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+        for (Integer value : values) {
+            QueryBindingSet bs = new QueryBindingSet();
+            bs.addBinding("x", new LiteralImpl(value.toString()));
+            bindingSets.add(bs);
+        }
+        final Iterator<BindingSet> iter = bindingSets.iterator();
+        return new CloseableIteratorIteration<BindingSet, QueryEvaluationException>(new Iterator<BindingSet>() {
+            @Override
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            @Override
+            public BindingSet next() {
+                read++;
+                return iter.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        });
+    }
+
+    private static List<Integer> values(CloseableIteration<BindingSet, QueryEvaluationException> iter) throws QueryEvaluationException {
+        List<Integer> values = new ArrayList<Integer>();
+        while (iter.hasNext()) {
+            values.add(((Literal) iter.next().getValue("x")).intValue());
+        }
+        iter.close();
+        return values;
+    }
+
+    @Test
+    public void keepsSmallestK() throws Exception {
+        TopKIteration topK = new TopKIteration(source(5, 3, 9, 1, 7, 2, 8), BY_X, 3, false);
+        Assert.assertEquals(Arrays.asList(1, 2, 3), values(topK));
+        Assert.assertEquals(7, read);
+    }
+
+    @Test
+    public void stopsEarlyOnOrderedSource() throws Exception {
+        TopKIteration topK = new TopKIteration(source(1, 2, 3, 4, 5, 6, 7), BY_X, 3, true);
+        Assert.assertEquals(Arrays.asList(1, 2, 3), values(topK));
+        Assert.assertEquals(3, read);
+    }
+
+    @Test
+    public void readsEverythingWhenSourceIsOutOfOrder() throws Exception {
+        TopKIteration topK = new TopKIteration(source(2, 1, 3, 4, 0), BY_X, 2, true);
+        Assert.assertEquals(Arrays.asList(0, 1), values(topK));
+        Assert.assertEquals(5, read);
+    }
+}
@@ -0,0 +1,139 @@
+package org.apache.rya.rdftriplestore.inference;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+public class HierarchyClosureTest {
+    private final ValueFactory vf = ValueFactoryImpl.getInstance();
+    private final URI animal = vf.createURI("urn:Animal");
+    private final URI vertebrate = vf.createURI("urn:Vertebrate");
+    private final URI mammal = vf.createURI("urn:Mammal");
+    private final URI pet = vf.createURI("urn:Pet");
+    private final URI dog = vf.createURI("urn:Dog");
+
+    private static Set<URI> set(URI... uris) {
+        return new HashSet<URI>(Arrays.asList(uris));
+    }
+
+    @Test
+    public void closesOverChainsAndDiamonds() {
+        HierarchyClosure closure = new HierarchyClosure.Builder()
+                .addEdge(vertebrate, animal)
+                .addEdge(mammal, vertebrate)
+                .addEdge(pet, animal)
+                .addEdge(dog, mammal)
+                .addEdge(dog, pet)
+                .build();
+
+        Assert.assertEquals(5, closure.size());
+        Assert.assertEquals(set(vertebrate, mammal, pet, dog), closure.getDescendants(animal));
+        Assert.assertEquals(set(mammal, vertebrate, pet, animal), closure.getAncestors(dog));
+        Assert.assertEquals(set(dog), closure.getDescendants(mammal));
+        Assert.assertTrue(closure.getDescendants(animal).contains(dog));
+        Assert.assertFalse(closure.getDescendants(animal).contains(animal));
+        Assert.assertTrue(closure.getDescendants(dog).isEmpty());
+        Assert.assertTrue(closure.getAncestors(animal).isEmpty());
+    }
+
+    @Test
+    public void includesTermsOfACycle() {
+        // an owl:equivalentProperty is a subproperty both ways
+        HierarchyClosure closure = new HierarchyClosure.Builder()
+                .addEdge(mammal, vertebrate)
+                .addEdge(vertebrate, mammal)
+                .addEdge(dog, mammal)
+                .build();
+
+        Assert.assertEquals(set(mammal, vertebrate, dog), closure.getDescendants(mammal));
+        Assert.assertEquals(set(mammal, vertebrate), closure.getAncestors(dog));
+    }
+
+    @Test
+    public void unknownTermsHaveNoRelatives() {
+        Assert.assertTrue(HierarchyClosure.EMPTY.getDescendants(animal).isEmpty());
+        Assert.assertTrue(new HierarchyClosure.Builder().addEdge(mammal, animal).build().getAncestors(dog).isEmpty());
+    }
+
+    @Test
+    public void addedEdgesMatchABuiltClosure() {
+        HierarchyClosure closure = new HierarchyClosure.Builder()
+                .addEdge(vertebrate, animal)
+                .addEdge(dog, mammal)
+                .build()
+                .withEdge(mammal, vertebrate)
+                .withEdge(pet, animal)
+                .withEdge(dog, pet);
+
+        Assert.assertEquals(set(vertebrate, mammal, pet, dog), closure.getDescendants(animal));
+        Assert.assertEquals(set(mammal, vertebrate, pet, animal), closure.getAncestors(dog));
+        Assert.assertEquals(set(mammal, pet), closure.getParents(dog));
+        Assert.assertSame(closure, closure.withEdge(dog, pet));
+    }
+
+    @Test
+    public void batchedEdgesMatchABuiltClosure() {
+        HierarchyClosure base = new HierarchyClosure.Builder()
+                .addEdge(vertebrate, animal)
+                .addEdge(dog, mammal)
+                .build();
+        HierarchyClosure closure = base.withEdges(Arrays.asList(
+                new URI[] {mammal, vertebrate},
+                new URI[] {pet, animal},
+                new URI[] {dog, pet},
+                new URI[] {dog, mammal}));
+
+        Assert.assertEquals(set(vertebrate, mammal, pet, dog), closure.getDescendants(animal));
+        Assert.assertEquals(set(mammal, vertebrate, pet, animal), closure.getAncestors(dog));
+        Assert.assertEquals(set(mammal, pet), closure.getParents(dog));
+        Assert.assertSame(base, base.withEdges(Collections.singletonList(new URI[] {dog, mammal})));
+    }
+
+    @Test
+    public void removedEdgesAreRederived() {
+        HierarchyClosure closure = new HierarchyClosure.Builder()
+                .addEdge(vertebrate, animal)
+                .addEdge(mammal, vertebrate)
+                .addEdge(pet, animal)
+                .addEdge(dog, mammal)
+                .addEdge(dog, pet)
+                .build()
+                .withoutEdge(mammal, vertebrate);
+
+        // dog is still an animal through pet
+        Assert.assertEquals(set(mammal, pet, animal), closure.getAncestors(dog));
+        Assert.assertEquals(set(vertebrate, pet, dog), closure.getDescendants(animal));
+        Assert.assertFalse(closure.hasEdge(mammal, vertebrate));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void lookupsAreReadOnly() {
+        new HierarchyClosure.Builder().addEdge(mammal, animal).build().getDescendants(animal).add(dog);
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.rya.rdftriplestore.inference;
  * under the License.
  */
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -164,4 +165,34 @@ public class InferenceEngineTest extends TestCase {
         valuesImplyingAnimal.get(taxon).addAll(valuesImplyingTunicate.get(taxon));
         Assert.assertEquals(valuesImplyingAnimal, inferenceEngine.getHasValueByType(vf.createURI("urn:Animal")));
     }
+
+    @Test
+    public void testSchemaChangesWithoutRefresh() throws Exception {
+        String insert = "INSERT DATA { GRAPH <http://updated/test> {\n"
+                + "  <urn:Mammal> rdfs:subClassOf <urn:Vertebrate> . \n"
+                + "  <urn:Vertebrate> rdfs:subClassOf <urn:Animal> . \n"
+                + "  <urn:hasParent> rdfs:subPropertyOf <urn:hasAncestor> . \n"
+                + "  <urn:hasAncestor> a owl:TransitiveProperty . \n"
+                + "  <urn:hasChild> owl:inverseOf <urn:hasParent> . \n"
+                + "}}";
+        conn.prepareUpdate(QueryLanguage.SPARQL, insert).execute();
+        final URI animal = vf.createURI("urn:Animal");
+        final URI vertebrate = vf.createURI("urn:Vertebrate");
+        final URI mammal = vf.createURI("urn:Mammal");
+        final URI hasParent = vf.createURI("urn:hasParent");
+        final URI hasAncestor = vf.createURI("urn:hasAncestor");
+        Assert.assertEquals(new HashSet<>(Arrays.asList(vertebrate, mammal)), inferenceEngine.getSubClasses(animal));
+        Assert.assertEquals(new HashSet<>(Arrays.asList(hasParent)), inferenceEngine.getSubProperties(hasAncestor));
+        Assert.assertTrue(inferenceEngine.isTransitiveProperty(hasAncestor));
+        Assert.assertEquals(hasParent, inferenceEngine.findInverseOf(vf.createURI("urn:hasChild")));
+
+        String delete = "DELETE DATA { GRAPH <http://updated/test> {\n"
+                + "  <urn:Vertebrate> rdfs:subClassOf <urn:Animal> . \n"
+                + "  <urn:hasAncestor> a owl:TransitiveProperty . \n"
+                + "}}";
+        conn.prepareUpdate(QueryLanguage.SPARQL, delete).execute();
+        Assert.assertTrue(inferenceEngine.getSubClasses(animal).isEmpty());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(mammal)), inferenceEngine.getSubClasses(vertebrate));
+        Assert.assertFalse(inferenceEngine.isTransitiveProperty(hasAncestor));
+    }
 }
@@ -0,0 +1,100 @@
+package org.apache.rya.rdftriplestore.inference;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openrdf.model.Resource;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+public class SameAsIndexTest {
+    private final ValueFactory vf = ValueFactoryImpl.getInstance();
+    private final Resource a1 = vf.createURI("urn:A1");
+    private final Resource a2 = vf.createURI("urn:A2");
+    private final Resource a3 = vf.createURI("urn:A3");
+    private final Resource b1 = vf.createURI("urn:B1");
+    private final Resource b2 = vf.createURI("urn:B2");
+
+    private static Set<Resource> set(Resource... resources) {
+        return new HashSet<Resource>(Arrays.asList(resources));
+    }
+
+    @Test
+    public void findsClassesOfChains() {
+        SameAsIndex index = new SameAsIndex.Builder()
+                .add(a1, a2)
+                .add(a3, a2)
+                .add(b1, b2)
+                .build();
+
+        Assert.assertEquals(set(a1, a2, a3), index.getSameAs(a1));
+        Assert.assertEquals(set(a1, a2, a3), index.getSameAs(a3));
+        Assert.assertEquals(set(b1, b2), index.getSameAs(b2));
+        Assert.assertSame(index.getSameAs(a1), index.getSameAs(a2));
+    }
+
+    @Test
+    public void unknownResourcesAreOnlyThemselves() {
+        SameAsIndex index = new SameAsIndex.Builder().add(a1, a2).build();
+
+        Assert.assertEquals(set(b1), index.getSameAs(b1));
+        Assert.assertFalse(index.contains(b1));
+    }
+
+    @Test
+    public void unionMergesClasses() {
+        SameAsIndex index = new SameAsIndex.Builder()
+                .add(a1, a2)
+                .add(b1, b2)
+                .build();
+        Set<Resource> before = index.getSameAs(a1);
+
+        SameAsIndex merged = index.withUnion(a2, b1);
+
+        Assert.assertEquals(set(a1, a2, b1, b2), merged.getSameAs(b2));
+        Assert.assertSame(merged.getSameAs(a1), merged.getSameAs(b2));
+        Assert.assertSame(merged, merged.withUnion(b2, a1));
+        // the previous index and a set already handed out do not change
+        Assert.assertEquals(set(b1, b2), index.getSameAs(b2));
+        Assert.assertEquals(set(a1, a2), before);
+    }
+
+    @Test
+    public void rebuiltClassSplits() {
+        SameAsIndex index = new SameAsIndex.Builder()
+                .add(a1, a2)
+                .add(a2, a3)
+                .add(b1, b2)
+                .build();
+
+        // a2 sameAs a3 was removed
+        SameAsIndex rebuilt = index.withClassRebuilt(index.getSameAs(a1), new SameAsIndex.Builder().add(a1, a2));
+
+        Assert.assertEquals(set(a1, a2), rebuilt.getSameAs(a2));
+        Assert.assertEquals(set(a3), rebuilt.getSameAs(a3));
+        Assert.assertFalse(rebuilt.contains(a3));
+        Assert.assertEquals(set(b1, b2), rebuilt.getSameAs(b1));
+    }
+}
@@ -27,8 +27,9 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -36,6 +37,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.rya.api.security.SecurityProvider;
 import org.apache.rya.api.RdfCloudTripleStoreConfiguration;
+import org.apache.rya.api.persist.query.QueryContext;
 import org.apache.rya.rdftriplestore.RdfCloudTripleStoreConnection;
 
 import org.openrdf.model.Resource;
@@ -84,6 +86,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 public class RdfController {
     
 	private static final int QUERY_TIME_OUT_SECONDS = 120;
+	public static final String QUERY_ID_HEADER = "X-Rya-Query-Id";
 
     @Autowired
     SailRepository repository;
@@ -91,6 +94,9 @@ public class RdfController {
     @Autowired   
     SecurityProvider provider;
 
+    // the user that started each running query, by query id
+    private final Map<String, String> queryOwners = new ConcurrentHashMap<>();
+
     @RequestMapping(value = "/queryrdf", method = {RequestMethod.GET, RequestMethod.POST})
     public void queryRdf(@RequestParam("query") String query,
                          @RequestParam(value = RdfCloudTripleStoreConfiguration.CONF_QUERY_AUTH, required = false) String auth,
@@ -100,24 +106,31 @@ public class RdfController {
                          @RequestParam(value = RdfCloudTripleStoreConfiguration.CONF_RESULT_FORMAT, required = false) String emit,
                          @RequestParam(value = "padding", required = false) String padding,
                          @RequestParam(value = "callback", required = false) String callback,
+                         @RequestParam(value = RdfCloudTripleStoreConfiguration.CONF_QUERY_TIMEOUT, required = false) Long timeout,
                          HttpServletRequest request,
-                         HttpServletResponse response) {
+                         HttpServletResponse response) throws IOException {
         SailRepositoryConnection conn = null;
-		final Thread queryThread = Thread.currentThread();
 		auth = StringUtils.arrayToCommaDelimitedString(provider.getUserAuths(request));
-		Timer timer = new Timer();
-		timer.schedule(new TimerTask() {
-
-			@Override
-			public void run() {
-				System.out.println("interrupting");
-				queryThread.interrupt();
+		// the timeout is enforced by the query itself, which stops its scanners once the deadline passes
+		// clients may only shorten the server's limit
+		if (timeout == null) {
+			timeout = QUERY_TIME_OUT_SECONDS * 1000L;
+		} else if (timeout <= 0) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, RdfCloudTripleStoreConfiguration.CONF_QUERY_TIMEOUT + " must be positive");
+			return;
+		} else {
+			timeout = Math.min(timeout, QUERY_TIME_OUT_SECONDS * 1000L);
+		}
+		// ids are generated here so a client can't take over, or collide with, another client's query
+		final String queryId = UUID.randomUUID().toString();
+		final String owner = request.getRemoteUser();
+		if (owner != null) {
+			queryOwners.put(queryId, owner);
+		}
 
-			}
-		}, QUERY_TIME_OUT_SECONDS * 1000);
-		
 		try {
 			response.setHeader("Access-Control-Allow-Origin", "*");
+			response.setHeader(QUERY_ID_HEADER, queryId);
 			ServletOutputStream os = response.getOutputStream();
             conn = repository.getConnection();
 
@@ -136,7 +149,7 @@ public class RdfController {
             		// Perform Graph Query
                     RDFHandler handler = new RDFXMLWriter(os);
                     response.setContentType("text/xml");
-                    performGraphQuery(query, conn, auth, infer, nullout, handler);
+                    performGraphQuery(query, conn, auth, infer, nullout, queryId, timeout, handler);
                 } else if (operation instanceof ParsedTupleQuery) {
                     // Perform Tuple Query
                     TupleQueryResultHandler handler;
@@ -149,7 +162,7 @@ public class RdfController {
                         response.setContentType("text/xml");
                     }
 
-                    performQuery(query, conn, auth, infer, nullout, handler);
+                    performQuery(query, conn, auth, infer, nullout, queryId, timeout, handler);
                 } else if (operation instanceof ParsedUpdate) {
                     // Perform Update Query
                     performUpdate(query, conn, os, infer, vis);
@@ -165,6 +178,7 @@ public class RdfController {
             e.printStackTrace();
             throw new RuntimeException(e);
         } finally {
+            queryOwners.remove(queryId);
             if (conn != null) {
                 try {
                     conn.close();
@@ -173,16 +187,57 @@ public class RdfController {
                 }
             }
         }
-		
-		timer.cancel();
     }
-    
-    private void performQuery(String query, RepositoryConnection conn, String auth, String infer, String nullout, TupleQueryResultHandler handler) throws RepositoryException, MalformedQueryException, QueryEvaluationException, TupleQueryResultHandlerException {
+
+    /**
+     * Cancels a query started through /queryrdf. The id of a query is returned in the
+     * {@value #QUERY_ID_HEADER} response header. Only the authenticated user that started
+     * a query may cancel it.
+     */
+    @RequestMapping(value = "/cancelquery", method = {RequestMethod.GET, RequestMethod.POST})
+    public void cancelQuery(@RequestParam(RdfCloudTripleStoreConfiguration.CONF_QUERY_ID) String queryId,
+                            HttpServletRequest request,
+                            HttpServletResponse response) throws IOException {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        String user = request.getRemoteUser();
+        if (user == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Cancelling a query requires an authenticated user");
+            return;
+        }
+        // a query of another user is reported as not running, so its id isn't confirmed
+        if (!user.equals(queryOwners.get(queryId)) || !QueryContext.cancel(queryId)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Query " + queryId + " is not running");
+        }
+    }
+
+    /**
+     * Lists the running queries the authenticated user started through /queryrdf.
+     */
+    @RequestMapping(value = "/runningqueries", method = RequestMethod.GET)
+    public void runningQueries(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader("Access-Control-Allow-Origin", "*");
+        String user = request.getRemoteUser();
+        if (user == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Listing queries requires an authenticated user");
+            return;
+        }
+        response.setContentType("text/plain");
+        ServletOutputStream os = response.getOutputStream();
+        for (QueryContext context : QueryContext.getRunningQueries()) {
+            if (user.equals(queryOwners.get(context.getQueryId()))) {
+                os.println(context.toString());
+            }
+        }
+    }
+
+    private void performQuery(String query, RepositoryConnection conn, String auth, String infer, String nullout, String queryId, Long timeout, TupleQueryResultHandler handler) throws RepositoryException, MalformedQueryException, QueryEvaluationException, TupleQueryResultHandlerException {
         TupleQuery tupleQuery = conn.prepareTupleQuery(QueryLanguage.SPARQL, query);
         if (auth != null && auth.length() > 0)
             tupleQuery.setBinding(RdfCloudTripleStoreConfiguration.CONF_QUERY_AUTH, VALUE_FACTORY.createLiteral(auth));
         if (infer != null && infer.length() > 0)
             tupleQuery.setBinding(RdfCloudTripleStoreConfiguration.CONF_INFER, VALUE_FACTORY.createLiteral(Boolean.parseBoolean(infer)));
+        tupleQuery.setBinding(RdfCloudTripleStoreConfiguration.CONF_QUERY_ID, VALUE_FACTORY.createLiteral(queryId));
+        tupleQuery.setBinding(RdfCloudTripleStoreConfiguration.CONF_QUERY_TIMEOUT, VALUE_FACTORY.createLiteral(timeout));
         if (nullout != null && nullout.length() > 0) {
             //output nothing, but still run query
             tupleQuery.evaluate(new TupleQueryResultHandler() {
@@ -216,12 +271,14 @@ public class RdfController {
 
     }
     
-    private void performGraphQuery(String query, RepositoryConnection conn, String auth, String infer, String nullout, RDFHandler handler) throws RepositoryException, MalformedQueryException, QueryEvaluationException, RDFHandlerException {
+    private void performGraphQuery(String query, RepositoryConnection conn, String auth, String infer, String nullout, String queryId, Long timeout, RDFHandler handler) throws RepositoryException, MalformedQueryException, QueryEvaluationException, RDFHandlerException {
         GraphQuery graphQuery = conn.prepareGraphQuery(QueryLanguage.SPARQL, query);
         if (auth != null && auth.length() > 0)
         	graphQuery.setBinding(RdfCloudTripleStoreConfiguration.CONF_QUERY_AUTH, VALUE_FACTORY.createLiteral(auth));
         if (infer != null && infer.length() > 0)
         	graphQuery.setBinding(RdfCloudTripleStoreConfiguration.CONF_INFER, VALUE_FACTORY.createLiteral(Boolean.parseBoolean(infer)));
+        graphQuery.setBinding(RdfCloudTripleStoreConfiguration.CONF_QUERY_ID, VALUE_FACTORY.createLiteral(queryId));
+        graphQuery.setBinding(RdfCloudTripleStoreConfiguration.CONF_QUERY_TIMEOUT, VALUE_FACTORY.createLiteral(timeout));
         if (nullout != null && nullout.length() > 0) {
             //output nothing, but still run query
         	// TODO this seems like a strange use case.
@@ -128,6 +128,23 @@ public class RdfControllerTest {
                 .param("query", "SELECT nothing WHERE { ?s ?p ?o }"));
     }
 
+    @Test
+    public void timeoutMustBePositive() throws Exception {
+        this.mockMvc.perform(get("/queryrdf")
+                .param("query", "SELECT * WHERE { ?s ?p ?o . }")
+                .param("query.timeout", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void longerTimeoutIsAllowed() throws Exception {
+        // clamped to the server's limit
+        this.mockMvc.perform(get("/queryrdf")
+                .param("query", "SELECT * WHERE { ?s ?p ?o . }")
+                .param("query.timeout", Long.toString(Long.MAX_VALUE)))
+                .andExpect(status().isOk());
+    }
+
     @Test
     public void updateQuery() throws Exception {
         this.mockMvc.perform(get("/queryrdf")
@@ -157,4 +174,26 @@ public class RdfControllerTest {
 
     }
 
+
+    @Test
+    public void runningQueriesRequiresUser() throws Exception {
+        this.mockMvc.perform(get("/runningqueries"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void cancelQueryRequiresUser() throws Exception {
+        this.mockMvc.perform(get("/cancelquery").param("query.id", "someone-elses-query"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void cancelQueryNotOwned() throws Exception {
+        this.mockMvc.perform(get("/cancelquery").param("query.id", "someone-elses-query")
+                .with(request -> {
+                    request.setRemoteUser("alice");
+                    return request;
+                }))
+                .andExpect(status().isNotFound());
+    }
 }